@@ -0,0 +1,119 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.columnar.driver;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import com.asakusafw.dmdl.Diagnostic;
+import com.asakusafw.dmdl.Diagnostic.Level;
+import com.asakusafw.dmdl.model.AstAttribute;
+import com.asakusafw.dmdl.model.AstAttributeElement;
+import com.asakusafw.dmdl.model.AstLiteral;
+import com.asakusafw.dmdl.model.LiteralKind;
+import com.asakusafw.dmdl.semantics.DmdlSemantics;
+import com.asakusafw.dmdl.semantics.ModelDeclaration;
+import com.asakusafw.dmdl.spi.ModelAttributeDriver;
+import com.asakusafw.dmdl.util.AttributeUtil;
+import com.asakusafw.runtime.directio.columnar.ColumnarFormats;
+
+/**
+ * Processes <code>&#64;directio.columnar</code> attributes.
+<h2>'&#64;directio.columnar' attribute</h2>
+The attributed declaration can have:
+<ul>
+<li> with {@code row_group_rows=[integer-literal]} as maximum number of rows in each row group
+    (default: 65536) </li>
+<li> with {@code row_group_bytes=[integer-literal]} as approximate maximum number of bytes in each row group
+    (default: 8MB) </li>
+</ul>
+ * @since 0.6.0
+ */
+public class ColumnarFormatDriver extends ModelAttributeDriver {
+
+    /**
+     * The attribute name.
+     */
+    public static final String TARGET_NAME = "directio.columnar"; //$NON-NLS-1$
+
+    /**
+     * The element name of the maximum number of rows in each row group.
+     */
+    public static final String ELEMENT_ROW_GROUP_ROWS_NAME = "row_group_rows"; //$NON-NLS-1$
+
+    /**
+     * The element name of the approximate maximum number of bytes in each row group.
+     */
+    public static final String ELEMENT_ROW_GROUP_BYTES_NAME = "row_group_bytes"; //$NON-NLS-1$
+
+    @Override
+    public String getTargetName() {
+        return TARGET_NAME;
+    }
+
+    @Override
+    public void process(DmdlSemantics environment, ModelDeclaration declaration, AstAttribute attribute) {
+        Map<String, AstAttributeElement> elements = AttributeUtil.getElementMap(attribute);
+        AstAttributeElement rowGroupRows = elements.remove(ELEMENT_ROW_GROUP_ROWS_NAME);
+        AstAttributeElement rowGroupBytes = elements.remove(ELEMENT_ROW_GROUP_BYTES_NAME);
+        environment.reportAll(AttributeUtil.reportInvalidElements(attribute, elements.values()));
+        BigInteger rows = takePositive(environment, ELEMENT_ROW_GROUP_ROWS_NAME, rowGroupRows, Integer.SIZE,
+                BigInteger.valueOf(ColumnarFormats.DEFAULT_ROW_GROUP_ROWS));
+        BigInteger bytes = takePositive(environment, ELEMENT_ROW_GROUP_BYTES_NAME, rowGroupBytes, Long.SIZE,
+                BigInteger.valueOf(ColumnarFormats.DEFAULT_ROW_GROUP_BYTES));
+        if (rows == null || bytes == null) {
+            return;
+        }
+        declaration.putTrait(ColumnarFormatTrait.class,
+                new ColumnarFormatTrait(attribute, rows.intValue(), bytes.longValue()));
+    }
+
+    private BigInteger takePositive(
+            DmdlSemantics environment,
+            String elementName,
+            AstAttributeElement element,
+            int bits,
+            BigInteger defaultValue) {
+        assert environment != null;
+        assert elementName != null;
+        assert defaultValue != null;
+        if (element == null) {
+            return defaultValue;
+        }
+        if ((element.value instanceof AstLiteral) == false
+                || ((AstLiteral) element.value).kind != LiteralKind.INTEGER) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    element,
+                    "@{0}({1}) must be an integer literal",
+                    TARGET_NAME,
+                    elementName));
+            return null;
+        }
+        BigInteger value = ((AstLiteral) element.value).toIntegerValue();
+        if (value.signum() <= 0 || value.bitLength() >= bits) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    element,
+                    "@{0}({1}) must be a positive {2}-bit integer",
+                    TARGET_NAME,
+                    elementName,
+                    bits));
+            return null;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,638 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.columnar.driver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.dmdl.directio.util.DescriptionGenerator;
+import com.asakusafw.dmdl.java.emitter.EmitContext;
+import com.asakusafw.dmdl.java.spi.JavaDataModelDriver;
+import com.asakusafw.dmdl.semantics.ModelDeclaration;
+import com.asakusafw.dmdl.semantics.PropertyDeclaration;
+import com.asakusafw.dmdl.semantics.Type;
+import com.asakusafw.dmdl.semantics.type.BasicType;
+import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.directio.columnar.ColumnarEmitter;
+import com.asakusafw.runtime.directio.columnar.ColumnarFormats;
+import com.asakusafw.runtime.directio.columnar.ColumnarParser;
+import com.asakusafw.runtime.directio.columnar.ColumnarRowGroupFilter;
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.utils.collections.Lists;
+import com.asakusafw.utils.java.model.syntax.ClassDeclaration;
+import com.asakusafw.utils.java.model.syntax.Expression;
+import com.asakusafw.utils.java.model.syntax.ExpressionStatement;
+import com.asakusafw.utils.java.model.syntax.FieldDeclaration;
+import com.asakusafw.utils.java.model.syntax.FormalParameterDeclaration;
+import com.asakusafw.utils.java.model.syntax.InfixOperator;
+import com.asakusafw.utils.java.model.syntax.MethodDeclaration;
+import com.asakusafw.utils.java.model.syntax.ModelFactory;
+import com.asakusafw.utils.java.model.syntax.Name;
+import com.asakusafw.utils.java.model.syntax.SimpleName;
+import com.asakusafw.utils.java.model.syntax.Statement;
+import com.asakusafw.utils.java.model.syntax.TypeBodyDeclaration;
+import com.asakusafw.utils.java.model.syntax.TypeParameterDeclaration;
+import com.asakusafw.utils.java.model.syntax.WildcardBoundKind;
+import com.asakusafw.utils.java.model.util.AttributeBuilder;
+import com.asakusafw.utils.java.model.util.ExpressionBuilder;
+import com.asakusafw.utils.java.model.util.JavadocBuilder;
+import com.asakusafw.utils.java.model.util.Models;
+import com.asakusafw.utils.java.model.util.TypeBuilder;
+
+/**
+ * Emits columnar {@link BinaryStreamFormat} implementations.
+ * @since 0.6.0
+ */
+public class ColumnarFormatEmitter extends JavaDataModelDriver {
+
+    static final Logger LOG = LoggerFactory.getLogger(ColumnarFormatEmitter.class);
+
+    /**
+     * Category name for columnar format.
+     */
+    public static final String CATEGORY_STREAM = "columnar";
+
+    private static final String FORMAT_LABEL = "columnar";
+
+    @Override
+    public void generateResources(EmitContext context, ModelDeclaration model) throws IOException {
+        if (isTarget(model) == false) {
+            return;
+        }
+        checkPropertyType(model);
+        Name supportName = generateFormat(context, model);
+        generateImporter(context, model, supportName);
+        generateExporter(context, model, supportName);
+    }
+
+    private Name generateFormat(EmitContext context, ModelDeclaration model) throws IOException {
+        assert context != null;
+        assert model != null;
+        EmitContext next = new EmitContext(
+                context.getSemantics(),
+                context.getConfiguration(),
+                model,
+                CATEGORY_STREAM,
+                "{0}ColumnarFormat");
+        LOG.debug("Generating columnar format for {}",
+                context.getQualifiedTypeName().toNameString());
+        FormatGenerator.emit(next, model, model.getTrait(ColumnarFormatTrait.class));
+        LOG.debug("Generated columnar format for {}: {}",
+                context.getQualifiedTypeName().toNameString(),
+                next.getQualifiedTypeName().toNameString());
+        return next.getQualifiedTypeName();
+    }
+
+    private Name generateImporter(EmitContext context, ModelDeclaration model, Name supportName) throws IOException {
+        assert context != null;
+        assert model != null;
+        assert supportName != null;
+        EmitContext next = new EmitContext(
+                context.getSemantics(),
+                context.getConfiguration(),
+                model,
+                CATEGORY_STREAM,
+                "Abstract{0}ColumnarInputDescription");
+        LOG.debug("Generating columnar input description for {}",
+                context.getQualifiedTypeName().toNameString());
+        DescriptionGenerator.emitImporter(next, model, supportName, FORMAT_LABEL);
+        LOG.debug("Generated columnar input description for {}: {}",
+                context.getQualifiedTypeName().toNameString(),
+                next.getQualifiedTypeName().toNameString());
+        return next.getQualifiedTypeName();
+    }
+
+    private Name generateExporter(EmitContext context, ModelDeclaration model, Name supportName) throws IOException {
+        assert context != null;
+        assert model != null;
+        assert supportName != null;
+        EmitContext next = new EmitContext(
+                context.getSemantics(),
+                context.getConfiguration(),
+                model,
+                CATEGORY_STREAM,
+                "Abstract{0}ColumnarOutputDescription");
+        LOG.debug("Generating columnar output description for {}",
+                context.getQualifiedTypeName().toNameString());
+        DescriptionGenerator.emitExporter(next, model, supportName, FORMAT_LABEL);
+        LOG.debug("Generated columnar output description for {}: {}",
+                context.getQualifiedTypeName().toNameString(),
+                next.getQualifiedTypeName().toNameString());
+        return next.getQualifiedTypeName();
+    }
+
+    private boolean isTarget(ModelDeclaration model) {
+        assert model != null;
+        ColumnarFormatTrait trait = model.getTrait(ColumnarFormatTrait.class);
+        return trait != null;
+    }
+
+    private void checkPropertyType(ModelDeclaration model) throws IOException {
+        assert model != null;
+        for (PropertyDeclaration prop : model.getDeclaredProperties()) {
+            Type type = prop.getType();
+            if ((type instanceof BasicType) == false) {
+                throw new IOException(MessageFormat.format(
+                        "Type \"{0}\" can not map to columnar field: {1}.{2} ",
+                        type,
+                        prop.getOwner().getName().identifier,
+                        prop.getName().identifier));
+            }
+        }
+    }
+
+    private static final class FormatGenerator {
+
+        private static final String NAME_READER = "RecordReader";
+
+        private static final String NAME_WRITER = "RecordWriter";
+
+        private static final String NAME_COLUMN_NAMES = "COLUMN_NAMES";
+
+        private static final String NAME_GET_REQUIRED_COLUMNS = "getRequiredColumns";
+
+        private static final String NAME_GET_ROW_GROUP_FILTER = "getRowGroupFilter";
+
+        private final EmitContext context;
+
+        private final ModelDeclaration model;
+
+        private final ColumnarFormatTrait trait;
+
+        private final ModelFactory f;
+
+        private FormatGenerator(EmitContext context, ModelDeclaration model, ColumnarFormatTrait trait) {
+            assert context != null;
+            assert model != null;
+            assert trait != null;
+            this.context = context;
+            this.model = model;
+            this.trait = trait;
+            this.f = context.getModelFactory();
+        }
+
+        static void emit(EmitContext context, ModelDeclaration model, ColumnarFormatTrait trait) throws IOException {
+            assert context != null;
+            assert model != null;
+            assert trait != null;
+            FormatGenerator emitter = new FormatGenerator(context, model, trait);
+            emitter.emit();
+        }
+
+        private void emit() throws IOException {
+            ClassDeclaration decl = f.newClassDeclaration(
+                    new JavadocBuilder(f)
+                        .text("Columnar format for ")
+                        .linkType(context.resolve(model.getSymbol()))
+                        .text(".")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Public()
+                        .toAttributes(),
+                    context.getTypeName(),
+                    f.newParameterizedType(
+                            context.resolve(BinaryStreamFormat.class),
+                            context.resolve(model.getSymbol())),
+                    Collections.<com.asakusafw.utils.java.model.syntax.Type>emptyList(),
+                    createMembers());
+            context.emit(decl);
+        }
+
+        private List<TypeBodyDeclaration> createMembers() {
+            List<TypeBodyDeclaration> results = Lists.create();
+            results.add(createColumnNamesField());
+            results.add(createGetColumnNames());
+            results.add(createGetSupportedType());
+            results.add(createGetPreferredFragmentSize());
+            results.add(createGetMinimumFragmentSize());
+            results.add(createGetRequiredColumns());
+            results.add(createGetRowGroupFilter());
+            results.add(createCreateReader());
+            results.add(createCreateWriter());
+            results.add(createReaderClass());
+            results.add(createWriterClass());
+            return results;
+        }
+
+        private FieldDeclaration createColumnNamesField() {
+            List<Expression> names = Lists.create();
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                names.add(Models.toLiteral(f, property.getName().identifier));
+            }
+            return f.newFieldDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    f.newParameterizedType(
+                            context.resolve(List.class),
+                            context.resolve(String.class)),
+                    f.newSimpleName(NAME_COLUMN_NAMES),
+                    new TypeBuilder(f, context.resolve(Collections.class))
+                        .method("unmodifiableList", new TypeBuilder(f, context.resolve(Arrays.class))
+                            .method("asList", f.newArrayCreationExpression(
+                                    f.newArrayType(context.resolve(String.class)),
+                                    Collections.<Expression>emptyList(),
+                                    f.newArrayInitializer(names)))
+                            .toExpression())
+                        .toExpression());
+        }
+
+        private MethodDeclaration createGetColumnNames() {
+            return f.newMethodDeclaration(
+                    new JavadocBuilder(f)
+                        .text("Returns the column names in order.")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Public()
+                        .Static()
+                        .toAttributes(),
+                    f.newParameterizedType(
+                            context.resolve(List.class),
+                            context.resolve(String.class)),
+                    f.newSimpleName("getColumnNames"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Arrays.asList(new Statement[] {
+                            new ExpressionBuilder(f, f.newSimpleName(NAME_COLUMN_NAMES))
+                                .toReturnStatement()
+                    }));
+        }
+
+        private MethodDeclaration createGetRequiredColumns() {
+            return f.newMethodDeclaration(
+                    new JavadocBuilder(f)
+                        .text("Returns the names of columns to be read, or null to read all columns. ")
+                        .text("Subclasses can override this to skip decoding the other columns.")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Protected()
+                        .toAttributes(),
+                    f.newParameterizedType(
+                            context.resolve(Collection.class),
+                            context.resolve(String.class)),
+                    f.newSimpleName(NAME_GET_REQUIRED_COLUMNS),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Arrays.asList(new Statement[] {
+                            new ExpressionBuilder(f, Models.toNullLiteral(f))
+                                .toReturnStatement()
+                    }));
+        }
+
+        private MethodDeclaration createGetRowGroupFilter() {
+            return f.newMethodDeclaration(
+                    new JavadocBuilder(f)
+                        .text("Returns the filter of row groups, or null to read all row groups. ")
+                        .text("Subclasses can override this to skip row groups by their statistics.")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Protected()
+                        .toAttributes(),
+                    context.resolve(ColumnarRowGroupFilter.class),
+                    f.newSimpleName(NAME_GET_ROW_GROUP_FILTER),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Arrays.asList(new Statement[] {
+                            new ExpressionBuilder(f, Models.toNullLiteral(f))
+                                .toReturnStatement()
+                    }));
+        }
+
+        private MethodDeclaration createGetSupportedType() {
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    f.newParameterizedType(
+                            context.resolve(Class.class),
+                            context.resolve(model.getSymbol())),
+                    f.newSimpleName("getSupportedType"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Arrays.asList(new Statement[] {
+                            new TypeBuilder(f, context.resolve(model.getSymbol()))
+                                .dotClass()
+                                .toReturnStatement()
+                    }));
+        }
+
+        private MethodDeclaration createGetPreferredFragmentSize() {
+            Expression value = Models.toLiteral(f, -1L);
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    context.resolve(long.class),
+                    f.newSimpleName("getPreferredFragmentSize"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Collections.singletonList(new ExpressionBuilder(f, value).toReturnStatement()));
+        }
+
+        private MethodDeclaration createGetMinimumFragmentSize() {
+            Expression value = new TypeBuilder(f, context.resolve(Long.class)).field("MAX_VALUE").toExpression();
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    context.resolve(long.class),
+                    f.newSimpleName("getMinimumFragmentSize"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Collections.singletonList(new ExpressionBuilder(f, value).toReturnStatement()));
+        }
+
+        private MethodDeclaration createCreateReader() {
+            SimpleName dataType = f.newSimpleName("dataType");
+            SimpleName path = f.newSimpleName("path");
+            SimpleName stream = f.newSimpleName("stream");
+            SimpleName offset = f.newSimpleName("offset");
+            SimpleName fragmentSize = f.newSimpleName("fragmentSize");
+            List<Statement> statements = Lists.create();
+            statements.add(createNullCheck(dataType));
+            statements.add(createNullCheck(path));
+            statements.add(createNullCheck(stream));
+            SimpleName parser = f.newSimpleName("parser");
+            statements.add(new TypeBuilder(f, context.resolve(ColumnarParser.class))
+                .newObject(stream, path, offset, fragmentSize)
+                .toLocalVariableDeclaration(context.resolve(ColumnarParser.class), parser));
+            statements.add(new ExpressionBuilder(f, parser)
+                .method("setProjection", new TypeBuilder(f, context.resolve(ColumnarFormats.class))
+                    .method("toProjection",
+                            f.newSimpleName(NAME_COLUMN_NAMES),
+                            new ExpressionBuilder(f, f.newThis())
+                                .method(NAME_GET_REQUIRED_COLUMNS)
+                                .toExpression())
+                    .toExpression())
+                .toStatement());
+            statements.add(new ExpressionBuilder(f, parser)
+                .method("setFilter", new ExpressionBuilder(f, f.newThis())
+                    .method(NAME_GET_ROW_GROUP_FILTER)
+                    .toExpression())
+                .toStatement());
+            statements.add(new TypeBuilder(f, f.newNamedType(f.newSimpleName(NAME_READER)))
+                .newObject(parser)
+                .toReturnStatement());
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    f.newParameterizedType(
+                            context.resolve(ModelInput.class),
+                            context.resolve(model.getSymbol())),
+                    f.newSimpleName("createInput"),
+                    Arrays.asList(
+                            f.newFormalParameterDeclaration(
+                                    f.newParameterizedType(
+                                            context.resolve(Class.class),
+                                            f.newWildcard(
+                                                    WildcardBoundKind.UPPER_BOUNDED,
+                                                    context.resolve(model.getSymbol()))),
+                                    dataType),
+                            f.newFormalParameterDeclaration(context.resolve(String.class), path),
+                            f.newFormalParameterDeclaration(context.resolve(InputStream.class), stream),
+                            f.newFormalParameterDeclaration(context.resolve(long.class), offset),
+                            f.newFormalParameterDeclaration(context.resolve(long.class), fragmentSize)),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(statements));
+        }
+
+        private MethodDeclaration createCreateWriter() {
+            SimpleName dataType = f.newSimpleName("dataType");
+            SimpleName path = f.newSimpleName("path");
+            SimpleName stream = f.newSimpleName("stream");
+            List<Statement> statements = Lists.create();
+            statements.add(createNullCheck(path));
+            statements.add(createNullCheck(stream));
+            List<Expression> arguments = Lists.create();
+            arguments.add(stream);
+            if (trait.getRowGroupRows() != ColumnarFormats.DEFAULT_ROW_GROUP_ROWS
+                    || trait.getRowGroupBytes() != ColumnarFormats.DEFAULT_ROW_GROUP_BYTES) {
+                arguments.add(Models.toLiteral(f, trait.getRowGroupRows()));
+                arguments.add(Models.toLiteral(f, trait.getRowGroupBytes()));
+            }
+            statements.add(new TypeBuilder(f, f.newNamedType(f.newSimpleName(NAME_WRITER)))
+                .newObject(new TypeBuilder(f, context.resolve(ColumnarEmitter.class))
+                    .newObject(arguments)
+                    .toExpression())
+                .toReturnStatement());
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    f.newParameterizedType(
+                            context.resolve(ModelOutput.class),
+                            context.resolve(model.getSymbol())),
+                    f.newSimpleName("createOutput"),
+                    Arrays.asList(
+                            f.newFormalParameterDeclaration(
+                                    f.newParameterizedType(
+                                            context.resolve(Class.class),
+                                            f.newWildcard(
+                                                    WildcardBoundKind.UPPER_BOUNDED,
+                                                    context.resolve(model.getSymbol()))),
+                                    dataType),
+                            f.newFormalParameterDeclaration(context.resolve(String.class), path),
+                            f.newFormalParameterDeclaration(context.resolve(OutputStream.class), stream)),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(statements));
+        }
+
+        private Statement createNullCheck(SimpleName parameter) {
+            assert parameter != null;
+            return f.newIfStatement(
+                    new ExpressionBuilder(f, parameter)
+                        .apply(InfixOperator.EQUALS, Models.toNullLiteral(f))
+                        .toExpression(),
+                    f.newBlock(new TypeBuilder(f, context.resolve(IllegalArgumentException.class))
+                        .newObject(Models.toLiteral(f, MessageFormat.format(
+                                "{0} must not be null",
+                                parameter.getToken())))
+                        .toThrowStatement()));
+        }
+
+        private ClassDeclaration createReaderClass() {
+            SimpleName parser = f.newSimpleName("parser");
+            List<TypeBodyDeclaration> members = Lists.create();
+            members.add(createPrivateField(ColumnarParser.class, parser));
+            members.add(f.newConstructorDeclaration(
+                    null,
+                    new AttributeBuilder(f).toAttributes(),
+                    f.newSimpleName(NAME_READER),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(ColumnarParser.class), parser)),
+                    Arrays.asList(mapField(parser))));
+
+            SimpleName object = f.newSimpleName("object");
+            List<Statement> statements = Lists.create();
+            statements.add(f.newIfStatement(
+                    new ExpressionBuilder(f, parser)
+                        .method("next")
+                        .apply(InfixOperator.EQUALS, Models.toLiteral(f, false))
+                        .toExpression(),
+                    f.newBlock(new ExpressionBuilder(f, Models.toLiteral(f, false))
+                        .toReturnStatement())));
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                statements.add(new ExpressionBuilder(f, parser)
+                    .method("fill", new ExpressionBuilder(f, object)
+                        .method(context.getOptionGetterName(property))
+                        .toExpression())
+                    .toStatement());
+            }
+            statements.add(new ExpressionBuilder(f, parser)
+                .method("endRecord")
+                .toStatement());
+            statements.add(new ExpressionBuilder(f, Models.toLiteral(f, true))
+                .toReturnStatement());
+            members.add(f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    context.resolve(boolean.class),
+                    f.newSimpleName("readTo"),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(model.getSymbol()), object)),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(statements)));
+            members.add(createCloseMethod(parser));
+            return f.newClassDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    f.newSimpleName(NAME_READER),
+                    null,
+                    Arrays.asList(f.newParameterizedType(
+                            context.resolve(ModelInput.class),
+                            context.resolve(model.getSymbol()))),
+                    members);
+        }
+
+        private ClassDeclaration createWriterClass() {
+            SimpleName emitter = f.newSimpleName("emitter");
+            List<TypeBodyDeclaration> members = Lists.create();
+            members.add(createPrivateField(ColumnarEmitter.class, emitter));
+            members.add(f.newConstructorDeclaration(
+                    null,
+                    new AttributeBuilder(f).toAttributes(),
+                    f.newSimpleName(NAME_WRITER),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(ColumnarEmitter.class), emitter)),
+                    Arrays.asList(mapField(emitter))));
+
+            SimpleName object = f.newSimpleName("object");
+            List<Statement> statements = Lists.create();
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                statements.add(new ExpressionBuilder(f, emitter)
+                    .method("emit", new ExpressionBuilder(f, object)
+                        .method(context.getOptionGetterName(property))
+                        .toExpression())
+                    .toStatement());
+            }
+            statements.add(new ExpressionBuilder(f, emitter)
+                .method("endRecord")
+                .toStatement());
+            members.add(f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    context.resolve(void.class),
+                    f.newSimpleName("write"),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(model.getSymbol()), object)),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(statements)));
+            members.add(createCloseMethod(emitter));
+            return f.newClassDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    f.newSimpleName(NAME_WRITER),
+                    null,
+                    Arrays.asList(f.newParameterizedType(
+                            context.resolve(ModelOutput.class),
+                            context.resolve(model.getSymbol()))),
+                    members);
+        }
+
+        private MethodDeclaration createCloseMethod(SimpleName resource) {
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    context.resolve(void.class),
+                    f.newSimpleName("close"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(new ExpressionBuilder(f, resource)
+                        .method("close")
+                        .toStatement()));
+        }
+
+        private ExpressionStatement mapField(SimpleName name) {
+            return new ExpressionBuilder(f, f.newThis())
+                .field(name)
+                .assignFrom(name)
+                .toStatement();
+        }
+
+        private FieldDeclaration createPrivateField(Class<?> type, SimpleName name) {
+            return f.newFieldDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Final()
+                        .toAttributes(),
+                    context.resolve(type),
+                    name,
+                    null);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.columnar.driver;
+
+import com.asakusafw.dmdl.model.AstNode;
+import com.asakusafw.dmdl.semantics.Trait;
+import com.asakusafw.runtime.directio.columnar.ColumnarFormats;
+
+/**
+ * Attributes for columnar format supported data models.
+ * @since 0.6.0
+ */
+public class ColumnarFormatTrait implements Trait<ColumnarFormatTrait> {
+
+    private final AstNode originalAst;
+
+    private final int rowGroupRows;
+
+    private final long rowGroupBytes;
+
+    /**
+     * Creates and returns a new instance.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     * @param rowGroupRows the maximum number of rows in each row group
+     * @param rowGroupBytes the approximate maximum number of bytes in each row group
+     * @throws IllegalArgumentException if some parameters are not positive
+     */
+    public ColumnarFormatTrait(AstNode originalAst, int rowGroupRows, long rowGroupBytes) {
+        if (rowGroupRows <= 0) {
+            throw new IllegalArgumentException("rowGroupRows must be positive"); //$NON-NLS-1$
+        }
+        if (rowGroupBytes <= 0) {
+            throw new IllegalArgumentException("rowGroupBytes must be positive"); //$NON-NLS-1$
+        }
+        this.originalAst = originalAst;
+        this.rowGroupRows = rowGroupRows;
+        this.rowGroupBytes = rowGroupBytes;
+    }
+
+    /**
+     * Creates and returns a new instance with the default row group size.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     */
+    public ColumnarFormatTrait(AstNode originalAst) {
+        this(originalAst, ColumnarFormats.DEFAULT_ROW_GROUP_ROWS, ColumnarFormats.DEFAULT_ROW_GROUP_BYTES);
+    }
+
+    /**
+     * Returns the maximum number of rows in each row group.
+     * @return the maximum number of rows
+     */
+    public int getRowGroupRows() {
+        return rowGroupRows;
+    }
+
+    /**
+     * Returns the approximate maximum number of bytes in each row group.
+     * @return the maximum number of bytes
+     */
+    public long getRowGroupBytes() {
+        return rowGroupBytes;
+    }
+
+    @Override
+    public AstNode getOriginalAst() {
+        return originalAst;
+    }
+}
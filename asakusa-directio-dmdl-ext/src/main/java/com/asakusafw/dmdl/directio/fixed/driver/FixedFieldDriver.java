@@ -0,0 +1,132 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.fixed.driver;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import com.asakusafw.dmdl.Diagnostic;
+import com.asakusafw.dmdl.Diagnostic.Level;
+import com.asakusafw.dmdl.model.AstAttribute;
+import com.asakusafw.dmdl.model.AstAttributeElement;
+import com.asakusafw.dmdl.model.AstLiteral;
+import com.asakusafw.dmdl.model.LiteralKind;
+import com.asakusafw.dmdl.semantics.DmdlSemantics;
+import com.asakusafw.dmdl.semantics.PropertyDeclaration;
+import com.asakusafw.dmdl.semantics.type.BasicType;
+import com.asakusafw.dmdl.spi.PropertyAttributeDriver;
+import com.asakusafw.dmdl.util.AttributeUtil;
+
+/**
+ * Processes <code>&#64;directio.fixed.field</code> attributes.
+<h2>'&#64;directio.fixed.field' attribute</h2>
+The attributed declaration must be:
+<ul>
+<li> with offset=[integer-literal] as the field offset in the record (in bytes)</li>
+<li> with length=[integer-literal] as the field length (in bytes)</li>
+</ul>
+ * @since 0.6.0
+ */
+public class FixedFieldDriver extends PropertyAttributeDriver {
+
+    /**
+     * The attribute name.
+     */
+    public static final String TARGET_NAME = "directio.fixed.field"; //$NON-NLS-1$
+
+    /**
+     * The element name of the field offset.
+     */
+    public static final String ELEMENT_OFFSET_NAME = "offset"; //$NON-NLS-1$
+
+    /**
+     * The element name of the field length.
+     */
+    public static final String ELEMENT_LENGTH_NAME = "length"; //$NON-NLS-1$
+
+    @Override
+    public String getTargetName() {
+        return TARGET_NAME;
+    }
+
+    @Override
+    public void process(DmdlSemantics environment, PropertyDeclaration declaration, AstAttribute attribute) {
+        Map<String, AstAttributeElement> elements = AttributeUtil.getElementMap(attribute);
+        BigInteger offset = takeInteger(environment, attribute, elements, ELEMENT_OFFSET_NAME, 0);
+        BigInteger length = takeInteger(environment, attribute, elements, ELEMENT_LENGTH_NAME, 1);
+        environment.reportAll(AttributeUtil.reportInvalidElements(attribute, elements.values()));
+        if ((declaration.getType() instanceof BasicType) == false) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    attribute,
+                    "Invalid type for @{2} ({0}.{1}), must be a basic type",
+                    declaration.getOwner().getName().identifier,
+                    declaration.getName().identifier,
+                    TARGET_NAME));
+            return;
+        }
+        if (offset == null || length == null) {
+            return;
+        }
+        declaration.putTrait(
+                FixedFieldTrait.class,
+                new FixedFieldTrait(attribute, offset.intValue(), length.intValue()));
+    }
+
+    private static BigInteger takeInteger(
+            DmdlSemantics environment,
+            AstAttribute attribute,
+            Map<String, AstAttributeElement> elements,
+            String elementName,
+            int minimum) {
+        assert environment != null;
+        assert attribute != null;
+        assert elements != null;
+        assert elementName != null;
+        AstAttributeElement element = elements.remove(elementName);
+        if (element == null) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    attribute,
+                    "@{0} must have {1}",
+                    TARGET_NAME,
+                    elementName));
+            return null;
+        }
+        if ((element.value instanceof AstLiteral) == false
+                || ((AstLiteral) element.value).kind != LiteralKind.INTEGER) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    element,
+                    "@{0}({1}) must be an integer literal",
+                    TARGET_NAME,
+                    elementName));
+            return null;
+        }
+        BigInteger value = ((AstLiteral) element.value).toIntegerValue();
+        if (value.compareTo(BigInteger.valueOf(minimum)) < 0 || value.bitLength() >= Integer.SIZE) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    element,
+                    "@{0}({1}) must be a 32-bit integer not less than {2}",
+                    TARGET_NAME,
+                    elementName,
+                    minimum));
+            return null;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.fixed.driver;
+
+import com.asakusafw.dmdl.model.AstNode;
+import com.asakusafw.dmdl.semantics.Trait;
+
+/**
+ * Attributes for fixed-width record fields.
+ * @since 0.6.0
+ */
+public class FixedFieldTrait implements Trait<FixedFieldTrait> {
+
+    private final AstNode originalAst;
+
+    private final int offset;
+
+    private final int length;
+
+    /**
+     * Creates and returns a new instance.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IllegalArgumentException if {@code offset} is negative, or {@code length} is not positive
+     */
+    public FixedFieldTrait(AstNode originalAst, int offset, int length) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative"); //$NON-NLS-1$
+        }
+        if (length <= 0) {
+            throw new IllegalArgumentException("length must be positive"); //$NON-NLS-1$
+        }
+        this.originalAst = originalAst;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns the field offset in the record.
+     * @return the offset in bytes
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the field length.
+     * @return the length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the end offset of the field (exclusive).
+     * @return the end offset in bytes
+     */
+    public long getEnd() {
+        return (long) offset + length;
+    }
+
+    @Override
+    public AstNode getOriginalAst() {
+        return originalAst;
+    }
+}
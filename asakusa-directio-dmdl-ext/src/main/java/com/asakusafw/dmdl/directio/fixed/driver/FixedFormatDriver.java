@@ -0,0 +1,125 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.fixed.driver;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Map;
+
+import com.asakusafw.dmdl.Diagnostic;
+import com.asakusafw.dmdl.Diagnostic.Level;
+import com.asakusafw.dmdl.model.AstAttribute;
+import com.asakusafw.dmdl.model.AstAttributeElement;
+import com.asakusafw.dmdl.model.AstLiteral;
+import com.asakusafw.dmdl.model.LiteralKind;
+import com.asakusafw.dmdl.semantics.DmdlSemantics;
+import com.asakusafw.dmdl.semantics.ModelDeclaration;
+import com.asakusafw.dmdl.spi.ModelAttributeDriver;
+import com.asakusafw.dmdl.util.AttributeUtil;
+import com.asakusafw.runtime.directio.fixed.FixedWidthFormats;
+
+/**
+ * Processes <code>&#64;directio.fixed</code> attributes.
+<h2>'&#64;directio.fixed' attribute</h2>
+The attributed declaration can have:
+<ul>
+<li> with {@code record_length=[integer-literal]} as number of bytes in each record
+    (default: the end of the last field) </li>
+<li> with {@code charset=[string-literal]} as charset name, which must encode a space into a single byte
+    (default: UTF-8) </li>
+</ul>
+ * @since 0.6.0
+ */
+public class FixedFormatDriver extends ModelAttributeDriver {
+
+    /**
+     * The attribute name.
+     */
+    public static final String TARGET_NAME = "directio.fixed"; //$NON-NLS-1$
+
+    /**
+     * The element name of the number of bytes in each record.
+     */
+    public static final String ELEMENT_RECORD_LENGTH_NAME = "record_length"; //$NON-NLS-1$
+
+    /**
+     * The element name of the charset name.
+     */
+    public static final String ELEMENT_CHARSET_NAME = "charset"; //$NON-NLS-1$
+
+    @Override
+    public String getTargetName() {
+        return TARGET_NAME;
+    }
+
+    @Override
+    public void process(DmdlSemantics environment, ModelDeclaration declaration, AstAttribute attribute) {
+        Map<String, AstAttributeElement> elements = AttributeUtil.getElementMap(attribute);
+        AstAttributeElement recordLength = elements.remove(ELEMENT_RECORD_LENGTH_NAME);
+        String charsetName = AttributeUtil.takeString(environment, attribute, elements, ELEMENT_CHARSET_NAME, false);
+        environment.reportAll(AttributeUtil.reportInvalidElements(attribute, elements.values()));
+        int length = 0;
+        if (recordLength != null) {
+            if ((recordLength.value instanceof AstLiteral) == false
+                    || ((AstLiteral) recordLength.value).kind != LiteralKind.INTEGER) {
+                environment.report(new Diagnostic(
+                        Level.ERROR,
+                        recordLength,
+                        "@{0}({1}) must be an integer literal",
+                        TARGET_NAME,
+                        ELEMENT_RECORD_LENGTH_NAME));
+                return;
+            }
+            BigInteger value = ((AstLiteral) recordLength.value).toIntegerValue();
+            if (value.signum() <= 0 || value.bitLength() >= Integer.SIZE) {
+                environment.report(new Diagnostic(
+                        Level.ERROR,
+                        recordLength,
+                        "@{0}({1}) must be a positive 32-bit integer",
+                        TARGET_NAME,
+                        ELEMENT_RECORD_LENGTH_NAME));
+                return;
+            }
+            length = value.intValue();
+        }
+        if (charsetName == null) {
+            charsetName = FixedWidthFormats.DEFAULT_CHARSET_NAME;
+        } else if (isValidCharset(charsetName) == false) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    attribute,
+                    "@{0}({1}) must be a supported charset which encodes a space into a single byte: {2}",
+                    TARGET_NAME,
+                    ELEMENT_CHARSET_NAME,
+                    charsetName));
+            return;
+        }
+        declaration.putTrait(FixedFormatTrait.class, new FixedFormatTrait(attribute, length, charsetName));
+    }
+
+    private boolean isValidCharset(String charsetName) {
+        assert charsetName != null;
+        try {
+            if (Charset.isSupported(charsetName) == false) {
+                return false;
+            }
+        } catch (IllegalCharsetNameException e) {
+            return false;
+        }
+        return " ".getBytes(Charset.forName(charsetName)).length == 1; //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.fixed.driver;
+
+import com.asakusafw.dmdl.model.AstNode;
+import com.asakusafw.dmdl.semantics.Trait;
+
+/**
+ * Attributes for fixed-width record supported data models.
+ * @since 0.6.0
+ */
+public class FixedFormatTrait implements Trait<FixedFormatTrait> {
+
+    private final AstNode originalAst;
+
+    private final int recordLength;
+
+    private final String charsetName;
+
+    /**
+     * Creates and returns a new instance.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     * @param recordLength the number of bytes in each record, or {@code 0} to compute from the fields
+     * @param charsetName the charset name
+     * @throws IllegalArgumentException if {@code recordLength} is negative, or {@code charsetName} is {@code null}
+     */
+    public FixedFormatTrait(AstNode originalAst, int recordLength, String charsetName) {
+        if (recordLength < 0) {
+            throw new IllegalArgumentException("recordLength must not be negative"); //$NON-NLS-1$
+        }
+        if (charsetName == null) {
+            throw new IllegalArgumentException("charsetName must not be null"); //$NON-NLS-1$
+        }
+        this.originalAst = originalAst;
+        this.recordLength = recordLength;
+        this.charsetName = charsetName;
+    }
+
+    /**
+     * Returns the number of bytes in each record.
+     * @return the record length, or {@code 0} if it is computed from the fields
+     */
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * Returns the charset name.
+     * @return the charset name
+     */
+    public String getCharsetName() {
+        return charsetName;
+    }
+
+    @Override
+    public AstNode getOriginalAst() {
+        return originalAst;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.jsonl.driver;
+
+import java.util.Map;
+
+import com.asakusafw.dmdl.model.AstAttribute;
+import com.asakusafw.dmdl.model.AstAttributeElement;
+import com.asakusafw.dmdl.semantics.DmdlSemantics;
+import com.asakusafw.dmdl.semantics.ModelDeclaration;
+import com.asakusafw.dmdl.spi.ModelAttributeDriver;
+import com.asakusafw.dmdl.util.AttributeUtil;
+
+/**
+ * Processes <code>&#64;directio.jsonl</code> attributes.
+<h2>'&#64;directio.jsonl' attribute</h2>
+The attributed declaration must not have any elements.
+Each property is mapped to the object key of the same name.
+ * @since 0.6.0
+ */
+public class JsonLinesFormatDriver extends ModelAttributeDriver {
+
+    /**
+     * The attribute name.
+     */
+    public static final String TARGET_NAME = "directio.jsonl"; //$NON-NLS-1$
+
+    @Override
+    public String getTargetName() {
+        return TARGET_NAME;
+    }
+
+    @Override
+    public void process(DmdlSemantics environment, ModelDeclaration declaration, AstAttribute attribute) {
+        Map<String, AstAttributeElement> elements = AttributeUtil.getElementMap(attribute);
+        environment.reportAll(AttributeUtil.reportInvalidElements(attribute, elements.values()));
+        declaration.putTrait(JsonLinesFormatTrait.class, new JsonLinesFormatTrait(attribute));
+    }
+}
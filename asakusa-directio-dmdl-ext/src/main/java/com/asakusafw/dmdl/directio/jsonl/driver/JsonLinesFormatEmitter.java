@@ -0,0 +1,552 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.jsonl.driver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.dmdl.directio.util.DescriptionGenerator;
+import com.asakusafw.dmdl.java.emitter.EmitContext;
+import com.asakusafw.dmdl.java.spi.JavaDataModelDriver;
+import com.asakusafw.dmdl.semantics.ModelDeclaration;
+import com.asakusafw.dmdl.semantics.PropertyDeclaration;
+import com.asakusafw.dmdl.semantics.Type;
+import com.asakusafw.dmdl.semantics.type.BasicType;
+import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.directio.jsonl.JsonKeyTable;
+import com.asakusafw.runtime.directio.jsonl.JsonLinesEmitter;
+import com.asakusafw.runtime.directio.jsonl.JsonLinesParser;
+import com.asakusafw.runtime.directio.tsv.MappedFileInputStream;
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.utils.collections.Lists;
+import com.asakusafw.utils.java.model.syntax.ClassDeclaration;
+import com.asakusafw.utils.java.model.syntax.Expression;
+import com.asakusafw.utils.java.model.syntax.ExpressionStatement;
+import com.asakusafw.utils.java.model.syntax.FieldDeclaration;
+import com.asakusafw.utils.java.model.syntax.FormalParameterDeclaration;
+import com.asakusafw.utils.java.model.syntax.InfixOperator;
+import com.asakusafw.utils.java.model.syntax.MethodDeclaration;
+import com.asakusafw.utils.java.model.syntax.ModelFactory;
+import com.asakusafw.utils.java.model.syntax.Name;
+import com.asakusafw.utils.java.model.syntax.SimpleName;
+import com.asakusafw.utils.java.model.syntax.Statement;
+import com.asakusafw.utils.java.model.syntax.TypeBodyDeclaration;
+import com.asakusafw.utils.java.model.syntax.TypeParameterDeclaration;
+import com.asakusafw.utils.java.model.syntax.WildcardBoundKind;
+import com.asakusafw.utils.java.model.util.AttributeBuilder;
+import com.asakusafw.utils.java.model.util.ExpressionBuilder;
+import com.asakusafw.utils.java.model.util.JavadocBuilder;
+import com.asakusafw.utils.java.model.util.Models;
+import com.asakusafw.utils.java.model.util.TypeBuilder;
+
+/**
+ * Emits JSON Lines {@link BinaryStreamFormat} implementations.
+ * @since 0.6.0
+ */
+public class JsonLinesFormatEmitter extends JavaDataModelDriver {
+
+    static final Logger LOG = LoggerFactory.getLogger(JsonLinesFormatEmitter.class);
+
+    /**
+     * Category name for JSON Lines format.
+     */
+    public static final String CATEGORY_STREAM = "jsonl";
+
+    private static final String FORMAT_LABEL = "JSON Lines";
+
+    @Override
+    public void generateResources(EmitContext context, ModelDeclaration model) throws IOException {
+        if (isTarget(model) == false) {
+            return;
+        }
+        checkPropertyType(model);
+        Name supportName = generateFormat(context, model);
+        generateImporter(context, model, supportName);
+        generateExporter(context, model, supportName);
+    }
+
+    private Name generateFormat(EmitContext context, ModelDeclaration model) throws IOException {
+        assert context != null;
+        assert model != null;
+        EmitContext next = new EmitContext(
+                context.getSemantics(),
+                context.getConfiguration(),
+                model,
+                CATEGORY_STREAM,
+                "{0}JsonLinesFormat");
+        LOG.debug("Generating JSON Lines format for {}",
+                context.getQualifiedTypeName().toNameString());
+        FormatGenerator.emit(next, model);
+        LOG.debug("Generated JSON Lines format for {}: {}",
+                context.getQualifiedTypeName().toNameString(),
+                next.getQualifiedTypeName().toNameString());
+        return next.getQualifiedTypeName();
+    }
+
+    private Name generateImporter(EmitContext context, ModelDeclaration model, Name supportName) throws IOException {
+        assert context != null;
+        assert model != null;
+        assert supportName != null;
+        EmitContext next = new EmitContext(
+                context.getSemantics(),
+                context.getConfiguration(),
+                model,
+                CATEGORY_STREAM,
+                "Abstract{0}JsonLinesInputDescription");
+        LOG.debug("Generating JSON Lines input description for {}",
+                context.getQualifiedTypeName().toNameString());
+        DescriptionGenerator.emitImporter(next, model, supportName, FORMAT_LABEL);
+        LOG.debug("Generated JSON Lines input description for {}: {}",
+                context.getQualifiedTypeName().toNameString(),
+                next.getQualifiedTypeName().toNameString());
+        return next.getQualifiedTypeName();
+    }
+
+    private Name generateExporter(EmitContext context, ModelDeclaration model, Name supportName) throws IOException {
+        assert context != null;
+        assert model != null;
+        assert supportName != null;
+        EmitContext next = new EmitContext(
+                context.getSemantics(),
+                context.getConfiguration(),
+                model,
+                CATEGORY_STREAM,
+                "Abstract{0}JsonLinesOutputDescription");
+        LOG.debug("Generating JSON Lines output description for {}",
+                context.getQualifiedTypeName().toNameString());
+        DescriptionGenerator.emitExporter(next, model, supportName, FORMAT_LABEL);
+        LOG.debug("Generated JSON Lines output description for {}: {}",
+                context.getQualifiedTypeName().toNameString(),
+                next.getQualifiedTypeName().toNameString());
+        return next.getQualifiedTypeName();
+    }
+
+    private boolean isTarget(ModelDeclaration model) {
+        assert model != null;
+        JsonLinesFormatTrait trait = model.getTrait(JsonLinesFormatTrait.class);
+        return trait != null;
+    }
+
+    private void checkPropertyType(ModelDeclaration model) throws IOException {
+        assert model != null;
+        for (PropertyDeclaration prop : model.getDeclaredProperties()) {
+            Type type = prop.getType();
+            if ((type instanceof BasicType) == false) {
+                throw new IOException(MessageFormat.format(
+                        "Type \"{0}\" can not map to JSON Lines field: {1}.{2} ",
+                        type,
+                        prop.getOwner().getName().identifier,
+                        prop.getName().identifier));
+            }
+        }
+    }
+
+    private static final class FormatGenerator {
+
+        private static final String NAME_READER = "RecordReader";
+
+        private static final String NAME_WRITER = "RecordWriter";
+
+        private static final String NAME_KEYS = "KEYS";
+
+        private final EmitContext context;
+
+        private final ModelDeclaration model;
+
+        private final ModelFactory f;
+
+        private FormatGenerator(EmitContext context, ModelDeclaration model) {
+            assert context != null;
+            assert model != null;
+            this.context = context;
+            this.model = model;
+            this.f = context.getModelFactory();
+        }
+
+        static void emit(EmitContext context, ModelDeclaration model) throws IOException {
+            assert context != null;
+            assert model != null;
+            FormatGenerator emitter = new FormatGenerator(context, model);
+            emitter.emit();
+        }
+
+        private void emit() throws IOException {
+            ClassDeclaration decl = f.newClassDeclaration(
+                    new JavadocBuilder(f)
+                        .text("JSON Lines format for ")
+                        .linkType(context.resolve(model.getSymbol()))
+                        .text(".")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Public()
+                        .Final()
+                        .toAttributes(),
+                    context.getTypeName(),
+                    f.newParameterizedType(
+                            context.resolve(BinaryStreamFormat.class),
+                            context.resolve(model.getSymbol())),
+                    Collections.<com.asakusafw.utils.java.model.syntax.Type>emptyList(),
+                    createMembers());
+            context.emit(decl);
+        }
+
+        private List<TypeBodyDeclaration> createMembers() {
+            List<TypeBodyDeclaration> results = Lists.create();
+            results.add(createKeys());
+            results.add(createGetSupportedType());
+            results.add(createGetPreferredFragmentSize());
+            results.add(createGetMinimumFragmentSize());
+            results.add(createCreateReader());
+            results.add(createCreateWriter());
+            results.add(createReaderClass());
+            results.add(createWriterClass());
+            return results;
+        }
+
+        private FieldDeclaration createKeys() {
+            List<Expression> names = Lists.create();
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                names.add(Models.toLiteral(f, property.getName().identifier));
+            }
+            return f.newFieldDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    context.resolve(JsonKeyTable.class),
+                    f.newSimpleName(NAME_KEYS),
+                    new TypeBuilder(f, context.resolve(JsonKeyTable.class))
+                        .newObject(f.newArrayCreationExpression(
+                                f.newArrayType(context.resolve(String.class)),
+                                Collections.<Expression>emptyList(),
+                                f.newArrayInitializer(names)))
+                        .toExpression());
+        }
+
+        private MethodDeclaration createGetSupportedType() {
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    f.newParameterizedType(
+                            context.resolve(Class.class),
+                            context.resolve(model.getSymbol())),
+                    f.newSimpleName("getSupportedType"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Arrays.asList(new Statement[] {
+                            new TypeBuilder(f, context.resolve(model.getSymbol()))
+                                .dotClass()
+                                .toReturnStatement()
+                    }));
+        }
+
+        private MethodDeclaration createGetPreferredFragmentSize() {
+            Expression value = Models.toLiteral(f, -1L);
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    context.resolve(long.class),
+                    f.newSimpleName("getPreferredFragmentSize"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Collections.singletonList(new ExpressionBuilder(f, value).toReturnStatement()));
+        }
+
+        private MethodDeclaration createGetMinimumFragmentSize() {
+            Expression value = new TypeBuilder(f, context.resolve(Long.class)).field("MAX_VALUE").toExpression();
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    context.resolve(long.class),
+                    f.newSimpleName("getMinimumFragmentSize"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Collections.singletonList(new ExpressionBuilder(f, value).toReturnStatement()));
+        }
+
+        private MethodDeclaration createCreateReader() {
+            SimpleName dataType = f.newSimpleName("dataType");
+            SimpleName path = f.newSimpleName("path");
+            SimpleName stream = f.newSimpleName("stream");
+            SimpleName offset = f.newSimpleName("offset");
+            SimpleName fragmentSize = f.newSimpleName("fragmentSize");
+            List<Statement> statements = Lists.create();
+            statements.add(createNullCheck(dataType));
+            statements.add(createNullCheck(path));
+            statements.add(createNullCheck(stream));
+            SimpleName fragmentInput = f.newSimpleName("fragmentInput");
+            statements.add(new TypeBuilder(f, context.resolve(MappedFileInputStream.class))
+                .method("wrap",
+                        path,
+                        stream,
+                        offset,
+                        fragmentSize,
+                        Models.toLiteral(f, '\n'),
+                        new ExpressionBuilder(f, offset)
+                            .apply(InfixOperator.GREATER, Models.toLiteral(f, 0L))
+                            .toExpression())
+                .toLocalVariableDeclaration(context.resolve(InputStream.class), fragmentInput));
+            statements.add(new TypeBuilder(f, f.newNamedType(f.newSimpleName(NAME_READER)))
+                .newObject(new TypeBuilder(f, context.resolve(JsonLinesParser.class))
+                    .newObject(fragmentInput, path, f.newSimpleName(NAME_KEYS))
+                    .toExpression())
+                .toReturnStatement());
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    f.newParameterizedType(
+                            context.resolve(ModelInput.class),
+                            context.resolve(model.getSymbol())),
+                    f.newSimpleName("createInput"),
+                    Arrays.asList(
+                            f.newFormalParameterDeclaration(
+                                    f.newParameterizedType(
+                                            context.resolve(Class.class),
+                                            f.newWildcard(
+                                                    WildcardBoundKind.UPPER_BOUNDED,
+                                                    context.resolve(model.getSymbol()))),
+                                    dataType),
+                            f.newFormalParameterDeclaration(context.resolve(String.class), path),
+                            f.newFormalParameterDeclaration(context.resolve(InputStream.class), stream),
+                            f.newFormalParameterDeclaration(context.resolve(long.class), offset),
+                            f.newFormalParameterDeclaration(context.resolve(long.class), fragmentSize)),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(statements));
+        }
+
+        private MethodDeclaration createCreateWriter() {
+            SimpleName dataType = f.newSimpleName("dataType");
+            SimpleName path = f.newSimpleName("path");
+            SimpleName stream = f.newSimpleName("stream");
+            List<Statement> statements = Lists.create();
+            statements.add(createNullCheck(path));
+            statements.add(createNullCheck(stream));
+            statements.add(new TypeBuilder(f, f.newNamedType(f.newSimpleName(NAME_WRITER)))
+                .newObject(new TypeBuilder(f, context.resolve(JsonLinesEmitter.class))
+                    .newObject(stream, f.newSimpleName(NAME_KEYS))
+                    .toExpression())
+                .toReturnStatement());
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    f.newParameterizedType(
+                            context.resolve(ModelOutput.class),
+                            context.resolve(model.getSymbol())),
+                    f.newSimpleName("createOutput"),
+                    Arrays.asList(
+                            f.newFormalParameterDeclaration(
+                                    f.newParameterizedType(
+                                            context.resolve(Class.class),
+                                            f.newWildcard(
+                                                    WildcardBoundKind.UPPER_BOUNDED,
+                                                    context.resolve(model.getSymbol()))),
+                                    dataType),
+                            f.newFormalParameterDeclaration(context.resolve(String.class), path),
+                            f.newFormalParameterDeclaration(context.resolve(OutputStream.class), stream)),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(statements));
+        }
+
+        private Expression toOption(SimpleName object, PropertyDeclaration property) {
+            return new ExpressionBuilder(f, object)
+                .method(context.getOptionGetterName(property))
+                .toExpression();
+        }
+
+        private Statement createNullCheck(SimpleName parameter) {
+            assert parameter != null;
+            return f.newIfStatement(
+                    new ExpressionBuilder(f, parameter)
+                        .apply(InfixOperator.EQUALS, Models.toNullLiteral(f))
+                        .toExpression(),
+                    f.newBlock(new TypeBuilder(f, context.resolve(IllegalArgumentException.class))
+                        .newObject(Models.toLiteral(f, MessageFormat.format(
+                                "{0} must not be null",
+                                parameter.getToken())))
+                        .toThrowStatement()));
+        }
+
+        private ClassDeclaration createReaderClass() {
+            SimpleName parser = f.newSimpleName("parser");
+            List<TypeBodyDeclaration> members = Lists.create();
+            members.add(createPrivateField(JsonLinesParser.class, parser));
+            members.add(f.newConstructorDeclaration(
+                    null,
+                    new AttributeBuilder(f).toAttributes(),
+                    f.newSimpleName(NAME_READER),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(JsonLinesParser.class), parser)),
+                    Arrays.asList(mapField(parser))));
+
+            SimpleName object = f.newSimpleName("object");
+            List<Statement> statements = Lists.create();
+            statements.add(f.newIfStatement(
+                    new ExpressionBuilder(f, parser)
+                        .method("next")
+                        .apply(InfixOperator.EQUALS, Models.toLiteral(f, false))
+                        .toExpression(),
+                    f.newBlock(new ExpressionBuilder(f, Models.toLiteral(f, false))
+                        .toReturnStatement())));
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                statements.add(new ExpressionBuilder(f, parser)
+                    .method("fill", toOption(object, property))
+                    .toStatement());
+            }
+            statements.add(new ExpressionBuilder(f, Models.toLiteral(f, true))
+                .toReturnStatement());
+            members.add(f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    context.resolve(boolean.class),
+                    f.newSimpleName("readTo"),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(model.getSymbol()), object)),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(statements)));
+            members.add(createCloseMethod(parser));
+            return f.newClassDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    f.newSimpleName(NAME_READER),
+                    null,
+                    Arrays.asList(f.newParameterizedType(
+                            context.resolve(ModelInput.class),
+                            context.resolve(model.getSymbol()))),
+                    members);
+        }
+
+        private ClassDeclaration createWriterClass() {
+            SimpleName emitter = f.newSimpleName("emitter");
+            List<TypeBodyDeclaration> members = Lists.create();
+            members.add(createPrivateField(JsonLinesEmitter.class, emitter));
+            members.add(f.newConstructorDeclaration(
+                    null,
+                    new AttributeBuilder(f).toAttributes(),
+                    f.newSimpleName(NAME_WRITER),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(JsonLinesEmitter.class), emitter)),
+                    Arrays.asList(mapField(emitter))));
+
+            SimpleName object = f.newSimpleName("object");
+            List<Statement> statements = Lists.create();
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                statements.add(new ExpressionBuilder(f, emitter)
+                    .method("emit", toOption(object, property))
+                    .toStatement());
+            }
+            statements.add(new ExpressionBuilder(f, emitter)
+                .method("endRecord")
+                .toStatement());
+            members.add(f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    context.resolve(void.class),
+                    f.newSimpleName("write"),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(model.getSymbol()), object)),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(statements)));
+            members.add(createCloseMethod(emitter));
+            return f.newClassDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    f.newSimpleName(NAME_WRITER),
+                    null,
+                    Arrays.asList(f.newParameterizedType(
+                            context.resolve(ModelOutput.class),
+                            context.resolve(model.getSymbol()))),
+                    members);
+        }
+
+        private MethodDeclaration createCloseMethod(SimpleName resource) {
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    Collections.<TypeParameterDeclaration>emptyList(),
+                    context.resolve(void.class),
+                    f.newSimpleName("close"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    0,
+                    Arrays.asList(context.resolve(IOException.class)),
+                    f.newBlock(new ExpressionBuilder(f, resource)
+                        .method("close")
+                        .toStatement()));
+        }
+
+        private ExpressionStatement mapField(SimpleName name) {
+            return new ExpressionBuilder(f, f.newThis())
+                .field(name)
+                .assignFrom(name)
+                .toStatement();
+        }
+
+        private FieldDeclaration createPrivateField(Class<?> type, SimpleName name) {
+            return f.newFieldDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Final()
+                        .toAttributes(),
+                    context.resolve(type),
+                    name,
+                    null);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.jsonl.driver;
+
+import com.asakusafw.dmdl.model.AstNode;
+import com.asakusafw.dmdl.semantics.Trait;
+
+/**
+ * Attributes for JSON Lines supported data models.
+ * @since 0.6.0
+ */
+public class JsonLinesFormatTrait implements Trait<JsonLinesFormatTrait> {
+
+    private final AstNode originalAst;
+
+    /**
+     * Creates and returns a new instance.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     */
+    public JsonLinesFormatTrait(AstNode originalAst) {
+        this.originalAst = originalAst;
+    }
+
+    @Override
+    public AstNode getOriginalAst() {
+        return originalAst;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.rowbin.driver;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import com.asakusafw.dmdl.Diagnostic;
+import com.asakusafw.dmdl.Diagnostic.Level;
+import com.asakusafw.dmdl.model.AstAttribute;
+import com.asakusafw.dmdl.model.AstAttributeElement;
+import com.asakusafw.dmdl.model.AstLiteral;
+import com.asakusafw.dmdl.model.LiteralKind;
+import com.asakusafw.dmdl.semantics.DmdlSemantics;
+import com.asakusafw.dmdl.semantics.ModelDeclaration;
+import com.asakusafw.dmdl.spi.ModelAttributeDriver;
+import com.asakusafw.dmdl.util.AttributeUtil;
+
+/**
+ * Processes <code>&#64;directio.rowbin</code> attributes.
+<h2>'&#64;directio.rowbin' attribute</h2>
+The attributed declaration can have:
+<ul>
+<li> with {@code sync_interval=[integer-literal]} as minimum number of bytes between sync blocks,
+    where each input fragment starts (default: 64KB) </li>
+</ul>
+ * @since 0.6.0
+ */
+public class RowBinaryFormatDriver extends ModelAttributeDriver {
+
+    /**
+     * The attribute name.
+     */
+    public static final String TARGET_NAME = "directio.rowbin"; //$NON-NLS-1$
+
+    /**
+     * The element name of the minimum number of bytes between sync blocks.
+     */
+    public static final String ELEMENT_SYNC_INTERVAL_NAME = "sync_interval"; //$NON-NLS-1$
+
+    @Override
+    public String getTargetName() {
+        return TARGET_NAME;
+    }
+
+    @Override
+    public void process(DmdlSemantics environment, ModelDeclaration declaration, AstAttribute attribute) {
+        Map<String, AstAttributeElement> elements = AttributeUtil.getElementMap(attribute);
+        AstAttributeElement syncInterval = elements.remove(ELEMENT_SYNC_INTERVAL_NAME);
+        environment.reportAll(AttributeUtil.reportInvalidElements(attribute, elements.values()));
+        if (syncInterval == null) {
+            declaration.putTrait(RowBinaryFormatTrait.class, new RowBinaryFormatTrait(attribute));
+            return;
+        }
+        if ((syncInterval.value instanceof AstLiteral) == false
+                || ((AstLiteral) syncInterval.value).kind != LiteralKind.INTEGER) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    syncInterval,
+                    "@{0}({1}) must be an integer literal",
+                    TARGET_NAME,
+                    ELEMENT_SYNC_INTERVAL_NAME));
+            return;
+        }
+        BigInteger value = ((AstLiteral) syncInterval.value).toIntegerValue();
+        if (value.signum() <= 0 || value.bitLength() >= Integer.SIZE) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    syncInterval,
+                    "@{0}({1}) must be a positive 32-bit integer",
+                    TARGET_NAME,
+                    ELEMENT_SYNC_INTERVAL_NAME));
+            return;
+        }
+        declaration.putTrait(RowBinaryFormatTrait.class, new RowBinaryFormatTrait(attribute, value.intValue()));
+    }
+}
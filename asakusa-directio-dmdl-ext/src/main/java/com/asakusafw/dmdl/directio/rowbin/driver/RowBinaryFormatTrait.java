@@ -0,0 +1,66 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.rowbin.driver;
+
+import com.asakusafw.dmdl.model.AstNode;
+import com.asakusafw.dmdl.semantics.Trait;
+import com.asakusafw.runtime.directio.rowbin.RowBinaryFormats;
+
+/**
+ * Attributes for row-binary supported data models.
+ * @since 0.6.0
+ */
+public class RowBinaryFormatTrait implements Trait<RowBinaryFormatTrait> {
+
+    private final AstNode originalAst;
+
+    private final int syncInterval;
+
+    /**
+     * Creates and returns a new instance.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     * @param syncInterval the minimum number of bytes between sync blocks
+     * @throws IllegalArgumentException if {@code syncInterval} is not positive
+     */
+    public RowBinaryFormatTrait(AstNode originalAst, int syncInterval) {
+        if (syncInterval <= 0) {
+            throw new IllegalArgumentException("syncInterval must be positive"); //$NON-NLS-1$
+        }
+        this.originalAst = originalAst;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Creates and returns a new instance with the default sync interval.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     */
+    public RowBinaryFormatTrait(AstNode originalAst) {
+        this(originalAst, RowBinaryFormats.DEFAULT_SYNC_INTERVAL);
+    }
+
+    /**
+     * Returns the minimum number of bytes between sync blocks.
+     * @return the sync interval in bytes
+     */
+    public int getSyncInterval() {
+        return syncInterval;
+    }
+
+    @Override
+    public AstNode getOriginalAst() {
+        return originalAst;
+    }
+}
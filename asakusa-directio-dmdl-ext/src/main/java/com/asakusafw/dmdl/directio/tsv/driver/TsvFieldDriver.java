@@ -23,7 +23,9 @@ import com.asakusafw.dmdl.Diagnostic.Level;
 import com.asakusafw.dmdl.directio.tsv.driver.TsvFieldTrait.Kind;
 import com.asakusafw.dmdl.model.AstAttribute;
 import com.asakusafw.dmdl.model.AstAttributeElement;
+import com.asakusafw.dmdl.model.AstLiteral;
 import com.asakusafw.dmdl.model.BasicTypeKind;
+import com.asakusafw.dmdl.model.LiteralKind;
 import com.asakusafw.dmdl.semantics.DmdlSemantics;
 import com.asakusafw.dmdl.semantics.PropertyDeclaration;
 import com.asakusafw.dmdl.semantics.Type;
@@ -37,8 +39,11 @@ import com.asakusafw.dmdl.util.AttributeUtil;
 The attributed declaration must be:
 <ul>
 <li> with name=[string-literal] (optional, default: property name)</li>
+<li> with nullable=TRUE|FALSE (optional, default: TRUE)</li>
+<li> with bloom_filter=TRUE|FALSE (optional, default: FALSE)</li>
 </ul>
  * @since 0.5.3
+ * @version 0.6.0
  */
 public class TsvFieldDriver  extends PropertyAttributeDriver {
 
@@ -52,6 +57,18 @@ public class TsvFieldDriver  extends PropertyAttributeDriver {
      */
     public static final String ELEMENT_NAME = "name"; //$NON-NLS-1$
 
+    /**
+     * The element name of whether the field can be {@code null} or not.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_NULLABLE = "nullable"; //$NON-NLS-1$
+
+    /**
+     * The element name of whether a Bloom filter is built over the field or not.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_BLOOM_FILTER = "bloom_filter"; //$NON-NLS-1$
+
     @Override
     public String getTargetName() {
         return TARGET_NAME;
@@ -61,13 +78,46 @@ public class TsvFieldDriver  extends PropertyAttributeDriver {
     public void process(DmdlSemantics environment, PropertyDeclaration declaration, AstAttribute attribute) {
         Map<String, AstAttributeElement> elements = AttributeUtil.getElementMap(attribute);
         String value = AttributeUtil.takeString(environment, attribute, elements, ELEMENT_NAME, false);
+        AstLiteral nullable = takeBoolean(environment, attribute, elements, ELEMENT_NULLABLE);
+        AstLiteral bloomFilter = takeBoolean(environment, attribute, elements, ELEMENT_BLOOM_FILTER);
         environment.reportAll(AttributeUtil.reportInvalidElements(attribute, elements.values()));
         checkFieldType(environment, declaration, attribute, BasicTypeKind.values());
         if (TsvFieldTrait.checkConflict(environment, declaration, attribute)) {
             declaration.putTrait(
                     TsvFieldTrait.class,
-                    new TsvFieldTrait(attribute, Kind.VALUE, value));
+                    new TsvFieldTrait(
+                            attribute,
+                            Kind.VALUE,
+                            value,
+                            nullable == null || nullable.toBooleanValue(),
+                            bloomFilter != null && bloomFilter.toBooleanValue()));
+        }
+    }
+
+    private static AstLiteral takeBoolean(
+            DmdlSemantics environment,
+            AstAttribute attribute,
+            Map<String, AstAttributeElement> elements,
+            String elementName) {
+        assert environment != null;
+        assert attribute != null;
+        assert elements != null;
+        assert elementName != null;
+        AstAttributeElement element = elements.remove(elementName);
+        if (element == null) {
+            return null;
+        }
+        if ((element.value instanceof AstLiteral) == false
+                || ((AstLiteral) element.value).kind != LiteralKind.BOOLEAN) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    element,
+                    "@{0}({1}) must be TRUE or FALSE",
+                    attribute.name.toString(),
+                    elementName));
+            return null;
         }
+        return (AstLiteral) element.value;
     }
 
     static void checkFieldType(
@@ -31,7 +31,7 @@ import com.asakusafw.dmdl.semantics.type.BasicType;
 /**
  * Attributes for TSV fields.
  * @since 0.5.2
- * @version 0.5.3
+ * @version 0.6.0
  */
 public class TsvFieldTrait implements Trait<TsvFieldTrait> {
 
@@ -41,6 +41,10 @@ public class TsvFieldTrait implements Trait<TsvFieldTrait> {
 
     private final String name;
 
+    private final boolean nullable;
+
+    private final boolean bloomFilter;
+
     /**
      * Creates a new instance.
      * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
@@ -49,12 +53,41 @@ public class TsvFieldTrait implements Trait<TsvFieldTrait> {
      * @throws IllegalArgumentException if some parameters were {@code null}
      */
     public TsvFieldTrait(AstNode originalAst, Kind kind, String name) {
+        this(originalAst, kind, name, true);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     * @param kind the field kind
+     * @param name the explicit field name (nullable)
+     * @param nullable whether the field can be {@code null} or not
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.6.0
+     */
+    public TsvFieldTrait(AstNode originalAst, Kind kind, String name, boolean nullable) {
+        this(originalAst, kind, name, nullable, false);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param originalAst the original AST, or {@code null} if this is an ad-hoc element
+     * @param kind the field kind
+     * @param name the explicit field name (nullable)
+     * @param nullable whether the field can be {@code null} or not
+     * @param bloomFilter whether a Bloom filter is built over the field or not
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.6.0
+     */
+    public TsvFieldTrait(AstNode originalAst, Kind kind, String name, boolean nullable, boolean bloomFilter) {
         if (kind == null) {
             throw new IllegalArgumentException("kind must not be null"); //$NON-NLS-1$
         }
         this.originalAst = originalAst;
         this.kind = kind;
         this.name = name;
+        this.nullable = nullable;
+        this.bloomFilter = bloomFilter;
     }
 
     @Override
@@ -99,6 +132,44 @@ public class TsvFieldTrait implements Trait<TsvFieldTrait> {
         return defaultKind;
     }
 
+    /**
+     * Returns whether the TSV field can be {@code null} or not.
+     * If this is not declared explicitly in the property, this returns {@code true}.
+     * @param property target property
+     * @return {@code true} if the field can be {@code null}, otherwise {@code false}
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.6.0
+     */
+    public static boolean isNullable(PropertyDeclaration property) {
+        if (property == null) {
+            throw new IllegalArgumentException("property must not be null"); //$NON-NLS-1$
+        }
+        TsvFieldTrait trait = property.getTrait(TsvFieldTrait.class);
+        if (trait != null) {
+            return trait.nullable;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a Bloom filter is built over the TSV field or not.
+     * If this is not declared explicitly in the property, this returns {@code false}.
+     * @param property target property
+     * @return {@code true} if a Bloom filter is built over the field, otherwise {@code false}
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.6.0
+     */
+    public static boolean isBloomFilter(PropertyDeclaration property) {
+        if (property == null) {
+            throw new IllegalArgumentException("property must not be null"); //$NON-NLS-1$
+        }
+        TsvFieldTrait trait = property.getTrait(TsvFieldTrait.class);
+        if (trait != null) {
+            return trait.bloomFilter;
+        }
+        return false;
+    }
+
     static void checkFieldType(
             DmdlSemantics environment,
             PropertyDeclaration declaration,
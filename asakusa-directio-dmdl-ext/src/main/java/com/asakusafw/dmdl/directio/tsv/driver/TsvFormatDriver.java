@@ -15,7 +15,13 @@
  */
 package com.asakusafw.dmdl.directio.tsv.driver;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import com.asakusafw.dmdl.Diagnostic;
 import com.asakusafw.dmdl.Diagnostic.Level;
@@ -28,6 +34,7 @@ import com.asakusafw.dmdl.semantics.DmdlSemantics;
 import com.asakusafw.dmdl.semantics.ModelDeclaration;
 import com.asakusafw.dmdl.spi.ModelAttributeDriver;
 import com.asakusafw.dmdl.util.AttributeUtil;
+import com.asakusafw.runtime.directio.tsv.TsvSeparators;
 
 /**
  * Processes <code>&#64;directio.tsv</code> attributes.
@@ -36,10 +43,45 @@ The attributed declaration can have:
 <ul>
 <li> with {@code charset=[string-literal]} as charset name (default: UTF-8) </li>
 <li> with {@code has_header=TRUE|FALSE} as whether header is required (default: FALSE) </li>
-<li> with {@code compression=[string-literal]} as compression name (default: plain) </li>
+<li> with {@code compression=[string-literal]} as compression name, {@code "lz4"} for built-in LZ4 frame format,
+    or {@code "auto"} to choose it by output size (default: plain) </li>
+<li> with {@code compression_threshold=[integer-literal]} as minimum output size in bytes to be compressed
+    on {@code compression="auto"} (default: 64KB) </li>
+<li> with {@code compression_throughput=[integer-literal]} as target compression throughput of each thread in MB/s
+    on {@code compression="auto"} (default: unlimited) </li>
+<li> with {@code field_separator=[string-literal]} as field separator character (default: tab) </li>
+<li> with {@code line_separator=[string-literal]} as line separator, {@code "\r\n"} or a character
+    (default: LF) </li>
+<li> with {@code max_file_size=[integer-literal]} as maximum size of each output file in bytes before compression,
+    which can be exceeded by a record and the TSV emitter buffer (64KB) (default: unlimited) </li>
+<li> with {@code max_records=[integer-literal]} as maximum number of records in each output file
+    (default: unlimited) </li>
+<li> with {@code async_flush_buffers=[integer-literal]} as maximum number of output buffers
+    which are written on the background thread (default: synchronous) </li>
+<li> with {@code parallel_compression=TRUE|FALSE} as whether gzip files are compressed and decompressed
+    on the worker threads instead of the compression codec (default: FALSE) </li>
+<li> with {@code manifest=TRUE|FALSE} as whether a manifest is written beside each output file
+    (default: FALSE) </li>
+<li> with {@code partition_by=[string-literal]} as comma separated property names
+    which partition the output directories (default: not partitioned) </li>
+<li> with {@code max_open_partitions=[integer-literal]} as maximum number of partitions
+    which are written at the same time (default: 16) </li>
+<li> with {@code sort_by=[string-literal]} as property name which sorts records in each output file
+    (default: not sorted) </li>
+<li> with {@code index_interval=[integer-literal]} as number of records between entries of
+    the sparse index beside each sorted output file (default: no index) </li>
+<li> with {@code data_size="tiny"|"small"|"large"|"unknown"} as expected input data size
+    of the generated input description (default: unknown) </li>
+<li> with {@code data_size_manifest=[string-literal]} as fully qualified path pattern of input files
+    (e.g. {@code "hdfs://namenode/path/to/*.tsv"}) whose manifests determine the data size
+    in {@code estimateDataSize(Configuration)} of the generated input description,
+    or {@code data_size} if they are not available (default: not used) </li>
+<li> with {@code path_pattern=[string-literal]} as pattern of the input directories which maps each path segment
+    to a property like {@code "{sales_date}/shop={shop_code}"}, instead of reading them from TSV fields
+    (default: not used) </li>
 </ul>
  * @since 0.5.0
- * @version 0.5.2
+ * @version 0.6.0
  */
 public class TsvFormatDriver extends ModelAttributeDriver {
 
@@ -65,6 +107,113 @@ public class TsvFormatDriver extends ModelAttributeDriver {
      */
     public static final String ELEMENT_HAS_HEADER_NAME = "has_header"; //$NON-NLS-1$
 
+    /**
+     * The element name of the minimum output size to be compressed.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_COMPRESSION_THRESHOLD_NAME = "compression_threshold"; //$NON-NLS-1$
+
+    /**
+     * The element name of the target compression throughput.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_COMPRESSION_THROUGHPUT_NAME = "compression_throughput"; //$NON-NLS-1$
+
+    /**
+     * The element name of field separator.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_FIELD_SEPARATOR_NAME = "field_separator"; //$NON-NLS-1$
+
+    /**
+     * The element name of line separator.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_LINE_SEPARATOR_NAME = "line_separator"; //$NON-NLS-1$
+
+    /**
+     * The element name of the maximum output file size.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_MAX_FILE_SIZE_NAME = "max_file_size"; //$NON-NLS-1$
+
+    /**
+     * The element name of the maximum number of records in each output file.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_MAX_RECORDS_NAME = "max_records"; //$NON-NLS-1$
+
+    /**
+     * The element name of the maximum number of output buffers in flight.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_ASYNC_FLUSH_BUFFERS_NAME = "async_flush_buffers"; //$NON-NLS-1$
+
+    /**
+     * The element name of whether a manifest is written beside each output file.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_MANIFEST_NAME = "manifest"; //$NON-NLS-1$
+
+    /**
+     * The element name of whether gzip outputs are compressed on the worker threads.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_PARALLEL_COMPRESSION_NAME = "parallel_compression"; //$NON-NLS-1$
+
+    /**
+     * The element name of the property names which partition the output directories.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_PARTITION_BY_NAME = "partition_by"; //$NON-NLS-1$
+
+    /**
+     * The element name of the maximum number of partitions which are written at the same time.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_MAX_OPEN_PARTITIONS_NAME = "max_open_partitions"; //$NON-NLS-1$
+
+    /**
+     * The element name of the property name which sorts records in each output file.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_SORT_BY_NAME = "sort_by"; //$NON-NLS-1$
+
+    /**
+     * The element name of the number of records between entries of the sparse index.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_INDEX_INTERVAL_NAME = "index_interval"; //$NON-NLS-1$
+
+    /**
+     * The element name of the expected input data size.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_DATA_SIZE_NAME = "data_size"; //$NON-NLS-1$
+
+    /**
+     * The element name of the path pattern of input files whose manifests determine the data size.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_DATA_SIZE_MANIFEST_NAME = "data_size_manifest"; //$NON-NLS-1$
+
+    /**
+     * The element name of the pattern of input directories which maps path segments to properties.
+     * @since 0.6.0
+     */
+    public static final String ELEMENT_PATH_PATTERN_NAME = "path_pattern"; //$NON-NLS-1$
+
+    private static final List<String> DATA_SIZES = Arrays.asList(new String[] {
+            "TINY", //$NON-NLS-1$
+            "SMALL", //$NON-NLS-1$
+            "LARGE", //$NON-NLS-1$
+            "UNKNOWN", //$NON-NLS-1$
+    });
+
+    private static final Pattern PROPERTY_NAME = Pattern.compile("[a-z][0-9a-z]*(_[0-9a-z]+)*"); //$NON-NLS-1$
+
+    private static final Pattern QUALIFIED_PATH = Pattern.compile("[A-Za-z][0-9A-Za-z+.\\-]*:/.*"); //$NON-NLS-1$
+
     @Override
     public String getTargetName() {
         return TARGET_NAME;
@@ -86,6 +235,26 @@ public class TsvFormatDriver extends ModelAttributeDriver {
         AstLiteral charset = take(environment, elements, ELEMENT_CHARSET_NAME, LiteralKind.STRING);
         AstLiteral header = take(environment, elements, ELEMENT_HAS_HEADER_NAME, LiteralKind.BOOLEAN);
         AstLiteral codec = take(environment, elements, ELEMENT_CODEC_NAME, LiteralKind.STRING);
+        AstLiteral threshold = take(environment, elements, ELEMENT_COMPRESSION_THRESHOLD_NAME, LiteralKind.INTEGER);
+        AstLiteral throughput = take(environment, elements, ELEMENT_COMPRESSION_THROUGHPUT_NAME, LiteralKind.INTEGER);
+        AstLiteral fieldSeparator = take(environment, elements, ELEMENT_FIELD_SEPARATOR_NAME, LiteralKind.STRING);
+        AstLiteral lineSeparator = take(environment, elements, ELEMENT_LINE_SEPARATOR_NAME, LiteralKind.STRING);
+        AstLiteral maxFileSize = take(environment, elements, ELEMENT_MAX_FILE_SIZE_NAME, LiteralKind.INTEGER);
+        AstLiteral maxRecords = take(environment, elements, ELEMENT_MAX_RECORDS_NAME, LiteralKind.INTEGER);
+        AstLiteral asyncFlushBuffers = take(
+                environment, elements, ELEMENT_ASYNC_FLUSH_BUFFERS_NAME, LiteralKind.INTEGER);
+        AstLiteral parallelCompression = take(
+                environment, elements, ELEMENT_PARALLEL_COMPRESSION_NAME, LiteralKind.BOOLEAN);
+        AstLiteral manifest = take(environment, elements, ELEMENT_MANIFEST_NAME, LiteralKind.BOOLEAN);
+        AstLiteral partitionBy = take(environment, elements, ELEMENT_PARTITION_BY_NAME, LiteralKind.STRING);
+        AstLiteral maxOpenPartitions = take(
+                environment, elements, ELEMENT_MAX_OPEN_PARTITIONS_NAME, LiteralKind.INTEGER);
+        AstLiteral sortBy = take(environment, elements, ELEMENT_SORT_BY_NAME, LiteralKind.STRING);
+        AstLiteral indexInterval = take(environment, elements, ELEMENT_INDEX_INTERVAL_NAME, LiteralKind.INTEGER);
+        AstLiteral dataSize = take(environment, elements, ELEMENT_DATA_SIZE_NAME, LiteralKind.STRING);
+        AstLiteral dataSizeManifest = take(
+                environment, elements, ELEMENT_DATA_SIZE_MANIFEST_NAME, LiteralKind.STRING);
+        AstLiteral pathPattern = take(environment, elements, ELEMENT_PATH_PATTERN_NAME, LiteralKind.STRING);
         environment.reportAll(AttributeUtil.reportInvalidElements(attribute, elements.values()));
 
         Configuration result = new Configuration();
@@ -98,6 +267,118 @@ public class TsvFormatDriver extends ModelAttributeDriver {
         if (codec != null && checkNotEmpty(environment, ELEMENT_CODEC_NAME, codec)) {
             result.setCodecName(codec.toStringValue());
         }
+        if (threshold != null
+                && checkAutoCompression(environment, ELEMENT_COMPRESSION_THRESHOLD_NAME, threshold, result)
+                && checkPositive(environment, ELEMENT_COMPRESSION_THRESHOLD_NAME, threshold)) {
+            result.setCompressionThreshold(threshold.toIntegerValue().longValue());
+        }
+        if (throughput != null
+                && checkAutoCompression(environment, ELEMENT_COMPRESSION_THROUGHPUT_NAME, throughput, result)
+                && checkPositive(environment, ELEMENT_COMPRESSION_THROUGHPUT_NAME, throughput)) {
+            result.setCompressionThroughput(throughput.toIntegerValue().longValue());
+        }
+        if (fieldSeparator != null && checkNotEmpty(environment, ELEMENT_FIELD_SEPARATOR_NAME, fieldSeparator)) {
+            String value = fieldSeparator.toStringValue();
+            if (value.length() != 1) {
+                environment.report(new Diagnostic(
+                        Level.ERROR,
+                        fieldSeparator,
+                        "@{0}({1}) must be a single character",
+                        TARGET_NAME,
+                        ELEMENT_FIELD_SEPARATOR_NAME));
+            } else {
+                result.setFieldSeparator(value.charAt(0));
+            }
+        }
+        if (lineSeparator != null && checkNotEmpty(environment, ELEMENT_LINE_SEPARATOR_NAME, lineSeparator)) {
+            result.setLineSeparator(lineSeparator.toStringValue());
+        }
+        if (maxFileSize != null && checkPositive(environment, ELEMENT_MAX_FILE_SIZE_NAME, maxFileSize)) {
+            result.setMaxFileSize(maxFileSize.toIntegerValue().longValue());
+        }
+        if (maxRecords != null && checkPositive(environment, ELEMENT_MAX_RECORDS_NAME, maxRecords)) {
+            result.setMaxRecords(maxRecords.toIntegerValue().longValue());
+        }
+        if (asyncFlushBuffers != null
+                && checkPositiveInt(environment, ELEMENT_ASYNC_FLUSH_BUFFERS_NAME, asyncFlushBuffers)) {
+            result.setAsyncFlushBuffers(asyncFlushBuffers.toIntegerValue().intValue());
+        }
+        if (parallelCompression != null && checkGzipCompression(environment, parallelCompression, result)) {
+            result.setParallelCompression(parallelCompression.toBooleanValue());
+        }
+        if (manifest != null) {
+            result.setEnableManifest(manifest.toBooleanValue());
+        }
+        if (partitionBy != null && checkNotEmpty(environment, ELEMENT_PARTITION_BY_NAME, partitionBy)) {
+            List<String> names = parsePropertyNames(environment, ELEMENT_PARTITION_BY_NAME, partitionBy);
+            if (names != null) {
+                result.setPartitionPropertyNames(names);
+            }
+        }
+        if (maxOpenPartitions != null
+                && checkPositiveInt(environment, ELEMENT_MAX_OPEN_PARTITIONS_NAME, maxOpenPartitions)) {
+            result.setMaxOpenPartitions(maxOpenPartitions.toIntegerValue().intValue());
+        }
+        if (sortBy != null && checkNotEmpty(environment, ELEMENT_SORT_BY_NAME, sortBy)) {
+            List<String> names = parsePropertyNames(environment, ELEMENT_SORT_BY_NAME, sortBy);
+            if (names != null && names.size() != 1) {
+                environment.report(new Diagnostic(
+                        Level.ERROR,
+                        sortBy,
+                        "@{0}({1}) must be a single property name",
+                        TARGET_NAME,
+                        ELEMENT_SORT_BY_NAME));
+            } else if (names != null) {
+                result.setSortPropertyName(names.get(0));
+            }
+        }
+        if (indexInterval != null
+                && checkSorted(environment, indexInterval, result)
+                && checkUncompressed(environment, ELEMENT_INDEX_INTERVAL_NAME, indexInterval, result)
+                && checkPositiveInt(environment, ELEMENT_INDEX_INTERVAL_NAME, indexInterval)) {
+            result.setIndexInterval(indexInterval.toIntegerValue().intValue());
+        }
+        if (dataSize != null) {
+            String value = dataSize.toStringValue().toUpperCase(Locale.ENGLISH);
+            if (DATA_SIZES.contains(value) == false) {
+                environment.report(new Diagnostic(
+                        Level.ERROR,
+                        dataSize,
+                        "@{0}({1}) must be one of \"tiny\", \"small\", \"large\", or \"unknown\"",
+                        TARGET_NAME,
+                        ELEMENT_DATA_SIZE_NAME));
+            } else {
+                result.setDataSize(value);
+            }
+        }
+        if (dataSizeManifest != null
+                && checkNotEmpty(environment, ELEMENT_DATA_SIZE_MANIFEST_NAME, dataSizeManifest)
+                && checkQualifiedPath(environment, ELEMENT_DATA_SIZE_MANIFEST_NAME, dataSizeManifest)) {
+            result.setDataSizeManifest(dataSizeManifest.toStringValue());
+        }
+        if (pathPattern != null && checkNotEmpty(environment, ELEMENT_PATH_PATTERN_NAME, pathPattern)) {
+            try {
+                result.setPathPattern(pathPattern.toStringValue());
+            } catch (IllegalArgumentException e) {
+                environment.report(new Diagnostic(
+                        Level.ERROR,
+                        pathPattern,
+                        "@{0}({1}) is not a valid path pattern: {2}",
+                        TARGET_NAME,
+                        ELEMENT_PATH_PATTERN_NAME,
+                        e.getMessage()));
+            }
+        }
+        String message = TsvSeparators.validateSeparators(result.getFieldSeparator(), result.getLineSeparator());
+        if (message != null) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    attribute,
+                    "@{0} has invalid separators: {1}",
+                    TARGET_NAME,
+                    message));
+            return null;
+        }
         return result;
     }
 
@@ -118,6 +399,163 @@ public class TsvFormatDriver extends ModelAttributeDriver {
         return true;
     }
 
+    private boolean checkQualifiedPath(DmdlSemantics environment, String name, AstLiteral stringLiteral) {
+        assert environment != null;
+        assert name != null;
+        assert stringLiteral != null;
+        assert stringLiteral.kind == LiteralKind.STRING;
+        if (QUALIFIED_PATH.matcher(stringLiteral.toStringValue()).matches() == false) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    stringLiteral,
+                    "@{0}({1}) must be a fully qualified path like \"hdfs://namenode/path/to/*.tsv\": \"{2}\"",
+                    TARGET_NAME,
+                    name,
+                    stringLiteral.toStringValue()));
+            return false;
+        }
+        return true;
+    }
+
+    private List<String> parsePropertyNames(DmdlSemantics environment, String name, AstLiteral stringLiteral) {
+        assert environment != null;
+        assert name != null;
+        assert stringLiteral != null;
+        assert stringLiteral.kind == LiteralKind.STRING;
+        List<String> results = new ArrayList<String>();
+        for (String segment : stringLiteral.toStringValue().split(",")) { //$NON-NLS-1$
+            String propertyName = segment.trim();
+            if (PROPERTY_NAME.matcher(propertyName).matches() == false || results.contains(propertyName)) {
+                environment.report(new Diagnostic(
+                        Level.ERROR,
+                        stringLiteral,
+                        "@{0}({1}) must be comma separated distinct property names: \"{2}\"",
+                        TARGET_NAME,
+                        name,
+                        propertyName));
+                return null;
+            }
+            results.add(propertyName);
+        }
+        return results;
+    }
+
+    private boolean checkSorted(DmdlSemantics environment, AstLiteral literal, Configuration conf) {
+        assert environment != null;
+        assert literal != null;
+        assert conf != null;
+        if (conf.isSorted() == false) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    literal,
+                    "@{0}({1}) requires {2}",
+                    TARGET_NAME,
+                    ELEMENT_INDEX_INTERVAL_NAME,
+                    ELEMENT_SORT_BY_NAME));
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkUncompressed(
+            DmdlSemantics environment,
+            String name,
+            AstLiteral literal,
+            Configuration conf) {
+        assert environment != null;
+        assert name != null;
+        assert literal != null;
+        assert conf != null;
+        if (conf.getCodecName() != null) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    literal,
+                    "@{0}({1}) can not be used with {2}",
+                    TARGET_NAME,
+                    name,
+                    ELEMENT_CODEC_NAME));
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkGzipCompression(DmdlSemantics environment, AstLiteral literal, Configuration conf) {
+        assert environment != null;
+        assert literal != null;
+        assert conf != null;
+        if (conf.isGzipCompression() == false) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    literal,
+                    "@{0}({1}) requires {2}=\"{3}\"",
+                    TARGET_NAME,
+                    ELEMENT_PARALLEL_COMPRESSION_NAME,
+                    ELEMENT_CODEC_NAME,
+                    Configuration.CODEC_GZIP));
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkAutoCompression(
+            DmdlSemantics environment,
+            String name,
+            AstLiteral literal,
+            Configuration conf) {
+        assert environment != null;
+        assert name != null;
+        assert literal != null;
+        assert conf != null;
+        if (conf.isAutoCompression() == false) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    literal,
+                    "@{0}({1}) requires {2}=\"{3}\"",
+                    TARGET_NAME,
+                    name,
+                    ELEMENT_CODEC_NAME,
+                    Configuration.CODEC_AUTO));
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkPositive(DmdlSemantics environment, String name, AstLiteral integerLiteral) {
+        assert environment != null;
+        assert name != null;
+        assert integerLiteral != null;
+        assert integerLiteral.kind == LiteralKind.INTEGER;
+        BigInteger value = integerLiteral.toIntegerValue();
+        if (value.signum() <= 0 || value.bitLength() >= Long.SIZE) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    integerLiteral,
+                    "@{0}({1}) must be a positive 64-bit integer",
+                    TARGET_NAME,
+                    name));
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkPositiveInt(DmdlSemantics environment, String name, AstLiteral integerLiteral) {
+        assert environment != null;
+        assert name != null;
+        assert integerLiteral != null;
+        assert integerLiteral.kind == LiteralKind.INTEGER;
+        BigInteger value = integerLiteral.toIntegerValue();
+        if (value.signum() <= 0 || value.bitLength() >= Integer.SIZE) {
+            environment.report(new Diagnostic(
+                    Level.ERROR,
+                    integerLiteral,
+                    "@{0}({1}) must be a positive 32-bit integer",
+                    TARGET_NAME,
+                    name));
+            return false;
+        }
+        return true;
+    }
+
     private AstLiteral take(
             DmdlSemantics environment,
             Map<String, AstAttributeElement> elements,
@@ -144,9 +582,10 @@ public class TsvFormatDriver extends ModelAttributeDriver {
                 environment.report(new Diagnostic(
                         Level.ERROR,
                         element,
-                        "@{0}({1}) must be a string literal",
+                        "@{0}({1}) must be a {2} literal",
                         TARGET_NAME,
-                        elementName));
+                        elementName,
+                        kind.name().toLowerCase(Locale.ENGLISH)));
                 return null;
             }
             return literal;
@@ -20,32 +20,58 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.asakusafw.dmdl.directio.tsv.driver.TsvFieldTrait.Kind;
 import com.asakusafw.dmdl.directio.tsv.driver.TsvFormatTrait.Configuration;
+import com.asakusafw.dmdl.directio.util.DescriptionGenerator;
 import com.asakusafw.dmdl.java.emitter.EmitContext;
 import com.asakusafw.dmdl.java.spi.JavaDataModelDriver;
+import com.asakusafw.dmdl.model.BasicTypeKind;
 import com.asakusafw.dmdl.semantics.ModelDeclaration;
 import com.asakusafw.dmdl.semantics.PropertyDeclaration;
 import com.asakusafw.dmdl.semantics.Type;
 import com.asakusafw.dmdl.semantics.type.BasicType;
 import com.asakusafw.runtime.directio.BinaryStreamFormat;
-import com.asakusafw.runtime.directio.util.DelimiterRangeInputStream;
+import com.asakusafw.runtime.directio.tsv.AsyncFlushOutputStream;
+import com.asakusafw.runtime.directio.tsv.CountingOutputStream;
+import com.asakusafw.runtime.directio.tsv.MappedFileInputStream;
+import com.asakusafw.runtime.directio.tsv.NullViolationCounter;
+import com.asakusafw.runtime.directio.tsv.RollingFileFormat;
+import com.asakusafw.runtime.directio.tsv.TsvBloomFilter;
+import com.asakusafw.runtime.directio.tsv.TsvManifest;
+import com.asakusafw.runtime.directio.tsv.TsvPathPattern;
+import com.asakusafw.runtime.directio.tsv.TsvSeparatorReader;
+import com.asakusafw.runtime.directio.tsv.TsvSeparatorWriter;
+import com.asakusafw.runtime.directio.tsv.TsvSeparators;
+import com.asakusafw.runtime.directio.tsv.Utf8TsvEmitter;
+import com.asakusafw.runtime.directio.tsv.Utf8TsvParser;
 import com.asakusafw.runtime.io.ModelInput;
 import com.asakusafw.runtime.io.ModelOutput;
 import com.asakusafw.runtime.io.TsvEmitter;
 import com.asakusafw.runtime.io.TsvParser;
+import com.asakusafw.runtime.io.compress.AdaptiveCompressionOutputStream;
+import com.asakusafw.runtime.io.compress.CodecPoolSupport;
+import com.asakusafw.runtime.io.compress.CompressionDetectingInputStream;
+import com.asakusafw.runtime.io.compress.Lz4FrameInputStream;
+import com.asakusafw.runtime.io.compress.Lz4FrameOutputStream;
+import com.asakusafw.runtime.io.compress.ParallelGzipInputStream;
+import com.asakusafw.runtime.io.compress.ParallelGzipOutputStream;
 import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
 import com.asakusafw.utils.collections.Lists;
+import com.asakusafw.utils.java.model.syntax.Attribute;
 import com.asakusafw.utils.java.model.syntax.ClassDeclaration;
 import com.asakusafw.utils.java.model.syntax.Expression;
 import com.asakusafw.utils.java.model.syntax.ExpressionStatement;
@@ -69,7 +95,7 @@ import com.asakusafw.utils.java.model.util.TypeBuilder;
 /**
  * Emits {@link BinaryStreamFormat} implementations.
  * @since 0.2.5
- * @version 0.5.3
+ * @version 0.6.0
  */
 public class TsvFormatEmitter extends JavaDataModelDriver {
 
@@ -80,12 +106,43 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
      */
     public static final String CATEGORY_STREAM = "tsv";
 
+    private static final String FORMAT_LABEL = "TSV";
+
+    // for reduce library dependencies
+    private static final String DATA_SIZE_TYPE_NAME =
+        "com.asakusafw.vocabulary.external.ImporterDescription.DataSize";
+
+    private static final String DEFAULT_DATA_SIZE = "UNKNOWN"; //$NON-NLS-1$
+
+    private static final Set<BasicTypeKind> PARTITION_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            BasicTypeKind.TEXT,
+            BasicTypeKind.DATE,
+            BasicTypeKind.INT,
+            BasicTypeKind.LONG,
+            BasicTypeKind.SHORT,
+            BasicTypeKind.BYTE,
+            BasicTypeKind.BOOLEAN,
+            BasicTypeKind.DECIMAL));
+
+    private static final Set<BasicTypeKind> SORT_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            BasicTypeKind.TEXT,
+            BasicTypeKind.DATE,
+            BasicTypeKind.DATETIME,
+            BasicTypeKind.INT,
+            BasicTypeKind.LONG,
+            BasicTypeKind.SHORT,
+            BasicTypeKind.BYTE,
+            BasicTypeKind.BOOLEAN,
+            BasicTypeKind.DECIMAL));
+
     @Override
     public void generateResources(EmitContext context, ModelDeclaration model) throws IOException {
         if (isTarget(model) == false) {
             return;
         }
         checkPropertyType(model);
+        checkSortProperty(model);
+        checkPathProperty(model);
         Name supportName = generateFormat(context, model);
         generateImporter(context, model, supportName);
         generateExporter(context, model, supportName);
@@ -121,13 +178,117 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                 "Abstract{0}TsvInputDescription");
         LOG.debug("Generating TSV input description for {}",
                 context.getQualifiedTypeName().toNameString());
-        DescriptionGenerator.emitImporter(next, model, supportName);
+        Configuration conf = model.getTrait(TsvFormatTrait.class).getConfiguration();
+        DescriptionGenerator.emitImporter(
+                next,
+                model,
+                supportName,
+                FORMAT_LABEL,
+                createImporterMembers(next, conf));
         LOG.debug("Generated TSV input description for {}: {}",
                 context.getQualifiedTypeName().toNameString(),
                 next.getQualifiedTypeName().toNameString());
         return next.getQualifiedTypeName();
     }
 
+    private List<TypeBodyDeclaration> createImporterMembers(EmitContext context, Configuration conf) {
+        assert context != null;
+        assert conf != null;
+        List<TypeBodyDeclaration> results = Lists.create();
+        if (conf.getDataSize() != null) {
+            results.add(createGetDataSize(context, conf.getDataSize()));
+        }
+        if (conf.getDataSizeManifest() != null) {
+            results.add(createEstimateDataSize(context, conf.getDataSizeManifest(), conf.getDataSize()));
+        }
+        if (conf.getPathPattern() != null) {
+            results.add(createGetPathResourcePattern(context, conf.getPathPattern()));
+        }
+        return results;
+    }
+
+    private MethodDeclaration createGetDataSize(EmitContext context, String dataSize) {
+        assert context != null;
+        assert dataSize != null;
+        ModelFactory f = context.getModelFactory();
+        com.asakusafw.utils.java.model.syntax.Type type = context.resolve(Models.toName(f, DATA_SIZE_TYPE_NAME));
+        return f.newMethodDeclaration(
+                null,
+                new AttributeBuilder(f)
+                    .annotation(context.resolve(Override.class))
+                    .Public()
+                    .toAttributes(),
+                type,
+                f.newSimpleName("getDataSize"),
+                Collections.<FormalParameterDeclaration>emptyList(),
+                Arrays.asList(new TypeBuilder(f, type)
+                    .field(dataSize)
+                    .toReturnStatement()));
+    }
+
+    private MethodDeclaration createEstimateDataSize(EmitContext context, String manifest, String dataSize) {
+        assert context != null;
+        assert manifest != null;
+        ModelFactory f = context.getModelFactory();
+        com.asakusafw.utils.java.model.syntax.Type type = context.resolve(Models.toName(f, DATA_SIZE_TYPE_NAME));
+        SimpleName configuration = f.newSimpleName("configuration");
+        // never calls getDataSize() here, because subclasses may delegate it to this method
+        String defaultValue = dataSize == null ? DEFAULT_DATA_SIZE : dataSize;
+        return f.newMethodDeclaration(
+                new JavadocBuilder(f)
+                    .text("Returns the data size estimated from the manifests of the input files,")
+                    .text(" or {0} if they are not available.", defaultValue)
+                    .text(" Subclasses can return this from getDataSize()")
+                    .text(" with the configuration of the Direct I/O data sources.")
+                    .toJavadoc(),
+                new AttributeBuilder(f)
+                    .Protected()
+                    .toAttributes(),
+                type,
+                f.newSimpleName("estimateDataSize"),
+                Arrays.asList(f.newFormalParameterDeclaration(
+                        context.resolve(Models.toName(f, "org.apache.hadoop.conf.Configuration")),
+                        configuration)),
+                Arrays.asList(new TypeBuilder(f, type)
+                    .method("valueOf", new TypeBuilder(f, context.resolve(TsvManifest.class))
+                        .method("estimateDataSize",
+                                configuration,
+                                Models.toLiteral(f, manifest),
+                                Models.toLiteral(f, defaultValue))
+                        .toExpression())
+                    .toReturnStatement()));
+    }
+
+    private MethodDeclaration createGetPathResourcePattern(EmitContext context, String pathPattern) {
+        assert context != null;
+        assert pathPattern != null;
+        ModelFactory f = context.getModelFactory();
+        SimpleName fileName = f.newSimpleName("fileName");
+        SimpleName arguments = f.newSimpleName("arguments");
+        return f.newMethodDeclaration(
+                new JavadocBuilder(f)
+                    .text("Returns a resource pattern which lists only the input directories")
+                    .text(" whose path values are bound to the batch arguments of the same names.")
+                    .toJavadoc(),
+                new AttributeBuilder(f)
+                    .Protected()
+                    .toAttributes(),
+                context.resolve(String.class),
+                f.newSimpleName("getPathResourcePattern"),
+                Arrays.asList(
+                        f.newFormalParameterDeclaration(context.resolve(String.class), fileName),
+                        f.newFormalParameterDeclaration(
+                                Collections.<Attribute>emptyList(),
+                                context.resolve(String.class),
+                                true,
+                                arguments,
+                                0)),
+                Arrays.asList(new TypeBuilder(f, context.resolve(TsvPathPattern.class))
+                    .newObject(Models.toLiteral(f, pathPattern))
+                    .method("toResourcePattern", fileName, arguments)
+                    .toReturnStatement()));
+    }
+
     private Name generateExporter(EmitContext context, ModelDeclaration model, Name supportName) throws IOException {
         assert context != null;
         assert model != null;
@@ -140,7 +301,15 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                 "Abstract{0}TsvOutputDescription");
         LOG.debug("Generating TSV output description for {}",
                 context.getQualifiedTypeName().toNameString());
-        DescriptionGenerator.emitExporter(next, model, supportName);
+        String sortPropertyName = model.getTrait(TsvFormatTrait.class).getConfiguration().getSortPropertyName();
+        DescriptionGenerator.emitExporter(
+                next,
+                model,
+                supportName,
+                FORMAT_LABEL,
+                sortPropertyName == null
+                        ? Collections.<String>emptyList()
+                        : Collections.singletonList("+" + sortPropertyName));
         LOG.debug("Generated TSV output description for {}: {}",
                 context.getQualifiedTypeName().toNameString(),
                 next.getQualifiedTypeName().toNameString());
@@ -156,7 +325,7 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
     private void checkPropertyType(ModelDeclaration model) throws IOException {
         assert model != null;
         for (PropertyDeclaration prop : model.getDeclaredProperties()) {
-            if (isValueField(prop)) {
+            if (isValueField(model, prop)) {
                 Type type = prop.getType();
                 if ((type instanceof BasicType) == false) {
                     throw new IOException(MessageFormat.format(
@@ -167,11 +336,96 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                 }
             }
         }
+        for (String name : model.getTrait(TsvFormatTrait.class).getConfiguration().getPartitionPropertyNames()) {
+            PropertyDeclaration prop = model.findPropertyDeclaration(name);
+            if (prop == null || isValueField(model, prop) == false) {
+                throw new IOException(MessageFormat.format(
+                        "Partition property must be a TSV field: {0}.{1}",
+                        model.getName().identifier,
+                        name));
+            }
+            Type type = prop.getType();
+            if ((type instanceof BasicType) == false
+                    || PARTITION_TYPES.contains(((BasicType) type).getKind()) == false) {
+                throw new IOException(MessageFormat.format(
+                        "Type \"{0}\" can not be used for partitions (must be one of {3}): {1}.{2}",
+                        type,
+                        prop.getOwner().getName().identifier,
+                        prop.getName().identifier,
+                        PARTITION_TYPES));
+            }
+        }
     }
 
-    static boolean isValueField(PropertyDeclaration property) {
+    private void checkPathProperty(ModelDeclaration model) throws IOException {
+        assert model != null;
+        for (String name : model.getTrait(TsvFormatTrait.class).getConfiguration().getPathPropertyNames()) {
+            PropertyDeclaration prop = model.findPropertyDeclaration(name);
+            if (prop == null || prop.getTrait(TsvFieldTrait.class) != null) {
+                throw new IOException(MessageFormat.format(
+                        "Path property must be a property without @directio.tsv.* attributes: {0}.{1}",
+                        model.getName().identifier,
+                        name));
+            }
+            Type type = prop.getType();
+            if ((type instanceof BasicType) == false
+                    || PARTITION_TYPES.contains(((BasicType) type).getKind()) == false) {
+                throw new IOException(MessageFormat.format(
+                        "Type \"{0}\" can not be mapped from paths (must be one of {3}): {1}.{2}",
+                        type,
+                        prop.getOwner().getName().identifier,
+                        prop.getName().identifier,
+                        PARTITION_TYPES));
+            }
+        }
+    }
+
+    private void checkSortProperty(ModelDeclaration model) throws IOException {
+        assert model != null;
+        String name = model.getTrait(TsvFormatTrait.class).getConfiguration().getSortPropertyName();
+        if (name == null) {
+            return;
+        }
+        PropertyDeclaration prop = model.findPropertyDeclaration(name);
+        if (prop == null || isValueField(model, prop) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Sort property must be a TSV field: {0}.{1}",
+                    model.getName().identifier,
+                    name));
+        }
+        Type type = prop.getType();
+        if ((type instanceof BasicType) == false
+                || SORT_TYPES.contains(((BasicType) type).getKind()) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Type \"{0}\" can not be used for sort keys (must be one of {3}): {1}.{2}",
+                    type,
+                    prop.getOwner().getName().identifier,
+                    prop.getName().identifier,
+                    SORT_TYPES));
+        }
+    }
+
+    static boolean isValueField(ModelDeclaration model, PropertyDeclaration property) {
+        assert model != null;
+        assert property != null;
+        return getKind(model, property) == Kind.VALUE;
+    }
+
+    static Kind getKind(ModelDeclaration model, PropertyDeclaration property) {
+        assert model != null;
         assert property != null;
-        return TsvFieldTrait.getKind(property, Kind.VALUE) == Kind.VALUE;
+        if (isPathField(model, property)) {
+            // path properties are not TSV fields
+            return Kind.IGNORE;
+        }
+        return TsvFieldTrait.getKind(property, Kind.VALUE);
+    }
+
+    static boolean isPathField(ModelDeclaration model, PropertyDeclaration property) {
+        assert model != null;
+        assert property != null;
+        Configuration conf = model.getTrait(TsvFormatTrait.class).getConfiguration();
+        return conf.getPathPropertyNames().contains(property.getName().identifier);
     }
 
     private static final class FormatGenerator {
@@ -182,16 +436,30 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
 
         private static final String NAME_READER = "RecordReader";
 
+        private static final String NAME_CODEC = "CODEC";
+
+        private static final String NAME_PATH_PATTERN = "PATH_PATTERN";
+
+        private static final String NAME_PATH_VALUES = "pathValues";
+
+        private static final String NAME_VIOLATIONS = "violations";
+
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+
         private static final String NAME_WRITER = "RecordWriter";
 
+        private static final String NAME_STREAM_FORMAT = "StreamFormat";
+
+        private static final String NAME_CONFIGURATION = "configuration";
+
         private static final Map<String, String> CODEC_SHORT_NAMES;
         static {
             Map<String, String> map = new HashMap<String, String>();
-            map.put("gzip", "org.apache.hadoop.io.compress.GzipCodec");
+            map.put(Configuration.CODEC_GZIP, Configuration.CODEC_GZIP_CLASS);
             map.put("deflate", "org.apache.hadoop.io.compress.DeflateCodec");
             map.put("bzip2", "org.apache.hadoop.io.compress.BZip2Codec");
             map.put("snappy", "org.apache.hadoop.io.compress.SnappyCodec");
-            CODEC_SHORT_NAMES = map;
+            CODEC_SHORT_NAMES = Collections.unmodifiableMap(map);
         }
 
         private final EmitContext context;
@@ -221,27 +489,278 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
         }
 
         private void emit() throws IOException {
-            ClassDeclaration decl = f.newClassDeclaration(
+            ClassDeclaration decl;
+            if (isFileFormat()) {
+                decl = f.newClassDeclaration(
+                        new JavadocBuilder(f)
+                            .text("TSV format for ")
+                            .linkType(context.resolve(model.getSymbol()))
+                            .text(getFileFormatDescription())
+                            .toJavadoc(),
+                        new AttributeBuilder(f)
+                            .Public()
+                            .Final()
+                            .toAttributes(),
+                        context.getTypeName(),
+                        f.newParameterizedType(
+                                context.resolve(RollingFileFormat.class),
+                                context.resolve(model.getSymbol())),
+                        Collections.<com.asakusafw.utils.java.model.syntax.Type>emptyList(),
+                        createRollingMembers());
+            } else {
+                decl = f.newClassDeclaration(
+                        new JavadocBuilder(f)
+                            .text("TSV format for ")
+                            .linkType(context.resolve(model.getSymbol()))
+                            .text(".")
+                            .toJavadoc(),
+                        new AttributeBuilder(f)
+                            .Public()
+                            .Final()
+                            .toAttributes(),
+                        context.getTypeName(),
+                        f.newParameterizedType(
+                                context.resolve(BinaryStreamFormat.class),
+                                context.resolve(model.getSymbol())),
+                        createStreamFormatInterfaces(),
+                        createMembers());
+            }
+            context.emit(decl);
+        }
+
+        private boolean isFileFormat() {
+            return conf.isRolling()
+                    || conf.isEnableManifest()
+                    || conf.isPartitioned()
+                    || conf.isSorted()
+                    || getBloomFilterProperties().isEmpty() == false;
+        }
+
+        private String getFileFormatDescription() {
+            if (conf.isPartitioned()) {
+                return ", which writes the output into value-partitioned directories.";
+            } else if (conf.isRolling()) {
+                return ", which splits the output into numbered part files.";
+            } else if (conf.isEnableManifest()) {
+                return ", which writes a manifest beside each output file.";
+            } else if (conf.isSorted()) {
+                return ", which sorts records in each output file.";
+            } else {
+                return ", which writes Bloom filters beside each output file.";
+            }
+        }
+
+        private List<PropertyDeclaration> getBloomFilterProperties() {
+            List<PropertyDeclaration> results = Lists.create();
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                if (isValueField(model, property) && TsvFieldTrait.isBloomFilter(property)) {
+                    results.add(property);
+                }
+            }
+            return results;
+        }
+
+        private List<TypeBodyDeclaration> createRollingMembers() {
+            List<Expression> arguments = Lists.create();
+            arguments.add(new TypeBuilder(f, f.newNamedType(f.newSimpleName(NAME_STREAM_FORMAT)))
+                    .newObject()
+                    .toExpression());
+            arguments.add(Models.toLiteral(f, conf.getMaxFileSize()));
+            arguments.add(Models.toLiteral(f, conf.getMaxRecords()));
+            List<PropertyDeclaration> bloomFilters = getBloomFilterProperties();
+            List<PropertyDeclaration> partitions = getPartitionProperties();
+            if (conf.isEnableManifest() || bloomFilters.isEmpty() == false || partitions.isEmpty() == false) {
+                arguments.add(Models.toLiteral(f, conf.isEnableManifest()));
+                arguments.add(conf.getCodecName() == null
+                        ? Models.toNullLiteral(f)
+                        : Models.toLiteral(f, conf.getCodecName()));
+            }
+            if (partitions.isEmpty()) {
+                arguments.addAll(toFieldNameLiterals(bloomFilters));
+            } else {
+                arguments.add(toStringArray(toFieldNameLiterals(bloomFilters)));
+                arguments.add(toStringArray(toFieldNameLiterals(partitions)));
+                arguments.add(Models.toLiteral(f, conf.getMaxOpenPartitions()));
+            }
+            List<TypeBodyDeclaration> results = Lists.create();
+            results.add(f.newConstructorDeclaration(
                     new JavadocBuilder(f)
-                        .text("TSV format for ")
-                        .linkType(context.resolve(model.getSymbol()))
-                        .text(".")
+                        .text("Creates a new instance.")
                         .toJavadoc(),
                     new AttributeBuilder(f)
                         .Public()
-                        .Final()
                         .toAttributes(),
                     context.getTypeName(),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Arrays.asList(f.newSuperConstructorInvocation(
+                            arguments.toArray(new Expression[arguments.size()])))));
+            if (bloomFilters.isEmpty() == false) {
+                results.add(createAddBloomFilterKeys(bloomFilters));
+            }
+            if (partitions.isEmpty() == false) {
+                results.add(createFillPartitionKeys(partitions));
+            }
+            if (conf.isSorted()) {
+                results.add(createGetSortKey());
+                if (conf.getIndexInterval() > 0) {
+                    results.add(createGetIndexInterval());
+                }
+            }
+            results.add(f.newClassDeclaration(
+                    new JavadocBuilder(f)
+                        .text("TSV format for each part file.")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    f.newSimpleName(NAME_STREAM_FORMAT),
                     f.newParameterizedType(
                             context.resolve(BinaryStreamFormat.class),
                             context.resolve(model.getSymbol())),
-                    Collections.<com.asakusafw.utils.java.model.syntax.Type>emptyList(),
-                    createMembers());
-            context.emit(decl);
+                    createStreamFormatInterfaces(),
+                    createMembers()));
+            return results;
+        }
+
+        private List<PropertyDeclaration> getPartitionProperties() {
+            List<PropertyDeclaration> results = Lists.create();
+            for (String name : conf.getPartitionPropertyNames()) {
+                PropertyDeclaration property = model.findPropertyDeclaration(name);
+                assert property != null;
+                results.add(property);
+            }
+            return results;
+        }
+
+        private List<Expression> toFieldNameLiterals(List<PropertyDeclaration> properties) {
+            List<Expression> results = Lists.create();
+            for (PropertyDeclaration property : properties) {
+                results.add(Models.toLiteral(f, TsvFieldTrait.getFieldName(property)));
+            }
+            return results;
+        }
+
+        private Expression toStringArray(List<Expression> elements) {
+            return f.newArrayCreationExpression(
+                    f.newArrayType(context.resolve(String.class)),
+                    Collections.<Expression>emptyList(),
+                    f.newArrayInitializer(elements));
+        }
+
+        private MethodDeclaration createGetSortKey() {
+            SimpleName object = f.newSimpleName("model");
+            PropertyDeclaration property = model.findPropertyDeclaration(conf.getSortPropertyName());
+            assert property != null;
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Protected()
+                        .toAttributes(),
+                    new TypeBuilder(f, context.resolve(ValueOption.class))
+                        .parameterize(f.newWildcard(WildcardBoundKind.UNBOUNDED, null))
+                        .toType(),
+                    f.newSimpleName("getSortKey"),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(model.getSymbol()), object)),
+                    Arrays.asList(new ExpressionBuilder(f, object)
+                        .method(context.getOptionGetterName(property))
+                        .toReturnStatement()));
+        }
+
+        private MethodDeclaration createGetIndexInterval() {
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Protected()
+                        .toAttributes(),
+                    context.resolve(int.class),
+                    f.newSimpleName("getIndexInterval"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Arrays.asList(new ExpressionBuilder(f, Models.toLiteral(f, conf.getIndexInterval()))
+                        .toReturnStatement()));
+        }
+
+        private MethodDeclaration createFillPartitionKeys(List<PropertyDeclaration> properties) {
+            SimpleName object = f.newSimpleName("model");
+            SimpleName keys = f.newSimpleName("keys");
+            List<Statement> statements = Lists.create();
+            for (int i = 0, n = properties.size(); i < n; i++) {
+                Expression option = new ExpressionBuilder(f, object)
+                    .method(context.getOptionGetterName(properties.get(i)))
+                    .toExpression();
+                statements.add(new ExpressionBuilder(f, f.newArrayAccessExpression(keys, Models.toLiteral(f, i)))
+                    .assignFrom(option)
+                    .toStatement());
+            }
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Protected()
+                        .toAttributes(),
+                    context.resolve(void.class),
+                    f.newSimpleName("fillPartitionKeys"),
+                    Arrays.asList(
+                            f.newFormalParameterDeclaration(context.resolve(model.getSymbol()), object),
+                            f.newFormalParameterDeclaration(
+                                    f.newArrayType(new TypeBuilder(f, context.resolve(ValueOption.class))
+                                        .parameterize(f.newWildcard(WildcardBoundKind.UNBOUNDED, null))
+                                        .toType()),
+                                    keys)),
+                    statements);
+        }
+
+        private MethodDeclaration createAddBloomFilterKeys(List<PropertyDeclaration> properties) {
+            SimpleName object = f.newSimpleName("model");
+            SimpleName filters = f.newSimpleName("filters");
+            List<Statement> statements = Lists.create();
+            for (int i = 0, n = properties.size(); i < n; i++) {
+                Expression option = new ExpressionBuilder(f, object)
+                    .method(context.getOptionGetterName(properties.get(i)))
+                    .toExpression();
+                statements.add(new ExpressionBuilder(f, f.newArrayAccessExpression(filters, Models.toLiteral(f, i)))
+                    .method("add", option)
+                    .toStatement());
+            }
+            return f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Protected()
+                        .toAttributes(),
+                    context.resolve(void.class),
+                    f.newSimpleName("addBloomFilterKeys"),
+                    Arrays.asList(
+                            f.newFormalParameterDeclaration(context.resolve(model.getSymbol()), object),
+                            f.newFormalParameterDeclaration(
+                                    f.newArrayType(context.resolve(TsvBloomFilter.class)),
+                                    filters)),
+                    statements);
+        }
+
+        private List<com.asakusafw.utils.java.model.syntax.Type> createStreamFormatInterfaces() {
+            if (isParallelCompression()) {
+                // receives the task configuration, which decides the number of compression threads
+                return Collections.<com.asakusafw.utils.java.model.syntax.Type>singletonList(
+                        context.resolve(Models.toName(f, "org.apache.hadoop.conf.Configurable")));
+            }
+            return Collections.<com.asakusafw.utils.java.model.syntax.Type>emptyList();
         }
 
         private List<TypeBodyDeclaration> createMembers() {
             List<TypeBodyDeclaration> results = Lists.create();
+            if (isCodecRequired()) {
+                results.add(createCodecField());
+            }
+            if (isParallelCompression()) {
+                results.addAll(createConfigurableMembers());
+            }
+            if (hasPathPattern()) {
+                results.add(createPathPatternField());
+            }
             results.add(createGetSupportedType());
             results.add(createGetPreferredFragmentSize());
             results.add(createGetMinimumFragmentSize());
@@ -256,6 +775,91 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
             return results;
         }
 
+        private boolean isCodecRequired() {
+            if (isFastMode() || conf.isAutoCompression() || conf.isLz4Compression()) {
+                return false;
+            }
+            if (isGzip()) {
+                // parallel gzip streams do not use the codec for both inputs and outputs
+                return conf.isParallelCompression() == false;
+            }
+            return true;
+        }
+
+        private List<TypeBodyDeclaration> createConfigurableMembers() {
+            com.asakusafw.utils.java.model.syntax.Type type =
+                    context.resolve(Models.toName(f, "org.apache.hadoop.conf.Configuration"));
+            SimpleName field = f.newSimpleName(NAME_CONFIGURATION);
+            SimpleName parameter = f.newSimpleName("conf");
+            List<TypeBodyDeclaration> results = Lists.create();
+            results.add(f.newFieldDeclaration(
+                    new JavadocBuilder(f)
+                        .text("The task configuration.")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Private()
+                        .toAttributes(),
+                    type,
+                    field,
+                    null));
+            results.add(f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    context.resolve(void.class),
+                    f.newSimpleName("setConf"),
+                    Arrays.asList(f.newFormalParameterDeclaration(type, parameter)),
+                    Arrays.asList(new ExpressionBuilder(f, f.newThis())
+                        .field(field)
+                        .assignFrom(parameter)
+                        .toStatement())));
+            results.add(f.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(f)
+                        .annotation(context.resolve(Override.class))
+                        .Public()
+                        .toAttributes(),
+                    type,
+                    f.newSimpleName("getConf"),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Arrays.asList(new ExpressionBuilder(f, field).toReturnStatement())));
+            return results;
+        }
+
+        private FieldDeclaration createCodecField() {
+            return f.newFieldDeclaration(
+                    new JavadocBuilder(f)
+                        .text("The shared compression codec.")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    context.resolve(Models.toName(f, "org.apache.hadoop.io.compress.CompressionCodec")),
+                    f.newSimpleName(NAME_CODEC),
+                    createCompressionCodec());
+        }
+
+        private FieldDeclaration createPathPatternField() {
+            return f.newFieldDeclaration(
+                    new JavadocBuilder(f)
+                        .text("The pattern of input directories.")
+                        .toJavadoc(),
+                    new AttributeBuilder(f)
+                        .Private()
+                        .Static()
+                        .Final()
+                        .toAttributes(),
+                    context.resolve(TsvPathPattern.class),
+                    f.newSimpleName(NAME_PATH_PATTERN),
+                    new TypeBuilder(f, context.resolve(TsvPathPattern.class))
+                        .newObject(Models.toLiteral(f, conf.getPathPattern()))
+                        .toExpression());
+        }
+
         private MethodDeclaration createGetSupportedType() {
             MethodDeclaration decl = f.newMethodDeclaration(
                     null,
@@ -291,8 +895,7 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
         }
 
         private MethodDeclaration createGetMinimumFragmentSize() {
-            boolean fastMode = isFastMode();
-            Expression value = fastMode
+            Expression value = isSplittable()
                 ? new TypeBuilder(f, context.resolve(Long.class)).field("MAX_VALUE").toExpression()
                 : Models.toLiteral(f, -1L);
             return f.newMethodDeclaration(
@@ -311,6 +914,10 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
             return conf.getCodecName() == null;
         }
 
+        private boolean isSplittable() {
+            return isFastMode() || conf.isLz4Compression();
+        }
+
         private MethodDeclaration createCreateReader() {
             SimpleName dataType = f.newSimpleName("dataType");
             SimpleName path = f.newSimpleName("path");
@@ -324,7 +931,7 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
             Expression isNotHead = new ExpressionBuilder(f, offset)
                 .apply(InfixOperator.GREATER, Models.toLiteral(f, 0L))
                 .toExpression();
-            if (isFastMode() == false) {
+            if (isSplittable() == false) {
                 statements.add(f.newIfStatement(
                         isNotHead,
                         f.newBlock(new TypeBuilder(f, context.resolve(IllegalArgumentException.class))
@@ -341,14 +948,26 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     null));
             if (isFastMode()) {
                 statements.add(new ExpressionBuilder(f, fragmentInput)
-                    .assignFrom(new TypeBuilder(f, context.resolve(DelimiterRangeInputStream.class))
-                        .newObject(
-                                blessInputStream(stream),
-                                Models.toLiteral(f, '\n'),
+                    .assignFrom(new TypeBuilder(f, context.resolve(MappedFileInputStream.class))
+                        .method("wrap",
+                                path,
+                                stream,
+                                offset,
                                 fragmentSize,
+                                Models.toLiteral(f, getRecordTerminator()),
                                 isNotHead)
                         .toExpression())
                     .toStatement());
+            } else if (conf.isLz4Compression()) {
+                statements.add(new ExpressionBuilder(f, fragmentInput)
+                    .assignFrom(new TypeBuilder(f, context.resolve(Lz4FrameInputStream.class))
+                        .newObject(
+                                stream,
+                                fragmentSize,
+                                isNotHead,
+                                Models.toLiteral(f, getRecordTerminator()))
+                        .toExpression())
+                    .toStatement());
             } else {
                 statements.add(new ExpressionBuilder(f, fragmentInput)
                     .assignFrom(blessInputStream(stream))
@@ -365,20 +984,69 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                                 .toStatement())));
             }
 
+            SimpleName violations = f.newSimpleName(NAME_VIOLATIONS);
+            if (hasNonNullable()) {
+                statements.add(new TypeBuilder(f, context.resolve(NullViolationCounter.class))
+                    .newObject(path)
+                    .toLocalVariableDeclaration(context.resolve(NullViolationCounter.class), violations));
+            }
             SimpleName parser = f.newSimpleName("parser");
-            statements.add(new TypeBuilder(f, context.resolve(TsvParser.class))
-                .newObject(new TypeBuilder(f, context.resolve(InputStreamReader.class))
-                        .newObject(fragmentInput, Models.toLiteral(f, conf.getCharsetName()))
-                        .toExpression())
-                .toLocalVariableDeclaration(context.resolve(TsvParser.class), parser));
+            if (isUtf8()) {
+                List<Expression> parserArguments = Lists.create();
+                parserArguments.add(fragmentInput);
+                parserArguments.add(hasNonNullable() ? violations : Models.toNullLiteral(f));
+                if (conf.isDefaultSeparators() == false) {
+                    parserArguments.add(Models.toLiteral(f, conf.getFieldSeparator()));
+                    parserArguments.add(Models.toLiteral(f, conf.getLineSeparator()));
+                }
+                statements.add(new TypeBuilder(f, context.resolve(Utf8TsvParser.class))
+                    .newObject(parserArguments)
+                    .toLocalVariableDeclaration(context.resolve(Utf8TsvParser.class), parser));
+            } else {
+                Expression reader = new TypeBuilder(f, context.resolve(InputStreamReader.class))
+                    .newObject(fragmentInput, Models.toLiteral(f, conf.getCharsetName()))
+                    .toExpression();
+                if (conf.isDefaultSeparators() == false) {
+                    reader = new TypeBuilder(f, context.resolve(TsvSeparatorReader.class))
+                        .newObject(
+                                reader,
+                                Models.toLiteral(f, conf.getFieldSeparator()),
+                                Models.toLiteral(f, conf.getLineSeparator()))
+                        .toExpression();
+                }
+                statements.add(new TypeBuilder(f, context.resolve(TsvParser.class))
+                    .newObject(reader)
+                    .toLocalVariableDeclaration(context.resolve(TsvParser.class), parser));
+            }
 
             List<Expression> arguments = Lists.create();
             arguments.add(parser);
+            if (hasNonNullable()) {
+                arguments.add(violations);
+            }
             if (hasFileName()) {
                 arguments.add(new TypeBuilder(f, context.resolve(StringOption.class))
                         .newObject(path)
                         .toExpression());
             }
+            if (hasPathPattern()) {
+                // extracts the path values only once for each file
+                SimpleName pathValues = f.newSimpleName(NAME_PATH_VALUES);
+                statements.add(new TypeBuilder(f, context.resolve(model.getSymbol()))
+                    .newObject()
+                    .toLocalVariableDeclaration(context.resolve(model.getSymbol()), pathValues));
+                List<Expression> fillArguments = Lists.create();
+                fillArguments.add(path);
+                for (PropertyDeclaration property : getPathProperties()) {
+                    fillArguments.add(new ExpressionBuilder(f, pathValues)
+                        .method(context.getOptionGetterName(property))
+                        .toExpression());
+                }
+                statements.add(new ExpressionBuilder(f, f.newSimpleName(NAME_PATH_PATTERN))
+                    .method("fill", fillArguments.toArray(new Expression[fillArguments.size()]))
+                    .toStatement());
+                arguments.add(pathValues);
+            }
             statements.add(new TypeBuilder(f, f.newNamedType(f.newSimpleName(NAME_READER)))
                 .newObject(arguments)
                 .toReturnStatement());
@@ -419,12 +1087,40 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
             statements.add(createNullCheck(path));
             statements.add(createNullCheck(stream));
 
+            SimpleName violations = f.newSimpleName(NAME_VIOLATIONS);
+            if (hasNonNullable()) {
+                statements.add(new TypeBuilder(f, context.resolve(NullViolationCounter.class))
+                    .newObject(path)
+                    .toLocalVariableDeclaration(context.resolve(NullViolationCounter.class), violations));
+            }
             SimpleName emitter = f.newSimpleName("emitter");
-            statements.add(new TypeBuilder(f, context.resolve(TsvEmitter.class))
-                .newObject(new TypeBuilder(f, context.resolve(OutputStreamWriter.class))
-                        .newObject(blessOutputStream(stream), Models.toLiteral(f, conf.getCharsetName()))
-                        .toExpression())
-                .toLocalVariableDeclaration(context.resolve(TsvEmitter.class), emitter));
+            if (isUtf8()) {
+                List<Expression> emitterArguments = Lists.create();
+                emitterArguments.add(createOutputStream(stream));
+                emitterArguments.add(hasNonNullable() ? violations : Models.toNullLiteral(f));
+                if (conf.isDefaultSeparators() == false) {
+                    emitterArguments.add(Models.toLiteral(f, conf.getFieldSeparator()));
+                    emitterArguments.add(Models.toLiteral(f, conf.getLineSeparator()));
+                }
+                statements.add(new TypeBuilder(f, context.resolve(Utf8TsvEmitter.class))
+                    .newObject(emitterArguments)
+                    .toLocalVariableDeclaration(context.resolve(Utf8TsvEmitter.class), emitter));
+            } else {
+                Expression writer = new TypeBuilder(f, context.resolve(OutputStreamWriter.class))
+                    .newObject(createOutputStream(stream), Models.toLiteral(f, conf.getCharsetName()))
+                    .toExpression();
+                if (conf.isDefaultSeparators() == false) {
+                    writer = new TypeBuilder(f, context.resolve(TsvSeparatorWriter.class))
+                        .newObject(
+                                writer,
+                                Models.toLiteral(f, conf.getFieldSeparator()),
+                                Models.toLiteral(f, conf.getLineSeparator()))
+                        .toExpression();
+                }
+                statements.add(new TypeBuilder(f, context.resolve(TsvEmitter.class))
+                    .newObject(writer)
+                    .toLocalVariableDeclaration(context.resolve(TsvEmitter.class), emitter));
+            }
 
             if (conf.isEnableHeader()) {
                 statements.add(new ExpressionBuilder(f, f.newThis())
@@ -432,8 +1128,13 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                                 .toStatement());
             }
 
+            List<Expression> arguments = Lists.create();
+            arguments.add(emitter);
+            if (hasNonNullable()) {
+                arguments.add(violations);
+            }
             statements.add(new TypeBuilder(f, f.newNamedType(f.newSimpleName(NAME_WRITER)))
-                .newObject(emitter)
+                .newObject(arguments)
                 .toReturnStatement());
 
             MethodDeclaration decl = f.newMethodDeclaration(
@@ -472,7 +1173,7 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     .toLocalVariableDeclaration(context.resolve(StringOption.class), buf));
 
             for (PropertyDeclaration property : model.getDeclaredProperties()) {
-                switch (TsvFieldTrait.getKind(property, Kind.VALUE)) {
+                switch (getKind(model, property)) {
                 case VALUE:
                     statements.add(new ExpressionBuilder(f, buf)
                             .method("modify", Models.toLiteral(f, TsvFieldTrait.getFieldName(property)))
@@ -498,7 +1199,7 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     Collections.<TypeParameterDeclaration>emptyList(),
                     context.resolve(void.class),
                     f.newSimpleName(NAME_ADD_HEADER),
-                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(TsvEmitter.class), emitter)),
+                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(getEmitterType()), emitter)),
                     0,
                     Arrays.asList(context.resolve(IOException.class)),
                     f.newBlock(statements));
@@ -520,7 +1221,7 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     f.newBlock(f.newBreakStatement())));
             body.add(f.newIfStatement(
                     new ExpressionBuilder(f, c)
-                        .apply(InfixOperator.EQUALS, Models.toLiteral(f, '\n'))
+                        .apply(InfixOperator.EQUALS, Models.toLiteral(f, getRecordTerminator()))
                         .toExpression(),
                     f.newBlock(f.newBreakStatement())));
             MethodDeclaration decl = f.newMethodDeclaration(
@@ -539,25 +1240,84 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
         }
 
         private Expression blessInputStream(SimpleName stream) {
-            Expression codec = createCompressionCodec();
-            if (codec == null) {
+            if (conf.isAutoCompression()) {
+                return new TypeBuilder(f, context.resolve(CompressionDetectingInputStream.class))
+                    .newObject(stream)
+                    .toExpression();
+            }
+            if (isGzip() && conf.isParallelCompression()) {
+                return new TypeBuilder(f, context.resolve(ParallelGzipInputStream.class))
+                    .newObject(stream, f.newSimpleName(NAME_CONFIGURATION))
+                    .toExpression();
+            }
+            if (isFastMode()) {
                 return stream;
             }
-            return new ExpressionBuilder(f, codec)
-                .method("createInputStream", stream)
+            return new TypeBuilder(f, context.resolve(CodecPoolSupport.class))
+                .method("createInputStream", f.newSimpleName(NAME_CODEC), stream)
                 .toExpression();
         }
 
+        private Expression createOutputStream(SimpleName stream) {
+            Expression result = blessOutputStream(stream);
+            if (conf.getAsyncFlushBuffers() > 0) {
+                result = new TypeBuilder(f, context.resolve(AsyncFlushOutputStream.class))
+                    .newObject(result, Models.toLiteral(f, conf.getAsyncFlushBuffers()))
+                    .toExpression();
+            }
+            if (conf.isEnableManifest() || conf.getMaxFileSize() > 0) {
+                // counts above the asynchronous buffers, so that rolling parts can check the written size
+                result = new TypeBuilder(f, context.resolve(CountingOutputStream.class))
+                    .method("countUncompressed", stream, result)
+                    .toExpression();
+            }
+            return result;
+        }
+
         private Expression blessOutputStream(SimpleName stream) {
-            Expression codec = createCompressionCodec();
-            if (codec == null) {
+            if (conf.isAutoCompression()) {
+                long throughput = conf.getCompressionThroughput();
+                Expression result = new TypeBuilder(f, context.resolve(AdaptiveCompressionOutputStream.class))
+                    .newObject(
+                            stream,
+                            Models.toLiteral(f, conf.getCompressionThreshold()),
+                            Models.toLiteral(f, throughput > 0 ? throughput * 1024 * 1024 : -1L),
+                            f.newSimpleName(NAME_CONFIGURATION))
+                    .toExpression();
+                if (conf.isEnableManifest()) {
+                    // the manifests record the codec which is chosen while writing each file
+                    result = new TypeBuilder(f, context.resolve(CountingOutputStream.class))
+                        .method("trackCompression", stream, result)
+                        .toExpression();
+                }
+                return result;
+            }
+            if (isGzip() && conf.isParallelCompression()) {
+                return new TypeBuilder(f, context.resolve(ParallelGzipOutputStream.class))
+                    .newObject(stream, f.newSimpleName(NAME_CONFIGURATION))
+                    .toExpression();
+            }
+            if (conf.isLz4Compression()) {
+                return new TypeBuilder(f, context.resolve(Lz4FrameOutputStream.class))
+                    .newObject(stream)
+                    .toExpression();
+            }
+            if (isFastMode()) {
                 return stream;
             }
-            return new ExpressionBuilder(f, codec)
-                .method("createOutputStream", stream)
+            return new TypeBuilder(f, context.resolve(CodecPoolSupport.class))
+                .method("createOutputStream", f.newSimpleName(NAME_CODEC), stream)
                 .toExpression();
         }
 
+        private boolean isGzip() {
+            return conf.isGzipCompression();
+        }
+
+        private boolean isParallelCompression() {
+            return conf.isAutoCompression() || (isGzip() && conf.isParallelCompression());
+        }
+
         private Expression createCompressionCodec() {
             String codecName = conf.getCodecName();
             if (codecName == null) {
@@ -593,19 +1353,42 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
 
         private ClassDeclaration createReaderClass() {
             SimpleName parser = f.newSimpleName("parser");
+            SimpleName violations = f.newSimpleName(NAME_VIOLATIONS);
             SimpleName path = f.newSimpleName("path");
+            Class<?> parserType = isUtf8() ? Utf8TsvParser.class : TsvParser.class;
 
             List<TypeBodyDeclaration> members = Lists.create();
             List<ExpressionStatement> constructorStatements = Lists.create();
             List<FormalParameterDeclaration> constructorParameters = Lists.create();
-            members.add(createPrivateField(TsvParser.class, parser));
-            constructorParameters.add(f.newFormalParameterDeclaration(context.resolve(TsvParser.class), parser));
+            members.add(createPrivateField(parserType, parser));
+            constructorParameters.add(f.newFormalParameterDeclaration(context.resolve(parserType), parser));
             constructorStatements.add(mapField(parser));
+            if (hasNonNullable()) {
+                members.add(createPrivateField(NullViolationCounter.class, violations));
+                constructorParameters.add(f.newFormalParameterDeclaration(
+                        context.resolve(NullViolationCounter.class), violations));
+                constructorStatements.add(mapField(violations));
+            }
             if (hasFileName()) {
                 members.add(createPrivateField(StringOption.class, path));
                 constructorParameters.add(f.newFormalParameterDeclaration(context.resolve(StringOption.class), path));
                 constructorStatements.add(mapField(path));
             }
+            SimpleName pathValues = f.newSimpleName(NAME_PATH_VALUES);
+            if (hasPathPattern()) {
+                members.add(f.newFieldDeclaration(
+                        null,
+                        new AttributeBuilder(f)
+                            .Private()
+                            .Final()
+                            .toAttributes(),
+                        context.resolve(model.getSymbol()),
+                        pathValues,
+                        null));
+                constructorParameters.add(f.newFormalParameterDeclaration(
+                        context.resolve(model.getSymbol()), pathValues));
+                constructorStatements.add(mapField(pathValues));
+            }
             members.add(f.newConstructorDeclaration(
                     null,
                     new AttributeBuilder(f).toAttributes(),
@@ -623,13 +1406,9 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     f.newBlock(new ExpressionBuilder(f, Models.toLiteral(f, false))
                         .toReturnStatement())));
             for (PropertyDeclaration property : model.getDeclaredProperties()) {
-                switch (TsvFieldTrait.getKind(property, Kind.VALUE)) {
+                switch (getKind(model, property)) {
                 case VALUE:
-                    statements.add(new ExpressionBuilder(f, parser)
-                        .method("fill", new ExpressionBuilder(f, object)
-                            .method(context.getOptionGetterName(property))
-                            .toExpression())
-                        .toStatement());
+                    statements.addAll(createFillStatements(parser, violations, object, property));
                     break;
                 case FILE_NAME:
                     statements.add(new ExpressionBuilder(f, object)
@@ -641,6 +1420,15 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     break;
                 }
             }
+            if (hasPathPattern()) {
+                for (PropertyDeclaration property : getPathProperties()) {
+                    statements.add(new ExpressionBuilder(f, object)
+                        .method(context.getOptionSetterName(property), new ExpressionBuilder(f, pathValues)
+                            .method(context.getOptionGetterName(property))
+                            .toExpression())
+                        .toStatement());
+                }
+            }
             statements.add(new ExpressionBuilder(f, parser)
                 .method("endRecord")
                 .toStatement());
@@ -671,9 +1459,7 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     Collections.<FormalParameterDeclaration>emptyList(),
                     0,
                     Arrays.asList(context.resolve(IOException.class)),
-                    f.newBlock(new ExpressionBuilder(f, parser)
-                        .method("close")
-                        .toStatement())));
+                    f.newBlock(createCloseStatements(parser, violations))));
 
             return f.newClassDeclaration(
                     null,
@@ -692,24 +1478,32 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
 
         private ClassDeclaration createWriterClass() {
             SimpleName emitter = f.newSimpleName("emitter");
+            SimpleName violations = f.newSimpleName(NAME_VIOLATIONS);
             List<TypeBodyDeclaration> members = Lists.create();
-            members.add(createPrivateField(TsvEmitter.class, emitter));
+            List<ExpressionStatement> constructorStatements = Lists.create();
+            List<FormalParameterDeclaration> constructorParameters = Lists.create();
+            Class<?> emitterType = getEmitterType();
+            members.add(createPrivateField(emitterType, emitter));
+            constructorParameters.add(f.newFormalParameterDeclaration(context.resolve(emitterType), emitter));
+            constructorStatements.add(mapField(emitter));
+            if (hasNonNullable()) {
+                members.add(createPrivateField(NullViolationCounter.class, violations));
+                constructorParameters.add(f.newFormalParameterDeclaration(
+                        context.resolve(NullViolationCounter.class), violations));
+                constructorStatements.add(mapField(violations));
+            }
             members.add(f.newConstructorDeclaration(
                     null,
                     new AttributeBuilder(f).toAttributes(),
                     f.newSimpleName(NAME_WRITER),
-                    Arrays.asList(f.newFormalParameterDeclaration(context.resolve(TsvEmitter.class), emitter)),
-                    Arrays.asList(mapField(emitter))));
+                    constructorParameters,
+                    constructorStatements));
 
             SimpleName object = f.newSimpleName("object");
             List<Statement> statements = Lists.create();
             for (PropertyDeclaration property : model.getDeclaredProperties()) {
-                if (isValueField(property)) {
-                    statements.add(new ExpressionBuilder(f, emitter)
-                        .method("emit", new ExpressionBuilder(f, object)
-                            .method(context.getOptionGetterName(property))
-                            .toExpression())
-                        .toStatement());
+                if (isValueField(model, property)) {
+                    statements.addAll(createEmitStatements(emitter, violations, object, property));
                 }
             }
             statements.add(new ExpressionBuilder(f, emitter)
@@ -741,9 +1535,7 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     Collections.<FormalParameterDeclaration>emptyList(),
                     0,
                     Arrays.asList(context.resolve(IOException.class)),
-                    f.newBlock(new ExpressionBuilder(f, emitter)
-                        .method("close")
-                        .toStatement())));
+                    f.newBlock(createCloseStatements(emitter, violations))));
 
             return f.newClassDeclaration(
                     null,
@@ -760,156 +1552,152 @@ public class TsvFormatEmitter extends JavaDataModelDriver {
                     members);
         }
 
-        private boolean hasFileName() {
-            for (PropertyDeclaration property : model.getDeclaredProperties()) {
-                if (TsvFieldTrait.getKind(property, Kind.VALUE) == Kind.FILE_NAME) {
-                    return true;
-                }
+        private List<Statement> createFillStatements(
+                SimpleName parser,
+                SimpleName violations,
+                SimpleName object,
+                PropertyDeclaration property) {
+            Expression option = new ExpressionBuilder(f, object)
+                .method(context.getOptionGetterName(property))
+                .toExpression();
+            if (TsvFieldTrait.isNullable(property)) {
+                return Collections.singletonList(new ExpressionBuilder(f, parser)
+                    .method("fill", option)
+                    .toStatement());
             }
-            return false;
+            if (isUtf8()) {
+                return Collections.singletonList(new ExpressionBuilder(f, parser)
+                    .method("fillNonNull", option, Models.toLiteral(f, TsvFieldTrait.getFieldName(property)))
+                    .toStatement());
+            }
+            List<Statement> results = Lists.create();
+            results.add(new ExpressionBuilder(f, parser)
+                .method("fill", option)
+                .toStatement());
+            results.add(createNullViolationCheck(violations, object, property));
+            return results;
         }
 
-        private ExpressionStatement mapField(SimpleName name) {
-            return new ExpressionBuilder(f, f.newThis())
-                .field(name)
-                .assignFrom(name)
-                .toStatement();
+        private List<Statement> createEmitStatements(
+                SimpleName emitter,
+                SimpleName violations,
+                SimpleName object,
+                PropertyDeclaration property) {
+            Expression option = new ExpressionBuilder(f, object)
+                .method(context.getOptionGetterName(property))
+                .toExpression();
+            if (TsvFieldTrait.isNullable(property)) {
+                return Collections.singletonList(new ExpressionBuilder(f, emitter)
+                    .method("emit", option)
+                    .toStatement());
+            }
+            if (isUtf8()) {
+                return Collections.singletonList(new ExpressionBuilder(f, emitter)
+                    .method("emitNonNull", option, Models.toLiteral(f, TsvFieldTrait.getFieldName(property)))
+                    .toStatement());
+            }
+            List<Statement> results = Lists.create();
+            results.add(createNullViolationCheck(violations, object, property));
+            results.add(new ExpressionBuilder(f, emitter)
+                .method("emit", option)
+                .toStatement());
+            return results;
         }
 
-        private FieldDeclaration createPrivateField(Class<?> type, SimpleName name) {
-            return f.newFieldDeclaration(
-                    null,
-                    new AttributeBuilder(f)
-                        .Private()
-                        .Final()
-                        .toAttributes(),
-                    context.resolve(type),
-                    name,
-                    null);
+        private Statement createNullViolationCheck(
+                SimpleName violations,
+                SimpleName object,
+                PropertyDeclaration property) {
+            return f.newIfStatement(
+                    new ExpressionBuilder(f, object)
+                        .method(context.getOptionGetterName(property))
+                        .method("isNull")
+                        .toExpression(),
+                    f.newBlock(new ExpressionBuilder(f, violations)
+                        .method("violation", Models.toLiteral(f, TsvFieldTrait.getFieldName(property)))
+                        .toStatement()));
         }
-    }
-
-    private static final class DescriptionGenerator {
 
-        // for reduce library dependencies
-        private static final String IMPORTER_TYPE_NAME =
-            "com.asakusafw.vocabulary.directio.DirectFileInputDescription";
-
-        // for reduce library dependencies
-        private static final String EXPORTER_TYPE_NAME =
-            "com.asakusafw.vocabulary.directio.DirectFileOutputDescription";
-
-        private final EmitContext context;
-
-        private final ModelDeclaration model;
-
-        private final com.asakusafw.utils.java.model.syntax.Type supportClass;
-
-        private final ModelFactory f;
+        private List<Statement> createCloseStatements(SimpleName resource, SimpleName violations) {
+            List<Statement> results = Lists.create();
+            results.add(new ExpressionBuilder(f, resource)
+                .method("close")
+                .toStatement());
+            if (hasNonNullable()) {
+                results.add(new ExpressionBuilder(f, violations)
+                    .method("report")
+                    .toStatement());
+            }
+            return results;
+        }
 
-        private final boolean importer;
+        private char getRecordTerminator() {
+            return TsvSeparators.getLastCharacter(conf.getLineSeparator());
+        }
 
-        private DescriptionGenerator(
-                EmitContext context,
-                ModelDeclaration model,
-                Name supportClassName,
-                boolean importer) {
-            assert context != null;
-            assert model != null;
-            assert supportClassName != null;
-            this.context = context;
-            this.model = model;
-            this.f = context.getModelFactory();
-            this.importer = importer;
-            this.supportClass = context.resolve(supportClassName);
+        private boolean isUtf8() {
+            String charsetName = conf.getCharsetName();
+            try {
+                return Charset.forName(charsetName).equals(UTF8);
+            } catch (IllegalArgumentException e) {
+                LOG.debug("unsupported charset: {}", charsetName, e);
+                return false;
+            }
         }
 
-        static void emitImporter(
-                EmitContext context,
-                ModelDeclaration model,
-                Name supportClassName) throws IOException {
-            assert context != null;
-            assert model != null;
-            assert supportClassName != null;
-            DescriptionGenerator emitter = new DescriptionGenerator(context, model, supportClassName, true);
-            emitter.emit();
+        private Class<?> getEmitterType() {
+            return isUtf8() ? Utf8TsvEmitter.class : TsvEmitter.class;
         }
 
-        static void emitExporter(
-                EmitContext context,
-                ModelDeclaration model,
-                Name supportClassName) throws IOException {
-            assert context != null;
-            assert model != null;
-            assert supportClassName != null;
-            DescriptionGenerator emitter = new DescriptionGenerator(context, model, supportClassName, false);
-            emitter.emit();
+        private boolean hasNonNullable() {
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                if (isValueField(model, property) && TsvFieldTrait.isNullable(property) == false) {
+                    return true;
+                }
+            }
+            return false;
         }
 
-        private void emit() throws IOException {
-            ClassDeclaration decl = f.newClassDeclaration(
-                    new JavadocBuilder(f)
-                        .text("An abstract implementation of ")
-                        .linkType(context.resolve(model.getSymbol()))
-                        .text(" {0} description using Direct I/O TSV",
-                                importer ? "importer" : "exporter")
-                        .text(".")
-                        .toJavadoc(),
-                    new AttributeBuilder(f)
-                        .Public()
-                        .Abstract()
-                        .toAttributes(),
-                    context.getTypeName(),
-                    context.resolve(Models.toName(f, importer ? IMPORTER_TYPE_NAME : EXPORTER_TYPE_NAME)),
-                    Collections.<com.asakusafw.utils.java.model.syntax.Type>emptyList(),
-                    createMembers());
-            context.emit(decl);
+        private boolean hasFileName() {
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                if (getKind(model, property) == Kind.FILE_NAME) {
+                    return true;
+                }
+            }
+            return false;
         }
 
-        private List<TypeBodyDeclaration> createMembers() {
-            List<TypeBodyDeclaration> results = Lists.create();
-            results.add(createGetModelType());
-            results.add(createGetStreamSupport());
-            return results;
+        private boolean hasPathPattern() {
+            return conf.getPathPattern() != null;
         }
 
-        private MethodDeclaration createGetModelType() {
-            return createGetter(
-                    new TypeBuilder(f, context.resolve(Class.class))
-                        .parameterize(f.newWildcard(
-                                WildcardBoundKind.UPPER_BOUNDED,
-                                context.resolve(model.getSymbol())))
-                        .toType(),
-                    "getModelType",
-                    f.newClassLiteral(context.resolve(model.getSymbol())));
+        private List<PropertyDeclaration> getPathProperties() {
+            List<PropertyDeclaration> results = Lists.create();
+            for (String name : conf.getPathPropertyNames()) {
+                PropertyDeclaration property = model.findPropertyDeclaration(name);
+                assert property != null;
+                results.add(property);
+            }
+            return results;
         }
 
-        private MethodDeclaration createGetStreamSupport() {
-            return createGetter(
-                    new TypeBuilder(f, context.resolve(Class.class))
-                        .parameterize(supportClass)
-                        .toType(),
-                    "getFormat",
-                    f.newClassLiteral(supportClass));
+        private ExpressionStatement mapField(SimpleName name) {
+            return new ExpressionBuilder(f, f.newThis())
+                .field(name)
+                .assignFrom(name)
+                .toStatement();
         }
 
-        private MethodDeclaration createGetter(
-                com.asakusafw.utils.java.model.syntax.Type type,
-                String name,
-                Expression value) {
-            assert type != null;
-            assert name != null;
-            assert value != null;
-            return f.newMethodDeclaration(
+        private FieldDeclaration createPrivateField(Class<?> type, SimpleName name) {
+            return f.newFieldDeclaration(
                     null,
                     new AttributeBuilder(f)
-                        .annotation(context.resolve(Override.class))
-                        .Public()
+                        .Private()
+                        .Final()
                         .toAttributes(),
-                    type,
-                    f.newSimpleName(name),
-                    Collections.<FormalParameterDeclaration>emptyList(),
-                    Arrays.asList(new ExpressionBuilder(f, value).toReturnStatement()));
+                    context.resolve(type),
+                    name,
+                    null);
         }
     }
 }
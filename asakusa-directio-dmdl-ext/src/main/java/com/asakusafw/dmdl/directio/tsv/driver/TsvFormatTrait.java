@@ -16,13 +16,19 @@
 package com.asakusafw.dmdl.directio.tsv.driver;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import com.asakusafw.dmdl.model.AstNode;
 import com.asakusafw.dmdl.semantics.Trait;
+import com.asakusafw.runtime.directio.tsv.TsvPathPattern;
+import com.asakusafw.runtime.directio.tsv.TsvSeparators;
 
 /**
  * Attributes for special TSV supported data models.
  * @since 0.5.0
+ * @version 0.6.0
  */
 public class TsvFormatTrait implements Trait<TsvFormatTrait> {
 
@@ -62,16 +68,74 @@ public class TsvFormatTrait implements Trait<TsvFormatTrait> {
     /**
      * The TSV format configuration.
      * @since 0.5.0
-     * @version 0.5.2
+     * @version 0.6.0
      */
     public static class Configuration {
 
+        /**
+         * The pseudo codec name which chooses whether to compress the output or not by its size.
+         * @since 0.6.0
+         */
+        public static final String CODEC_AUTO = "auto"; //$NON-NLS-1$
+
+        /**
+         * The codec name of the built-in LZ4 frame format, which does not require any native libraries.
+         * @since 0.6.0
+         */
+        public static final String CODEC_LZ4 = "lz4"; //$NON-NLS-1$
+
+        /**
+         * The short codec name of gzip.
+         * @since 0.6.0
+         */
+        public static final String CODEC_GZIP = "gzip"; //$NON-NLS-1$
+
+        static final String CODEC_GZIP_CLASS = "org.apache.hadoop.io.compress.GzipCodec"; //$NON-NLS-1$
+
+        /**
+         * The default maximum number of partitions which are written at the same time.
+         * @since 0.6.0
+         */
+        public static final int DEFAULT_MAX_OPEN_PARTITIONS = 16;
+
         private String charsetName = DEFAULT_CHARSET.name();
 
         private String codecName = null;
 
         private boolean enableHeader = false;
 
+        private char fieldSeparator = TsvSeparators.DEFAULT_FIELD_SEPARATOR;
+
+        private String lineSeparator = TsvSeparators.DEFAULT_LINE_SEPARATOR;
+
+        private long compressionThreshold = -1L;
+
+        private long compressionThroughput = -1L;
+
+        private long maxFileSize = -1L;
+
+        private long maxRecords = -1L;
+
+        private int asyncFlushBuffers = -1;
+
+        private boolean parallelCompression = false;
+
+        private boolean enableManifest = false;
+
+        private List<String> partitionPropertyNames = Collections.emptyList();
+
+        private int maxOpenPartitions = DEFAULT_MAX_OPEN_PARTITIONS;
+
+        private String sortPropertyName = null;
+
+        private int indexInterval = -1;
+
+        private String dataSize = null;
+
+        private String dataSizeManifest = null;
+
+        private String pathPattern = null;
+
         /**
          * Returns the charset name.
          * @return the charset name (default: UTF-8)
@@ -106,6 +170,69 @@ public class TsvFormatTrait implements Trait<TsvFormatTrait> {
             this.codecName = codecName;
         }
 
+        /**
+         * Returns whether the codec is chosen by the output size or not.
+         * @return {@code true} if the codec name is {@link #CODEC_AUTO}, otherwise {@code false}
+         * @since 0.6.0
+         */
+        public boolean isAutoCompression() {
+            return CODEC_AUTO.equals(codecName);
+        }
+
+        /**
+         * Returns whether the codec is the built-in LZ4 frame format or not.
+         * @return {@code true} if the codec name is {@link #CODEC_LZ4}, otherwise {@code false}
+         * @since 0.6.0
+         */
+        public boolean isLz4Compression() {
+            return CODEC_LZ4.equals(codecName);
+        }
+
+        /**
+         * Returns whether the codec is gzip or not.
+         * @return {@code true} if the codec name is {@link #CODEC_GZIP} or its codec class, otherwise {@code false}
+         * @since 0.6.0
+         */
+        public boolean isGzipCompression() {
+            return CODEC_GZIP.equals(codecName) || CODEC_GZIP_CLASS.equals(codecName);
+        }
+
+        /**
+         * Returns the minimum output size to be compressed on {@link #CODEC_AUTO}.
+         * @return the minimum size in bytes, or {@code -1} to use the default value (default: -1)
+         * @since 0.6.0
+         */
+        public long getCompressionThreshold() {
+            return compressionThreshold;
+        }
+
+        /**
+         * Sets the minimum output size to be compressed on {@link #CODEC_AUTO}.
+         * @param compressionThreshold the minimum size in bytes, or {@code -1} to use the default value
+         * @since 0.6.0
+         */
+        public void setCompressionThreshold(long compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+        }
+
+        /**
+         * Returns the target compression throughput of each thread on {@link #CODEC_AUTO}.
+         * @return the target throughput in MB/s, or {@code -1} to use the default deflate level (default: -1)
+         * @since 0.6.0
+         */
+        public long getCompressionThroughput() {
+            return compressionThroughput;
+        }
+
+        /**
+         * Sets the target compression throughput of each thread on {@link #CODEC_AUTO}.
+         * @param compressionThroughput the target throughput in MB/s, or {@code -1} to use the default deflate level
+         * @since 0.6.0
+         */
+        public void setCompressionThroughput(long compressionThroughput) {
+            this.compressionThroughput = compressionThroughput;
+        }
+
         /**
          * Returns whether the header is required.
          * @return {@code true} if header is required, otherwise {@code false} (default: false)
@@ -121,5 +248,318 @@ public class TsvFormatTrait implements Trait<TsvFormatTrait> {
         public void setEnableHeader(boolean enableHeader) {
             this.enableHeader = enableHeader;
         }
+
+        /**
+         * Returns the field separator.
+         * @return the field separator (default: tab)
+         * @since 0.6.0
+         */
+        public char getFieldSeparator() {
+            return fieldSeparator;
+        }
+
+        /**
+         * Sets the field separator.
+         * @param fieldSeparator the field separator
+         * @since 0.6.0
+         */
+        public void setFieldSeparator(char fieldSeparator) {
+            this.fieldSeparator = fieldSeparator;
+        }
+
+        /**
+         * Returns the line separator.
+         * @return the line separator (default: LF)
+         * @since 0.6.0
+         */
+        public String getLineSeparator() {
+            return lineSeparator;
+        }
+
+        /**
+         * Sets the line separator.
+         * @param lineSeparator the line separator
+         * @since 0.6.0
+         */
+        public void setLineSeparator(String lineSeparator) {
+            this.lineSeparator = lineSeparator;
+        }
+
+        /**
+         * Returns the maximum size of each output file.
+         * @return the maximum size in bytes, or {@code -1} if it is not limited (default: -1)
+         * @since 0.6.0
+         */
+        public long getMaxFileSize() {
+            return maxFileSize;
+        }
+
+        /**
+         * Sets the maximum size of each output file.
+         * @param maxFileSize the maximum size in bytes, or {@code -1} if it is not limited
+         * @since 0.6.0
+         */
+        public void setMaxFileSize(long maxFileSize) {
+            this.maxFileSize = maxFileSize;
+        }
+
+        /**
+         * Returns the maximum number of records in each output file.
+         * @return the maximum number of records, or {@code -1} if it is not limited (default: -1)
+         * @since 0.6.0
+         */
+        public long getMaxRecords() {
+            return maxRecords;
+        }
+
+        /**
+         * Sets the maximum number of records in each output file.
+         * @param maxRecords the maximum number of records, or {@code -1} if it is not limited
+         * @since 0.6.0
+         */
+        public void setMaxRecords(long maxRecords) {
+            this.maxRecords = maxRecords;
+        }
+
+        /**
+         * Returns the maximum number of output buffers which are being written on the background thread.
+         * @return the maximum number of buffers, or {@code -1} if the output is written synchronously (default: -1)
+         * @since 0.6.0
+         */
+        public int getAsyncFlushBuffers() {
+            return asyncFlushBuffers;
+        }
+
+        /**
+         * Sets the maximum number of output buffers which are being written on the background thread.
+         * @param asyncFlushBuffers the maximum number of buffers, or {@code -1} to write the output synchronously
+         * @since 0.6.0
+         */
+        public void setAsyncFlushBuffers(int asyncFlushBuffers) {
+            this.asyncFlushBuffers = asyncFlushBuffers;
+        }
+
+        /**
+         * Returns whether gzip outputs are compressed on multiple threads or not.
+         * @return {@code true} to compress on multiple threads,
+         *     or {@code false} to use the compression codec (default: false)
+         * @since 0.6.0
+         */
+        public boolean isParallelCompression() {
+            return parallelCompression;
+        }
+
+        /**
+         * Configures whether gzip outputs are compressed on multiple threads or not.
+         * @param parallelCompression {@code true} to compress on multiple threads,
+         *     or {@code false} to use the compression codec
+         * @since 0.6.0
+         */
+        public void setParallelCompression(boolean parallelCompression) {
+            this.parallelCompression = parallelCompression;
+        }
+
+        /**
+         * Returns whether a manifest is written beside each output file or not.
+         * @return {@code true} if manifests are required, otherwise {@code false} (default: false)
+         * @since 0.6.0
+         */
+        public boolean isEnableManifest() {
+            return enableManifest;
+        }
+
+        /**
+         * Configures whether a manifest is written beside each output file or not.
+         * @param enableManifest {@code true} to write manifests, otherwise {@code false}
+         * @since 0.6.0
+         */
+        public void setEnableManifest(boolean enableManifest) {
+            this.enableManifest = enableManifest;
+        }
+
+        /**
+         * Returns the property names which partition the output directories.
+         * @return the property names, or an empty list if the output is not partitioned (default: empty)
+         * @since 0.6.0
+         */
+        public List<String> getPartitionPropertyNames() {
+            return partitionPropertyNames;
+        }
+
+        /**
+         * Sets the property names which partition the output directories.
+         * @param partitionPropertyNames the property names, or an empty list to disable partitioning
+         * @throws IllegalArgumentException if some parameters were {@code null}
+         * @since 0.6.0
+         */
+        public void setPartitionPropertyNames(List<String> partitionPropertyNames) {
+            if (partitionPropertyNames == null) {
+                throw new IllegalArgumentException("partitionPropertyNames must not be null"); //$NON-NLS-1$
+            }
+            this.partitionPropertyNames = Collections.unmodifiableList(new ArrayList<String>(partitionPropertyNames));
+        }
+
+        /**
+         * Returns the maximum number of partitions which are written at the same time.
+         * @return the maximum number of open partitions (default: {@value #DEFAULT_MAX_OPEN_PARTITIONS})
+         * @since 0.6.0
+         */
+        public int getMaxOpenPartitions() {
+            return maxOpenPartitions;
+        }
+
+        /**
+         * Sets the maximum number of partitions which are written at the same time.
+         * @param maxOpenPartitions the maximum number of open partitions
+         * @since 0.6.0
+         */
+        public void setMaxOpenPartitions(int maxOpenPartitions) {
+            this.maxOpenPartitions = maxOpenPartitions;
+        }
+
+        /**
+         * Returns the property name which sorts records in each output file.
+         * @return the property name, or {@code null} if the output is not sorted (default: {@code null})
+         * @since 0.6.0
+         */
+        public String getSortPropertyName() {
+            return sortPropertyName;
+        }
+
+        /**
+         * Sets the property name which sorts records in each output file.
+         * @param sortPropertyName the property name, or {@code null} if the output is not sorted
+         * @since 0.6.0
+         */
+        public void setSortPropertyName(String sortPropertyName) {
+            this.sortPropertyName = sortPropertyName;
+        }
+
+        /**
+         * Returns the number of records between entries of the sparse index of each sorted output file.
+         * @return the number of records, or {@code -1} if index files are not written (default: -1)
+         * @since 0.6.0
+         */
+        public int getIndexInterval() {
+            return indexInterval;
+        }
+
+        /**
+         * Sets the number of records between entries of the sparse index of each sorted output file.
+         * @param indexInterval the number of records, or {@code -1} to disable index files
+         * @since 0.6.0
+         */
+        public void setIndexInterval(int indexInterval) {
+            this.indexInterval = indexInterval;
+        }
+
+        /**
+         * Returns the expected data size of the input.
+         * @return the data size name ({@code "TINY"}, {@code "SMALL"}, {@code "LARGE"}, or {@code "UNKNOWN"}),
+         *     or {@code null} if it is not specified (default: {@code null})
+         * @since 0.6.0
+         */
+        public String getDataSize() {
+            return dataSize;
+        }
+
+        /**
+         * Sets the expected data size of the input.
+         * @param dataSize the data size name, or {@code null} if it is not specified
+         * @since 0.6.0
+         */
+        public void setDataSize(String dataSize) {
+            this.dataSize = dataSize;
+        }
+
+        /**
+         * Returns the path pattern of the input files whose manifests determine the data size.
+         * @return the path pattern, or {@code null} if the data size is not derived from manifests
+         *     (default: {@code null})
+         * @since 0.6.0
+         */
+        public String getDataSizeManifest() {
+            return dataSizeManifest;
+        }
+
+        /**
+         * Sets the path pattern of the input files whose manifests determine the data size.
+         * @param dataSizeManifest the path pattern, or {@code null} if the data size is not derived from manifests
+         * @since 0.6.0
+         */
+        public void setDataSizeManifest(String dataSizeManifest) {
+            this.dataSizeManifest = dataSizeManifest;
+        }
+
+        /**
+         * Returns the pattern of the input directories which maps each path segment to a property.
+         * @return the path pattern (e.g. {@code "{sales_date}/{shop_code}"}),
+         *     or {@code null} if no properties are mapped from the input paths (default: {@code null})
+         * @since 0.6.0
+         */
+        public String getPathPattern() {
+            return pathPattern;
+        }
+
+        /**
+         * Sets the pattern of the input directories which maps each path segment to a property.
+         * @param pathPattern the path pattern, or {@code null} if no properties are mapped from the input paths
+         * @throws IllegalArgumentException if the pattern is not valid
+         * @since 0.6.0
+         */
+        public void setPathPattern(String pathPattern) {
+            if (pathPattern != null) {
+                new TsvPathPattern(pathPattern);
+            }
+            this.pathPattern = pathPattern;
+        }
+
+        /**
+         * Returns the property names which are mapped from the input paths.
+         * @return the property names, or an empty list if the {@link #getPathPattern() path pattern} is not set
+         * @since 0.6.0
+         */
+        public List<String> getPathPropertyNames() {
+            if (pathPattern == null) {
+                return Collections.emptyList();
+            }
+            return new TsvPathPattern(pathPattern).getPropertyNames();
+        }
+
+        /**
+         * Returns whether records in each output file are sorted or not.
+         * @return {@code true} if the records are sorted, otherwise {@code false}
+         * @since 0.6.0
+         */
+        public boolean isSorted() {
+            return sortPropertyName != null;
+        }
+
+        /**
+         * Returns whether the output is partitioned by property values or not.
+         * @return {@code true} if the output will be partitioned, otherwise {@code false}
+         * @since 0.6.0
+         */
+        public boolean isPartitioned() {
+            return partitionPropertyNames.isEmpty() == false;
+        }
+
+        /**
+         * Returns whether the output is split into multiple files or not.
+         * @return {@code true} if the output will be split, otherwise {@code false}
+         * @since 0.6.0
+         */
+        public boolean isRolling() {
+            return maxFileSize > 0 || maxRecords > 0;
+        }
+
+        /**
+         * Returns whether this uses the default field and line separators or not.
+         * @return {@code true} if this uses the default separators, otherwise {@code false}
+         * @since 0.6.0
+         */
+        public boolean isDefaultSeparators() {
+            return TsvSeparators.isDefault(fieldSeparator, lineSeparator);
+        }
     }
 }
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.asakusafw.dmdl.java.emitter.EmitContext;
+import com.asakusafw.dmdl.semantics.ModelDeclaration;
+import com.asakusafw.utils.collections.Lists;
+import com.asakusafw.utils.java.model.syntax.ClassDeclaration;
+import com.asakusafw.utils.java.model.syntax.Expression;
+import com.asakusafw.utils.java.model.syntax.FormalParameterDeclaration;
+import com.asakusafw.utils.java.model.syntax.MethodDeclaration;
+import com.asakusafw.utils.java.model.syntax.ModelFactory;
+import com.asakusafw.utils.java.model.syntax.Name;
+import com.asakusafw.utils.java.model.syntax.TypeBodyDeclaration;
+import com.asakusafw.utils.java.model.syntax.WildcardBoundKind;
+import com.asakusafw.utils.java.model.util.AttributeBuilder;
+import com.asakusafw.utils.java.model.util.ExpressionBuilder;
+import com.asakusafw.utils.java.model.util.JavadocBuilder;
+import com.asakusafw.utils.java.model.util.Models;
+import com.asakusafw.utils.java.model.util.TypeBuilder;
+
+/**
+ * Generates abstract Direct I/O importer and exporter descriptions for generated formats.
+ * @since 0.6.0
+ */
+public final class DescriptionGenerator {
+
+    // for reduce library dependencies
+    private static final String IMPORTER_TYPE_NAME =
+        "com.asakusafw.vocabulary.directio.DirectFileInputDescription";
+
+    // for reduce library dependencies
+    private static final String EXPORTER_TYPE_NAME =
+        "com.asakusafw.vocabulary.directio.DirectFileOutputDescription";
+
+    private final EmitContext context;
+
+    private final ModelDeclaration model;
+
+    private final com.asakusafw.utils.java.model.syntax.Type supportClass;
+
+    private final String formatLabel;
+
+    private final List<String> order;
+
+    private final ModelFactory f;
+
+    private final boolean importer;
+
+    private final List<? extends TypeBodyDeclaration> extraMembers;
+
+    private DescriptionGenerator(
+            EmitContext context,
+            ModelDeclaration model,
+            Name supportClassName,
+            String formatLabel,
+            List<String> order,
+            boolean importer,
+            List<? extends TypeBodyDeclaration> extraMembers) {
+        assert context != null;
+        assert model != null;
+        assert supportClassName != null;
+        assert formatLabel != null;
+        assert order != null;
+        assert extraMembers != null;
+        this.context = context;
+        this.model = model;
+        this.f = context.getModelFactory();
+        this.importer = importer;
+        this.formatLabel = formatLabel;
+        this.order = order;
+        this.supportClass = context.resolve(supportClassName);
+        this.extraMembers = extraMembers;
+    }
+
+    /**
+     * Emits an abstract importer description.
+     * @param context the current context
+     * @param model the target model
+     * @param supportClassName the generated format class name
+     * @param formatLabel the format label in the documentation comments (e.g. {@code "TSV"})
+     * @throws IOException if failed to emit the description
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void emitImporter(
+            EmitContext context,
+            ModelDeclaration model,
+            Name supportClassName,
+            String formatLabel) throws IOException {
+        emitImporter(context, model, supportClassName, formatLabel, Collections.<TypeBodyDeclaration>emptyList());
+    }
+
+    /**
+     * Emits an abstract importer description with additional members.
+     * The additional members must be built with the given context
+     * (e.g. methods which override {@code getDataSize()} for the format).
+     * @param context the current context
+     * @param model the target model
+     * @param supportClassName the generated format class name
+     * @param formatLabel the format label in the documentation comments (e.g. {@code "TSV"})
+     * @param extraMembers the additional members of the description
+     * @throws IOException if failed to emit the description
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void emitImporter(
+            EmitContext context,
+            ModelDeclaration model,
+            Name supportClassName,
+            String formatLabel,
+            List<? extends TypeBodyDeclaration> extraMembers) throws IOException {
+        checkArguments(context, model, supportClassName, formatLabel);
+        if (extraMembers == null) {
+            throw new IllegalArgumentException("extraMembers must not be null"); //$NON-NLS-1$
+        }
+        DescriptionGenerator emitter = new DescriptionGenerator(
+                context, model, supportClassName, formatLabel, Collections.<String>emptyList(), true,
+                extraMembers);
+        emitter.emit();
+    }
+
+    /**
+     * Emits an abstract exporter description.
+     * @param context the current context
+     * @param model the target model
+     * @param supportClassName the generated format class name
+     * @param formatLabel the format label in the documentation comments (e.g. {@code "TSV"})
+     * @throws IOException if failed to emit the description
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void emitExporter(
+            EmitContext context,
+            ModelDeclaration model,
+            Name supportClassName,
+            String formatLabel) throws IOException {
+        emitExporter(context, model, supportClassName, formatLabel, Collections.<String>emptyList());
+    }
+
+    /**
+     * Emits an abstract exporter description.
+     * @param context the current context
+     * @param model the target model
+     * @param supportClassName the generated format class name
+     * @param formatLabel the format label in the documentation comments (e.g. {@code "TSV"})
+     * @param order the default output order (e.g. {@code "+property_name"}), or an empty list
+     * @throws IOException if failed to emit the description
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void emitExporter(
+            EmitContext context,
+            ModelDeclaration model,
+            Name supportClassName,
+            String formatLabel,
+            List<String> order) throws IOException {
+        checkArguments(context, model, supportClassName, formatLabel);
+        if (order == null) {
+            throw new IllegalArgumentException("order must not be null"); //$NON-NLS-1$
+        }
+        DescriptionGenerator emitter = new DescriptionGenerator(
+                context, model, supportClassName, formatLabel, order, false,
+                Collections.<TypeBodyDeclaration>emptyList());
+        emitter.emit();
+    }
+
+    private static void checkArguments(
+            EmitContext context,
+            ModelDeclaration model,
+            Name supportClassName,
+            String formatLabel) {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be null"); //$NON-NLS-1$
+        }
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null"); //$NON-NLS-1$
+        }
+        if (supportClassName == null) {
+            throw new IllegalArgumentException("supportClassName must not be null"); //$NON-NLS-1$
+        }
+        if (formatLabel == null) {
+            throw new IllegalArgumentException("formatLabel must not be null"); //$NON-NLS-1$
+        }
+    }
+
+    private void emit() throws IOException {
+        ClassDeclaration decl = f.newClassDeclaration(
+                new JavadocBuilder(f)
+                    .text("An abstract implementation of ")
+                    .linkType(context.resolve(model.getSymbol()))
+                    .text(" {0} description using Direct I/O {1}",
+                            importer ? "importer" : "exporter",
+                            formatLabel)
+                    .text(".")
+                    .toJavadoc(),
+                new AttributeBuilder(f)
+                    .Public()
+                    .Abstract()
+                    .toAttributes(),
+                context.getTypeName(),
+                context.resolve(Models.toName(f, importer ? IMPORTER_TYPE_NAME : EXPORTER_TYPE_NAME)),
+                Collections.<com.asakusafw.utils.java.model.syntax.Type>emptyList(),
+                createMembers());
+        context.emit(decl);
+    }
+
+    private List<TypeBodyDeclaration> createMembers() {
+        List<TypeBodyDeclaration> results = Lists.create();
+        results.add(createGetModelType());
+        results.add(createGetStreamSupport());
+        if (importer == false && order.isEmpty() == false) {
+            results.add(createGetOrder());
+        }
+        results.addAll(extraMembers);
+        return results;
+    }
+
+    private MethodDeclaration createGetModelType() {
+        return createGetter(
+                new TypeBuilder(f, context.resolve(Class.class))
+                    .parameterize(f.newWildcard(
+                            WildcardBoundKind.UPPER_BOUNDED,
+                            context.resolve(model.getSymbol())))
+                    .toType(),
+                "getModelType",
+                f.newClassLiteral(context.resolve(model.getSymbol())));
+    }
+
+    private MethodDeclaration createGetStreamSupport() {
+        return createGetter(
+                new TypeBuilder(f, context.resolve(Class.class))
+                    .parameterize(supportClass)
+                    .toType(),
+                "getFormat",
+                f.newClassLiteral(supportClass));
+    }
+
+    private MethodDeclaration createGetOrder() {
+        List<Expression> elements = Lists.create();
+        for (String term : order) {
+            elements.add(Models.toLiteral(f, term));
+        }
+        return createGetter(
+                new TypeBuilder(f, context.resolve(List.class))
+                    .parameterize(context.resolve(String.class))
+                    .toType(),
+                "getOrder",
+                new TypeBuilder(f, context.resolve(Arrays.class))
+                    .method("asList", elements)
+                    .toExpression());
+    }
+
+    private MethodDeclaration createGetter(
+            com.asakusafw.utils.java.model.syntax.Type type,
+            String name,
+            Expression value) {
+        assert type != null;
+        assert name != null;
+        assert value != null;
+        return f.newMethodDeclaration(
+                null,
+                new AttributeBuilder(f)
+                    .annotation(context.resolve(Override.class))
+                    .Public()
+                    .toAttributes(),
+                type,
+                f.newSimpleName(name),
+                Collections.<FormalParameterDeclaration>emptyList(),
+                Arrays.asList(new ExpressionBuilder(f, value).toReturnStatement()));
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.utils.java.model.syntax.PackageDeclaration;
+import com.asakusafw.utils.java.model.util.Emitter;
+
+/**
+ * An {@link Emitter} which rewrites only the changed source files.
+ * <p>
+ * Each source file is buffered on the heap, and then compared with the existing file when it is closed.
+ * If they are same, the existing file is left as is, so that its timestamp is kept and
+ * incremental builds can skip compiling it.
+ * The generated sources are determined only by the data model declarations and their attributes
+ * (e.g. {@code TsvFormatTrait}, {@code TsvFieldTrait}, or {@code StreamSupportTrait}),
+ * so that only the classes of the changed data models are rewritten.
+ * </p>
+ * <p>
+ * This can open different files concurrently.
+ * If a file could not be written, {@link PrintWriter#close() closing its writer} raises an {@link IOError},
+ * and {@link #checkErrors()} also rethrows the first failure, so that generators which ignore the errors
+ * of the writers can detect it after all sources were emitted.
+ * </p>
+ * @since 0.6.0
+ */
+public class IncrementalEmitter extends Emitter {
+
+    static final Logger LOG = LoggerFactory.getLogger(IncrementalEmitter.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File outputDirectory;
+
+    private final Charset encoding;
+
+    private final AtomicInteger written = new AtomicInteger();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+    /**
+     * Creates a new instance.
+     * @param outputDirectory the base output directory
+     * @param encoding the source file encoding
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public IncrementalEmitter(File outputDirectory, Charset encoding) {
+        if (outputDirectory == null) {
+            throw new IllegalArgumentException("outputDirectory must not be null"); //$NON-NLS-1$
+        }
+        if (encoding == null) {
+            throw new IllegalArgumentException("encoding must not be null"); //$NON-NLS-1$
+        }
+        this.outputDirectory = outputDirectory;
+        this.encoding = encoding;
+    }
+
+    @Override
+    public PrintWriter openFor(PackageDeclaration packageDeclOrNull, String subPath) throws IOException {
+        if (subPath == null) {
+            throw new IllegalArgumentException("subPath must not be null"); //$NON-NLS-1$
+        }
+        File directory = outputDirectory;
+        if (packageDeclOrNull != null) {
+            String packagePath = packageDeclOrNull.getName().toNameString().replace('.', File.separatorChar);
+            directory = new File(directory, packagePath);
+        }
+        final File file = new File(directory, subPath);
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        return new PrintWriter(new OutputStreamWriter(buffer, encoding)) {
+            private boolean closed;
+            @Override
+            public void close() {
+                super.close();
+                synchronized (lock) {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                }
+                try {
+                    commit(file, buffer.toByteArray());
+                } catch (IOException e) {
+                    LOG.error(MessageFormat.format(
+                            "Failed to write a source file: {0}",
+                            file), e);
+                    setError();
+                    failure.compareAndSet(null, e);
+                    throw new IOError(e);
+                }
+            }
+        };
+    }
+
+    void commit(File file, byte[] contents) throws IOException {
+        assert file != null;
+        assert contents != null;
+        if (isSame(file, contents)) {
+            LOG.debug("Source file is not changed: {}", file);
+            skipped.incrementAndGet();
+            return;
+        }
+        File parent = file.getParentFile();
+        if (parent.mkdirs() == false && parent.isDirectory() == false) {
+            throw new IOException(MessageFormat.format(
+                    "Failed to create a directory: {0}",
+                    parent));
+        }
+        LOG.debug("Writing source file: {}", file);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(contents);
+        } finally {
+            output.close();
+        }
+        written.incrementAndGet();
+    }
+
+    private static boolean isSame(File file, byte[] contents) throws IOException {
+        if (file.isFile() == false || file.length() != contents.length) {
+            return false;
+        }
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int offset = 0;
+            while (true) {
+                int read = input.read(buf);
+                if (read < 0) {
+                    return offset == contents.length;
+                }
+                if (offset + read > contents.length) {
+                    return false;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buf[i] != contents[offset + i]) {
+                        return false;
+                    }
+                }
+                offset += read;
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Raises the first failure while writing source files, if it exists.
+     * @throws IOException if some source files could not be written
+     */
+    public void checkErrors() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw new IOException("Failed to write some source files", e);
+        }
+    }
+
+    /**
+     * Returns the number of source files which were written.
+     * @return the number of written files
+     */
+    public int getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Returns the number of source files which were left as is because they were not changed.
+     * @return the number of skipped files
+     */
+    public int getSkippedCount() {
+        return skipped.get();
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.util;
+
+import java.io.File;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.dmdl.java.Configuration;
+import com.asakusafw.dmdl.java.GenerateTask;
+import com.asakusafw.dmdl.java.emitter.CompositeDataModelDriver;
+import com.asakusafw.dmdl.java.spi.JavaDataModelDriver;
+import com.asakusafw.dmdl.source.DmdlSourceDirectory;
+import com.asakusafw.utils.java.model.syntax.ModelFactory;
+import com.asakusafw.utils.java.model.util.Models;
+
+/**
+ * Generates Java data model classes from DMDL scripts, and rewrites only the changed source files.
+ * <p>
+ * This uses the {@link JavaDataModelDriver}s registered in {@code META-INF/services}
+ * (including the format emitters in this library), and emits the sources through {@link IncrementalEmitter}.
+ * If a source file could not be written, this fails with exit status {@code 1}.
+ * </p>
+ * <p>
+ * With {@code -threads} more than {@code 1}, this generates the resources of the data models on background
+ * threads through {@link ParallelDataModelDriver}.
+ * Then, all registered drivers must be safe to be called concurrently for different data models.
+ * </p>
+ * <pre><code>
+ * java com.asakusafw.dmdl.directio.util.IncrementalGenerator \
+ *     -output &lt;output directory&gt; -package &lt;base package&gt; -source &lt;DMDL directory&gt; \
+ *     [-sourceencoding &lt;DMDL encoding&gt;] [-targetencoding &lt;Java encoding&gt;] \
+ *     [-threads &lt;number of generator threads&gt;]
+ * </code></pre>
+ * @since 0.6.0
+ */
+public final class IncrementalGenerator {
+
+    static final Logger LOG = LoggerFactory.getLogger(IncrementalGenerator.class);
+
+    private static final String DEFAULT_ENCODING = "UTF-8"; //$NON-NLS-1$
+
+    private static final String USAGE = "Usage: java " + IncrementalGenerator.class.getName()
+            + " -output <output directory> -package <base package> -source <DMDL directory>"
+            + " [-sourceencoding <DMDL encoding>] [-targetencoding <Java encoding>]"
+            + " [-threads <number of generator threads>]";
+
+    private final File source;
+
+    private final Charset sourceEncoding;
+
+    private final File output;
+
+    private final Charset targetEncoding;
+
+    private final String basePackage;
+
+    private final int threads;
+
+    /**
+     * Creates a new instance.
+     * @param source the DMDL source directory
+     * @param sourceEncoding the DMDL source encoding
+     * @param output the Java output directory
+     * @param targetEncoding the Java source encoding
+     * @param basePackage the base package name of the generated classes
+     * @param threads the number of generator threads, or {@code 1} to generate on the current thread
+     * @throws IllegalArgumentException if some parameters were {@code null}, or {@code threads} is not positive
+     */
+    public IncrementalGenerator(
+            File source, Charset sourceEncoding,
+            File output, Charset targetEncoding,
+            String basePackage, int threads) {
+        if (source == null) {
+            throw new IllegalArgumentException("source must not be null"); //$NON-NLS-1$
+        }
+        if (sourceEncoding == null) {
+            throw new IllegalArgumentException("sourceEncoding must not be null"); //$NON-NLS-1$
+        }
+        if (output == null) {
+            throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
+        }
+        if (targetEncoding == null) {
+            throw new IllegalArgumentException("targetEncoding must not be null"); //$NON-NLS-1$
+        }
+        if (basePackage == null) {
+            throw new IllegalArgumentException("basePackage must not be null"); //$NON-NLS-1$
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive"); //$NON-NLS-1$
+        }
+        this.source = source;
+        this.sourceEncoding = sourceEncoding;
+        this.output = output;
+        this.targetEncoding = targetEncoding;
+        this.basePackage = basePackage;
+        this.threads = threads;
+    }
+
+    /**
+     * Generates the Java sources.
+     * @param loader the class loader to load the {@link JavaDataModelDriver}s and DMDL plug-ins
+     * @return the emitter which generated the sources, for its statistics
+     * @throws IOException if failed to generate the sources
+     */
+    public IncrementalEmitter generate(ClassLoader loader) throws IOException {
+        if (loader == null) {
+            throw new IllegalArgumentException("loader must not be null"); //$NON-NLS-1$
+        }
+        if (source.isDirectory() == false) {
+            throw new IOException(MessageFormat.format(
+                    "DMDL source directory is not found: {0}",
+                    source));
+        }
+        ModelFactory factory = Models.getModelFactory();
+        IncrementalEmitter emitter = new IncrementalEmitter(output, targetEncoding);
+        Configuration configuration = new Configuration(
+                factory,
+                new DmdlSourceDirectory(
+                        source,
+                        sourceEncoding,
+                        Pattern.compile(".*\\.dmdl"), //$NON-NLS-1$
+                        Pattern.compile("\\..*")), //$NON-NLS-1$
+                Models.toName(factory, basePackage),
+                emitter,
+                loader,
+                Locale.getDefault());
+        List<JavaDataModelDriver> drivers = new ArrayList<JavaDataModelDriver>();
+        for (JavaDataModelDriver driver : ServiceLoader.load(JavaDataModelDriver.class, loader)) {
+            LOG.debug("Loaded data model driver: {}", driver.getClass().getName());
+            drivers.add(driver);
+        }
+        GenerateTask task = new GenerateTask(configuration);
+        try {
+            if (threads > 1) {
+                // the emitter is safe to open different files concurrently
+                ParallelDataModelDriver driver = new ParallelDataModelDriver(drivers, threads);
+                try {
+                    task.process(driver);
+                } finally {
+                    driver.close();
+                }
+            } else {
+                task.process(new CompositeDataModelDriver(drivers));
+            }
+        } catch (IOError e) {
+            // raises the original failure recorded in the emitter
+            emitter.checkErrors();
+            throw e;
+        }
+        emitter.checkErrors();
+        return emitter;
+    }
+
+    /**
+     * Program entry.
+     * @param args the program arguments
+     */
+    public static void main(String... args) {
+        int status = execute(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Generates the Java sources and prints its statistics.
+     * @param args the program arguments
+     * @return the exit status
+     */
+    public static int execute(String... args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("-") == false) { //$NON-NLS-1$
+                return usage(MessageFormat.format("Unknown argument: {0}", arg));
+            }
+            if (i + 1 >= args.length) {
+                return usage(MessageFormat.format("Missing value of {0}", arg));
+            }
+            options.put(arg.substring(1), args[++i]);
+        }
+        String output = options.remove("output"); //$NON-NLS-1$
+        String basePackage = options.remove("package"); //$NON-NLS-1$
+        String source = options.remove("source"); //$NON-NLS-1$
+        String sourceEncoding = options.remove("sourceencoding"); //$NON-NLS-1$
+        String targetEncoding = options.remove("targetencoding"); //$NON-NLS-1$
+        String threadsValue = options.remove("threads"); //$NON-NLS-1$
+        if (options.isEmpty() == false) {
+            return usage(MessageFormat.format("Unknown options: {0}", options.keySet()));
+        }
+        if (output == null || basePackage == null || source == null) {
+            return usage("Missing required arguments");
+        }
+        int threads;
+        try {
+            threads = threadsValue == null ? 1 : Integer.parseInt(threadsValue);
+        } catch (NumberFormatException e) {
+            return usage(MessageFormat.format("Invalid number: {0}", e.getMessage()));
+        }
+        if (threads <= 0) {
+            return usage("The number of threads must be positive");
+        }
+        try {
+            IncrementalGenerator generator = new IncrementalGenerator(
+                    new File(source),
+                    Charset.forName(sourceEncoding == null ? DEFAULT_ENCODING : sourceEncoding),
+                    new File(output),
+                    Charset.forName(targetEncoding == null ? DEFAULT_ENCODING : targetEncoding),
+                    basePackage,
+                    threads);
+            IncrementalEmitter emitter = generator.generate(Thread.currentThread().getContextClassLoader());
+            System.out.println(MessageFormat.format(
+                    "written={0}, unchanged={1}",
+                    emitter.getWrittenCount(),
+                    emitter.getSkippedCount()));
+            return 0;
+        } catch (IllegalArgumentException e) {
+            return usage(MessageFormat.format("Invalid argument: {0}", e.getMessage()));
+        } catch (Exception e) {
+            LOG.error(MessageFormat.format(
+                    "Failed to generate data model classes: {0}",
+                    Arrays.toString(args)), e);
+            return 1;
+        }
+    }
+
+    private static int usage(String message) {
+        PrintStream err = System.err;
+        err.println(message);
+        err.println(USAGE);
+        return 2;
+    }
+}
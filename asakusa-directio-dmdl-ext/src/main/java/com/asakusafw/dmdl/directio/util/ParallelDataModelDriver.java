@@ -0,0 +1,159 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.dmdl.java.emitter.CompositeDataModelDriver;
+import com.asakusafw.dmdl.java.emitter.EmitContext;
+import com.asakusafw.dmdl.java.spi.JavaDataModelDriver;
+import com.asakusafw.dmdl.semantics.ModelDeclaration;
+
+/**
+ * A composite {@link JavaDataModelDriver} which generates the resources of data models on background threads.
+ * <p>
+ * {@link #generateResources(EmitContext, ModelDeclaration)} only submits the generation for each driver
+ * and returns immediately, so that the resources of many data models are generated concurrently.
+ * Clients must {@link #close()} this after all data models are processed,
+ * which waits for the rest generations and rethrows the first failure.
+ * The other operations are delegated to the drivers on the current thread, as same as
+ * {@link CompositeDataModelDriver}.
+ * </p>
+ * <pre><code>
+ * ParallelDataModelDriver driver = new ParallelDataModelDriver(drivers, threads);
+ * try {
+ *     new GenerateTask(configuration).process(driver);
+ * } finally {
+ *     driver.close();
+ * }
+ * </code></pre>
+ * <p>
+ * The drivers must be safe to be called concurrently for different data models,
+ * and the {@link com.asakusafw.utils.java.model.util.Emitter emitter} of the configuration must be safe to
+ * open different files concurrently (e.g. {@link IncrementalEmitter}).
+ * The format emitters in this library and {@code StreamSupportEmitter} do not keep any mutable state.
+ * </p>
+ * @since 0.6.0
+ */
+public class ParallelDataModelDriver extends CompositeDataModelDriver implements Closeable {
+
+    static final Logger LOG = LoggerFactory.getLogger(ParallelDataModelDriver.class);
+
+    private final List<JavaDataModelDriver> drivers;
+
+    private final ExecutorService executor;
+
+    private final List<Future<?>> running = new ArrayList<Future<?>>();
+
+    /**
+     * Creates a new instance.
+     * @param drivers the element drivers
+     * @param threads the number of generator threads
+     * @throws IllegalArgumentException if some parameters were {@code null}, or {@code threads} is not positive
+     */
+    public ParallelDataModelDriver(List<JavaDataModelDriver> drivers, int threads) {
+        super(drivers);
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive"); //$NON-NLS-1$
+        }
+        this.drivers = new ArrayList<JavaDataModelDriver>(drivers);
+        this.executor = newExecutor(threads);
+    }
+
+    @Override
+    public void generateResources(final EmitContext context, final ModelDeclaration model) throws IOException {
+        // fails fast if some generations were already failed
+        collect(false);
+        for (final JavaDataModelDriver driver : drivers) {
+            running.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    driver.generateResources(context, model);
+                    return null;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Waits for the all submitted generations.
+     * @throws IOException if some generations were failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            LOG.debug("Waiting for {} resource generations", running.size());
+            collect(true);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void collect(boolean wait) throws IOException {
+        for (Iterator<Future<?>> iter = running.iterator(); iter.hasNext();) {
+            Future<?> future = iter.next();
+            if (wait == false && future.isDone() == false) {
+                continue;
+            }
+            iter.remove();
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw (IOException) new InterruptedIOException().initCause(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(MessageFormat.format(
+                        "Failed to generate resources: {0}",
+                        cause), cause);
+            }
+        }
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dmdl-generator-" + counter.incrementAndGet()); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.columnar.driver;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.asakusafw.dmdl.directio.tsv.driver.GeneratorTesterRoot;
+import com.asakusafw.dmdl.java.emitter.driver.ObjectDriver;
+import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.IntOption;
+
+/**
+ * Test for {@link ColumnarFormatEmitter}.
+ */
+public class ColumnarFormatEmitterTest extends GeneratorTesterRoot {
+
+    /**
+     * Initializes the test.
+     * @throws Exception if some errors were occurred
+     */
+    @Before
+    public void setUp() throws Exception {
+        emitDrivers.add(new ColumnarFormatEmitter());
+        emitDrivers.add(new ObjectDriver());
+    }
+
+    /**
+     * All types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void types() throws Exception {
+        ModelLoader loaded = generateJava("types");
+        ModelWrapper model = loaded.newModel("Types");
+        BinaryStreamFormat<?> support = (BinaryStreamFormat<?>) loaded.newObject("columnar", "TypesColumnarFormat");
+        assertThat(support.getSupportedType(), is((Object) model.unwrap().getClass()));
+        assertThat(loaded.exists("columnar", "AbstractTypesColumnarInputDescription"), is(true));
+        assertThat(loaded.exists("columnar", "AbstractTypesColumnarOutputDescription"), is(true));
+
+        ModelWrapper empty = loaded.newModel("Types");
+
+        ModelWrapper all = loaded.newModel("Types");
+        all.set("c_int", 100);
+        all.set("c_text", new Text("Hello, DMDL world!"));
+        all.set("c_boolean", true);
+        all.set("c_byte", (byte) 64);
+        all.set("c_short", (short) 1023);
+        all.set("c_long", 100000L);
+        all.set("c_float", 1.5f);
+        all.set("c_double", 2.5f);
+        all.set("c_decimal", new BigDecimal("3.1415"));
+        all.set("c_date", new Date(2011, 9, 1));
+        all.set("c_datetime", new DateTime(2011, 12, 31, 23, 59, 59));
+
+        BinaryStreamFormat<Object> unsafe = unsafe(support);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        writer.write(empty.unwrap());
+        writer.write(all.unwrap());
+        writer.close();
+
+        Object buffer = loaded.newModel("Types").unwrap();
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(), "hello", in(output),
+                0, size(output));
+        assertThat(reader.readTo(buffer), is(true));
+        assertThat(buffer, is(empty.unwrap()));
+        assertThat(reader.readTo(buffer), is(true));
+        assertThat(buffer, is(all.unwrap()));
+        assertThat(reader.readTo(buffer), is(false));
+        reader.close();
+    }
+
+    /**
+     * reads fragments split by row groups.
+     * @throws Exception if failed
+     */
+    @Test
+    public void row_group() throws Exception {
+        ModelLoader loaded = generateJava("row_group");
+        ModelWrapper model = loaded.newModel("RowGroup");
+        Object support = loaded.newObject("columnar", "RowGroupColumnarFormat");
+        assertThat(support.getClass().getMethod("getColumnNames").invoke(null),
+                is((Object) Arrays.asList("id", "name")));
+        BinaryStreamFormat<Object> unsafe = unsafe(support);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        for (int i = 0; i < 1000; i++) {
+            model.set("id", i);
+            model.set("name", new Text("n" + i));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+
+        byte[] bytes = output.toByteArray();
+        long fragmentSize = 500;
+        List<Integer> results = new ArrayList<Integer>();
+        for (int offset = 0; offset < bytes.length; offset += fragmentSize) {
+            ModelInput<Object> reader = unsafe.createInput(
+                    model.unwrap().getClass(),
+                    "hello",
+                    new ByteArrayInputStream(bytes, offset, bytes.length - offset),
+                    offset,
+                    fragmentSize);
+            ModelWrapper buffer = loaded.newModel("RowGroup");
+            while (reader.readTo(buffer.unwrap())) {
+                results.add(((IntOption) buffer.getOption("id")).get());
+            }
+            reader.close();
+        }
+        assertThat(results.size(), is(1000));
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i), is(i));
+        }
+    }
+
+    /**
+     * invalid row group size.
+     * @throws Exception if failed
+     */
+    @Test
+    public void row_group_invalid() throws Exception {
+        shouldSemanticError("row_group_invalid");
+    }
+
+    @SuppressWarnings("unchecked")
+    private BinaryStreamFormat<Object> unsafe(Object support) {
+        return (BinaryStreamFormat<Object>) support;
+    }
+
+    private ByteArrayInputStream in(ByteArrayOutputStream output) {
+        return new ByteArrayInputStream(output.toByteArray());
+    }
+
+    private long size(ByteArrayOutputStream output) {
+        return output.size();
+    }
+}
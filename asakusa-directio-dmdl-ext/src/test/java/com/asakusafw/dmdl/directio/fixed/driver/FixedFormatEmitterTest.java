@@ -0,0 +1,181 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.fixed.driver;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.asakusafw.dmdl.directio.tsv.driver.GeneratorTesterRoot;
+import com.asakusafw.dmdl.java.emitter.driver.ObjectDriver;
+import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateTime;
+
+/**
+ * Test for {@link FixedFormatEmitter}.
+ */
+public class FixedFormatEmitterTest extends GeneratorTesterRoot {
+
+    /**
+     * Initializes the test.
+     * @throws Exception if some errors were occurred
+     */
+    @Before
+    public void setUp() throws Exception {
+        emitDrivers.add(new FixedFormatEmitter());
+        emitDrivers.add(new ObjectDriver());
+    }
+
+    /**
+     * All types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void types() throws Exception {
+        ModelLoader loaded = generateJava("types");
+        ModelWrapper model = loaded.newModel("Types");
+        BinaryStreamFormat<?> support = (BinaryStreamFormat<?>) loaded.newObject("fixed", "TypesFixedFormat");
+        assertThat(support.getSupportedType(), is((Object) model.unwrap().getClass()));
+        assertThat(loaded.exists("fixed", "AbstractTypesFixedInputDescription"), is(true));
+        assertThat(loaded.exists("fixed", "AbstractTypesFixedOutputDescription"), is(true));
+
+        ModelWrapper empty = loaded.newModel("Types");
+
+        ModelWrapper all = loaded.newModel("Types");
+        all.set("c_int", 100);
+        all.set("c_text", new Text("Hello, DMDL world!"));
+        all.set("c_boolean", true);
+        all.set("c_byte", (byte) 64);
+        all.set("c_short", (short) 1023);
+        all.set("c_long", 100000L);
+        all.set("c_float", 1.5f);
+        all.set("c_double", 2.5f);
+        all.set("c_decimal", new BigDecimal("3.1415"));
+        all.set("c_date", new Date(2011, 9, 1));
+        all.set("c_datetime", new DateTime(2011, 12, 31, 23, 59, 59));
+
+        BinaryStreamFormat<Object> unsafe = unsafe(support);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        writer.write(empty.unwrap());
+        writer.write(all.unwrap());
+        writer.close();
+
+        Object buffer = loaded.newModel("Types").unwrap();
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(), "hello", in(output),
+                0, size(output));
+        assertThat(reader.readTo(buffer), is(true));
+        assertThat(buffer, is(empty.unwrap()));
+        assertThat(reader.readTo(buffer), is(true));
+        assertThat(buffer, is(all.unwrap()));
+        assertThat(reader.readTo(buffer), is(false));
+        reader.close();
+    }
+
+    /**
+     * explicit record length, charset, and properties without fields.
+     * @throws Exception if failed
+     */
+    @Test
+    public void layout() throws Exception {
+        ModelLoader loaded = generateJava("layout");
+        ModelWrapper model = loaded.newModel("Layout");
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("fixed", "LayoutFixedFormat"));
+        model.set("code", 42);
+        model.set("name", new Text("abc"));
+        model.set("memo", new Text("ignored"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        writer.write(model.unwrap());
+        writer.write(model.unwrap());
+        writer.close();
+        Charset charset = Charset.forName("IBM037");
+        assertThat(new String(output.toByteArray(), charset), is("abc     42  abc     42  "));
+
+        byte[] bytes = output.toByteArray();
+        ModelInput<Object> reader = unsafe.createInput(
+                model.unwrap().getClass(), "hello", new ByteArrayInputStream(bytes, 5, bytes.length - 5), 5, 10);
+        ModelWrapper buffer = loaded.newModel("Layout");
+        assertThat(reader.readTo(buffer.unwrap()), is(true));
+        assertThat(buffer.get("code"), is((Object) 42));
+        assertThat(buffer.get("name"), is((Object) new Text("abc")));
+        assertThat(buffer.getOption("memo").isNull(), is(true));
+        assertThat(reader.readTo(buffer.unwrap()), is(false));
+        reader.close();
+    }
+
+    /**
+     * overlapped fields.
+     * @throws Exception if failed
+     */
+    @Test
+    public void overlap() throws Exception {
+        shouldSemanticError("overlap");
+    }
+
+    /**
+     * fields exceed the record length.
+     * @throws Exception if failed
+     */
+    @Test
+    public void record_length_short() throws Exception {
+        shouldSemanticError("record_length_short");
+    }
+
+    /**
+     * invalid field length.
+     * @throws Exception if failed
+     */
+    @Test
+    public void field_invalid() throws Exception {
+        shouldSemanticError("field_invalid");
+    }
+
+    /**
+     * charset which encodes a space into multiple bytes.
+     * @throws Exception if failed
+     */
+    @Test
+    public void charset_invalid() throws Exception {
+        shouldSemanticError("charset_invalid");
+    }
+
+    @SuppressWarnings("unchecked")
+    private BinaryStreamFormat<Object> unsafe(Object support) {
+        return (BinaryStreamFormat<Object>) support;
+    }
+
+    private ByteArrayInputStream in(ByteArrayOutputStream output) {
+        return new ByteArrayInputStream(output.toByteArray());
+    }
+
+    private long size(ByteArrayOutputStream output) {
+        return output.size();
+    }
+}
@@ -38,6 +38,8 @@ import org.junit.After;
 import org.junit.Rule;
 import org.junit.rules.TemporaryFolder;
 
+import com.asakusafw.dmdl.directio.util.IncrementalEmitter;
+import com.asakusafw.dmdl.directio.util.ParallelDataModelDriver;
 import com.asakusafw.dmdl.java.emitter.CompositeDataModelDriver;
 import com.asakusafw.dmdl.java.emitter.NameConstants;
 import com.asakusafw.dmdl.java.spi.JavaDataModelDriver;
@@ -55,6 +57,7 @@ import com.asakusafw.utils.collections.Lists;
 import com.asakusafw.utils.java.jsr199.testing.VolatileCompiler;
 import com.asakusafw.utils.java.jsr199.testing.VolatileJavaFile;
 import com.asakusafw.utils.java.model.syntax.ModelFactory;
+import com.asakusafw.utils.java.model.util.Emitter;
 import com.asakusafw.utils.java.model.util.Models;
 
 /**
@@ -78,6 +81,11 @@ public class GeneratorTesterRoot {
      */
     protected final List<JavaDataModelDriver> emitDrivers = Lists.create();
 
+    /**
+     * The number of generator threads, or {@code 0} to generate resources on the current thread.
+     */
+    protected int generatorThreads = 0;
+
     /**
      * Cleans up the test.
      * @throws Exception if some errors were occurred
@@ -146,6 +154,27 @@ public class GeneratorTesterRoot {
         }
     }
 
+    /**
+     * Generate Java source files from emitted DMDL into the directory, and rewrites only the changed files.
+     * @param output the output directory
+     * @return the emitter which generated the files
+     * @see #emitDmdl(AstModelDefinition)
+     */
+    protected IncrementalEmitter generateSources(File output) {
+        try {
+            IncrementalEmitter emitter = new IncrementalEmitter(output, Charset.forName("UTF-8"));
+            generate(new DmdlSourceDirectory(
+                    folder.getRoot(),
+                    Charset.forName("UTF-8"),
+                    Pattern.compile(".*\\.dmdl"),
+                    Pattern.compile("\\..*")), emitter);
+            emitter.checkErrors();
+            return emitter;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     /**
      * Requires to raise error from specified DMDL.
      * @param name DMDL name
@@ -191,8 +220,13 @@ public class GeneratorTesterRoot {
     }
 
     private List<VolatileJavaFile> emit(DmdlSourceRepository source) throws IOException {
-        ModelFactory factory = Models.getModelFactory();
         VolatileEmitter emitter = new VolatileEmitter();
+        generate(source, emitter);
+        return emitter.getEmitted();
+    }
+
+    private void generate(DmdlSourceRepository source, Emitter emitter) throws IOException {
+        ModelFactory factory = Models.getModelFactory();
         com.asakusafw.dmdl.java.Configuration conf = new com.asakusafw.dmdl.java.Configuration(
                 factory,
                 source,
@@ -202,8 +236,16 @@ public class GeneratorTesterRoot {
                 Locale.getDefault());
 
         com.asakusafw.dmdl.java.GenerateTask task = new com.asakusafw.dmdl.java.GenerateTask(conf);
-        task.process(new CompositeDataModelDriver(emitDrivers));
-        return emitter.getEmitted();
+        if (generatorThreads > 0) {
+            ParallelDataModelDriver driver = new ParallelDataModelDriver(emitDrivers, generatorThreads);
+            try {
+                task.process(driver);
+            } finally {
+                driver.close();
+            }
+        } else {
+            task.process(new CompositeDataModelDriver(emitDrivers));
+        }
     }
 
     private DmdlSourceRepository collectInput(String name) {
@@ -285,6 +327,21 @@ public class GeneratorTesterRoot {
             }
         }
 
+        /**
+         * Loads a class.
+         * @param category the category name
+         * @param name the simple name of target class
+         * @return the loaded type
+         * @see #setNamespace(String)
+         */
+        public Class<?> loadType(String category, String name) {
+            try {
+                return type(category, name);
+            } catch (ClassNotFoundException e) {
+                throw new AssertionError(e);
+            }
+        }
+
         /**
          * Creates a new object.
          * @param category the category name
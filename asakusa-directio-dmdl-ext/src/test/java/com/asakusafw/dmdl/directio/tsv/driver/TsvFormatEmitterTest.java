@@ -20,18 +20,46 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.asakusafw.dmdl.directio.util.IncrementalEmitter;
+import com.asakusafw.dmdl.java.emitter.NameConstants;
 import com.asakusafw.dmdl.java.emitter.driver.ObjectDriver;
 import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.directio.Counter;
+import com.asakusafw.runtime.directio.tsv.RollingFileFormat;
+import com.asakusafw.runtime.directio.tsv.TsvBloomFilter;
+import com.asakusafw.runtime.directio.tsv.TsvManifest;
+import com.asakusafw.runtime.directio.tsv.TsvSparseIndex;
 import com.asakusafw.runtime.io.ModelInput;
 import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.io.compress.CompressionWorkers;
 import com.asakusafw.runtime.value.Date;
 import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
 import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.utils.java.jsr199.testing.VolatileJavaFile;
 
 /**
  * Test for {@link TsvFormatEmitter}.
@@ -150,6 +178,187 @@ public class TsvFormatEmitterTest extends GeneratorTesterRoot {
         assertThat(reader.readTo(buffer), is(false));
     }
 
+    /**
+     * With concatenated gzip members.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compression_members() throws Exception {
+        ModelLoader loaded = generateJava("compression");
+        ModelWrapper model = loaded.newModel("Compression");
+        BinaryStreamFormat<?> support = (BinaryStreamFormat<?>) loaded.newObject("tsv", "CompressionTsvFormat");
+        BinaryStreamFormat<Object> unsafe = unsafe(support);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            GZIPOutputStream member = new GZIPOutputStream(output);
+            member.write(("Hello" + i + "\n").getBytes("UTF-8"));
+            member.finish();
+        }
+
+        Object buffer = loaded.newModel("Compression").unwrap();
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(), "hello", in(output),
+                0, size(output));
+        for (int i = 0; i < 3; i++) {
+            assertThat(reader.readTo(buffer), is(true));
+            model.set("value", new Text("Hello" + i));
+            assertThat(buffer, is(model.unwrap()));
+        }
+        assertThat(reader.readTo(buffer), is(false));
+        reader.close();
+    }
+
+    /**
+     * With parallel gzip compression.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compression_parallel() throws Exception {
+        ModelLoader loaded = generateJava("compression_parallel");
+        Object support = loaded.newObject("tsv", "CompressionParallelTsvFormat");
+        assertThat(support, is(instanceOf(Configurable.class)));
+        Configuration conf = new Configuration(false);
+        conf.set(CompressionWorkers.KEY_THREADS, "2");
+        ((Configurable) support).setConf(conf);
+        BinaryStreamFormat<Object> unsafe = unsafe(support);
+
+        ModelWrapper model = loaded.newModel("CompressionParallel");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        for (int i = 0; i < 100000; i++) {
+            model.set("value", new Text("Hello" + i));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+
+        ModelWrapper buffer = loaded.newModel("CompressionParallel");
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(), "hello", in(output),
+                0, size(output));
+        for (int i = 0; i < 100000; i++) {
+            assertThat(reader.readTo(buffer.unwrap()), is(true));
+            assertThat(buffer.get("value").toString(), is("Hello" + i));
+        }
+        assertThat(reader.readTo(buffer.unwrap()), is(false));
+        reader.close();
+    }
+
+    /**
+     * With parallel compression without gzip.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compression_parallel_invalid() throws Exception {
+        shouldSemanticError("compression_parallel_invalid");
+    }
+
+    /**
+     * With adaptive compression.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compression_auto() throws Exception {
+        ModelLoader loaded = generateJava("compression_auto");
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", "CompressionAutoTsvFormat"));
+        checkCompressionAuto(loaded, unsafe, 1, false);
+        checkCompressionAuto(loaded, unsafe, 1000, true);
+    }
+
+    private void checkCompressionAuto(
+            ModelLoader loaded,
+            BinaryStreamFormat<Object> unsafe,
+            int count,
+            boolean compressed) throws Exception {
+        ModelWrapper model = loaded.newModel("CompressionAuto");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        for (int i = 0; i < count; i++) {
+            model.set("value", new Text("Hello" + i));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+        byte[] bytes = output.toByteArray();
+        assertThat(bytes[0] == (byte) 0x1f && bytes[1] == (byte) 0x8b, is(compressed));
+
+        ModelWrapper buffer = loaded.newModel("CompressionAuto");
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(), "hello", in(output),
+                0, size(output));
+        for (int i = 0; i < count; i++) {
+            assertThat(reader.readTo(buffer.unwrap()), is(true));
+            assertThat(buffer.get("value").toString(), is("Hello" + i));
+        }
+        assertThat(reader.readTo(buffer.unwrap()), is(false));
+        reader.close();
+    }
+
+    /**
+     * With built-in LZ4 compression, and reads it as fragments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compression_lz4() throws Exception {
+        ModelLoader loaded = generateJava("compression_lz4");
+        ModelWrapper model = loaded.newModel("CompressionLz4");
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", "CompressionLz4TsvFormat"));
+        assertThat(unsafe.getMinimumFragmentSize(), is(Long.MAX_VALUE));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        for (int i = 0; i < 200000; i++) {
+            model.set("value", new Text("Hello" + i));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+        byte[] bytes = output.toByteArray();
+        assertThat(Arrays.copyOf(bytes, 4), is(new byte[] { 0x04, 0x22, 0x4d, 0x18 }));
+
+        long third = bytes.length / 3;
+        List<String> results = new ArrayList<String>();
+        ModelWrapper buffer = loaded.newModel("CompressionLz4");
+        for (long[] range : new long[][] { { 0, third }, { third, third }, { third * 2, bytes.length - third * 2 } }) {
+            InputStream input = new ByteArrayInputStream(bytes);
+            assertThat(input.skip(range[0]), is(range[0]));
+            ModelInput<Object> reader = unsafe.createInput(
+                    model.unwrap().getClass(), "hello", input, range[0], range[1]);
+            while (reader.readTo(buffer.unwrap())) {
+                results.add(buffer.get("value").toString());
+            }
+            reader.close();
+        }
+        assertThat(results.size(), is(200000));
+        for (int i = 0; i < 200000; i++) {
+            assertThat(results.get(i), is("Hello" + i));
+        }
+    }
+
+    /**
+     * With asynchronous flushing.
+     * @throws Exception if failed
+     */
+    @Test
+    public void async_flush() throws Exception {
+        ModelLoader loaded = generateJava("async_flush");
+        ModelWrapper model = loaded.newModel("AsyncFlush");
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", "AsyncFlushTsvFormat"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        for (int i = 0; i < 100000; i++) {
+            model.set("value", new Text("Hello" + i));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+
+        ModelWrapper buffer = loaded.newModel("AsyncFlush");
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(), "hello", in(output),
+                0, size(output));
+        for (int i = 0; i < 100000; i++) {
+            assertThat(reader.readTo(buffer.unwrap()), is(true));
+            assertThat(buffer.get("value").toString(), is("Hello" + i));
+        }
+        assertThat(reader.readTo(buffer.unwrap()), is(false));
+        reader.close();
+    }
+
     /**
      * simple testing.
      * @throws Exception if failed
@@ -238,6 +447,593 @@ public class TsvFormatEmitterTest extends GeneratorTesterRoot {
         assertThat(reader.readTo(buffer.unwrap()), is(false));
     }
 
+    /**
+     * Reads local files through memory-mapped regions.
+     * @throws Exception if failed
+     */
+    @Test
+    public void mapped() throws Exception {
+        ModelLoader loaded = generateJava("simple");
+        ModelWrapper model = loaded.newModel("Simple");
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", "SimpleTsvFormat"));
+
+        File file = folder.newFile("mapped.tsv");
+        ModelOutput<Object> writer = unsafe.createOutput(
+                model.unwrap().getClass(), "mapped.tsv", new FileOutputStream(file));
+        for (int i = 0; i < 100; i++) {
+            model.set("value", new Text("Hello" + i));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+
+        String path = file.toURI().toString();
+        long half = file.length() / 2;
+        List<String> results = new ArrayList<String>();
+        ModelWrapper buffer = loaded.newModel("Simple");
+        for (long[] range : new long[][] { { 0, half }, { half, file.length() - half } }) {
+            InputStream input = new FileInputStream(file);
+            assertThat(input.skip(range[0]), is(range[0]));
+            ModelInput<Object> reader = unsafe.createInput(
+                    model.unwrap().getClass(), path, input, range[0], range[1]);
+            while (reader.readTo(buffer.unwrap())) {
+                results.add(buffer.get("value").toString());
+            }
+            reader.close();
+        }
+        assertThat(results.size(), is(100));
+        for (int i = 0; i < 100; i++) {
+            assertThat(results.get(i), is("Hello" + i));
+        }
+    }
+
+    /**
+     * With non-nullable fields.
+     * @throws Exception if failed
+     */
+    @Test
+    public void non_null() throws Exception {
+        checkNonNull("non_null", "NonNull");
+    }
+
+    /**
+     * With non-nullable fields in non UTF-8 files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void non_null_legacy() throws Exception {
+        checkNonNull("non_null_legacy", "NonNullLegacy");
+    }
+
+    private void checkNonNull(String name, String typeName) throws Exception {
+        ModelLoader loaded = generateJava(name);
+        ModelWrapper model = loaded.newModel(typeName);
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", typeName + "TsvFormat"));
+
+        ModelWrapper empty = loaded.newModel(typeName);
+        model.set("key", 100);
+        model.set("value", new Text("Hello, world!"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello", output);
+        writer.write(model.unwrap());
+        writer.write(empty.unwrap());
+        writer.close();
+
+        Object buffer = loaded.newModel(typeName).unwrap();
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(), "hello", in(output),
+                0, size(output));
+        assertThat(reader.readTo(buffer), is(true));
+        assertThat(buffer, is(model.unwrap()));
+        assertThat(reader.readTo(buffer), is(true));
+        assertThat(buffer, is(empty.unwrap()));
+        assertThat(reader.readTo(buffer), is(false));
+        reader.close();
+    }
+
+    /**
+     * With custom separators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void separators() throws Exception {
+        checkSeparators("separators", "Separators");
+    }
+
+    /**
+     * With custom separators in non UTF-8 files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void separators_legacy() throws Exception {
+        checkSeparators("separators_legacy", "SeparatorsLegacy");
+    }
+
+    private void checkSeparators(String name, String typeName) throws Exception {
+        ModelLoader loaded = generateJava(name);
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", typeName + "TsvFormat"));
+
+        ModelWrapper first = loaded.newModel(typeName);
+        first.set("key", 1);
+        first.set("value", new Text("a|b"));
+        ModelWrapper second = loaded.newModel(typeName);
+        second.set("key", 2);
+        second.set("value", new Text("c\td"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(first.unwrap().getClass(), "hello", output);
+        writer.write(first.unwrap());
+        writer.write(second.unwrap());
+        writer.close();
+        assertThat(new String(output.toByteArray(), "ISO-8859-1"), is("1|a\\|b\r\n2|c\\\td\r\n"));
+
+        Object buffer = loaded.newModel(typeName).unwrap();
+        ModelInput<Object> reader = unsafe.createInput(first.unwrap().getClass(), "hello", in(output),
+                0, size(output));
+        assertThat(reader.readTo(buffer), is(true));
+        assertThat(buffer, is(first.unwrap()));
+        assertThat(reader.readTo(buffer), is(true));
+        assertThat(buffer, is(second.unwrap()));
+        assertThat(reader.readTo(buffer), is(false));
+        reader.close();
+    }
+
+    /**
+     * Splits the output into numbered part files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rolling() throws Exception {
+        ModelLoader loaded = generateJava("rolling");
+        ModelWrapper model = loaded.newModel("Rolling");
+        Object support = loaded.newObject("tsv", "RollingTsvFormat");
+        assertThat(support, is(instanceOf(RollingFileFormat.class)));
+        @SuppressWarnings("unchecked")
+        RollingFileFormat<Object> unsafe = (RollingFileFormat<Object>) support;
+        assertThat(unsafe.getSupportedType(), is((Object) model.unwrap().getClass()));
+
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        Path base = new Path(folder.newFolder().toURI());
+        ModelOutput<Object> writer = unsafe.createOutput(
+                model.unwrap().getClass(), fs, new Path(base, "result.tsv"), new Counter());
+        for (int i = 0; i < 5; i++) {
+            model.set("value", new Text("Hello" + i));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+
+        String[] names = { "result.tsv", "result-00001.tsv", "result-00002.tsv" };
+        List<String> results = new ArrayList<String>();
+        ModelWrapper buffer = loaded.newModel("Rolling");
+        for (String name : names) {
+            Path path = new Path(base, name);
+            assertThat(name, fs.exists(path), is(true));
+            ModelInput<Object> reader = unsafe.createInput(
+                    model.unwrap().getClass(), fs, path, 0, fs.getFileStatus(path).getLen(), new Counter());
+            while (reader.readTo(buffer.unwrap())) {
+                results.add(buffer.get("value").toString());
+            }
+            reader.close();
+        }
+        assertThat(fs.exists(new Path(base, "result-00003.tsv")), is(false));
+        assertThat(results, is(Arrays.asList("Hello0", "Hello1", "Hello2", "Hello3", "Hello4")));
+    }
+
+    /**
+     * With manifests.
+     * @throws Exception if failed
+     */
+    @Test
+    public void manifest() throws Exception {
+        ModelLoader loaded = generateJava("manifest");
+        ModelWrapper model = loaded.newModel("Manifest");
+        Object support = loaded.newObject("tsv", "ManifestTsvFormat");
+        assertThat(support, is(instanceOf(RollingFileFormat.class)));
+        @SuppressWarnings("unchecked")
+        RollingFileFormat<Object> unsafe = (RollingFileFormat<Object>) support;
+
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        Path base = new Path(folder.newFolder().toURI());
+        Path path = new Path(base, "result.tsv.gz");
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), fs, path, new Counter());
+        for (int i = 0; i < 100; i++) {
+            model.set("value", new Text("Hello"));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+
+        TsvManifest manifest = TsvManifest.load(fs, path);
+        assertThat(manifest, is(notNullValue()));
+        assertThat(manifest.getRecords(), is(100L));
+        assertThat(manifest.getSize(), is(fs.getFileStatus(path).getLen()));
+        assertThat(manifest.getUncompressedSize(), is(600L));
+        assertThat(manifest.getCodecName(), is("gzip"));
+        assertThat(TsvManifest.estimateUncompressedSize(fs, new Path(base, "*")), is(600L));
+    }
+
+    /**
+     * With manifests of adaptive compression.
+     * @throws Exception if failed
+     */
+    @Test
+    public void manifest_auto() throws Exception {
+        ModelLoader loaded = generateJava("manifest_auto");
+        ModelWrapper model = loaded.newModel("ManifestAuto");
+        Object support = loaded.newObject("tsv", "ManifestAutoTsvFormat");
+        assertThat(support, is(instanceOf(RollingFileFormat.class)));
+        @SuppressWarnings("unchecked")
+        RollingFileFormat<Object> unsafe = (RollingFileFormat<Object>) support;
+
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        Path base = new Path(folder.newFolder().toURI());
+        Path small = new Path(base, "small.tsv");
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), fs, small, new Counter());
+        for (int i = 0; i < 10; i++) {
+            model.set("value", new Text("Hello"));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+        assertThat(TsvManifest.load(fs, small).getCodecName(), is(nullValue()));
+
+        Path large = new Path(base, "large.tsv");
+        writer = unsafe.createOutput(model.unwrap().getClass(), fs, large, new Counter());
+        for (int i = 0; i < 1000; i++) {
+            model.set("value", new Text("Hello"));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+        assertThat(TsvManifest.load(fs, large).getCodecName(), is("gzip"));
+    }
+
+    /**
+     * Bloom filters on fields.
+     * @throws Exception if failed
+     */
+    @Test
+    public void bloom_filter() throws Exception {
+        ModelLoader loaded = generateJava("bloom_filter");
+        ModelWrapper model = loaded.newModel("BloomFilter");
+        Object support = loaded.newObject("tsv", "BloomFilterTsvFormat");
+        assertThat(support, is(instanceOf(RollingFileFormat.class)));
+        @SuppressWarnings("unchecked")
+        RollingFileFormat<Object> unsafe = (RollingFileFormat<Object>) support;
+
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        Path base = new Path(folder.newFolder().toURI());
+        Path path = new Path(base, "result.tsv");
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), fs, path, new Counter());
+        for (int i = 0; i < 100; i++) {
+            model.set("key", i * 2);
+            model.set("value", new Text("Hello"));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+
+        TsvBloomFilter filter = TsvBloomFilter.load(fs, path, "id");
+        assertThat(filter, is(notNullValue()));
+        assertThat(filter.getAddedCount(), is(100L));
+        for (int i = 0; i < 100; i++) {
+            assertThat(filter.mightContain(i * 2), is(true));
+        }
+        assertThat(TsvBloomFilter.selectCandidates(
+                fs, Arrays.asList(path), "id", Arrays.asList(new IntOption(0))),
+                is(Arrays.asList(path)));
+    }
+
+    /**
+     * value-partitioned outputs.
+     * @throws Exception if failed
+     */
+    @Test
+    public void partition() throws Exception {
+        ModelLoader loaded = generateJava("partition");
+        ModelWrapper model = loaded.newModel("Partition");
+        Object support = loaded.newObject("tsv", "PartitionTsvFormat");
+        assertThat(support, is(instanceOf(RollingFileFormat.class)));
+        @SuppressWarnings("unchecked")
+        RollingFileFormat<Object> unsafe = (RollingFileFormat<Object>) support;
+
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        Path base = new Path(folder.newFolder().toURI());
+        ModelOutput<Object> writer = unsafe.createOutput(
+                model.unwrap().getClass(), fs, new Path(base, "result.tsv"), new Counter());
+        String[] shops = { "A", "B", "A" };
+        for (int i = 0; i < shops.length; i++) {
+            model.set("sales_date", new Date(2014, 1, 2));
+            model.set("shop_code", new Text(shops[i]));
+            model.set("amount", i);
+            writer.write(model.unwrap());
+        }
+        writer.close();
+
+        Path a = new Path(base, "sales_date=2014-01-02/shop_code=A");
+        Path b = new Path(base, "sales_date=2014-01-02/shop_code=B");
+        assertThat(fs.exists(new Path(a, "result.tsv")), is(true));
+        assertThat(fs.exists(new Path(b, "result.tsv")), is(true));
+        // max_open_partitions = 1, so that the partition "A" is reopened
+        assertThat(fs.exists(new Path(a, "result-00001.tsv")), is(true));
+    }
+
+    /**
+     * sorted outputs with sparse indices.
+     * @throws Exception if failed
+     */
+    @Test
+    public void sorted() throws Exception {
+        ModelLoader loaded = generateJava("sorted");
+        ModelWrapper model = loaded.newModel("Sorted");
+        Object support = loaded.newObject("tsv", "SortedTsvFormat");
+        assertThat(support, is(instanceOf(RollingFileFormat.class)));
+        @SuppressWarnings("unchecked")
+        RollingFileFormat<Object> unsafe = (RollingFileFormat<Object>) support;
+
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        Path path = new Path(new Path(folder.newFolder().toURI()), "result.tsv");
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), fs, path, new Counter());
+        for (int i = 0; i < 1000; i++) {
+            model.set("customer_id", (long) i);
+            model.set("value", new Text("Hello" + i));
+            writer.write(model.unwrap());
+        }
+        writer.close();
+        assertThat(TsvSparseIndex.load(fs, path).getEntryCount(), is(100));
+
+        ModelInput<Object> reader = unsafe.createRangeInput(
+                model.unwrap().getClass(), fs, path, new LongOption(500), new LongOption(504), new Counter());
+        List<Object> results = new ArrayList<Object>();
+        while (reader.readTo(model.unwrap())) {
+            results.add(model.get("customer_id"));
+        }
+        reader.close();
+        assertThat(results, is(Arrays.<Object>asList(500L, 501L, 502L, 503L, 504L)));
+    }
+
+    /**
+     * rejects unsorted records.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void sorted_violation() throws Exception {
+        ModelLoader loaded = generateJava("sorted");
+        ModelWrapper model = loaded.newModel("Sorted");
+        @SuppressWarnings("unchecked")
+        RollingFileFormat<Object> unsafe = (RollingFileFormat<Object>) loaded.newObject("tsv", "SortedTsvFormat");
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        Path path = new Path(new Path(folder.newFolder().toURI()), "result.tsv");
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), fs, path, new Counter());
+        try {
+            model.set("customer_id", 2L);
+            writer.write(model.unwrap());
+            model.set("customer_id", 1L);
+            writer.write(model.unwrap());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * With data size hints.
+     * @throws Exception if failed
+     */
+    @Test
+    public void data_size() throws Exception {
+        addDescription("DataSize");
+        ModelLoader loaded = generateJava("data_size");
+        Object description = loaded.newObject("tsv", "DataSizeTsvInputDescription");
+        assertThat(String.valueOf(invoke(description, "getDataSize")), is("TINY"));
+    }
+
+    /**
+     * With data size hints from manifests.
+     * @throws Exception if failed
+     */
+    @Test
+    public void data_size_manifest() throws Exception {
+        File data = folder.newFolder("data");
+        Path base = new Path(data.toURI());
+        Configuration conf = new Configuration();
+        FileSystem fs = base.getFileSystem(conf);
+        Path file = new Path(base, "master.tsv");
+        fs.create(file).close();
+        new TsvManifest(1, 0, TsvManifest.TINY_DATA_SIZE_LIMIT + 1, null).save(fs, file);
+        writeDmdl("data_size_manifest.dmdl",
+                "@directio.tsv(",
+                "    data_size = \"small\",",
+                "    data_size_manifest = \"" + new Path(base, "*.tsv") + "\"",
+                ")",
+                "data_size_manifest = {",
+                "    value : TEXT;",
+                "};");
+        addDescription("DataSizeManifest");
+        ModelLoader loaded = generateJava();
+        Object description = loaded.newObject("tsv", "DataSizeManifestTsvInputDescription");
+
+        // the generated code never reads the manifests by itself
+        assertThat(String.valueOf(invoke(description, "getDataSize")), is("SMALL"));
+        Method estimate = description.getClass().getSuperclass().getDeclaredMethod(
+                "estimateDataSize", Configuration.class);
+        estimate.setAccessible(true);
+        assertThat(String.valueOf(estimate.invoke(description, conf)), is("SMALL"));
+
+        new TsvManifest(1, 0, TsvManifest.SMALL_DATA_SIZE_LIMIT + 1, null).save(fs, file);
+        assertThat(String.valueOf(estimate.invoke(description, conf)), is("LARGE"));
+
+        fs.delete(file, false);
+        assertThat(String.valueOf(estimate.invoke(description, conf)), is("SMALL"));
+    }
+
+    /**
+     * Without data size hints.
+     * @throws Exception if failed
+     */
+    @Test
+    public void data_size_default() throws Exception {
+        ModelLoader loaded = generateJava("simple");
+        Class<?> description = loaded.loadType("tsv", "AbstractSimpleTsvInputDescription");
+        for (Method method : description.getDeclaredMethods()) {
+            assertThat(method.getName(), is(not("getDataSize")));
+        }
+    }
+
+    /**
+     * With unknown data size.
+     * @throws Exception if failed
+     */
+    @Test
+    public void data_size_invalid() throws Exception {
+        shouldSemanticError("data_size_invalid");
+    }
+
+    /**
+     * With data size manifests which are not fully qualified.
+     * @throws Exception if failed
+     */
+    @Test
+    public void data_size_manifest_invalid() throws Exception {
+        shouldSemanticError("data_size_manifest_invalid");
+    }
+
+    /**
+     * With properties which are mapped from input paths.
+     * @throws Exception if failed
+     */
+    @Test
+    public void path_pattern() throws Exception {
+        ModelLoader loaded = generateJava("path_pattern");
+        ModelWrapper model = loaded.newModel("PathPattern");
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", "PathPatternTsvFormat"));
+
+        model.set("sales_date", new Date(2014, 1, 2));
+        model.set("shop_code", new Text("A001"));
+        model.set("value", new Text("Hello, world!"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "data.tsv", output);
+        writer.write(model.unwrap());
+        writer.write(model.unwrap());
+        writer.close();
+        assertThat(new String(output.toByteArray(), "UTF-8"), is("Hello, world!\nHello, world!\n"));
+
+        ModelWrapper buffer = loaded.newModel("PathPattern");
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(),
+                "target/2014-01-02/shop=A001/data.tsv", in(output), 0, size(output));
+        for (int i = 0; i < 2; i++) {
+            assertThat(reader.readTo(buffer.unwrap()), is(true));
+            assertThat(buffer.get("sales_date"), is((Object) new Date(2014, 1, 2)));
+            assertThat(buffer.getOption("shop_code"), is((Object) new StringOption("A001")));
+            assertThat(buffer.getOption("value"), is((Object) new StringOption("Hello, world!")));
+        }
+        assertThat(reader.readTo(buffer.unwrap()), is(false));
+        reader.close();
+    }
+
+    /**
+     * With input paths which do not match the path pattern.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void path_pattern_mismatch() throws Exception {
+        ModelLoader loaded = generateJava("path_pattern");
+        ModelWrapper model = loaded.newModel("PathPattern");
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", "PathPatternTsvFormat"));
+        unsafe.createInput(model.unwrap().getClass(), "target/2014-01-02/A001/data.tsv",
+                new ByteArrayInputStream(new byte[0]), 0, 0);
+    }
+
+    /**
+     * Input descriptions with path patterns.
+     * @throws Exception if failed
+     */
+    @Test
+    public void path_pattern_description() throws Exception {
+        ModelLoader loaded = generateJava("path_pattern");
+        Class<?> description = loaded.loadType("tsv", "AbstractPathPatternTsvInputDescription");
+        Method method = description.getDeclaredMethod("getPathResourcePattern", String.class, String[].class);
+        assertThat(method.isVarArgs(), is(true));
+        assertThat(method.getReturnType(), is((Object) String.class));
+    }
+
+    /**
+     * With invalid path patterns.
+     * @throws Exception if failed
+     */
+    @Test
+    public void path_pattern_invalid() throws Exception {
+        shouldSemanticError("path_pattern_invalid");
+    }
+
+    /**
+     * Generates resources of multiple models on background threads.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel() throws Exception {
+        generatorThreads = 4;
+        ModelLoader loaded = generateJava("parallel");
+        for (String name : new String[] { "ParallelA", "ParallelB", "ParallelC", "ParallelD" }) {
+            assertThat(name, loaded.exists("tsv", name + "TsvFormat"), is(true));
+            assertThat(name, loaded.exists("tsv", "Abstract" + name + "TsvInputDescription"), is(true));
+            assertThat(name, loaded.exists("tsv", "Abstract" + name + "TsvOutputDescription"), is(true));
+        }
+
+        ModelWrapper model = loaded.newModel("ParallelA");
+        BinaryStreamFormat<Object> unsafe = unsafe(loaded.newObject("tsv", "ParallelATsvFormat"));
+        model.set("value", new Text("Hello, world!"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ModelOutput<Object> writer = unsafe.createOutput(model.unwrap().getClass(), "hello.tsv", output);
+        writer.write(model.unwrap());
+        writer.close();
+
+        ModelWrapper buffer = loaded.newModel("ParallelA");
+        ModelInput<Object> reader = unsafe.createInput(model.unwrap().getClass(), "hello.tsv", in(output),
+                0, size(output));
+        assertThat(reader.readTo(buffer.unwrap()), is(true));
+        assertThat(buffer.getOption("value"), is((Object) new StringOption("Hello, world!")));
+        assertThat(reader.readTo(buffer.unwrap()), is(false));
+        reader.close();
+    }
+
+    /**
+     * Regenerates sources and rewrites only the changed files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void incremental() throws Exception {
+        File output = folder.newFolder("java");
+        writeDmdl("alpha.dmdl", "@directio.tsv", "alpha = { value : TEXT; };");
+        writeDmdl("beta.dmdl", "@directio.tsv", "beta = { value : TEXT; };");
+        IncrementalEmitter first = generateSources(output);
+        List<File> files = new ArrayList<File>();
+        collectFiles(output, files);
+        assertThat(first.getWrittenCount(), is(files.size()));
+        assertThat(first.getSkippedCount(), is(0));
+        for (File file : files) {
+            assertThat(file.setLastModified(10000L), is(true));
+        }
+        long timestamp = files.get(0).lastModified();
+
+        assertThat(new File(folder.getRoot(), "beta.dmdl").delete(), is(true));
+        writeDmdl("beta.dmdl", "@directio.tsv", "beta = { value : TEXT; count : INT; };");
+        IncrementalEmitter second = generateSources(output);
+        assertThat(second.getWrittenCount(), greaterThan(0));
+        assertThat(second.getWrittenCount() + second.getSkippedCount(), is(files.size()));
+
+        int unchanged = 0;
+        for (File file : files) {
+            if (file.getName().contains("Alpha")) {
+                assertThat(file.getPath(), file.lastModified(), is(timestamp));
+                unchanged++;
+            }
+        }
+        assertThat(unchanged, greaterThan(0));
+        assertThat(second.getSkippedCount(), greaterThanOrEqualTo(unchanged));
+
+        File beta = new File(output, String.format("com/example/%s/%s/Beta.java",
+                NameConstants.DEFAULT_NAMESPACE.replace('.', '/'),
+                NameConstants.CATEGORY_DATA_MODEL));
+        assertThat(beta.isFile(), is(true));
+        assertThat(beta.lastModified(), is(not(timestamp)));
+    }
+
     @SuppressWarnings("unchecked")
     private BinaryStreamFormat<Object> unsafe(Object support) {
         return (BinaryStreamFormat<Object>) support;
@@ -250,4 +1046,48 @@ public class TsvFormatEmitterTest extends GeneratorTesterRoot {
     private long size(ByteArrayOutputStream output) {
         return output.size();
     }
+
+    private static void collectFiles(File directory, List<File> results) {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                collectFiles(file, results);
+            } else {
+                results.add(file);
+            }
+        }
+    }
+
+    private void writeDmdl(String name, String... lines) throws IOException {
+        File file = folder.newFile(name);
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        try {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void addDescription(String name) throws IOException {
+        String packageName = "com.example." + NameConstants.DEFAULT_NAMESPACE + ".tsv";
+        VolatileJavaFile file = new VolatileJavaFile(
+                packageName.replace('.', '/') + "/" + name + "TsvInputDescription");
+        Writer writer = file.openWriter();
+        try {
+            writer.write("package " + packageName + ";\n");
+            writer.write("public class " + name + "TsvInputDescription");
+            writer.write(" extends Abstract" + name + "TsvInputDescription {\n");
+            writer.write("    public String getBasePath() { return \"master\"; }\n");
+            writer.write("    public String getResourcePattern() { return \"*.tsv\"; }\n");
+            writer.write("}\n");
+        } finally {
+            writer.close();
+        }
+        compiler.addSource(file);
+    }
+
+    private static Object invoke(Object object, String name) throws Exception {
+        return object.getClass().getMethod(name).invoke(object);
+    }
 }
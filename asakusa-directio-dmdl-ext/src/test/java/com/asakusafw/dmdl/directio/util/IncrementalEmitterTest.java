@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link IncrementalEmitter}.
+ */
+public class IncrementalEmitterTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * writes new files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        File root = folder.newFolder();
+        IncrementalEmitter emitter = new IncrementalEmitter(root, UTF8);
+        emit(emitter, "Hello.java", "class Hello {}");
+
+        File file = new File(root, "Hello.java");
+        assertThat(read(file), is("class Hello {}"));
+        assertThat(emitter.getWrittenCount(), is(1));
+        assertThat(emitter.getSkippedCount(), is(0));
+    }
+
+    /**
+     * keeps unchanged files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void unchanged() throws Exception {
+        File root = folder.newFolder();
+        emit(new IncrementalEmitter(root, UTF8), "Hello.java", "class Hello {}");
+        File file = new File(root, "Hello.java");
+        assertThat(file.setLastModified(10000L), is(true));
+        long timestamp = file.lastModified();
+
+        IncrementalEmitter emitter = new IncrementalEmitter(root, UTF8);
+        emit(emitter, "Hello.java", "class Hello {}");
+        assertThat(file.lastModified(), is(timestamp));
+        assertThat(emitter.getWrittenCount(), is(0));
+        assertThat(emitter.getSkippedCount(), is(1));
+    }
+
+    /**
+     * rewrites changed files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void changed() throws Exception {
+        File root = folder.newFolder();
+        emit(new IncrementalEmitter(root, UTF8), "Hello.java", "class Hello {}");
+        File file = new File(root, "Hello.java");
+
+        IncrementalEmitter emitter = new IncrementalEmitter(root, UTF8);
+        emit(emitter, "Hello.java", "class Hello { int a; }");
+        assertThat(read(file), is("class Hello { int a; }"));
+        emit(emitter, "Hello.java", "class Hello { int b; }");
+        assertThat(read(file), is("class Hello { int b; }"));
+        assertThat(emitter.getWrittenCount(), is(2));
+        assertThat(emitter.getSkippedCount(), is(0));
+    }
+
+    /**
+     * raises errors on closing the writer.
+     * @throws Exception if failed
+     */
+    @Test
+    public void error() throws Exception {
+        File root = folder.newFile();
+        IncrementalEmitter emitter = new IncrementalEmitter(root, UTF8);
+        emitter.checkErrors();
+        PrintWriter writer = emitter.openFor(null, "Hello.java");
+        writer.print("class Hello {}");
+        try {
+            writer.close();
+            fail();
+        } catch (IOError e) {
+            assertThat(e.getCause(), instanceOf(IOException.class));
+        }
+        assertThat(writer.checkError(), is(true));
+        try {
+            emitter.checkErrors();
+            fail();
+        } catch (IOException e) {
+            // ok.
+        }
+        assertThat(emitter.getWrittenCount(), is(0));
+    }
+
+    private void emit(IncrementalEmitter emitter, String path, String contents) throws IOException {
+        PrintWriter writer = emitter.openFor(null, path);
+        writer.print(contents);
+        writer.close();
+        assertThat(writer.checkError(), is(false));
+        emitter.checkErrors();
+    }
+
+    private String read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = input.read(bytes, offset, bytes.length - offset);
+                assertThat(read, greaterThan(0));
+                offset += read;
+            }
+            return new String(bytes, UTF8);
+        } finally {
+            input.close();
+        }
+    }
+}
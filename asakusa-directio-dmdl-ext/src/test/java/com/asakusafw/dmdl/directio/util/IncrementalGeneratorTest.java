@@ -0,0 +1,144 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.directio.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link IncrementalGenerator}.
+ */
+public class IncrementalGeneratorTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * generates and regenerates sources.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        File source = folder.newFolder("dmdl");
+        File output = folder.newFolder("java");
+        writeDmdl(new File(source, "simple.dmdl"), "@directio.tsv", "simple = { value : TEXT; };");
+
+        String[] args = {
+                "-output", output.getPath(),
+                "-package", "com.example",
+                "-source", source.getPath(),
+        };
+        assertThat(IncrementalGenerator.execute(args), is(0));
+        File tsv = find(output, "SimpleTsvFormat.java");
+        assertThat(tsv, is(notNullValue()));
+        assertThat(tsv.setLastModified(10000L), is(true));
+        long timestamp = tsv.lastModified();
+
+        assertThat(IncrementalGenerator.execute(args), is(0));
+        assertThat(tsv.lastModified(), is(timestamp));
+    }
+
+    /**
+     * generates sources on background threads.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel() throws Exception {
+        File source = folder.newFolder("dmdl");
+        File output = folder.newFolder("java");
+        for (String name : new String[] { "a", "b", "c", "d" }) {
+            writeDmdl(new File(source, name + ".dmdl"), "@directio.tsv", name + " = { value : TEXT; };");
+        }
+        IncrementalGenerator generator = new IncrementalGenerator(source, UTF8, output, UTF8, "com.example", 4);
+        IncrementalEmitter emitter = generator.generate(getClass().getClassLoader());
+        assertThat(emitter.getWrittenCount(), greaterThan(0));
+        for (String name : new String[] { "A", "B", "C", "D" }) {
+            assertThat(name, find(output, name + "TsvFormat.java"), is(notNullValue()));
+        }
+
+        IncrementalEmitter again = generator.generate(getClass().getClassLoader());
+        assertThat(again.getWrittenCount(), is(0));
+        assertThat(again.getSkippedCount(), is(emitter.getWrittenCount()));
+    }
+
+    /**
+     * fails if the sources could not be written.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void error() throws Exception {
+        File source = folder.newFolder("dmdl");
+        writeDmdl(new File(source, "simple.dmdl"), "@directio.tsv", "simple = { value : TEXT; };");
+        IncrementalGenerator generator = new IncrementalGenerator(
+                source, UTF8,
+                folder.newFile("java"), UTF8,
+                "com.example", 1);
+        generator.generate(getClass().getClassLoader());
+    }
+
+    /**
+     * invalid arguments.
+     */
+    @Test
+    public void invalid_arguments() {
+        assertThat(IncrementalGenerator.execute(), is(2));
+        assertThat(IncrementalGenerator.execute("-output", "java", "-package", "com.example"), is(2));
+        assertThat(IncrementalGenerator.execute("-output", "java", "-package", "com.example",
+                "-source", "dmdl", "-unknown", "x"), is(2));
+        assertThat(IncrementalGenerator.execute("-output", "java", "-package", "com.example",
+                "-source", "dmdl", "-threads", "0"), is(2));
+        assertThat(IncrementalGenerator.execute("-output"), is(2));
+    }
+
+    private static void writeDmdl(File file, String... lines) throws IOException {
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        try {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static File find(File directory, String name) {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                File found = find(file, name);
+                if (found != null) {
+                    return found;
+                }
+            } else if (file.getName().equals(name)) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
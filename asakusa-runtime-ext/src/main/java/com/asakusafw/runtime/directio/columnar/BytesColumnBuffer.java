@@ -0,0 +1,275 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Buffers texts or decimals as byte sequences, and encodes them as is or with a dictionary.
+ * Each decimal is stored as its zig-zag encoded scale followed by the bytes of its unscaled value.
+ * @since 0.6.0
+ */
+final class BytesColumnBuffer extends ColumnBuffer {
+
+    static final int MAX_DICTIONARY_SIZE = 64 * 1024;
+
+    private final ColumnarOutputBuffer pool = new ColumnarOutputBuffer(4096);
+
+    private int[] offsets = new int[256];
+
+    private int[] lengths = new int[256];
+
+    private int[] ids = new int[256];
+
+    private int count;
+
+    private int minIndex;
+
+    private int maxIndex;
+
+    private BigDecimal minDecimal;
+
+    private BigDecimal maxDecimal;
+
+    private boolean dictionaryEnabled = true;
+
+    private int[] distinctIndices = new int[256];
+
+    private int[] distinctHashes = new int[256];
+
+    private int distinctCount;
+
+    private int[] table = new int[1024];
+
+    BytesColumnBuffer(ColumnKind kind) {
+        super(kind);
+        assert kind == ColumnKind.TEXT || kind == ColumnKind.DECIMAL;
+    }
+
+    void add(byte[] bytes, int offset, int length) {
+        assert getKind() == ColumnKind.TEXT;
+        int start = pool.getLength();
+        pool.writeBytes(bytes, offset, length);
+        int index = addEntry(start);
+        if (index == 0 || compareBytes(index, minIndex) < 0) {
+            minIndex = index;
+        }
+        if (index == 0 || compareBytes(index, maxIndex) > 0) {
+            maxIndex = index;
+        }
+    }
+
+    void add(BigDecimal value) {
+        assert getKind() == ColumnKind.DECIMAL;
+        int start = pool.getLength();
+        pool.writeZigZag(value.scale());
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        pool.writeBytes(unscaled, 0, unscaled.length);
+        int index = addEntry(start);
+        if (index == 0 || value.compareTo(minDecimal) < 0) {
+            minIndex = index;
+            minDecimal = value;
+        }
+        if (index == 0 || value.compareTo(maxDecimal) > 0) {
+            maxIndex = index;
+            maxDecimal = value;
+        }
+    }
+
+    private int addEntry(int start) {
+        markPresent();
+        if (count >= offsets.length) {
+            int size = offsets.length * 2;
+            offsets = Arrays.copyOf(offsets, size);
+            lengths = Arrays.copyOf(lengths, size);
+            ids = Arrays.copyOf(ids, size);
+        }
+        int index = count++;
+        offsets[index] = start;
+        lengths[index] = pool.getLength() - start;
+        if (dictionaryEnabled) {
+            ids[index] = findOrAddDistinct(index);
+        }
+        return index;
+    }
+
+    private int findOrAddDistinct(int index) {
+        int hash = hash(index);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                break;
+            }
+            int id = entry - 1;
+            if (distinctHashes[id] == hash && equalBytes(distinctIndices[id], index)) {
+                return id;
+            }
+        }
+        if (distinctCount >= MAX_DICTIONARY_SIZE) {
+            dictionaryEnabled = false;
+            return -1;
+        }
+        if (distinctCount >= distinctIndices.length) {
+            distinctIndices = Arrays.copyOf(distinctIndices, distinctIndices.length * 2);
+            distinctHashes = Arrays.copyOf(distinctHashes, distinctHashes.length * 2);
+        }
+        int id = distinctCount++;
+        distinctIndices[id] = index;
+        distinctHashes[id] = hash;
+        if (distinctCount * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(table, id);
+        }
+        return id;
+    }
+
+    private void rehash(int size) {
+        int[] newTable = new int[size];
+        for (int id = 0; id < distinctCount; id++) {
+            insert(newTable, id);
+        }
+        table = newTable;
+    }
+
+    private void insert(int[] target, int id) {
+        int mask = target.length - 1;
+        int slot = distinctHashes[id] & mask;
+        while (target[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        target[slot] = id + 1;
+    }
+
+    private int hash(int index) {
+        byte[] b = pool.getRawBytes();
+        int h = 1;
+        for (int i = offsets[index], end = i + lengths[index]; i < end; i++) {
+            h = h * 31 + b[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private boolean equalBytes(int a, int b) {
+        int length = lengths[a];
+        if (length != lengths[b]) {
+            return false;
+        }
+        byte[] bytes = pool.getRawBytes();
+        int offsetA = offsets[a];
+        int offsetB = offsets[b];
+        for (int i = 0; i < length; i++) {
+            if (bytes[offsetA + i] != bytes[offsetB + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int compareBytes(int a, int b) {
+        byte[] bytes = pool.getRawBytes();
+        return ColumnarStatistics.compareBytes(
+                bytes, offsets[a], lengths[a],
+                bytes, offsets[b], lengths[b]);
+    }
+
+    @Override
+    long estimateSize() {
+        return pool.getLength() + count * 2L;
+    }
+
+    @Override
+    void writeStatistics(ColumnarOutputBuffer header) {
+        if (count > 0) {
+            byte[] bytes = pool.getRawBytes();
+            header.writeSizedBytes(bytes, offsets[minIndex], lengths[minIndex]);
+            header.writeSizedBytes(bytes, offsets[maxIndex], lengths[maxIndex]);
+        }
+    }
+
+    @Override
+    int writeValues(ColumnarOutputBuffer chunk) {
+        byte[] bytes = pool.getRawBytes();
+        long plainSize = 0;
+        for (int i = 0; i < count; i++) {
+            plainSize += ColumnarOutputBuffer.sizeOfVarint(lengths[i]) + lengths[i];
+        }
+        if (dictionaryEnabled && dictionarySize() < plainSize) {
+            chunk.writeVarint(distinctCount);
+            for (int id = 0; id < distinctCount; id++) {
+                int index = distinctIndices[id];
+                chunk.writeSizedBytes(bytes, offsets[index], lengths[index]);
+            }
+            chunk.writeVarint(countRuns());
+            for (int i = 0; i < count;) {
+                int length = runLength(i);
+                chunk.writeVarint(ids[i]);
+                chunk.writeVarint(length);
+                i += length;
+            }
+            return ColumnarFormats.ENCODING_DICTIONARY;
+        }
+        for (int i = 0; i < count; i++) {
+            chunk.writeSizedBytes(bytes, offsets[i], lengths[i]);
+        }
+        return ColumnarFormats.ENCODING_PLAIN;
+    }
+
+    private long dictionarySize() {
+        long size = ColumnarOutputBuffer.sizeOfVarint(distinctCount);
+        for (int id = 0; id < distinctCount; id++) {
+            int length = lengths[distinctIndices[id]];
+            size += ColumnarOutputBuffer.sizeOfVarint(length) + length;
+        }
+        size += ColumnarOutputBuffer.sizeOfVarint(countRuns());
+        for (int i = 0; i < count;) {
+            int length = runLength(i);
+            size += ColumnarOutputBuffer.sizeOfVarint(ids[i]) + ColumnarOutputBuffer.sizeOfVarint(length);
+            i += length;
+        }
+        return size;
+    }
+
+    private int countRuns() {
+        int runs = 0;
+        for (int i = 0; i < count; i += runLength(i)) {
+            runs++;
+        }
+        return runs;
+    }
+
+    private int runLength(int start) {
+        int id = ids[start];
+        int end = start + 1;
+        while (end < count && ids[end] == id) {
+            end++;
+        }
+        return end - start;
+    }
+
+    @Override
+    void resetValues() {
+        pool.reset();
+        count = 0;
+        minDecimal = null;
+        maxDecimal = null;
+        dictionaryEnabled = true;
+        distinctCount = 0;
+        Arrays.fill(table, 0);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.util.Arrays;
+
+/**
+ * Buffers values of a column in the current row group.
+ * @since 0.6.0
+ */
+abstract class ColumnBuffer {
+
+    private final ColumnKind kind;
+
+    private boolean[] nulls = new boolean[256];
+
+    private int rowCount;
+
+    private int nullCount;
+
+    ColumnBuffer(ColumnKind kind) {
+        assert kind != null;
+        this.kind = kind;
+    }
+
+    final ColumnKind getKind() {
+        return kind;
+    }
+
+    final int getRowCount() {
+        return rowCount;
+    }
+
+    final int getNullCount() {
+        return nullCount;
+    }
+
+    final void addNull() {
+        mark(true);
+        nullCount++;
+    }
+
+    final void markPresent() {
+        mark(false);
+    }
+
+    private void mark(boolean isNull) {
+        if (rowCount >= nulls.length) {
+            nulls = Arrays.copyOf(nulls, nulls.length * 2);
+        }
+        nulls[rowCount++] = isNull;
+    }
+
+    /**
+     * Writes the runs of non-null and null values, only if this has both of them.
+     * @param chunk the target chunk
+     */
+    final void writeNullRuns(ColumnarOutputBuffer chunk) {
+        if (nullCount == 0 || nullCount == rowCount) {
+            return;
+        }
+        int runs = 1;
+        boolean current = false;
+        for (int i = 0; i < rowCount; i++) {
+            if (nulls[i] != current) {
+                current = nulls[i];
+                runs++;
+            }
+        }
+        chunk.writeVarint(runs);
+        current = false;
+        int length = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (nulls[i] != current) {
+                chunk.writeVarint(length);
+                current = nulls[i];
+                length = 0;
+            }
+            length++;
+        }
+        chunk.writeVarint(length);
+    }
+
+    final void reset() {
+        rowCount = 0;
+        nullCount = 0;
+        resetValues();
+    }
+
+    /**
+     * Returns the estimated number of buffered bytes.
+     * @return the estimated size
+     */
+    abstract long estimateSize();
+
+    /**
+     * Writes the minimum and maximum values, only if this has any non-null values.
+     * @param header the target column header
+     */
+    abstract void writeStatistics(ColumnarOutputBuffer header);
+
+    /**
+     * Writes the non-null values.
+     * @param chunk the target chunk
+     * @return the chosen encoding
+     */
+    abstract int writeValues(ColumnarOutputBuffer chunk);
+
+    /**
+     * Discards the buffered values.
+     */
+    abstract void resetValues();
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * Decoded values of a column in the current row group.
+ * @since 0.6.0
+ */
+final class ColumnChunk {
+
+    private final ColumnarInputBuffer buffer = new ColumnarInputBuffer();
+
+    private ColumnKind kind;
+
+    private byte[] data = new byte[0];
+
+    private int[] valueIndices = new int[0];
+
+    private long[] longs = new long[0];
+
+    private double[] doubles = new double[0];
+
+    private int[] offsets = new int[0];
+
+    private int[] lengths = new int[0];
+
+    private boolean loaded;
+
+    ColumnKind getKind() {
+        return kind;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    void unload(ColumnKind newKind) {
+        this.kind = newKind;
+        this.loaded = false;
+    }
+
+    /**
+     * Returns a buffer to read the encoded chunk into.
+     * @param size the chunk size
+     * @return the buffer
+     */
+    byte[] prepare(int size) {
+        if (data.length < size) {
+            data = new byte[Math.max(size, data.length * 2)];
+        }
+        return data;
+    }
+
+    void load(ColumnKind newKind, int encoding, int rowCount, int nullCount, int size) throws IOException {
+        this.kind = newKind;
+        this.loaded = false;
+        buffer.reset(data, 0, size);
+        if (valueIndices.length < rowCount) {
+            valueIndices = new int[rowCount];
+        }
+        int valueCount = rowCount - nullCount;
+        loadNulls(rowCount, nullCount);
+        switch (newKind) {
+        case INTEGRAL:
+            loadIntegral(encoding, valueCount);
+            break;
+        case FLOATING_POINT:
+            loadFloatingPoint(encoding, valueCount);
+            break;
+        case TEXT:
+        case DECIMAL:
+            loadBytes(encoding, valueCount);
+            break;
+        default:
+            throw new AssertionError(newKind);
+        }
+        if (buffer.getOffset() != size) {
+            throw new IOException(MessageFormat.format(
+                    "Column chunk has extra {0} bytes",
+                    size - buffer.getOffset()));
+        }
+        this.loaded = true;
+    }
+
+    private void loadNulls(int rowCount, int nullCount) throws IOException {
+        if (nullCount == 0) {
+            for (int i = 0; i < rowCount; i++) {
+                valueIndices[i] = i;
+            }
+        } else if (nullCount == rowCount) {
+            Arrays.fill(valueIndices, 0, rowCount, -1);
+        } else {
+            int runs = buffer.readCount();
+            int row = 0;
+            int value = 0;
+            for (int run = 0; run < runs; run++) {
+                int length = buffer.readCount();
+                if (length > rowCount - row) {
+                    throw new IOException("Invalid null runs");
+                }
+                boolean isNull = (run & 1) != 0;
+                for (int i = 0; i < length; i++) {
+                    valueIndices[row++] = isNull ? -1 : value++;
+                }
+            }
+            if (row != rowCount || value != rowCount - nullCount) {
+                throw new IOException("Invalid null runs");
+            }
+        }
+    }
+
+    private void loadIntegral(int encoding, int valueCount) throws IOException {
+        if (longs.length < valueCount) {
+            longs = new long[valueCount];
+        }
+        switch (encoding) {
+        case ColumnarFormats.ENCODING_DELTA: {
+            long previous = 0;
+            for (int i = 0; i < valueCount; i++) {
+                previous += buffer.readZigZag();
+                longs[i] = previous;
+            }
+            break;
+        }
+        case ColumnarFormats.ENCODING_RLE: {
+            int runs = buffer.readCount();
+            long previous = 0;
+            int index = 0;
+            for (int run = 0; run < runs; run++) {
+                previous += buffer.readZigZag();
+                int length = buffer.readCount();
+                if (length > valueCount - index) {
+                    throw new IOException("Invalid value runs");
+                }
+                Arrays.fill(longs, index, index + length, previous);
+                index += length;
+            }
+            if (index != valueCount) {
+                throw new IOException("Invalid value runs");
+            }
+            break;
+        }
+        default:
+            throw unsupported(encoding);
+        }
+    }
+
+    private void loadFloatingPoint(int encoding, int valueCount) throws IOException {
+        if (encoding != ColumnarFormats.ENCODING_PLAIN) {
+            throw unsupported(encoding);
+        }
+        if (doubles.length < valueCount) {
+            doubles = new double[valueCount];
+        }
+        for (int i = 0; i < valueCount; i++) {
+            doubles[i] = Double.longBitsToDouble(buffer.readLong());
+        }
+    }
+
+    private void loadBytes(int encoding, int valueCount) throws IOException {
+        if (offsets.length < valueCount) {
+            offsets = new int[valueCount];
+            lengths = new int[valueCount];
+        }
+        switch (encoding) {
+        case ColumnarFormats.ENCODING_PLAIN:
+            for (int i = 0; i < valueCount; i++) {
+                int length = buffer.readLength();
+                offsets[i] = buffer.getOffset();
+                lengths[i] = length;
+                buffer.skip(length);
+            }
+            break;
+        case ColumnarFormats.ENCODING_DICTIONARY: {
+            int entries = buffer.readCount();
+            int[] entryOffsets = new int[entries];
+            int[] entryLengths = new int[entries];
+            for (int i = 0; i < entries; i++) {
+                int length = buffer.readLength();
+                entryOffsets[i] = buffer.getOffset();
+                entryLengths[i] = length;
+                buffer.skip(length);
+            }
+            int runs = buffer.readCount();
+            int index = 0;
+            for (int run = 0; run < runs; run++) {
+                int id = buffer.readCount();
+                int length = buffer.readCount();
+                if (id >= entries || length > valueCount - index) {
+                    throw new IOException("Invalid dictionary runs");
+                }
+                Arrays.fill(offsets, index, index + length, entryOffsets[id]);
+                Arrays.fill(lengths, index, index + length, entryLengths[id]);
+                index += length;
+            }
+            if (index != valueCount) {
+                throw new IOException("Invalid dictionary runs");
+            }
+            break;
+        }
+        default:
+            throw unsupported(encoding);
+        }
+    }
+
+    private IOException unsupported(int encoding) {
+        return new IOException(MessageFormat.format(
+                "Unsupported encoding for {0} column: {1}",
+                kind,
+                encoding));
+    }
+
+    /**
+     * Returns the index of the non-null value of the row.
+     * @param row the row index in the row group
+     * @return the value index, or {@code -1} if the row has {@code null}
+     */
+    int getValueIndex(int row) {
+        return valueIndices[row];
+    }
+
+    long getLong(int valueIndex) {
+        return longs[valueIndex];
+    }
+
+    double getDouble(int valueIndex) {
+        return doubles[valueIndex];
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    int getOffset(int valueIndex) {
+        return offsets[valueIndex];
+    }
+
+    int getLength(int valueIndex) {
+        return lengths[valueIndex];
+    }
+}
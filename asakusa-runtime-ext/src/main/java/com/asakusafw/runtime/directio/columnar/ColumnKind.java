@@ -0,0 +1,72 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+/**
+ * The physical kinds of columns.
+ * @since 0.6.0
+ */
+public enum ColumnKind {
+
+    /**
+     * Integral values, including booleans, dates and date-times.
+     */
+    INTEGRAL(1),
+
+    /**
+     * Floating point values.
+     */
+    FLOATING_POINT(2),
+
+    /**
+     * Texts as UTF-8 byte sequences.
+     */
+    TEXT(3),
+
+    /**
+     * Decimals as scales and unscaled values.
+     */
+    DECIMAL(4),
+    ;
+
+    private final int id;
+
+    private ColumnKind(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the ID of this kind in files.
+     * @return the ID
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the kind for the ID.
+     * @param id the ID in files
+     * @return the corresponding kind, or {@code null} if it is not defined
+     */
+    static ColumnKind valueOf(int id) {
+        for (ColumnKind kind : values()) {
+            if (kind.id == id) {
+                return kind;
+            }
+        }
+        return null;
+    }
+}
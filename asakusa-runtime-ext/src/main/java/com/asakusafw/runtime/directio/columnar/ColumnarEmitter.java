@@ -0,0 +1,389 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Emits Direct I/O columnar files.
+ * This buffers the records of the current row group column by column,
+ * and writes the row group when it reaches the maximum number of rows or buffered bytes.
+ * Every record must have the same column types in the same order.
+ * @see ColumnarFormats
+ * @since 0.6.0
+ */
+public class ColumnarEmitter implements Closeable, Flushable {
+
+    private static final int ESTIMATE_INTERVAL = 128;
+
+    private final OutputStream output;
+
+    private final int rowGroupRows;
+
+    private final long rowGroupBytes;
+
+    private final List<ColumnBuffer> columns = new ArrayList<ColumnBuffer>();
+
+    private final ColumnarOutputBuffer header = new ColumnarOutputBuffer(1024);
+
+    private final List<ColumnarOutputBuffer> chunks = new ArrayList<ColumnarOutputBuffer>();
+
+    private int columnIndex;
+
+    private int rowCount;
+
+    private boolean columnsFixed;
+
+    private long rowGroupCount;
+
+    /**
+     * Creates a new instance with the default row group size.
+     * @param output the destination output
+     * @throws IOException if failed to write the file header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @see ColumnarFormats#DEFAULT_ROW_GROUP_ROWS
+     * @see ColumnarFormats#DEFAULT_ROW_GROUP_BYTES
+     */
+    public ColumnarEmitter(OutputStream output) throws IOException {
+        this(output, ColumnarFormats.DEFAULT_ROW_GROUP_ROWS, ColumnarFormats.DEFAULT_ROW_GROUP_BYTES);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param output the destination output
+     * @param rowGroupRows the maximum number of rows in each row group
+     * @param rowGroupBytes the maximum number of buffered bytes in each row group
+     * @throws IOException if failed to write the file header
+     * @throws IllegalArgumentException if {@code output} is {@code null}, or the row group size is not positive
+     */
+    public ColumnarEmitter(OutputStream output, int rowGroupRows, long rowGroupBytes) throws IOException {
+        if (output == null) {
+            throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
+        }
+        if (rowGroupRows <= 0) {
+            throw new IllegalArgumentException("rowGroupRows must be positive"); //$NON-NLS-1$
+        }
+        if (rowGroupBytes <= 0) {
+            throw new IllegalArgumentException("rowGroupBytes must be positive"); //$NON-NLS-1$
+        }
+        this.output = output;
+        this.rowGroupRows = rowGroupRows;
+        this.rowGroupBytes = rowGroupBytes;
+        output.write(ColumnarFormats.MAGIC);
+    }
+
+    /**
+     * Returns the number of row groups which have been written.
+     * @return the number of row groups
+     */
+    public long getRowGroupCount() {
+        return rowGroupCount;
+    }
+
+    /**
+     * Ends the current record.
+     * @throws IOException if failed to write the row group, or the record does not have all columns
+     */
+    public void endRecord() throws IOException {
+        if (columnIndex != columns.size()) {
+            throw new IOException(MessageFormat.format(
+                    "Record must have {0} columns, but it has {1}",
+                    columns.size(),
+                    columnIndex));
+        }
+        columnsFixed = true;
+        columnIndex = 0;
+        rowCount++;
+        if (rowCount >= rowGroupRows
+                || (rowCount % ESTIMATE_INTERVAL == 0 && estimateSize() >= rowGroupBytes)) {
+            writeRowGroup();
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(BooleanOption option) throws IOException {
+        if (option.isNull()) {
+            integral().addNull();
+        } else {
+            integral().add(option.get() ? 1L : 0L);
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(ByteOption option) throws IOException {
+        if (option.isNull()) {
+            integral().addNull();
+        } else {
+            integral().add(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(ShortOption option) throws IOException {
+        if (option.isNull()) {
+            integral().addNull();
+        } else {
+            integral().add(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(IntOption option) throws IOException {
+        if (option.isNull()) {
+            integral().addNull();
+        } else {
+            integral().add(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(LongOption option) throws IOException {
+        if (option.isNull()) {
+            integral().addNull();
+        } else {
+            integral().add(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(FloatOption option) throws IOException {
+        if (option.isNull()) {
+            floatingPoint().addNull();
+        } else {
+            floatingPoint().add(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(DoubleOption option) throws IOException {
+        if (option.isNull()) {
+            floatingPoint().addNull();
+        } else {
+            floatingPoint().add(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(DecimalOption option) throws IOException {
+        if (option.isNull()) {
+            decimal().addNull();
+        } else {
+            decimal().add(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(StringOption option) throws IOException {
+        if (option.isNull()) {
+            text().addNull();
+        } else {
+            Text text = option.get();
+            text().add(text.getBytes(), 0, text.getLength());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(DateOption option) throws IOException {
+        if (option.isNull()) {
+            integral().addNull();
+        } else {
+            integral().add(option.get().getElapsedDays());
+        }
+    }
+
+    /**
+     * Emits the option as the next column.
+     * @param option the target option
+     * @throws IOException if the column is not consistent with the previous records
+     */
+    public void emit(DateTimeOption option) throws IOException {
+        if (option.isNull()) {
+            integral().addNull();
+        } else {
+            integral().add(option.get().getElapsedSeconds());
+        }
+    }
+
+    private IntegralColumnBuffer integral() throws IOException {
+        return (IntegralColumnBuffer) nextColumn(ColumnKind.INTEGRAL);
+    }
+
+    private FloatingPointColumnBuffer floatingPoint() throws IOException {
+        return (FloatingPointColumnBuffer) nextColumn(ColumnKind.FLOATING_POINT);
+    }
+
+    private BytesColumnBuffer text() throws IOException {
+        return (BytesColumnBuffer) nextColumn(ColumnKind.TEXT);
+    }
+
+    private BytesColumnBuffer decimal() throws IOException {
+        return (BytesColumnBuffer) nextColumn(ColumnKind.DECIMAL);
+    }
+
+    private ColumnBuffer nextColumn(ColumnKind kind) throws IOException {
+        int index = columnIndex++;
+        if (index < columns.size()) {
+            ColumnBuffer column = columns.get(index);
+            if (column.getKind() != kind) {
+                throw new IOException(MessageFormat.format(
+                        "Column {0} must be {1}, but it was {2}",
+                        index,
+                        column.getKind(),
+                        kind));
+            }
+            return column;
+        }
+        if (columnsFixed) {
+            throw new IOException(MessageFormat.format(
+                    "Record must have {0} columns",
+                    columns.size()));
+        }
+        ColumnBuffer column = createColumn(kind);
+        columns.add(column);
+        chunks.add(new ColumnarOutputBuffer(1024));
+        return column;
+    }
+
+    private ColumnBuffer createColumn(ColumnKind kind) {
+        switch (kind) {
+        case INTEGRAL:
+            return new IntegralColumnBuffer();
+        case FLOATING_POINT:
+            return new FloatingPointColumnBuffer();
+        case TEXT:
+        case DECIMAL:
+            return new BytesColumnBuffer(kind);
+        default:
+            throw new AssertionError(kind);
+        }
+    }
+
+    private long estimateSize() {
+        long total = 0;
+        for (ColumnBuffer column : columns) {
+            total += column.estimateSize();
+        }
+        return total;
+    }
+
+    private void writeRowGroup() throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        header.reset();
+        header.writeVarint(rowCount);
+        header.writeVarint(columns.size());
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            ColumnBuffer column = columns.get(i);
+            ColumnarOutputBuffer chunk = chunks.get(i);
+            chunk.reset();
+            column.writeNullRuns(chunk);
+            int encoding = column.writeValues(chunk);
+            header.writeByte(column.getKind().getId());
+            header.writeByte(encoding);
+            header.writeVarint(column.getNullCount());
+            column.writeStatistics(header);
+            header.writeVarint(chunk.getLength());
+        }
+        output.write(ColumnarFormats.HEADER_ROW_GROUP);
+        output.write(ColumnarFormats.SYNC_MARKER);
+        ColumnarOutputBuffer length = new ColumnarOutputBuffer(10);
+        length.writeVarint(header.getLength());
+        length.writeTo(output);
+        header.writeTo(output);
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            chunks.get(i).writeTo(output);
+            columns.get(i).reset();
+        }
+        rowCount = 0;
+        rowGroupCount++;
+    }
+
+    /**
+     * Flushes the destination output.
+     * This does not write the current row group, to keep row groups large.
+     */
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeRowGroup();
+        output.close();
+    }
+}
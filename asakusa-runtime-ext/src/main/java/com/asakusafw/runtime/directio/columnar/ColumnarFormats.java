@@ -0,0 +1,135 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Constants and utilities of the Direct I/O columnar format.
+<pre>
+file         := MAGIC row-group*
+row-group    := 0x00 SYNC_MARKER varint(header-length) header column-chunk*
+header       := varint(row-count) varint(column-count) column-header*
+column-header:= kind encoding varint(null-count) [minimum maximum] varint(chunk-length)
+column-chunk := [varint(run-count) varint(run-length)*] values
+</pre>
+ * Each row group starts with its header, so that readers can skip unnecessary columns and row groups
+ * without decoding them, and without seeking to the end of the file.
+ * Each column header has the statistics only if the column has any non-null values,
+ * and each column chunk has the runs of non-null and null values only if the column has both of them.
+ * Values in each column chunk are encoded with one of the following, whichever is smaller:
+ * <ul>
+ * <li> integral values ({@code BOOLEAN}, {@code BYTE}, {@code SHORT}, {@code INT}, {@code LONG},
+ *      {@code DATE} as elapsed days, and {@code DATETIME} as elapsed seconds):
+ *      {@link #ENCODING_DELTA delta} or {@link #ENCODING_RLE run-length} </li>
+ * <li> floating point values ({@code FLOAT} and {@code DOUBLE}): {@link #ENCODING_PLAIN plain} </li>
+ * <li> byte sequences ({@code TEXT} and {@code DECIMAL}):
+ *      {@link #ENCODING_PLAIN plain} or {@link #ENCODING_DICTIONARY dictionary} </li>
+ * </ul>
+ * @since 0.6.0
+ */
+public final class ColumnarFormats {
+
+    /**
+     * The magic number at the head of each file.
+     */
+    static final byte[] MAGIC = { 'A', 'C', 'F', 1 };
+
+    /**
+     * The fixed sync marker at the head of each row group, which never contains {@code 0x00}.
+     */
+    static final byte[] SYNC_MARKER = {
+        (byte) 0x3e, (byte) 0xc7, (byte) 0x19, (byte) 0x8b,
+        (byte) 0xf4, (byte) 0x62, (byte) 0xad, (byte) 0x27,
+        (byte) 0x5b, (byte) 0xe8, (byte) 0x91, (byte) 0x4c,
+        (byte) 0xd3, (byte) 0x76, (byte) 0x0a, (byte) 0xb5,
+    };
+
+    /**
+     * The head byte of each row group.
+     */
+    static final int HEADER_ROW_GROUP = 0;
+
+    /**
+     * The number of bytes of each sync block.
+     */
+    static final int SYNC_SIZE = 1 + 16;
+
+    /**
+     * Values are stored as is.
+     */
+    public static final int ENCODING_PLAIN = 0;
+
+    /**
+     * Integral values are stored as the differences from their previous values.
+     */
+    public static final int ENCODING_DELTA = 1;
+
+    /**
+     * Integral values are stored as runs of the same value.
+     */
+    public static final int ENCODING_RLE = 2;
+
+    /**
+     * Byte sequences are stored as a dictionary and runs of indices into it.
+     */
+    public static final int ENCODING_DICTIONARY = 3;
+
+    /**
+     * The default maximum number of rows in each row group.
+     */
+    public static final int DEFAULT_ROW_GROUP_ROWS = 64 * 1024;
+
+    /**
+     * The default maximum number of buffered bytes in each row group.
+     */
+    public static final int DEFAULT_ROW_GROUP_BYTES = 8 * 1024 * 1024;
+
+    private ColumnarFormats() {
+        return;
+    }
+
+    /**
+     * Returns the column projection for {@link ColumnarParser#setProjection(boolean[])}.
+     * @param columnNames the all column names in order
+     * @param required the required column names, or {@code null} to read all columns
+     * @return the column projection, or {@code null} to read all columns
+     * @throws IllegalArgumentException if {@code columnNames} is {@code null},
+     *     or {@code required} contains an unknown column name
+     */
+    public static boolean[] toProjection(List<String> columnNames, Collection<String> required) {
+        if (columnNames == null) {
+            throw new IllegalArgumentException("columnNames must not be null"); //$NON-NLS-1$
+        }
+        if (required == null) {
+            return null;
+        }
+        boolean[] results = new boolean[columnNames.size()];
+        for (String name : required) {
+            int index = columnNames.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Unknown column \"{0}\" (must be one of {1})",
+                        name,
+                        columnNames));
+            }
+            results[index] = true;
+        }
+        return results;
+    }
+}
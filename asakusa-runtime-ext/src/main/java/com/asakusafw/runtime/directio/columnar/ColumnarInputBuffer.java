@@ -0,0 +1,104 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.io.IOException;
+
+/**
+ * Reads encoded values from a byte array.
+ * @since 0.6.0
+ */
+final class ColumnarInputBuffer {
+
+    private byte[] bytes;
+
+    private int offset;
+
+    private int limit;
+
+    void reset(byte[] source, int start, int end) {
+        this.bytes = source;
+        this.offset = start;
+        this.limit = end;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int readByte() throws IOException {
+        require(1);
+        return bytes[offset++] & 0xff;
+    }
+
+    long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Invalid variable length integer");
+    }
+
+    int readLength() throws IOException {
+        long value = readVarint();
+        if (value < 0 || value > limit - offset) {
+            throw new IOException("Invalid length: " + value);
+        }
+        return (int) value;
+    }
+
+    int readCount() throws IOException {
+        long value = readVarint();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid count: " + value);
+        }
+        return (int) value;
+    }
+
+    long readZigZag() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readLong() throws IOException {
+        require(8);
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (bytes[offset + i] & 0xff);
+        }
+        offset += 8;
+        return result;
+    }
+
+    void skip(int size) throws IOException {
+        require(size);
+        offset += size;
+    }
+
+    private void require(int size) throws IOException {
+        if (limit - offset < size) {
+            throw new IOException("Column chunk is too short");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer for encoding columns.
+ * @since 0.6.0
+ */
+final class ColumnarOutputBuffer {
+
+    private byte[] bytes;
+
+    private int length;
+
+    ColumnarOutputBuffer(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    byte[] getRawBytes() {
+        return bytes;
+    }
+
+    void reset() {
+        length = 0;
+    }
+
+    void writeByte(int value) {
+        reserve(1);
+        bytes[length++] = (byte) value;
+    }
+
+    void writeVarint(long value) {
+        reserve(10);
+        long rest = value;
+        while ((rest & ~0x7fL) != 0) {
+            bytes[length++] = (byte) ((rest & 0x7f) | 0x80);
+            rest >>>= 7;
+        }
+        bytes[length++] = (byte) rest;
+    }
+
+    void writeZigZag(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeLong(long value) {
+        reserve(8);
+        long rest = value;
+        for (int i = 7; i >= 0; i--) {
+            bytes[length + i] = (byte) rest;
+            rest >>= 8;
+        }
+        length += 8;
+    }
+
+    void writeBytes(byte[] source, int offset, int size) {
+        reserve(size);
+        System.arraycopy(source, offset, bytes, length, size);
+        length += size;
+    }
+
+    void writeSizedBytes(byte[] source, int offset, int size) {
+        writeVarint(size);
+        writeBytes(source, offset, size);
+    }
+
+    void writeTo(OutputStream output) throws IOException {
+        output.write(bytes, 0, length);
+    }
+
+    static int sizeOfVarint(long value) {
+        int size = 1;
+        long rest = value;
+        while ((rest & ~0x7fL) != 0) {
+            size++;
+            rest >>>= 7;
+        }
+        return size;
+    }
+
+    static int sizeOfZigZag(long value) {
+        return sizeOfVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void reserve(int size) {
+        int required = length + size;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+    }
+}
@@ -0,0 +1,662 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Parses Direct I/O columnar files written by {@link ColumnarEmitter}.
+ * <p>
+ * Columns which are not in the {@link #setProjection(boolean[]) projection} are skipped without decoding,
+ * and row groups which are rejected by the {@link #setFilter(ColumnarRowGroupFilter) filter} are skipped entirely.
+ * </p>
+ * <p>
+ * A parser for a fragment starting at a non-zero offset skips to the first row group at or after the offset.
+ * Each parser stops at the first row group at or after the end of its fragment,
+ * so that every row group is read by exactly one of the fragments.
+ * </p>
+ * @see ColumnarFormats
+ * @since 0.6.0
+ */
+public class ColumnarParser implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+
+    private final String path;
+
+    private final long offset;
+
+    private final long end;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int bufferOffset;
+
+    private int bufferLimit;
+
+    private long position;
+
+    private boolean[] projection;
+
+    private ColumnarRowGroupFilter filter;
+
+    private final ColumnarInputBuffer headerBuffer = new ColumnarInputBuffer();
+
+    private byte[] header = new byte[256];
+
+    private final List<ColumnChunk> chunks = new ArrayList<ColumnChunk>();
+
+    private int columnCount;
+
+    private int rowCount;
+
+    private int rowIndex = -1;
+
+    private int columnIndex;
+
+    private boolean started;
+
+    private boolean syncConsumed;
+
+    private boolean finished;
+
+    private long skippedRowGroupCount;
+
+    private final Text scratchText = new Text();
+
+    private final Date scratchDate = new Date();
+
+    private final DateTime scratchDateTime = new DateTime();
+
+    /**
+     * Creates a new instance which reads the whole file.
+     * @param input the source input
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ColumnarParser(InputStream input) {
+        this(input, null, 0L, -1L);
+    }
+
+    /**
+     * Creates a new instance which reads a fragment of the file.
+     * @param input the source input, which starts at {@code offset} of the file
+     * @param path the file path (for diagnostics, nullable)
+     * @param offset the offset of the fragment in the file
+     * @param fragmentSize the size of the fragment in bytes, or {@code -1} for the rest of the file
+     * @throws IllegalArgumentException if {@code input} is {@code null}, or {@code offset} is negative
+     */
+    public ColumnarParser(InputStream input, String path, long offset, long fragmentSize) {
+        if (input == null) {
+            throw new IllegalArgumentException("input must not be null"); //$NON-NLS-1$
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative"); //$NON-NLS-1$
+        }
+        this.input = input;
+        this.path = path;
+        this.offset = offset;
+        this.position = offset;
+        this.end = fragmentSize < 0 ? Long.MAX_VALUE : offset + fragmentSize;
+    }
+
+    /**
+     * Sets the columns to be read.
+     * @param columns whether each column is read or not, or {@code null} to read all columns
+     * @see ColumnarFormats#toProjection(List, java.util.Collection)
+     */
+    public void setProjection(boolean[] columns) {
+        this.projection = columns == null ? null : columns.clone();
+    }
+
+    /**
+     * Sets the filter of row groups.
+     * @param rowGroupFilter the filter, or {@code null} to read all row groups
+     */
+    public void setFilter(ColumnarRowGroupFilter rowGroupFilter) {
+        this.filter = rowGroupFilter;
+    }
+
+    /**
+     * Returns the number of row groups which were skipped by the filter.
+     * @return the number of skipped row groups
+     */
+    public long getSkippedRowGroupCount() {
+        return skippedRowGroupCount;
+    }
+
+    /**
+     * Advances the cursor to the next record.
+     * @return {@code true} if the next record exists, otherwise {@code false}
+     * @throws IOException if failed to read the next record
+     */
+    public boolean next() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (started == false) {
+            started = true;
+            boolean found;
+            if (offset == 0) {
+                found = readMagic();
+            } else {
+                found = seekToSync();
+                syncConsumed = true;
+            }
+            if (found == false) {
+                finished = true;
+                return false;
+            }
+        }
+        while (rowIndex + 1 >= rowCount) {
+            if (loadRowGroup() == false) {
+                finished = true;
+                return false;
+            }
+        }
+        rowIndex++;
+        columnIndex = 0;
+        return true;
+    }
+
+    /**
+     * Ends the current record.
+     * @throws IOException if the current record has unread columns
+     */
+    public void endRecord() throws IOException {
+        if (columnIndex != columnCount) {
+            throw new IOException(MessageFormat.format(
+                    "Record has {1} columns, but {2} columns were read: {0}",
+                    path,
+                    columnCount,
+                    columnIndex));
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(BooleanOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.INTEGRAL);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            option.modify(chunk.getLong(value) != 0);
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(ByteOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.INTEGRAL);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            option.modify((byte) chunk.getLong(value));
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(ShortOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.INTEGRAL);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            option.modify((short) chunk.getLong(value));
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(IntOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.INTEGRAL);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            option.modify((int) chunk.getLong(value));
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(LongOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.INTEGRAL);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            option.modify(chunk.getLong(value));
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(FloatOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.FLOATING_POINT);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            option.modify((float) chunk.getDouble(value));
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(DoubleOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.FLOATING_POINT);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            option.modify(chunk.getDouble(value));
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(DecimalOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.DECIMAL);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            option.modify(ColumnarStatistics.toDecimal(
+                    chunk.getData(), chunk.getOffset(value), chunk.getLength(value)));
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(StringOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.TEXT);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            scratchText.set(chunk.getData(), chunk.getOffset(value), chunk.getLength(value));
+            option.modify(scratchText);
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(DateOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.INTEGRAL);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            scratchDate.setElapsedDays((int) chunk.getLong(value));
+            option.modify(scratchDate);
+        }
+    }
+
+    /**
+     * Sets the next column value into the option.
+     * The option is not modified if the column is not in the {@link #setProjection(boolean[]) projection}.
+     * @param option the target option
+     * @throws IOException if failed to read the column
+     */
+    public void fill(DateTimeOption option) throws IOException {
+        ColumnChunk chunk = nextColumn(ColumnKind.INTEGRAL);
+        if (chunk == null) {
+            return;
+        }
+        int value = chunk.getValueIndex(rowIndex);
+        if (value < 0) {
+            option.setNull();
+        } else {
+            scratchDateTime.setElapsedSeconds(chunk.getLong(value));
+            option.modify(scratchDateTime);
+        }
+    }
+
+    private ColumnChunk nextColumn(ColumnKind kind) throws IOException {
+        int index = columnIndex++;
+        if (index >= columnCount) {
+            throw new IOException(MessageFormat.format(
+                    "Record has only {1} columns: {0}",
+                    path,
+                    columnCount));
+        }
+        ColumnChunk chunk = chunks.get(index);
+        if (chunk.getKind() != kind) {
+            throw new IOException(MessageFormat.format(
+                    "Column {1} is {2}, but it was read as {3}: {0}",
+                    path,
+                    index,
+                    chunk.getKind(),
+                    kind));
+        }
+        return chunk.isLoaded() ? chunk : null;
+    }
+
+    private boolean loadRowGroup() throws IOException {
+        if (syncConsumed) {
+            syncConsumed = false;
+        } else {
+            long start = position;
+            int head = readRaw();
+            if (head < 0) {
+                return false;
+            }
+            if (head != ColumnarFormats.HEADER_ROW_GROUP) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid row group header at {1}: {0}",
+                        path,
+                        start));
+            }
+            if (start >= end) {
+                return false;
+            }
+            readSyncMarker();
+        }
+        int headerLength = (int) Math.min(readStreamVarint(), Integer.MAX_VALUE);
+        if (header.length < headerLength) {
+            header = new byte[Math.max(headerLength, header.length * 2)];
+        }
+        readFully(header, headerLength);
+        headerBuffer.reset(header, 0, headerLength);
+        rowCount = headerBuffer.readCount();
+        columnCount = headerBuffer.readCount();
+        while (chunks.size() < columnCount) {
+            chunks.add(new ColumnChunk());
+        }
+        ColumnKind[] kinds = new ColumnKind[columnCount];
+        int[] encodings = new int[columnCount];
+        int[] nullCounts = new int[columnCount];
+        long[] chunkLengths = new long[columnCount];
+        ColumnarStatistics[] statistics = new ColumnarStatistics[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            int kindId = headerBuffer.readByte();
+            kinds[i] = ColumnKind.valueOf(kindId);
+            if (kinds[i] == null) {
+                throw new IOException(MessageFormat.format(
+                        "Unknown column kind ({1}): {0}",
+                        path,
+                        kindId));
+            }
+            encodings[i] = headerBuffer.readByte();
+            nullCounts[i] = headerBuffer.readCount();
+            if (nullCounts[i] > rowCount) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid null count ({1}): {0}",
+                        path,
+                        nullCounts[i]));
+            }
+            statistics[i] = ColumnarStatistics.read(kinds[i], rowCount, nullCounts[i], headerBuffer);
+            chunkLengths[i] = headerBuffer.readVarint();
+        }
+        rowIndex = -1;
+        if (filter != null && filter.accept(statistics) == false) {
+            for (int i = 0; i < columnCount; i++) {
+                skipFully(chunkLengths[i]);
+            }
+            skippedRowGroupCount++;
+            rowCount = 0;
+            return true;
+        }
+        for (int i = 0; i < columnCount; i++) {
+            ColumnChunk chunk = chunks.get(i);
+            if (projection != null && (i >= projection.length || projection[i] == false)) {
+                skipFully(chunkLengths[i]);
+                chunk.unload(kinds[i]);
+            } else {
+                if (chunkLengths[i] > Integer.MAX_VALUE) {
+                    throw new IOException(MessageFormat.format(
+                            "Column chunk is too large ({1}): {0}",
+                            path,
+                            chunkLengths[i]));
+                }
+                int size = (int) chunkLengths[i];
+                readFully(chunk.prepare(size), size);
+                chunk.load(kinds[i], encodings[i], rowCount, nullCounts[i], size);
+            }
+        }
+        return true;
+    }
+
+    private boolean readMagic() throws IOException {
+        byte[] magic = ColumnarFormats.MAGIC;
+        for (int i = 0; i < magic.length; i++) {
+            int c = readRaw();
+            if (c < 0 && i == 0) {
+                return false;
+            }
+            if (c != (magic[i] & 0xff)) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid columnar file header: {0}",
+                        path));
+            }
+        }
+        return true;
+    }
+
+    private boolean seekToSync() throws IOException {
+        // the sync marker never contains the row group header, so that the naive search works
+        byte[] marker = ColumnarFormats.SYNC_MARKER;
+        int matched = -1;
+        while (true) {
+            int c = readRaw();
+            if (c < 0) {
+                return false;
+            }
+            if (c == ColumnarFormats.HEADER_ROW_GROUP) {
+                matched = 0;
+            } else if (matched >= 0 && c == (marker[matched] & 0xff)) {
+                matched++;
+                if (matched == marker.length) {
+                    return position - ColumnarFormats.SYNC_SIZE < end;
+                }
+            } else {
+                matched = -1;
+            }
+        }
+    }
+
+    private void readSyncMarker() throws IOException {
+        byte[] marker = ColumnarFormats.SYNC_MARKER;
+        for (int i = 0; i < marker.length; i++) {
+            if (readRaw() != (marker[i] & 0xff)) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid sync marker before {1}: {0}",
+                        path,
+                        position));
+            }
+        }
+    }
+
+    private long readStreamVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = readRaw();
+            if (b < 0) {
+                throw new EOFException(MessageFormat.format(
+                        "Unexpected end of file in the row group header: {0}",
+                        path));
+            }
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException(MessageFormat.format(
+                "Invalid row group header before {1}: {0}",
+                path,
+                position));
+    }
+
+    private void readFully(byte[] target, int length) throws IOException {
+        int copied = 0;
+        while (copied < length) {
+            if (bufferOffset >= bufferLimit && fillBuffer() == false) {
+                throw new EOFException(MessageFormat.format(
+                        "Unexpected end of file in the row group before {1}: {0}",
+                        path,
+                        position));
+            }
+            int size = Math.min(length - copied, bufferLimit - bufferOffset);
+            System.arraycopy(buffer, bufferOffset, target, copied, size);
+            bufferOffset += size;
+            position += size;
+            copied += size;
+        }
+    }
+
+    private void skipFully(long length) throws IOException {
+        long rest = length;
+        int buffered = (int) Math.min(rest, bufferLimit - bufferOffset);
+        bufferOffset += buffered;
+        position += buffered;
+        rest -= buffered;
+        while (rest > 0) {
+            long skipped = input.skip(rest);
+            if (skipped <= 0) {
+                if (fillBuffer() == false) {
+                    throw new EOFException(MessageFormat.format(
+                            "Unexpected end of file in the row group before {1}: {0}",
+                            path,
+                            position));
+                }
+                skipped = Math.min(rest, bufferLimit);
+                bufferOffset = (int) skipped;
+            }
+            position += skipped;
+            rest -= skipped;
+        }
+    }
+
+    private int readRaw() throws IOException {
+        if (bufferOffset >= bufferLimit && fillBuffer() == false) {
+            return -1;
+        }
+        position++;
+        return buffer[bufferOffset++] & 0xff;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        int read = input.read(buffer);
+        if (read <= 0) {
+            return false;
+        }
+        bufferOffset = 0;
+        bufferLimit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+/**
+ * Selects row groups to be read by their column statistics.
+ * @since 0.6.0
+ */
+public interface ColumnarRowGroupFilter {
+
+    /**
+     * Returns whether the row group should be read or not.
+     * @param columns the statistics of each column in the row group, in order of the columns
+     * @return {@code true} to read the row group, or {@code false} to skip it
+     */
+    boolean accept(ColumnarStatistics[] columns);
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Statistics of a column in a row group.
+ * Texts are compared as UTF-8 byte sequences, and the other values are compared by their values.
+ * @since 0.6.0
+ */
+public final class ColumnarStatistics {
+
+    private static final Charset ENCODING = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private final ColumnKind kind;
+
+    private final int rowCount;
+
+    private final int nullCount;
+
+    private final Object minimum;
+
+    private final Object maximum;
+
+    private ColumnarStatistics(ColumnKind kind, int rowCount, int nullCount, Object minimum, Object maximum) {
+        this.kind = kind;
+        this.rowCount = rowCount;
+        this.nullCount = nullCount;
+        this.minimum = minimum;
+        this.maximum = maximum;
+    }
+
+    static ColumnarStatistics read(
+            ColumnKind kind,
+            int rowCount,
+            int nullCount,
+            ColumnarInputBuffer header) throws IOException {
+        assert kind != null;
+        assert header != null;
+        if (nullCount >= rowCount) {
+            return new ColumnarStatistics(kind, rowCount, nullCount, null, null);
+        }
+        Object minimum = readValue(kind, header);
+        Object maximum = readValue(kind, header);
+        return new ColumnarStatistics(kind, rowCount, nullCount, minimum, maximum);
+    }
+
+    private static Object readValue(ColumnKind kind, ColumnarInputBuffer header) throws IOException {
+        switch (kind) {
+        case INTEGRAL:
+            return header.readZigZag();
+        case FLOATING_POINT:
+            return Double.longBitsToDouble(header.readLong());
+        case TEXT: {
+            int length = header.readLength();
+            int offset = header.getOffset();
+            header.skip(length);
+            return Arrays.copyOfRange(header.getBytes(), offset, offset + length);
+        }
+        case DECIMAL: {
+            int length = header.readLength();
+            int offset = header.getOffset();
+            header.skip(length);
+            return toDecimal(header.getBytes(), offset, length);
+        }
+        default:
+            throw new AssertionError(kind);
+        }
+    }
+
+    static BigDecimal toDecimal(byte[] bytes, int offset, int length) throws IOException {
+        ColumnarInputBuffer buffer = new ColumnarInputBuffer();
+        buffer.reset(bytes, offset, offset + length);
+        int scale = (int) buffer.readZigZag();
+        int start = buffer.getOffset();
+        if (start >= offset + length) {
+            throw new IOException("Invalid decimal value");
+        }
+        BigInteger unscaled = new BigInteger(Arrays.copyOfRange(bytes, start, offset + length));
+        return new BigDecimal(unscaled, scale);
+    }
+
+    /**
+     * Returns the kind of the column.
+     * @return the column kind
+     */
+    public ColumnKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the number of rows in the row group.
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of {@code null} values in the column.
+     * @return the number of {@code null} values
+     */
+    public int getNullCount() {
+        return nullCount;
+    }
+
+    /**
+     * Returns whether the column has any non-null values or not.
+     * @return {@code true} if the column has any non-null values, otherwise {@code false}
+     */
+    public boolean hasValues() {
+        return nullCount < rowCount;
+    }
+
+    /**
+     * Returns the minimum value in the column.
+     * This is a {@link Long} (integral values, elapsed days, or elapsed seconds), {@link Double},
+     * {@link String}, or {@link BigDecimal} for each column kind.
+     * @return the minimum value, or {@code null} if the column has no non-null values
+     */
+    public Object getMinimum() {
+        return toPublicValue(minimum);
+    }
+
+    /**
+     * Returns the maximum value in the column.
+     * @return the maximum value, or {@code null} if the column has no non-null values
+     * @see #getMinimum()
+     */
+    public Object getMaximum() {
+        return toPublicValue(maximum);
+    }
+
+    private Object toPublicValue(Object value) {
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, ENCODING);
+        }
+        return value;
+    }
+
+    /**
+     * Returns whether the column might contain the value or not.
+     * @param value the value, or a {@code null} value
+     * @return {@code false} if the column never contains the value, otherwise {@code true}
+     * @throws IllegalArgumentException if the value is not compatible with the column
+     */
+    public boolean mightContain(ValueOption<?> value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null"); //$NON-NLS-1$
+        }
+        if (value.isNull()) {
+            return nullCount > 0;
+        }
+        return mightOverlap(value, value);
+    }
+
+    /**
+     * Returns whether the column might contain any values in the range or not.
+     * @param lower the inclusive lower bound, or {@code null} (or a {@code null} value) for unbounded
+     * @param upper the inclusive upper bound, or {@code null} (or a {@code null} value) for unbounded
+     * @return {@code false} if the column never contains any values in the range, otherwise {@code true}
+     * @throws IllegalArgumentException if the bounds are not compatible with the column
+     */
+    public boolean mightOverlap(ValueOption<?> lower, ValueOption<?> upper) {
+        if (hasValues() == false) {
+            return false;
+        }
+        if (lower != null && lower.isNull() == false && compare(toKey(lower), maximum) > 0) {
+            return false;
+        }
+        if (upper != null && upper.isNull() == false && compare(toKey(upper), minimum) < 0) {
+            return false;
+        }
+        return true;
+    }
+
+    private Object toKey(ValueOption<?> value) {
+        switch (kind) {
+        case INTEGRAL:
+            if (value instanceof BooleanOption) {
+                return ((BooleanOption) value).get() ? 1L : 0L;
+            } else if (value instanceof ByteOption) {
+                return (long) ((ByteOption) value).get();
+            } else if (value instanceof ShortOption) {
+                return (long) ((ShortOption) value).get();
+            } else if (value instanceof IntOption) {
+                return (long) ((IntOption) value).get();
+            } else if (value instanceof LongOption) {
+                return ((LongOption) value).get();
+            } else if (value instanceof DateOption) {
+                return (long) ((DateOption) value).get().getElapsedDays();
+            } else if (value instanceof DateTimeOption) {
+                return ((DateTimeOption) value).get().getElapsedSeconds();
+            }
+            break;
+        case FLOATING_POINT:
+            if (value instanceof FloatOption) {
+                return (double) ((FloatOption) value).get();
+            } else if (value instanceof DoubleOption) {
+                return ((DoubleOption) value).get();
+            }
+            break;
+        case TEXT:
+            if (value instanceof StringOption) {
+                Text text = ((StringOption) value).get();
+                return Arrays.copyOf(text.getBytes(), text.getLength());
+            }
+            break;
+        case DECIMAL:
+            if (value instanceof DecimalOption) {
+                return ((DecimalOption) value).get();
+            }
+            break;
+        default:
+            throw new AssertionError(kind);
+        }
+        throw new IllegalArgumentException(MessageFormat.format(
+                "{0} is not compatible with {1} columns",
+                value.getClass().getSimpleName(),
+                kind));
+    }
+
+    private int compare(Object a, Object b) {
+        switch (kind) {
+        case INTEGRAL:
+            return ((Long) a).compareTo((Long) b);
+        case FLOATING_POINT:
+            return ((Double) a).compareTo((Double) b);
+        case TEXT: {
+            byte[] x = (byte[]) a;
+            byte[] y = (byte[]) b;
+            return compareBytes(x, 0, x.length, y, 0, y.length);
+        }
+        case DECIMAL:
+            return ((BigDecimal) a).compareTo((BigDecimal) b);
+        default:
+            throw new AssertionError(kind);
+        }
+    }
+
+    static int compareBytes(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "ColumnarStatistics(kind={0}, rows={1}, nulls={2}, min={3}, max={4})", //$NON-NLS-1$
+                kind,
+                rowCount,
+                nullCount,
+                getMinimum(),
+                getMaximum());
+    }
+}
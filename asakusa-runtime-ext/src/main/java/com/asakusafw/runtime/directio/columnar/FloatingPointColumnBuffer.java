@@ -0,0 +1,77 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.util.Arrays;
+
+/**
+ * Buffers floating point values, and encodes them as is.
+ * @since 0.6.0
+ */
+final class FloatingPointColumnBuffer extends ColumnBuffer {
+
+    private double[] values = new double[256];
+
+    private int count;
+
+    private double min;
+
+    private double max;
+
+    FloatingPointColumnBuffer() {
+        super(ColumnKind.FLOATING_POINT);
+    }
+
+    void add(double value) {
+        markPresent();
+        if (count >= values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        if (count == 0 || Double.compare(value, min) < 0) {
+            min = value;
+        }
+        if (count == 0 || Double.compare(value, max) > 0) {
+            max = value;
+        }
+        values[count++] = value;
+    }
+
+    @Override
+    long estimateSize() {
+        return count * 8L;
+    }
+
+    @Override
+    void writeStatistics(ColumnarOutputBuffer header) {
+        if (count > 0) {
+            header.writeLong(Double.doubleToLongBits(min));
+            header.writeLong(Double.doubleToLongBits(max));
+        }
+    }
+
+    @Override
+    int writeValues(ColumnarOutputBuffer chunk) {
+        for (int i = 0; i < count; i++) {
+            chunk.writeLong(Double.doubleToRawLongBits(values[i]));
+        }
+        return ColumnarFormats.ENCODING_PLAIN;
+    }
+
+    @Override
+    void resetValues() {
+        count = 0;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import java.util.Arrays;
+
+/**
+ * Buffers integral values, and encodes them as deltas or runs.
+ * @since 0.6.0
+ */
+final class IntegralColumnBuffer extends ColumnBuffer {
+
+    private long[] values = new long[256];
+
+    private int count;
+
+    private long min;
+
+    private long max;
+
+    IntegralColumnBuffer() {
+        super(ColumnKind.INTEGRAL);
+    }
+
+    void add(long value) {
+        markPresent();
+        if (count >= values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        if (count == 0 || value < min) {
+            min = value;
+        }
+        if (count == 0 || value > max) {
+            max = value;
+        }
+        values[count++] = value;
+    }
+
+    @Override
+    long estimateSize() {
+        return count * 4L;
+    }
+
+    @Override
+    void writeStatistics(ColumnarOutputBuffer header) {
+        if (count > 0) {
+            header.writeZigZag(min);
+            header.writeZigZag(max);
+        }
+    }
+
+    @Override
+    int writeValues(ColumnarOutputBuffer chunk) {
+        long[] v = values;
+        int n = count;
+        long deltaSize = 0;
+        long rleSize = 0;
+        int runs = 0;
+        long previous = 0;
+        long previousRun = 0;
+        for (int i = 0; i < n; i++) {
+            deltaSize += ColumnarOutputBuffer.sizeOfZigZag(v[i] - previous);
+            previous = v[i];
+            if (i == 0 || v[i] != v[i - 1]) {
+                int length = runLength(i);
+                rleSize += ColumnarOutputBuffer.sizeOfZigZag(v[i] - previousRun)
+                        + ColumnarOutputBuffer.sizeOfVarint(length);
+                previousRun = v[i];
+                runs++;
+            }
+        }
+        rleSize += ColumnarOutputBuffer.sizeOfVarint(runs);
+        if (rleSize < deltaSize) {
+            chunk.writeVarint(runs);
+            previousRun = 0;
+            for (int i = 0; i < n;) {
+                int length = runLength(i);
+                chunk.writeZigZag(v[i] - previousRun);
+                chunk.writeVarint(length);
+                previousRun = v[i];
+                i += length;
+            }
+            return ColumnarFormats.ENCODING_RLE;
+        } else {
+            previous = 0;
+            for (int i = 0; i < n; i++) {
+                chunk.writeZigZag(v[i] - previous);
+                previous = v[i];
+            }
+            return ColumnarFormats.ENCODING_DELTA;
+        }
+    }
+
+    private int runLength(int start) {
+        long[] v = values;
+        long value = v[start];
+        int end = start + 1;
+        while (end < count && v[end] == value) {
+            end++;
+        }
+        return end - start;
+    }
+
+    @Override
+    void resetValues() {
+        count = 0;
+    }
+}
@@ -0,0 +1,392 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.fixed;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Writes Direct I/O fixed-width record files.
+ * <p>
+ * Each {@code emit} method writes a field into the byte range of the current record,
+ * and {@link #endRecord()} writes the record and starts a new one filled with spaces.
+ * </p>
+ * @see FixedWidthFormats
+ * @since 0.6.0
+ */
+public class FixedWidthEmitter implements Flushable, Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII"); //$NON-NLS-1$
+
+    private final OutputStream output;
+
+    private final int recordLength;
+
+    private final Charset charset;
+
+    private final boolean utf8;
+
+    private final boolean ascii;
+
+    private final byte padding;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private final byte[] scratch = new byte[FixedWidthFormats.DATE_TIME_LENGTH];
+
+    private long recordCount;
+
+    /**
+     * Creates a new instance with the default charset.
+     * @param output the destination output
+     * @param recordLength the number of bytes in each record
+     * @throws IllegalArgumentException if some parameters were invalid
+     */
+    public FixedWidthEmitter(OutputStream output, int recordLength) {
+        this(output, recordLength, Charset.forName(FixedWidthFormats.DEFAULT_CHARSET_NAME));
+    }
+
+    /**
+     * Creates a new instance.
+     * @param output the destination output
+     * @param recordLength the number of bytes in each record
+     * @param charset the charset of the file, which must encode a space into a single byte
+     * @throws IllegalArgumentException if some parameters were invalid
+     */
+    public FixedWidthEmitter(OutputStream output, int recordLength, Charset charset) {
+        if (output == null) {
+            throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
+        }
+        if (recordLength <= 0) {
+            throw new IllegalArgumentException("recordLength must be positive"); //$NON-NLS-1$
+        }
+        if (charset == null) {
+            throw new IllegalArgumentException("charset must not be null"); //$NON-NLS-1$
+        }
+        this.output = output;
+        this.recordLength = recordLength;
+        this.charset = charset;
+        this.utf8 = charset.name().equals(FixedWidthFormats.DEFAULT_CHARSET_NAME);
+        this.ascii = FixedWidthFormats.isAsciiCompatible(charset);
+        this.padding = FixedWidthFormats.getPadding(charset);
+        this.buffer = new byte[Math.max(BUFFER_SIZE / recordLength, 1) * recordLength];
+        Arrays.fill(buffer, 0, recordLength, padding);
+    }
+
+    /**
+     * Returns the number of written records.
+     * @return the number of records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(BooleanOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        putAscii(option.get() ? "1" : "0", offset, length, false);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(ByteOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        putAscii(Byte.toString(option.get()), offset, length, true);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(ShortOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        putAscii(Short.toString(option.get()), offset, length, true);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(IntOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        putAscii(Integer.toString(option.get()), offset, length, true);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(LongOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        putAscii(Long.toString(option.get()), offset, length, true);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(FloatOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        putAscii(Float.toString(option.get()), offset, length, true);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(DoubleOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        putAscii(Double.toString(option.get()), offset, length, true);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(DecimalOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        putAscii(option.get().toPlainString(), offset, length, true);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(StringOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        if (utf8) {
+            Text text = option.get();
+            put(text.getBytes(), 0, text.getLength(), offset, length, false);
+        } else {
+            byte[] bytes = option.getAsString().getBytes(charset);
+            put(bytes, 0, bytes.length, offset, length, false);
+        }
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(DateOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        if (FixedWidthFormats.formatDate(option.get().getElapsedDays(), scratch, 0) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Date is out of range ({0}) in fixed-width record (record={1}, offset={2})",
+                    option,
+                    recordCount,
+                    offset));
+        }
+        putScratch(FixedWidthFormats.DATE_LENGTH, offset, length);
+    }
+
+    /**
+     * Emits the option into the field of the current record.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the value does not fit into the field
+     */
+    public void emit(DateTimeOption option, int offset, int length) throws IOException {
+        if (startField(offset, length, option)) {
+            return;
+        }
+        long seconds = option.get().getElapsedSeconds();
+        if (FixedWidthFormats.formatDate(
+                (int) (seconds / FixedWidthFormats.SECONDS_PER_DAY), scratch, 0) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Date time is out of range ({0}) in fixed-width record (record={1}, offset={2})",
+                    option,
+                    recordCount,
+                    offset));
+        }
+        FixedWidthFormats.formatTime(
+                (int) (seconds % FixedWidthFormats.SECONDS_PER_DAY), scratch, FixedWidthFormats.DATE_LENGTH);
+        putScratch(FixedWidthFormats.DATE_TIME_LENGTH, offset, length);
+    }
+
+    /**
+     * Ends the current record and starts a new one.
+     * @throws IOException if failed to write the record
+     */
+    public void endRecord() throws IOException {
+        position += recordLength;
+        recordCount++;
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        Arrays.fill(buffer, position, position + recordLength, padding);
+    }
+
+    private boolean startField(int offset, int length, ValueOption<?> option) {
+        if (offset < 0 || length <= 0 || offset + length > recordLength) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Field [{0}, {1}) is out of the record (length={2})",
+                    offset,
+                    offset + length,
+                    recordLength));
+        }
+        return option.isNull();
+    }
+
+    private void putAscii(String value, int offset, int length, boolean rightAlign) throws IOException {
+        int size = value.length();
+        if (ascii == false) {
+            byte[] bytes = value.getBytes(charset);
+            put(bytes, 0, bytes.length, offset, length, rightAlign);
+            return;
+        }
+        if (size > length) {
+            throw tooLong(value, offset, length);
+        }
+        int start = position + offset + (rightAlign ? length - size : 0);
+        for (int i = 0; i < size; i++) {
+            buffer[start + i] = (byte) value.charAt(i);
+        }
+    }
+
+    private void putScratch(int size, int offset, int length) throws IOException {
+        if (ascii) {
+            put(scratch, 0, size, offset, length, false);
+        } else {
+            putAscii(new String(scratch, 0, size, ASCII), offset, length, false);
+        }
+    }
+
+    private void put(
+            byte[] bytes, int start, int size,
+            int offset, int length, boolean rightAlign) throws IOException {
+        if (size > length) {
+            throw tooLong(new String(bytes, start, size, charset), offset, length);
+        }
+        System.arraycopy(bytes, start, buffer, position + offset + (rightAlign ? length - size : 0), size);
+    }
+
+    private IOException tooLong(String value, int offset, int length) {
+        return new IOException(MessageFormat.format(
+                "Value \"{0}\" is too long for fixed-width field (record={1}, offset={2}, length={3})",
+                value,
+                recordCount,
+                offset,
+                length));
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            if (position < buffer.length) {
+                // keeps the current incomplete record
+                System.arraycopy(buffer, position, buffer, 0, recordLength);
+            }
+            position = 0;
+        }
+    }
+
+    /**
+     * Writes the completed records.
+     * The current incomplete record is not written.
+     * @throws IOException if failed to flush the records
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        output.close();
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.fixed;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Constants and utilities about Direct I/O fixed-width record files.
+ * <p>
+ * Each file is a sequence of records without any separators, and every record has the same number of bytes.
+ * Each field occupies the byte range {@code [offset, offset + length)} of the record,
+ * and the bytes which are not covered by any fields are filled with spaces.
+ * The field values are represented as follows:
+ * </p>
+<table border="1">
+<tr><th>type</th><th>representation</th><th>alignment</th></tr>
+<tr><td>{@code BOOLEAN}</td><td>{@code 1} or {@code 0}</td><td>left</td></tr>
+<tr><td>{@code BYTE}, {@code SHORT}, {@code INT}, {@code LONG}</td><td>decimal digits with optional sign</td>
+    <td>right</td></tr>
+<tr><td>{@code FLOAT}, {@code DOUBLE}, {@code DECIMAL}</td><td>decimal representation</td><td>right</td></tr>
+<tr><td>{@code TEXT}</td><td>encoded text</td><td>left</td></tr>
+<tr><td>{@code DATE}</td><td>{@code yyyyMMdd}</td><td>left</td></tr>
+<tr><td>{@code DATETIME}</td><td>{@code yyyyMMddHHmmss}</td><td>left</td></tr>
+</table>
+ * <p>
+ * A field which consists of only spaces is {@code null}.
+ * Leading and trailing spaces are ignored when the field is parsed, except leading spaces of texts.
+ * </p>
+ * <p>
+ * Because every record has the same length, each input fragment starts at the first record boundary
+ * in the fragment without scanning the contents.
+ * </p>
+ * @since 0.6.0
+ */
+public final class FixedWidthFormats {
+
+    /**
+     * The default charset name.
+     */
+    public static final String DEFAULT_CHARSET_NAME = "UTF-8"; //$NON-NLS-1$
+
+    /**
+     * The number of bytes of {@code DATE} fields.
+     */
+    public static final int DATE_LENGTH = 8;
+
+    /**
+     * The number of bytes of {@code DATETIME} fields.
+     */
+    public static final int DATE_TIME_LENGTH = 14;
+
+    static final int SECONDS_PER_DAY = 86400;
+
+    private static final int[] DAYS_BEFORE_MONTH = {
+        0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334,
+    };
+
+    private static final int DAYS_PER_400_YEARS = 146097;
+
+    private static final int DAYS_PER_100_YEARS = 36524;
+
+    private static final int DAYS_PER_4_YEARS = 1461;
+
+    private static final String ASCII_SYMBOLS = "0123456789+-. "; //$NON-NLS-1$
+
+    private FixedWidthFormats() {
+        return;
+    }
+
+    /**
+     * Returns whether the charset encodes digits, signs, decimal points, and spaces as same as ASCII or not.
+     * Numeric fields in such charsets are parsed directly from their bytes.
+     * @param charset the target charset
+     * @return {@code true} if the charset is ASCII compatible, otherwise {@code false}
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        byte[] encoded = ASCII_SYMBOLS.getBytes(charset);
+        byte[] ascii = ASCII_SYMBOLS.getBytes(Charset.forName("US-ASCII")); //$NON-NLS-1$
+        return Arrays.equals(encoded, ascii);
+    }
+
+    /**
+     * Returns the single byte which represents a space in the charset.
+     * @param charset the target charset
+     * @return the space byte
+     * @throws IllegalArgumentException if the charset does not encode a space into a single byte
+     */
+    static byte getPadding(Charset charset) {
+        byte[] space = " ".getBytes(charset); //$NON-NLS-1$
+        if (space.length != 1) {
+            throw new IllegalArgumentException(charset.name());
+        }
+        return space[0];
+    }
+
+    static boolean isLeap(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    static boolean isValidDate(int year, int month, int day) {
+        if (year < 1 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        int days = month == 12 ? 31 : DAYS_BEFORE_MONTH[month] - DAYS_BEFORE_MONTH[month - 1];
+        if (month == 2 && isLeap(year)) {
+            days++;
+        }
+        return day <= days;
+    }
+
+    /**
+     * Returns the number of days since {@code 0001-01-01}.
+     * @param year the year
+     * @param month the month (1-12)
+     * @param day the day of month (1-31)
+     * @return the elapsed days
+     */
+    static int toElapsedDays(int year, int month, int day) {
+        int y = year - 1;
+        int days = y * 365 + y / 4 - y / 100 + y / 400;
+        days += DAYS_BEFORE_MONTH[month - 1];
+        if (month > 2 && isLeap(year)) {
+            days++;
+        }
+        return days + day - 1;
+    }
+
+    /**
+     * Formats the date as {@code yyyyMMdd} into the buffer.
+     * @param elapsedDays the number of elapsed days from {@code 0001-01-01}
+     * @param b the destination buffer, which must have at least {@link #DATE_LENGTH} bytes from the offset
+     * @param offset the offset in the buffer
+     * @return {@code false} if the year is out of range, otherwise {@code true}
+     */
+    static boolean formatDate(int elapsedDays, byte[] b, int offset) {
+        int n400 = elapsedDays / DAYS_PER_400_YEARS;
+        int rest = elapsedDays % DAYS_PER_400_YEARS;
+        int n100 = Math.min(rest / DAYS_PER_100_YEARS, 3);
+        rest -= n100 * DAYS_PER_100_YEARS;
+        int n4 = rest / DAYS_PER_4_YEARS;
+        rest %= DAYS_PER_4_YEARS;
+        int n1 = Math.min(rest / 365, 3);
+        rest -= n1 * 365;
+        int year = n400 * 400 + n100 * 100 + n4 * 4 + n1 + 1;
+        if (elapsedDays < 0 || year > 9999) {
+            return false;
+        }
+        boolean leap = isLeap(year);
+        int month = 1;
+        while (month < 12 && rest >= DAYS_BEFORE_MONTH[month] + (leap && month >= 2 ? 1 : 0)) {
+            month++;
+        }
+        int day = rest - DAYS_BEFORE_MONTH[month - 1] - (leap && month > 2 ? 1 : 0) + 1;
+        putDigits(b, offset, year, 4);
+        putDigits(b, offset + 4, month, 2);
+        putDigits(b, offset + 6, day, 2);
+        return true;
+    }
+
+    /**
+     * Formats the time of day as {@code HHmmss} into the buffer.
+     * @param secondOfDay the number of seconds since midnight
+     * @param b the destination buffer, which must have at least 6 bytes from the offset
+     * @param offset the offset in the buffer
+     */
+    static void formatTime(int secondOfDay, byte[] b, int offset) {
+        putDigits(b, offset, secondOfDay / 3600, 2);
+        putDigits(b, offset + 2, secondOfDay / 60 % 60, 2);
+        putDigits(b, offset + 4, secondOfDay % 60, 2);
+    }
+
+    private static void putDigits(byte[] b, int offset, int value, int digits) {
+        int rest = value;
+        for (int i = digits - 1; i >= 0; i--) {
+            b[offset + i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.fixed;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Parses Direct I/O fixed-width record files.
+ * <p>
+ * Each {@code fill} method decodes the field at the byte range of the current record,
+ * so that fields can be read in any order and unused fields are never decoded.
+ * </p>
+ * <p>
+ * A parser for a fragment starts at the first record boundary at or after the fragment offset,
+ * and stops before the first record which starts at or after the end of the fragment,
+ * so that every record is read by exactly one of the fragments.
+ * </p>
+ * @see FixedWidthFormats
+ * @since 0.6.0
+ */
+public class FixedWidthParser implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII"); //$NON-NLS-1$
+
+    private final InputStream input;
+
+    private final String path;
+
+    private final long offset;
+
+    private final long end;
+
+    private final int recordLength;
+
+    private final Charset charset;
+
+    private final boolean utf8;
+
+    private final boolean ascii;
+
+    private final byte padding;
+
+    private final byte[] buffer;
+
+    private int bufferOffset;
+
+    private int bufferLimit;
+
+    private int recordStart = -1;
+
+    private long nextRecordOffset = -1;
+
+    private long recordIndex = -1;
+
+    private byte[] fieldBytes;
+
+    private int fieldStart;
+
+    private int fieldEnd;
+
+    private final Text scratchText = new Text();
+
+    private final Date scratchDate = new Date();
+
+    private final DateTime scratchDateTime = new DateTime();
+
+    /**
+     * Creates a new instance which reads the whole file with the default charset.
+     * @param input the source input
+     * @param recordLength the number of bytes in each record
+     * @throws IllegalArgumentException if some parameters were invalid
+     */
+    public FixedWidthParser(InputStream input, int recordLength) {
+        this(input, null, 0L, -1L, recordLength, Charset.forName(FixedWidthFormats.DEFAULT_CHARSET_NAME));
+    }
+
+    /**
+     * Creates a new instance which reads a fragment of the file.
+     * @param input the source input, which starts at {@code offset} of the file
+     * @param path the file path (for diagnostics, nullable)
+     * @param offset the offset of the fragment in the file
+     * @param fragmentSize the size of the fragment in bytes, or {@code -1} for the rest of the file
+     * @param recordLength the number of bytes in each record
+     * @param charset the charset of the file, which must encode a space into a single byte
+     * @throws IllegalArgumentException if some parameters were invalid
+     */
+    public FixedWidthParser(
+            InputStream input, String path, long offset, long fragmentSize,
+            int recordLength, Charset charset) {
+        if (input == null) {
+            throw new IllegalArgumentException("input must not be null"); //$NON-NLS-1$
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative"); //$NON-NLS-1$
+        }
+        if (recordLength <= 0) {
+            throw new IllegalArgumentException("recordLength must be positive"); //$NON-NLS-1$
+        }
+        if (charset == null) {
+            throw new IllegalArgumentException("charset must not be null"); //$NON-NLS-1$
+        }
+        this.input = input;
+        this.path = path;
+        this.offset = offset;
+        this.end = fragmentSize < 0 ? Long.MAX_VALUE : offset + fragmentSize;
+        this.recordLength = recordLength;
+        this.charset = charset;
+        this.utf8 = charset.name().equals(FixedWidthFormats.DEFAULT_CHARSET_NAME);
+        this.ascii = FixedWidthFormats.isAsciiCompatible(charset);
+        this.padding = FixedWidthFormats.getPadding(charset);
+        this.buffer = new byte[Math.max(BUFFER_SIZE / recordLength, 1) * recordLength];
+    }
+
+    /**
+     * Advances the cursor to the next record.
+     * @return {@code true} if the next record exists, otherwise {@code false}
+     * @throws IOException if failed to read the next record
+     */
+    public boolean next() throws IOException {
+        if (nextRecordOffset < 0) {
+            long first = (offset + recordLength - 1) / recordLength * recordLength;
+            if (skipFully(first - offset) == false) {
+                nextRecordOffset = Long.MAX_VALUE;
+                return false;
+            }
+            nextRecordOffset = first;
+        }
+        if (nextRecordOffset >= end) {
+            return false;
+        }
+        if (bufferLimit - bufferOffset < recordLength && fillBuffer() == false) {
+            nextRecordOffset = Long.MAX_VALUE;
+            return false;
+        }
+        recordStart = bufferOffset;
+        bufferOffset += recordLength;
+        nextRecordOffset += recordLength;
+        recordIndex++;
+        return true;
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(BooleanOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        if (fieldEnd - fieldStart != 1 || (fieldBytes[fieldStart] != '1' && fieldBytes[fieldStart] != '0')) {
+            throw invalidField("BOOLEAN", offset);
+        }
+        option.modify(fieldBytes[fieldStart] == '1');
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(ByteOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        long value = parseLong("BYTE", offset);
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            throw invalidField("BYTE", offset);
+        }
+        option.modify((byte) value);
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(ShortOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        long value = parseLong("SHORT", offset);
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw invalidField("SHORT", offset);
+        }
+        option.modify((short) value);
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(IntOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        long value = parseLong("INT", offset);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalidField("INT", offset);
+        }
+        option.modify((int) value);
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(LongOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        option.modify(parseLong("LONG", offset));
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(FloatOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        try {
+            option.modify(Float.parseFloat(fieldAsString()));
+        } catch (NumberFormatException e) {
+            throw invalidField("FLOAT", offset);
+        }
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(DoubleOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        try {
+            option.modify(Double.parseDouble(fieldAsString()));
+        } catch (NumberFormatException e) {
+            throw invalidField("DOUBLE", offset);
+        }
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(DecimalOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        try {
+            option.modify(new BigDecimal(fieldAsString()));
+        } catch (NumberFormatException e) {
+            throw invalidField("DECIMAL", offset);
+        }
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * Trailing spaces of the field are removed.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(StringOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, false) == false) {
+            option.setNull();
+            return;
+        }
+        if (utf8) {
+            scratchText.set(buffer, fieldStart, fieldEnd - fieldStart);
+            option.modify(scratchText);
+        } else {
+            option.modify(new String(buffer, fieldStart, fieldEnd - fieldStart, charset));
+        }
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(DateOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        if (fieldEnd - fieldStart != FixedWidthFormats.DATE_LENGTH) {
+            throw invalidField("DATE", offset);
+        }
+        scratchDate.setElapsedDays(parseDate("DATE", offset));
+        option.modify(scratchDate);
+    }
+
+    /**
+     * Sets the field of the current record into the option.
+     * @param option the target option
+     * @param offset the field offset in the record
+     * @param length the field length in bytes
+     * @throws IOException if the field is not valid
+     */
+    public void fill(DateTimeOption option, int offset, int length) throws IOException {
+        if (locate(offset, length, true) == false) {
+            option.setNull();
+            return;
+        }
+        if (fieldEnd - fieldStart != FixedWidthFormats.DATE_TIME_LENGTH) {
+            throw invalidField("DATETIME", offset);
+        }
+        long days = parseDate("DATETIME", offset);
+        int hour = parseDigits(fieldStart + 8, 2, "DATETIME", offset);
+        int minute = parseDigits(fieldStart + 10, 2, "DATETIME", offset);
+        int second = parseDigits(fieldStart + 12, 2, "DATETIME", offset);
+        if (hour > 23 || minute > 59 || second > 59) {
+            throw invalidField("DATETIME", offset);
+        }
+        scratchDateTime.setElapsedSeconds(
+                days * FixedWidthFormats.SECONDS_PER_DAY + hour * 3600 + minute * 60 + second);
+        option.modify(scratchDateTime);
+    }
+
+    private boolean locate(int fieldOffset, int fieldLength, boolean trimLeading) {
+        if (recordStart < 0) {
+            throw new IllegalStateException();
+        }
+        if (fieldOffset < 0 || fieldLength <= 0 || fieldOffset + fieldLength > recordLength) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Field [{0}, {1}) is out of the record (length={2})",
+                    fieldOffset,
+                    fieldOffset + fieldLength,
+                    recordLength));
+        }
+        byte[] b = buffer;
+        int start = recordStart + fieldOffset;
+        int last = start + fieldLength;
+        while (last > start && b[last - 1] == padding) {
+            last--;
+        }
+        if (last == start) {
+            return false;
+        }
+        if (trimLeading) {
+            while (b[start] == padding) {
+                start++;
+            }
+            if (ascii == false) {
+                // transcodes numeric fields into ASCII
+                byte[] transcoded = new String(b, start, last - start, charset).getBytes(ASCII);
+                fieldBytes = transcoded;
+                fieldStart = 0;
+                fieldEnd = transcoded.length;
+                return true;
+            }
+        }
+        fieldBytes = b;
+        fieldStart = start;
+        fieldEnd = last;
+        return true;
+    }
+
+    private long parseLong(String typeName, int fieldOffset) throws IOException {
+        byte[] b = fieldBytes;
+        int p = fieldStart;
+        boolean negative = false;
+        if (b[p] == '-' || b[p] == '+') {
+            negative = b[p] == '-';
+            p++;
+        }
+        if (p == fieldEnd) {
+            throw invalidField(typeName, fieldOffset);
+        }
+        long result = 0;
+        for (; p < fieldEnd; p++) {
+            int digit = b[p] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalidField(typeName, fieldOffset);
+            }
+            // accumulates negatively to accept Long.MIN_VALUE
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw invalidField(typeName, fieldOffset);
+            }
+            result = result * 10 - digit;
+        }
+        if (negative) {
+            return result;
+        }
+        if (result == Long.MIN_VALUE) {
+            throw invalidField(typeName, fieldOffset);
+        }
+        return -result;
+    }
+
+    private int parseDate(String typeName, int fieldOffset) throws IOException {
+        int year = parseDigits(fieldStart, 4, typeName, fieldOffset);
+        int month = parseDigits(fieldStart + 4, 2, typeName, fieldOffset);
+        int day = parseDigits(fieldStart + 6, 2, typeName, fieldOffset);
+        if (FixedWidthFormats.isValidDate(year, month, day) == false) {
+            throw invalidField(typeName, fieldOffset);
+        }
+        return FixedWidthFormats.toElapsedDays(year, month, day);
+    }
+
+    private int parseDigits(int start, int digits, String typeName, int fieldOffset) throws IOException {
+        int result = 0;
+        for (int i = start, n = start + digits; i < n; i++) {
+            int digit = fieldBytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalidField(typeName, fieldOffset);
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private String fieldAsString() {
+        return new String(fieldBytes, fieldStart, fieldEnd - fieldStart, ASCII);
+    }
+
+    private IOException invalidField(String typeName, int fieldOffset) {
+        return new IOException(MessageFormat.format(
+                "Invalid {0} value \"{1}\" in fixed-width record (path={2}, record={3}, offset={4})",
+                typeName,
+                fieldAsString(),
+                path,
+                recordIndex,
+                fieldOffset));
+    }
+
+    private boolean fillBuffer() throws IOException {
+        int rest = bufferLimit - bufferOffset;
+        if (rest > 0) {
+            System.arraycopy(buffer, bufferOffset, buffer, 0, rest);
+        }
+        bufferOffset = 0;
+        bufferLimit = rest;
+        while (bufferLimit < buffer.length) {
+            int read = input.read(buffer, bufferLimit, buffer.length - bufferLimit);
+            if (read < 0) {
+                break;
+            }
+            bufferLimit += read;
+        }
+        if (bufferLimit == 0) {
+            return false;
+        }
+        if (bufferLimit < recordLength) {
+            throw new EOFException(MessageFormat.format(
+                    "Fixed-width file ends with an incomplete record ({1} of {2} bytes): {0}",
+                    path,
+                    bufferLimit,
+                    recordLength));
+        }
+        return true;
+    }
+
+    private boolean skipFully(long length) throws IOException {
+        long rest = length;
+        while (rest > 0) {
+            long skipped = input.skip(rest);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    return false;
+                }
+                skipped = 1;
+            }
+            rest -= skipped;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.jsonl;
+
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * The object keys of JSON Lines records.
+ * <p>
+ * This precomputes the encoded key bytes for {@link JsonLinesEmitter},
+ * and builds a perfect hash table of the keys for {@link JsonLinesParser},
+ * so that each key in the input is resolved with a single probe and a byte comparison.
+ * Instances should be created once for each data model and shared between readers and writers.
+ * </p>
+ * @since 0.6.0
+ */
+public final class JsonKeyTable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private static final int MAX_SEEDS = 1024;
+
+    private final String[] names;
+
+    private final byte[][] keys;
+
+    private final byte[][] prefixes;
+
+    private final int[] slots;
+
+    private final int mask;
+
+    private final int seed;
+
+    /**
+     * Creates a new instance.
+     * @param names the key names in order, which must consist of ASCII letters, digits, or underscores
+     * @throws IllegalArgumentException if the names are empty, duplicated, or contain other characters
+     */
+    public JsonKeyTable(String... names) {
+        if (names == null) {
+            throw new IllegalArgumentException("names must not be null"); //$NON-NLS-1$
+        }
+        this.names = names.clone();
+        this.keys = new byte[names.length][];
+        this.prefixes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            if (name == null || name.matches("[0-9A-Za-z_]+") == false) { //$NON-NLS-1$
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Invalid JSON key name: {0}",
+                        name));
+            }
+            keys[i] = name.getBytes(UTF8);
+            String prefix = i == 0 ? "{\"" : ",\""; //$NON-NLS-1$ //$NON-NLS-2$
+            prefixes[i] = (prefix + name + "\":").getBytes(UTF8); //$NON-NLS-1$
+        }
+        for (int size = Integer.highestOneBit(Math.max(names.length, 1) * 2 - 1) * 2; ; size *= 2) {
+            for (int s = 0; s < MAX_SEEDS; s++) {
+                int[] candidate = tryBuild(size, s);
+                if (candidate != null) {
+                    this.slots = candidate;
+                    this.mask = size - 1;
+                    this.seed = s;
+                    return;
+                }
+            }
+        }
+    }
+
+    private int[] tryBuild(int size, int s) {
+        int[] results = new int[size];
+        Arrays.fill(results, -1);
+        for (int i = 0; i < keys.length; i++) {
+            int index = hash(keys[i], 0, keys[i].length, s) & (size - 1);
+            if (results[index] >= 0) {
+                if (Arrays.equals(keys[results[index]], keys[i])) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                            "Duplicate JSON key name: {0}",
+                            names[i]));
+                }
+                return null;
+            }
+            results[index] = i;
+        }
+        return results;
+    }
+
+    private static int hash(byte[] b, int start, int end, int s) {
+        int h = s * 0x9e3779b9 + (end - start);
+        for (int i = start; i < end; i++) {
+            h = (h ^ b[i]) * 0x01000193;
+        }
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * Returns the number of keys.
+     * @return the number of keys
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the key name.
+     * @param index the key index
+     * @return the key name
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns the bytes which precede the value of the key in each record,
+     * that is <code>{"key":</code> for the first key, or <code>,"key":</code> for the others.
+     * @param index the key index
+     * @return the prefix bytes
+     */
+    byte[] getPrefix(int index) {
+        return prefixes[index];
+    }
+
+    /**
+     * Returns the index of the key.
+     * @param b the buffer
+     * @param start the start offset of the key (exclusive of the quotation)
+     * @param end the end offset of the key (exclusive of the quotation)
+     * @return the key index, or {@code -1} if it is not a known key
+     */
+    int find(byte[] b, int start, int end) {
+        int index = slots[hash(b, start, end, seed) & mask];
+        if (index < 0) {
+            return -1;
+        }
+        byte[] key = keys[index];
+        if (key.length != end - start) {
+            return -1;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != b[start + i]) {
+                return -1;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
@@ -0,0 +1,408 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.jsonl;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Writes JSON Lines records, one JSON object per line.
+ * <p>
+ * Each {@code emit} method writes the precomputed key bytes and the value of the next key in the {@link JsonKeyTable},
+ * and {@link #endRecord()} closes the object and writes a line feed.
+ * Values are encoded directly into the output buffer:
+ * {@code null} values are written as {@code null}, texts are written as JSON strings,
+ * {@code DATE} and {@code DATETIME} are written as <code>"yyyy-MM-dd"</code> and
+ * <code>"yyyy-MM-dd HH:mm:ss"</code>, and non-finite floating point numbers are written as
+ * <code>"NaN"</code>, <code>"Infinity"</code>, or <code>"-Infinity"</code>.
+ * </p>
+ * @since 0.6.0
+ */
+public class JsonLinesEmitter implements Flushable, Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    private static final byte[] LONG_MIN_VALUE =
+            Long.toString(Long.MIN_VALUE).getBytes(Charset.forName("US-ASCII")); //$NON-NLS-1$
+
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f',
+    };
+
+    private static final int MAX_DAYS = JsonValues.toElapsedDays(10000, 1, 1);
+
+    private final OutputStream output;
+
+    private final JsonKeyTable keys;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    private int keyIndex;
+
+    /**
+     * Creates a new instance.
+     * @param output the destination output
+     * @param keys the object keys
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public JsonLinesEmitter(OutputStream output, JsonKeyTable keys) {
+        if (output == null) {
+            throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
+        }
+        if (keys == null) {
+            throw new IllegalArgumentException("keys must not be null"); //$NON-NLS-1$
+        }
+        this.output = output;
+        this.keys = keys;
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(BooleanOption option) throws IOException {
+        if (startValue(option)) {
+            if (option.get()) {
+                writeAscii(TRUE);
+            } else {
+                writeAscii(FALSE);
+            }
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(ByteOption option) throws IOException {
+        if (startValue(option)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(ShortOption option) throws IOException {
+        if (startValue(option)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(IntOption option) throws IOException {
+        if (startValue(option)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(LongOption option) throws IOException {
+        if (startValue(option)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(FloatOption option) throws IOException {
+        if (startValue(option)) {
+            float value = option.get();
+            writeNumber(Float.toString(value), Float.isNaN(value) == false && Float.isInfinite(value) == false);
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(DoubleOption option) throws IOException {
+        if (startValue(option)) {
+            double value = option.get();
+            writeNumber(Double.toString(value), Double.isNaN(value) == false && Double.isInfinite(value) == false);
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(DecimalOption option) throws IOException {
+        if (startValue(option)) {
+            writeString(option.get().toPlainString());
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(StringOption option) throws IOException {
+        if (startValue(option)) {
+            Text text = option.get();
+            writeQuoted(text.getBytes(), 0, text.getLength());
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(DateOption option) throws IOException {
+        if (startValue(option)) {
+            int days = option.get().getElapsedDays();
+            checkDate(days, option);
+            ensure(JsonValues.DATE_LENGTH + 2);
+            buffer[position++] = '"';
+            position = JsonValues.formatDate(days, buffer, position);
+            buffer[position++] = '"';
+        }
+    }
+
+    /**
+     * Emits the option as the value of the next key.
+     * @param option the target option
+     * @throws IOException if failed to emit the value
+     */
+    public void emit(DateTimeOption option) throws IOException {
+        if (startValue(option)) {
+            long seconds = option.get().getElapsedSeconds();
+            int days = (int) (seconds / JsonValues.SECONDS_PER_DAY);
+            checkDate(days, option);
+            ensure(JsonValues.DATE_TIME_LENGTH + 2);
+            buffer[position++] = '"';
+            position = JsonValues.formatDate(days, buffer, position);
+            buffer[position++] = ' ';
+            position = JsonValues.formatTime((int) (seconds % JsonValues.SECONDS_PER_DAY), buffer, position);
+            buffer[position++] = '"';
+        }
+    }
+
+    /**
+     * Ends the current record.
+     * @throws IOException if the values were not emitted for all keys, or failed to write the record
+     */
+    public void endRecord() throws IOException {
+        if (keyIndex != keys.size()) {
+            throw new IOException(MessageFormat.format(
+                    "JSON record must have {0} values, but {1} values were emitted",
+                    keys.size(),
+                    keyIndex));
+        }
+        ensure(3);
+        if (keyIndex == 0) {
+            buffer[position++] = '{';
+        }
+        buffer[position++] = '}';
+        buffer[position++] = '\n';
+        keyIndex = 0;
+    }
+
+    private boolean startValue(ValueOption<?> option) throws IOException {
+        if (keyIndex >= keys.size()) {
+            throw new IOException(MessageFormat.format(
+                    "JSON record must have {0} values",
+                    keys.size()));
+        }
+        writeAscii(keys.getPrefix(keyIndex++));
+        if (option.isNull()) {
+            writeAscii(NULL);
+            return false;
+        }
+        return true;
+    }
+
+    private void writeAscii(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(LONG_MIN_VALUE);
+            return;
+        }
+        ensure(20);
+        long rest = value;
+        if (rest < 0) {
+            buffer[position++] = '-';
+            rest = -rest;
+        }
+        int digits = 1;
+        for (long n = rest / 10; n > 0; n /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        position += digits;
+    }
+
+    private void writeNumber(String value, boolean finite) throws IOException {
+        if (finite) {
+            writeString(value);
+        } else {
+            ensure(1);
+            buffer[position++] = '"';
+            writeString(value);
+            ensure(1);
+            buffer[position++] = '"';
+        }
+    }
+
+    private void writeString(String ascii) throws IOException {
+        int length = ascii.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void writeQuoted(byte[] bytes, int offset, int length) throws IOException {
+        ensure(1);
+        buffer[position++] = '"';
+        int start = offset;
+        for (int i = offset, n = offset + length; i < n; i++) {
+            int c = bytes[i] & 0xff;
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            writeBytes(bytes, start, i - start);
+            start = i + 1;
+            ensure(6);
+            buffer[position++] = '\\';
+            switch (c) {
+            case '"':
+            case '\\':
+                buffer[position++] = (byte) c;
+                break;
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xf];
+                break;
+            }
+        }
+        writeBytes(bytes, start, offset + length - start);
+        ensure(1);
+        buffer[position++] = '"';
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                output.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void checkDate(int days, ValueOption<?> option) throws IOException {
+        if (days < 0 || days >= MAX_DAYS) {
+            throw new IOException(MessageFormat.format(
+                    "Date is out of range for JSON value ({1}): key={0}",
+                    keys.getName(keyIndex - 1),
+                    option));
+        }
+    }
+
+    private void ensure(int size) throws IOException {
+        if (position + size > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        output.close();
+    }
+}
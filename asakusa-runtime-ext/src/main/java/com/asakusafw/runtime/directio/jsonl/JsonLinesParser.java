@@ -0,0 +1,789 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.jsonl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Parses JSON Lines records written by {@link JsonLinesEmitter} or other JSON writers.
+ * <p>
+ * {@link #next()} scans the object in the next line once, and resolves each key through the perfect hash table
+ * in {@link JsonKeyTable}, recording only the position and kind of the value.
+ * Each {@code fill} method then decodes the value of the next key in the table directly from the line buffer.
+ * Keys which are not in the table are skipped together with their values (including nested objects and arrays),
+ * and keys which are absent from the object are {@code null}.
+ * </p>
+ * <p>
+ * This parser reads the input until its end.
+ * To read a fragment of the file, wrap the input so that it starts and ends at line boundaries.
+ * </p>
+ * @since 0.6.0
+ */
+public class JsonLinesParser implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII"); //$NON-NLS-1$
+
+    private static final int KIND_ABSENT = 0;
+
+    private static final int KIND_NULL = 1;
+
+    private static final int KIND_TRUE = 2;
+
+    private static final int KIND_FALSE = 3;
+
+    private static final int KIND_NUMBER = 4;
+
+    private static final int KIND_STRING = 5;
+
+    private static final int KIND_ESCAPED_STRING = 6;
+
+    private final InputStream input;
+
+    private final String path;
+
+    private final JsonKeyTable keys;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int bufferLimit;
+
+    private int lineStart;
+
+    private int lineEnd;
+
+    private int nextLineStart;
+
+    private boolean sawEof;
+
+    private long lineNumber;
+
+    private final int[] kinds;
+
+    private final int[] starts;
+
+    private final int[] ends;
+
+    private int valueIndex;
+
+    private boolean lastEscaped;
+
+    private byte[] unescaped = new byte[256];
+
+    private final Text scratchText = new Text();
+
+    private final Date scratchDate = new Date();
+
+    private final DateTime scratchDateTime = new DateTime();
+
+    /**
+     * Creates a new instance.
+     * @param input the source input
+     * @param path the file path (for diagnostics, nullable)
+     * @param keys the object keys
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public JsonLinesParser(InputStream input, String path, JsonKeyTable keys) {
+        if (input == null) {
+            throw new IllegalArgumentException("input must not be null"); //$NON-NLS-1$
+        }
+        if (keys == null) {
+            throw new IllegalArgumentException("keys must not be null"); //$NON-NLS-1$
+        }
+        this.input = input;
+        this.path = path;
+        this.keys = keys;
+        this.kinds = new int[keys.size()];
+        this.starts = new int[keys.size()];
+        this.ends = new int[keys.size()];
+    }
+
+    /**
+     * Advances the cursor to the next record.
+     * Blank lines are skipped.
+     * @return {@code true} if the next record exists, otherwise {@code false}
+     * @throws IOException if failed to read the next record
+     */
+    public boolean next() throws IOException {
+        while (readLine()) {
+            int p = skipWhitespace(lineStart);
+            if (p < lineEnd) {
+                parseObject(p);
+                valueIndex = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(BooleanOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        if (kind == KIND_TRUE) {
+            option.modify(true);
+        } else if (kind == KIND_FALSE) {
+            option.modify(false);
+        } else {
+            throw invalidValue("BOOLEAN", index);
+        }
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(ByteOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        long value = parseLong("BYTE", index);
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            throw invalidValue("BYTE", index);
+        }
+        option.modify((byte) value);
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(ShortOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        long value = parseLong("SHORT", index);
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw invalidValue("SHORT", index);
+        }
+        option.modify((short) value);
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(IntOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        long value = parseLong("INT", index);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalidValue("INT", index);
+        }
+        option.modify((int) value);
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(LongOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        option.modify(parseLong("LONG", index));
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(FloatOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        if (kind != KIND_NUMBER && kind != KIND_STRING) {
+            throw invalidValue("FLOAT", index);
+        }
+        try {
+            option.modify(Float.parseFloat(valueAsString(index)));
+        } catch (NumberFormatException e) {
+            throw invalidValue("FLOAT", index);
+        }
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(DoubleOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        if (kind != KIND_NUMBER && kind != KIND_STRING) {
+            throw invalidValue("DOUBLE", index);
+        }
+        try {
+            option.modify(Double.parseDouble(valueAsString(index)));
+        } catch (NumberFormatException e) {
+            throw invalidValue("DOUBLE", index);
+        }
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(DecimalOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        if (kind != KIND_NUMBER && kind != KIND_STRING) {
+            throw invalidValue("DECIMAL", index);
+        }
+        try {
+            option.modify(new BigDecimal(valueAsString(index)));
+        } catch (NumberFormatException e) {
+            throw invalidValue("DECIMAL", index);
+        }
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(StringOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        if (kind == KIND_STRING) {
+            scratchText.set(buffer, starts[index], ends[index] - starts[index]);
+        } else if (kind == KIND_ESCAPED_STRING) {
+            int length = unescape(starts[index], ends[index], index);
+            scratchText.set(unescaped, 0, length);
+        } else {
+            throw invalidValue("TEXT", index);
+        }
+        option.modify(scratchText);
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(DateOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        if (kind != KIND_STRING || ends[index] - starts[index] != JsonValues.DATE_LENGTH) {
+            throw invalidValue("DATE", index);
+        }
+        scratchDate.setElapsedDays(parseDate(starts[index], "DATE", index));
+        option.modify(scratchDate);
+    }
+
+    /**
+     * Sets the value of the next key into the option.
+     * @param option the target option
+     * @throws IOException if the value is not valid
+     */
+    public void fill(DateTimeOption option) throws IOException {
+        int index = nextIndex();
+        int kind = kinds[index];
+        if (kind == KIND_ABSENT || kind == KIND_NULL) {
+            option.setNull();
+            return;
+        }
+        int start = starts[index];
+        if (kind != KIND_STRING
+                || ends[index] - start != JsonValues.DATE_TIME_LENGTH
+                || buffer[start + 10] != ' '
+                || buffer[start + 13] != ':'
+                || buffer[start + 16] != ':') {
+            throw invalidValue("DATETIME", index);
+        }
+        long days = parseDate(start, "DATETIME", index);
+        int hour = parseDigits(start + 11, 2, "DATETIME", index);
+        int minute = parseDigits(start + 14, 2, "DATETIME", index);
+        int second = parseDigits(start + 17, 2, "DATETIME", index);
+        if (hour > 23 || minute > 59 || second > 59) {
+            throw invalidValue("DATETIME", index);
+        }
+        scratchDateTime.setElapsedSeconds(days * JsonValues.SECONDS_PER_DAY + hour * 3600 + minute * 60 + second);
+        option.modify(scratchDateTime);
+    }
+
+    private int nextIndex() throws IOException {
+        if (valueIndex >= kinds.length) {
+            throw new IOException(MessageFormat.format(
+                    "JSON record has only {1} keys (path={0}, line={2})",
+                    path,
+                    kinds.length,
+                    lineNumber));
+        }
+        return valueIndex++;
+    }
+
+    private void parseObject(int start) throws IOException {
+        Arrays.fill(kinds, KIND_ABSENT);
+        byte[] b = buffer;
+        int p = start;
+        if (b[p] != '{') {
+            throw invalidRecord(p, "'{'");
+        }
+        p = skipWhitespace(p + 1);
+        if (p < lineEnd && b[p] == '}') {
+            p++;
+        } else {
+            while (true) {
+                if (p >= lineEnd || b[p] != '"') {
+                    throw invalidRecord(p, "key");
+                }
+                int keyEnd = scanString(p + 1);
+                int index;
+                if (lastEscaped) {
+                    index = keys.find(unescaped, 0, unescape(p + 1, keyEnd, -1));
+                } else {
+                    index = keys.find(b, p + 1, keyEnd);
+                }
+                p = skipWhitespace(keyEnd + 1);
+                if (p >= lineEnd || b[p] != ':') {
+                    throw invalidRecord(p, "':'");
+                }
+                p = skipWhitespace(parseValue(skipWhitespace(p + 1), index));
+                if (p < lineEnd && b[p] == ',') {
+                    p = skipWhitespace(p + 1);
+                } else if (p < lineEnd && b[p] == '}') {
+                    p++;
+                    break;
+                } else {
+                    throw invalidRecord(p, "',' or '}'");
+                }
+            }
+        }
+        if (skipWhitespace(p) != lineEnd) {
+            throw invalidRecord(p, "end of line");
+        }
+    }
+
+    private int parseValue(int start, int index) throws IOException {
+        byte[] b = buffer;
+        if (start >= lineEnd) {
+            throw invalidRecord(start, "value");
+        }
+        int kind;
+        int valueStart = start;
+        int valueEnd;
+        int next;
+        byte c = b[start];
+        if (c == '"') {
+            valueStart = start + 1;
+            valueEnd = scanString(valueStart);
+            kind = lastEscaped ? KIND_ESCAPED_STRING : KIND_STRING;
+            next = valueEnd + 1;
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            valueEnd = start + 1;
+            while (valueEnd < lineEnd && isNumberPart(b[valueEnd])) {
+                valueEnd++;
+            }
+            kind = KIND_NUMBER;
+            next = valueEnd;
+        } else if (c == 'n') {
+            next = expectLiteral(start, "null"); //$NON-NLS-1$
+            valueEnd = next;
+            kind = KIND_NULL;
+        } else if (c == 't') {
+            next = expectLiteral(start, "true"); //$NON-NLS-1$
+            valueEnd = next;
+            kind = KIND_TRUE;
+        } else if (c == 'f') {
+            next = expectLiteral(start, "false"); //$NON-NLS-1$
+            valueEnd = next;
+            kind = KIND_FALSE;
+        } else if ((c == '{' || c == '[') && index < 0) {
+            return skipNested(start);
+        } else {
+            throw invalidRecord(start, "value");
+        }
+        if (index >= 0) {
+            kinds[index] = kind;
+            starts[index] = valueStart;
+            ends[index] = valueEnd;
+        }
+        return next;
+    }
+
+    private static boolean isNumberPart(byte c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+    }
+
+    private int expectLiteral(int start, String literal) throws IOException {
+        int length = literal.length();
+        if (lineEnd - start < length) {
+            throw invalidRecord(start, literal);
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != literal.charAt(i)) {
+                throw invalidRecord(start, literal);
+            }
+        }
+        return start + length;
+    }
+
+    private int skipNested(int start) throws IOException {
+        byte[] b = buffer;
+        int depth = 0;
+        int p = start;
+        while (p < lineEnd) {
+            byte c = b[p];
+            if (c == '"') {
+                p = scanString(p + 1) + 1;
+                continue;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return p + 1;
+                }
+            }
+            p++;
+        }
+        throw invalidRecord(p, "end of nested value");
+    }
+
+    /**
+     * Returns the position of the closing quotation of the string.
+     * @param start the position after the opening quotation
+     * @return the position of the closing quotation
+     * @throws IOException if the string is not terminated
+     */
+    private int scanString(int start) throws IOException {
+        byte[] b = buffer;
+        boolean escaped = false;
+        for (int p = start; p < lineEnd; p++) {
+            byte c = b[p];
+            if (c == '"') {
+                lastEscaped = escaped;
+                return p;
+            } else if (c == '\\') {
+                escaped = true;
+                p++;
+            }
+        }
+        throw invalidRecord(lineEnd, "'\"'");
+    }
+
+    /**
+     * Decodes the escaped string into {@link #unescaped} as UTF-8.
+     * @param start the start position (exclusive of the quotation)
+     * @param end the end position (exclusive of the quotation)
+     * @param index the key index (for diagnostics), or {@code -1} for keys
+     * @return the number of decoded bytes
+     * @throws IOException if the string is not valid
+     */
+    private int unescape(int start, int end, int index) throws IOException {
+        if (unescaped.length < end - start) {
+            unescaped = new byte[Math.max(end - start, unescaped.length * 2)];
+        }
+        byte[] b = buffer;
+        byte[] d = unescaped;
+        int n = 0;
+        for (int p = start; p < end; p++) {
+            byte c = b[p];
+            if (c != '\\') {
+                d[n++] = c;
+                continue;
+            }
+            p++;
+            switch (b[p]) {
+            case '"':
+            case '\\':
+            case '/':
+                d[n++] = b[p];
+                break;
+            case 'b':
+                d[n++] = '\b';
+                break;
+            case 'f':
+                d[n++] = '\f';
+                break;
+            case 'n':
+                d[n++] = '\n';
+                break;
+            case 'r':
+                d[n++] = '\r';
+                break;
+            case 't':
+                d[n++] = '\t';
+                break;
+            case 'u':
+                int code = parseHex(p + 1, end, index);
+                p += 4;
+                if (code >= 0xd800 && code <= 0xdbff
+                        && p + 2 < end && b[p + 1] == '\\' && b[p + 2] == 'u') {
+                    int low = parseHex(p + 3, end, index);
+                    if (low >= 0xdc00 && low <= 0xdfff) {
+                        code = 0x10000 + ((code - 0xd800) << 10) + (low - 0xdc00);
+                        p += 6;
+                    }
+                }
+                n = putUtf8(code, d, n);
+                break;
+            default:
+                throw index < 0 ? invalidRecord(p, "escape sequence") : invalidValue("TEXT", index);
+            }
+        }
+        return n;
+    }
+
+    private int parseHex(int start, int end, int index) throws IOException {
+        if (end - start < 4) {
+            throw index < 0 ? invalidRecord(start, "hex digits") : invalidValue("TEXT", index);
+        }
+        int result = 0;
+        for (int p = start; p < start + 4; p++) {
+            int digit = Character.digit(buffer[p], 16);
+            if (digit < 0) {
+                throw index < 0 ? invalidRecord(p, "hex digits") : invalidValue("TEXT", index);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    private static int putUtf8(int code, byte[] d, int offset) {
+        // "\\uXXXX" (6 bytes) is never shorter than its UTF-8 form (up to 3 bytes),
+        // and a surrogate pair (12 bytes) is never shorter than 4 bytes
+        int n = offset;
+        if (code < 0x80) {
+            d[n++] = (byte) code;
+        } else if (code < 0x800) {
+            d[n++] = (byte) (0xc0 | (code >> 6));
+            d[n++] = (byte) (0x80 | (code & 0x3f));
+        } else if (code < 0x10000) {
+            d[n++] = (byte) (0xe0 | (code >> 12));
+            d[n++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+            d[n++] = (byte) (0x80 | (code & 0x3f));
+        } else {
+            d[n++] = (byte) (0xf0 | (code >> 18));
+            d[n++] = (byte) (0x80 | ((code >> 12) & 0x3f));
+            d[n++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+            d[n++] = (byte) (0x80 | (code & 0x3f));
+        }
+        return n;
+    }
+
+    private long parseLong(String typeName, int index) throws IOException {
+        if (kinds[index] != KIND_NUMBER) {
+            throw invalidValue(typeName, index);
+        }
+        byte[] b = buffer;
+        int p = starts[index];
+        int end = ends[index];
+        boolean negative = false;
+        if (b[p] == '-') {
+            negative = true;
+            p++;
+        }
+        if (p == end) {
+            throw invalidValue(typeName, index);
+        }
+        long result = 0;
+        for (; p < end; p++) {
+            int digit = b[p] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalidValue(typeName, index);
+            }
+            // accumulates negatively to accept Long.MIN_VALUE
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw invalidValue(typeName, index);
+            }
+            result = result * 10 - digit;
+        }
+        if (negative) {
+            return result;
+        }
+        if (result == Long.MIN_VALUE) {
+            throw invalidValue(typeName, index);
+        }
+        return -result;
+    }
+
+    private int parseDate(int start, String typeName, int index) throws IOException {
+        if (buffer[start + 4] != '-' || buffer[start + 7] != '-') {
+            throw invalidValue(typeName, index);
+        }
+        int year = parseDigits(start, 4, typeName, index);
+        int month = parseDigits(start + 5, 2, typeName, index);
+        int day = parseDigits(start + 8, 2, typeName, index);
+        if (JsonValues.isValidDate(year, month, day) == false) {
+            throw invalidValue(typeName, index);
+        }
+        return JsonValues.toElapsedDays(year, month, day);
+    }
+
+    private int parseDigits(int start, int digits, String typeName, int index) throws IOException {
+        int result = 0;
+        for (int p = start, n = start + digits; p < n; p++) {
+            int digit = buffer[p] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalidValue(typeName, index);
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private String valueAsString(int index) {
+        return new String(buffer, starts[index], ends[index] - starts[index], ASCII);
+    }
+
+    private int skipWhitespace(int start) {
+        byte[] b = buffer;
+        int p = start;
+        while (p < lineEnd && (b[p] == ' ' || b[p] == '\t' || b[p] == '\r')) {
+            p++;
+        }
+        return p;
+    }
+
+    private boolean readLine() throws IOException {
+        int p = nextLineStart;
+        while (true) {
+            while (p < bufferLimit) {
+                if (buffer[p] == '\n') {
+                    lineStart = nextLineStart;
+                    lineEnd = p;
+                    nextLineStart = p + 1;
+                    lineNumber++;
+                    return true;
+                }
+                p++;
+            }
+            if (sawEof) {
+                if (nextLineStart == bufferLimit) {
+                    return false;
+                }
+                lineStart = nextLineStart;
+                lineEnd = bufferLimit;
+                nextLineStart = bufferLimit;
+                lineNumber++;
+                return true;
+            }
+            p -= nextLineStart;
+            fillBuffer();
+        }
+    }
+
+    private void fillBuffer() throws IOException {
+        int rest = bufferLimit - nextLineStart;
+        if (rest == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        } else if (nextLineStart > 0) {
+            System.arraycopy(buffer, nextLineStart, buffer, 0, rest);
+        }
+        nextLineStart = 0;
+        bufferLimit = rest;
+        int read = input.read(buffer, bufferLimit, buffer.length - bufferLimit);
+        if (read < 0) {
+            sawEof = true;
+        } else {
+            bufferLimit += read;
+        }
+    }
+
+    private IOException invalidRecord(int position, String expected) {
+        return new IOException(MessageFormat.format(
+                "Invalid JSON Lines record: {3} is expected at column {2} (path={0}, line={1})",
+                path,
+                lineNumber,
+                position - lineStart + 1,
+                expected));
+    }
+
+    private IOException invalidValue(String typeName, int index) {
+        return new IOException(MessageFormat.format(
+                "Invalid {2} value for \"{3}\" in JSON Lines record (path={0}, line={1})",
+                path,
+                lineNumber,
+                typeName,
+                keys.getName(index)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.jsonl;
+
+/**
+ * Utilities about JSON values in JSON Lines records.
+ * {@code DATE} values are represented as <code>"yyyy-MM-dd"</code>,
+ * and {@code DATETIME} values are represented as <code>"yyyy-MM-dd HH:mm:ss"</code>.
+ * @since 0.6.0
+ */
+final class JsonValues {
+
+    static final int SECONDS_PER_DAY = 86400;
+
+    static final int DATE_LENGTH = 10;
+
+    static final int DATE_TIME_LENGTH = 19;
+
+    private static final int[] DAYS_BEFORE_MONTH = {
+        0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334,
+    };
+
+    private static final int DAYS_PER_400_YEARS = 146097;
+
+    private static final int DAYS_PER_100_YEARS = 36524;
+
+    private static final int DAYS_PER_4_YEARS = 1461;
+
+    private JsonValues() {
+        return;
+    }
+
+    static boolean isLeap(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    static boolean isValidDate(int year, int month, int day) {
+        if (year < 1 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        int days = month == 12 ? 31 : DAYS_BEFORE_MONTH[month] - DAYS_BEFORE_MONTH[month - 1];
+        if (month == 2 && isLeap(year)) {
+            days++;
+        }
+        return day <= days;
+    }
+
+    /**
+     * Returns the number of days since {@code 0001-01-01}.
+     * @param year the year
+     * @param month the month (1-12)
+     * @param day the day of month (1-31)
+     * @return the elapsed days
+     */
+    static int toElapsedDays(int year, int month, int day) {
+        int y = year - 1;
+        int days = y * 365 + y / 4 - y / 100 + y / 400;
+        days += DAYS_BEFORE_MONTH[month - 1];
+        if (month > 2 && isLeap(year)) {
+            days++;
+        }
+        return days + day - 1;
+    }
+
+    /**
+     * Formats the date as {@code yyyy-MM-dd} into the buffer.
+     * @param elapsedDays the number of elapsed days from {@code 0001-01-01}, must be in {@code 0001-9999}
+     * @param b the destination buffer, which must have at least {@link #DATE_LENGTH} bytes from the offset
+     * @param offset the offset in the buffer
+     * @return the end offset of the formatted date
+     */
+    static int formatDate(int elapsedDays, byte[] b, int offset) {
+        int n400 = elapsedDays / DAYS_PER_400_YEARS;
+        int rest = elapsedDays % DAYS_PER_400_YEARS;
+        int n100 = Math.min(rest / DAYS_PER_100_YEARS, 3);
+        rest -= n100 * DAYS_PER_100_YEARS;
+        int n4 = rest / DAYS_PER_4_YEARS;
+        rest %= DAYS_PER_4_YEARS;
+        int n1 = Math.min(rest / 365, 3);
+        rest -= n1 * 365;
+        int year = n400 * 400 + n100 * 100 + n4 * 4 + n1 + 1;
+        boolean leap = isLeap(year);
+        int month = 1;
+        while (month < 12 && rest >= DAYS_BEFORE_MONTH[month] + (leap && month >= 2 ? 1 : 0)) {
+            month++;
+        }
+        int day = rest - DAYS_BEFORE_MONTH[month - 1] - (leap && month > 2 ? 1 : 0) + 1;
+        putDigits(b, offset, year, 4);
+        b[offset + 4] = '-';
+        putDigits(b, offset + 5, month, 2);
+        b[offset + 7] = '-';
+        putDigits(b, offset + 8, day, 2);
+        return offset + DATE_LENGTH;
+    }
+
+    /**
+     * Formats the time of day as {@code HH:mm:ss} into the buffer.
+     * @param secondOfDay the number of seconds since midnight
+     * @param b the destination buffer, which must have at least 8 bytes from the offset
+     * @param offset the offset in the buffer
+     * @return the end offset of the formatted time
+     */
+    static int formatTime(int secondOfDay, byte[] b, int offset) {
+        putDigits(b, offset, secondOfDay / 3600, 2);
+        b[offset + 2] = ':';
+        putDigits(b, offset + 3, secondOfDay / 60 % 60, 2);
+        b[offset + 5] = ':';
+        putDigits(b, offset + 6, secondOfDay % 60, 2);
+        return offset + 8;
+    }
+
+    private static void putDigits(byte[] b, int offset, int value, int digits) {
+        int rest = value;
+        for (int i = digits - 1; i >= 0; i--) {
+            b[offset + i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.rowbin;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Emits Direct I/O row-binary files.
+ * Each record is prefixed with its length in a variable length integer,
+ * and each field has a one byte {@code null} indicator followed by its value:
+ * fixed-width primitives in big-endian, or length prefixed bytes for texts and decimals.
+ * A sync block is inserted before a record whenever the preceding records since the last sync block
+ * exceed the {@link #RowBinaryEmitter(OutputStream, int) sync interval},
+ * so that {@link RowBinaryParser} can start reading from any offset of the file.
+ * @see RowBinaryFormats
+ * @since 0.6.0
+ */
+public class RowBinaryEmitter implements Closeable, Flushable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_VARINT_SIZE = 10;
+
+    private final OutputStream output;
+
+    private final int syncInterval;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    private byte[] record = new byte[256];
+
+    private int recordLength;
+
+    private long bytesSinceSync;
+
+    /**
+     * Creates a new instance with the {@link RowBinaryFormats#DEFAULT_SYNC_INTERVAL default sync interval}.
+     * @param output the destination output
+     * @throws IOException if failed to write the file header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public RowBinaryEmitter(OutputStream output) throws IOException {
+        this(output, RowBinaryFormats.DEFAULT_SYNC_INTERVAL);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param output the destination output
+     * @param syncInterval the minimum number of bytes between sync blocks
+     * @throws IOException if failed to write the file header
+     * @throws IllegalArgumentException if {@code output} is {@code null}, or {@code syncInterval} is not positive
+     */
+    public RowBinaryEmitter(OutputStream output, int syncInterval) throws IOException {
+        if (output == null) {
+            throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
+        }
+        if (syncInterval <= 0) {
+            throw new IllegalArgumentException("syncInterval must be positive"); //$NON-NLS-1$
+        }
+        this.output = output;
+        this.syncInterval = syncInterval;
+        output.write(RowBinaryFormats.MAGIC);
+    }
+
+    /**
+     * Ends the current record.
+     * @throws IOException if failed to write the record
+     */
+    public void endRecord() throws IOException {
+        if (bytesSinceSync >= syncInterval) {
+            ensure(RowBinaryFormats.SYNC_SIZE);
+            buffer[position++] = RowBinaryFormats.HEADER_SYNC;
+            System.arraycopy(RowBinaryFormats.SYNC_MARKER, 0, buffer, position, RowBinaryFormats.SYNC_MARKER.length);
+            position += RowBinaryFormats.SYNC_MARKER.length;
+            bytesSinceSync = 0;
+        }
+        ensure(MAX_VARINT_SIZE);
+        int start = position;
+        position = putVarint(buffer, position, recordLength + 1L);
+        int headerLength = position - start;
+        if (recordLength <= buffer.length - position) {
+            System.arraycopy(record, 0, buffer, position, recordLength);
+            position += recordLength;
+        } else {
+            flushBuffer();
+            output.write(record, 0, recordLength);
+        }
+        bytesSinceSync += headerLength + recordLength;
+        recordLength = 0;
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(BooleanOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeByte(option.get() ? 1 : 0);
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(ByteOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeByte(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(ShortOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeShort(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(IntOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeInt(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(LongOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(FloatOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeInt(Float.floatToRawIntBits(option.get()));
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(DoubleOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeLong(Double.doubleToRawLongBits(option.get()));
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(DecimalOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeDecimal(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(StringOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeText(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(DateOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeInt(option.get().getElapsedDays());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(DateTimeOption option) throws IOException {
+        if (option.isNull()) {
+            writeByte(RowBinaryFormats.FIELD_NULL);
+        } else {
+            writeByte(RowBinaryFormats.FIELD_PRESENT);
+            writeLong(option.get().getElapsedSeconds());
+        }
+    }
+
+    private void writeByte(int value) {
+        reserve(1);
+        record[recordLength++] = (byte) value;
+    }
+
+    private void writeShort(short value) {
+        reserve(2);
+        byte[] b = record;
+        int p = recordLength;
+        b[p + 0] = (byte) (value >> 8);
+        b[p + 1] = (byte) value;
+        recordLength = p + 2;
+    }
+
+    private void writeInt(int value) {
+        reserve(4);
+        byte[] b = record;
+        int p = recordLength;
+        b[p + 0] = (byte) (value >> 24);
+        b[p + 1] = (byte) (value >> 16);
+        b[p + 2] = (byte) (value >> 8);
+        b[p + 3] = (byte) value;
+        recordLength = p + 4;
+    }
+
+    private void writeLong(long value) {
+        reserve(8);
+        byte[] b = record;
+        int p = recordLength;
+        for (int i = 7; i >= 0; i--) {
+            b[p + i] = (byte) value;
+            value >>= 8;
+        }
+        recordLength = p + 8;
+    }
+
+    private void writeText(Text value) {
+        writeBytes(value.getBytes(), value.getLength());
+    }
+
+    private void writeDecimal(BigDecimal value) {
+        int scale = value.scale();
+        reserve(MAX_VARINT_SIZE);
+        recordLength = putVarint(record, recordLength, (scale << 1) ^ (scale >> 31));
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        writeBytes(unscaled, unscaled.length);
+    }
+
+    private void writeBytes(byte[] bytes, int length) {
+        reserve(MAX_VARINT_SIZE + length);
+        recordLength = putVarint(record, recordLength, length);
+        System.arraycopy(bytes, 0, record, recordLength, length);
+        recordLength += length;
+    }
+
+    static int putVarint(byte[] target, int offset, long value) {
+        int p = offset;
+        long rest = value;
+        while ((rest & ~0x7fL) != 0) {
+            target[p++] = (byte) ((rest & 0x7f) | 0x80);
+            rest >>>= 7;
+        }
+        target[p++] = (byte) rest;
+        return p;
+    }
+
+    private void reserve(int size) {
+        int required = recordLength + size;
+        if (required > record.length) {
+            record = Arrays.copyOf(record, Math.max(required, record.length * 2));
+        }
+    }
+
+    private void ensure(int size) throws IOException {
+        if (buffer.length - position < size) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        output.close();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.rowbin;
+
+/**
+ * Constants of the Direct I/O row-binary format.
+<pre>
+file        := MAGIC (record | sync)*
+record      := varint(length + 1) field*
+sync        := 0x00 SYNC_MARKER
+field       := 0x00 (null) | 0x01 value
+value       := fixed-width big-endian primitive
+             | varint(length) bytes (TEXT)
+             | zigzag-varint(scale) varint(length) unscaled-bytes (DECIMAL)
+</pre>
+ * {@code DATE} and {@code DATETIME} values are stored as the number of elapsed days (INT)
+ * and seconds (LONG) respectively.
+ * @since 0.6.0
+ */
+public final class RowBinaryFormats {
+
+    /**
+     * The magic number at the head of each file.
+     */
+    static final byte[] MAGIC = { 'A', 'R', 'B', 1 };
+
+    /**
+     * The fixed sync marker, which never contains {@code 0x00}.
+     */
+    static final byte[] SYNC_MARKER = {
+        (byte) 0xa5, (byte) 0x3c, (byte) 0xe1, (byte) 0x7b,
+        (byte) 0x52, (byte) 0x9d, (byte) 0x6f, (byte) 0x18,
+        (byte) 0xc4, (byte) 0x2e, (byte) 0xb7, (byte) 0x41,
+        (byte) 0x8a, (byte) 0x73, (byte) 0xd9, (byte) 0x06,
+    };
+
+    /**
+     * The record header which represents a sync block.
+     */
+    static final int HEADER_SYNC = 0;
+
+    /**
+     * The field header which represents {@code null}.
+     */
+    static final int FIELD_NULL = 0;
+
+    /**
+     * The field header which represents a present value.
+     */
+    static final int FIELD_PRESENT = 1;
+
+    /**
+     * The default number of bytes between sync blocks.
+     */
+    public static final int DEFAULT_SYNC_INTERVAL = 64 * 1024;
+
+    /**
+     * The number of bytes of each sync block.
+     */
+    public static final int SYNC_SIZE = 1 + 16;
+
+    private RowBinaryFormats() {
+        return;
+    }
+}
@@ -0,0 +1,545 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.rowbin;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Parses Direct I/O row-binary files written by {@link RowBinaryEmitter}.
+ * <p>
+ * A parser for a fragment starting at a non-zero offset skips to the first sync block at or after the offset.
+ * Each parser stops at the first sync block at or after the end of its fragment,
+ * so that every record is read by exactly one of the fragments.
+ * </p>
+ * @see RowBinaryFormats
+ * @since 0.6.0
+ */
+public class RowBinaryParser implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+
+    private final String path;
+
+    private final long end;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int bufferOffset;
+
+    private int bufferLimit;
+
+    private long position;
+
+    private byte[] record = new byte[256];
+
+    private int recordLength;
+
+    private int recordOffset;
+
+    private final long offset;
+
+    private boolean started;
+
+    private boolean finished;
+
+    private final Text scratchText = new Text();
+
+    private final Date scratchDate = new Date();
+
+    private final DateTime scratchDateTime = new DateTime();
+
+    /**
+     * Creates a new instance which reads the whole file.
+     * @param input the source input
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public RowBinaryParser(InputStream input) {
+        this(input, null, 0L, -1L);
+    }
+
+    /**
+     * Creates a new instance which reads a fragment of the file.
+     * @param input the source input, which starts at {@code offset} of the file
+     * @param path the file path (for diagnostics, nullable)
+     * @param offset the offset of the fragment in the file
+     * @param fragmentSize the size of the fragment in bytes, or {@code -1} for the rest of the file
+     * @throws IllegalArgumentException if {@code input} is {@code null}, or {@code offset} is negative
+     */
+    public RowBinaryParser(InputStream input, String path, long offset, long fragmentSize) {
+        if (input == null) {
+            throw new IllegalArgumentException("input must not be null"); //$NON-NLS-1$
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative"); //$NON-NLS-1$
+        }
+        this.input = input;
+        this.path = path;
+        this.offset = offset;
+        this.position = offset;
+        this.end = fragmentSize < 0 ? Long.MAX_VALUE : offset + fragmentSize;
+    }
+
+    /**
+     * Advances the cursor to the next record.
+     * @return {@code true} if the next record exists, otherwise {@code false}
+     * @throws IOException if failed to read the next record
+     */
+    public boolean next() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (started == false) {
+            started = true;
+            boolean found = offset == 0 ? readMagic() : seekToSync();
+            if (found == false) {
+                finished = true;
+                return false;
+            }
+        }
+        recordLength = 0;
+        recordOffset = 0;
+        while (true) {
+            long start = position;
+            int first = readRaw();
+            if (first < 0) {
+                finished = true;
+                return false;
+            }
+            long header = readVarint(first);
+            if (header == RowBinaryFormats.HEADER_SYNC) {
+                if (start >= end) {
+                    finished = true;
+                    return false;
+                }
+                readSyncMarker();
+                continue;
+            }
+            long length = header - 1;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid record length ({1}) at {2}: {0}",
+                        path,
+                        length,
+                        start));
+            }
+            if (record.length < length) {
+                record = new byte[Math.max((int) length, record.length * 2)];
+            }
+            readFully(record, (int) length);
+            recordLength = (int) length;
+            return true;
+        }
+    }
+
+    /**
+     * Ends the current record.
+     * @throws IOException if the current record has unread fields
+     */
+    public void endRecord() throws IOException {
+        if (recordOffset != recordLength) {
+            throw new IOException(MessageFormat.format(
+                    "Record has extra {1} bytes before {2}: {0}",
+                    path,
+                    recordLength - recordOffset,
+                    position));
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(BooleanOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(readByte() != 0);
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(ByteOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(readByte());
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(ShortOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(readShort());
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(IntOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(readInt());
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(LongOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(readLong());
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(FloatOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(Float.intBitsToFloat(readInt()));
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(DoubleOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(Double.longBitsToDouble(readLong()));
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(DecimalOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(readDecimal());
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(StringOption option) throws IOException {
+        if (readPresence()) {
+            option.modify(readText());
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(DateOption option) throws IOException {
+        if (readPresence()) {
+            scratchDate.setElapsedDays(readInt());
+            option.modify(scratchDate);
+        } else {
+            option.setNull();
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to read the field
+     */
+    public void fill(DateTimeOption option) throws IOException {
+        if (readPresence()) {
+            scratchDateTime.setElapsedSeconds(readLong());
+            option.modify(scratchDateTime);
+        } else {
+            option.setNull();
+        }
+    }
+
+    private boolean readPresence() throws IOException {
+        int presence = readByte();
+        switch (presence) {
+        case RowBinaryFormats.FIELD_NULL:
+            return false;
+        case RowBinaryFormats.FIELD_PRESENT:
+            return true;
+        default:
+            throw new IOException(MessageFormat.format(
+                    "Invalid field header ({1}) in the record before {2}: {0}",
+                    path,
+                    presence,
+                    position));
+        }
+    }
+
+    private byte readByte() throws IOException {
+        require(1);
+        return record[recordOffset++];
+    }
+
+    private short readShort() throws IOException {
+        require(2);
+        byte[] b = record;
+        int p = recordOffset;
+        recordOffset = p + 2;
+        return (short) (((b[p] & 0xff) << 8) | (b[p + 1] & 0xff));
+    }
+
+    private int readInt() throws IOException {
+        require(4);
+        byte[] b = record;
+        int p = recordOffset;
+        recordOffset = p + 4;
+        return ((b[p] & 0xff) << 24)
+                | ((b[p + 1] & 0xff) << 16)
+                | ((b[p + 2] & 0xff) << 8)
+                | (b[p + 3] & 0xff);
+    }
+
+    private long readLong() throws IOException {
+        require(8);
+        byte[] b = record;
+        int p = recordOffset;
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (b[p + i] & 0xff);
+        }
+        recordOffset = p + 8;
+        return result;
+    }
+
+    private Text readText() throws IOException {
+        int length = readLength();
+        scratchText.set(record, recordOffset, length);
+        recordOffset += length;
+        return scratchText;
+    }
+
+    private BigDecimal readDecimal() throws IOException {
+        int zigzag = (int) readFieldVarint();
+        int scale = (zigzag >>> 1) ^ -(zigzag & 1);
+        int length = readLength();
+        BigInteger unscaled = new BigInteger(Arrays.copyOfRange(record, recordOffset, recordOffset + length));
+        recordOffset += length;
+        return new BigDecimal(unscaled, scale);
+    }
+
+    private int readLength() throws IOException {
+        long length = readFieldVarint();
+        if (length > recordLength - recordOffset) {
+            throw new IOException(MessageFormat.format(
+                    "Invalid field length ({1}) in the record before {2}: {0}",
+                    path,
+                    length,
+                    position));
+        }
+        return (int) length;
+    }
+
+    private long readFieldVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException(MessageFormat.format(
+                "Invalid variable length integer in the record before {1}: {0}",
+                path,
+                position));
+    }
+
+    private void require(int size) throws IOException {
+        if (recordLength - recordOffset < size) {
+            throw new IOException(MessageFormat.format(
+                    "Record is too short before {1}: {0}",
+                    path,
+                    position));
+        }
+    }
+
+    private boolean readMagic() throws IOException {
+        byte[] magic = RowBinaryFormats.MAGIC;
+        for (int i = 0; i < magic.length; i++) {
+            int c = readRaw();
+            if (c < 0 && i == 0) {
+                return false;
+            }
+            if (c != (magic[i] & 0xff)) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid row-binary file header: {0}",
+                        path));
+            }
+        }
+        return true;
+    }
+
+    private boolean seekToSync() throws IOException {
+        // the sync marker never contains the sync header, so that the naive search works
+        byte[] marker = RowBinaryFormats.SYNC_MARKER;
+        int matched = -1;
+        while (true) {
+            int c = readRaw();
+            if (c < 0) {
+                return false;
+            }
+            if (c == RowBinaryFormats.HEADER_SYNC) {
+                matched = 0;
+            } else if (matched >= 0 && c == (marker[matched] & 0xff)) {
+                matched++;
+                if (matched == marker.length) {
+                    return position - RowBinaryFormats.SYNC_SIZE < end;
+                }
+            } else {
+                matched = -1;
+            }
+        }
+    }
+
+    private void readSyncMarker() throws IOException {
+        byte[] marker = RowBinaryFormats.SYNC_MARKER;
+        for (int i = 0; i < marker.length; i++) {
+            if (readRaw() != (marker[i] & 0xff)) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid sync marker before {1}: {0}",
+                        path,
+                        position));
+            }
+        }
+    }
+
+    private long readVarint(int first) throws IOException {
+        long result = first & 0x7f;
+        int b = first;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift >= Long.SIZE) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid record header before {1}: {0}",
+                        path,
+                        position));
+            }
+            b = readRaw();
+            if (b < 0) {
+                throw new EOFException(MessageFormat.format(
+                        "Unexpected end of file in the record header: {0}",
+                        path));
+            }
+            result |= (long) (b & 0x7f) << shift;
+        }
+        return result;
+    }
+
+    private void readFully(byte[] target, int length) throws IOException {
+        int copied = 0;
+        while (copied < length) {
+            if (bufferOffset >= bufferLimit && fillBuffer() == false) {
+                throw new EOFException(MessageFormat.format(
+                        "Unexpected end of file in the record before {1}: {0}",
+                        path,
+                        position));
+            }
+            int size = Math.min(length - copied, bufferLimit - bufferOffset);
+            System.arraycopy(buffer, bufferOffset, target, copied, size);
+            bufferOffset += size;
+            position += size;
+            copied += size;
+        }
+    }
+
+    private int readRaw() throws IOException {
+        if (bufferOffset >= bufferLimit && fillBuffer() == false) {
+            return -1;
+        }
+        position++;
+        return buffer[bufferOffset++] & 0xff;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        int read = input.read(buffer);
+        if (read <= 0) {
+            return false;
+        }
+        bufferOffset = 0;
+        bufferLimit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,703 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.directio.Counter;
+import com.asakusafw.runtime.directio.DataFormat;
+import com.asakusafw.runtime.directio.FragmentableDataFormat;
+import com.asakusafw.runtime.directio.hadoop.HadoopFileFormat;
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+
+/**
+ * Converts local files between {@link BinaryStreamFormat}s and {@link HadoopFileFormat}s generated from DMDL.
+ * <p>
+ * Each source file is split into fragments if the source format supports fragmentation,
+ * and the fragments are converted in parallel by a pool of worker threads.
+ * Each fragment is written into its own destination file, named after the relative path of the source file,
+ * with a suffix {@code -NNNNN} of the fragment index only if the source file was split.
+ * </p>
+ * <p>
+ * {@link HadoopFileFormat}s (e.g. TSV formats which roll, partition, or sort their output files)
+ * read and write the files through the local file system.
+ * They may write each fragment into multiple part files and side files (e.g. manifests) next to the destination.
+ * </p>
+ * <pre><code>
+ * java -cp ... com.asakusafw.runtime.directio.tools.FormatConverter
+ *     -model &lt;data model class name&gt;
+ *     -from &lt;format&gt; -to &lt;format&gt;
+ *     -output &lt;destination directory&gt;
+ *     [-threads &lt;number of worker threads&gt;]
+ *     [-fragment &lt;fragment size in bytes&gt;]
+ *     &lt;source file or directory&gt;...
+ * </code></pre>
+ * Each format is either a fully qualified class name,
+ * or one of {@code tsv}, {@code rowbin}, {@code columnar}, {@code fixed}, and {@code jsonl}
+ * for the classes generated next to the data model class
+ * (for example, {@code tsv} means {@code com.example.tsv.ItemTsvFormat} for {@code com.example.model.Item}).
+ * @since 0.6.0
+ */
+public class FormatConverter {
+
+    static final Log LOG = LogFactory.getLog(FormatConverter.class);
+
+    /**
+     * The default fragment size in bytes.
+     */
+    public static final long DEFAULT_FRAGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final Map<String, String> FORMAT_SUFFIXES;
+    static {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("tsv", "Tsv"); //$NON-NLS-1$ //$NON-NLS-2$
+        map.put("rowbin", "RowBinary"); //$NON-NLS-1$ //$NON-NLS-2$
+        map.put("columnar", "Columnar"); //$NON-NLS-1$ //$NON-NLS-2$
+        map.put("fixed", "Fixed"); //$NON-NLS-1$ //$NON-NLS-2$
+        map.put("jsonl", "JsonLines"); //$NON-NLS-1$ //$NON-NLS-2$
+        FORMAT_SUFFIXES = Collections.unmodifiableMap(map);
+    }
+
+    private static final String USAGE = "Usage: java " + FormatConverter.class.getName()
+            + " -model <data model class name> -from <format> -to <format> -output <destination directory>"
+            + " [-threads <number of threads>] [-fragment <fragment size in bytes>]"
+            + " <source file or directory>..."
+            + "\n  <format>: tsv, rowbin, columnar, fixed, jsonl, or a fully qualified format class name"
+            + " (a subtype of BinaryStreamFormat or HadoopFileFormat)";
+
+    private final DataFormat<Object> sourceFormat;
+
+    private final DataFormat<Object> destinationFormat;
+
+    private final FileSystem fileSystem;
+
+    private final int threads;
+
+    private final long fragmentSize;
+
+    /**
+     * Creates a new instance.
+     * @param sourceFormat the format of source files,
+     *     either a {@link BinaryStreamFormat} or a {@link HadoopFileFormat}
+     * @param destinationFormat the format of destination files,
+     *     either a {@link BinaryStreamFormat} or a {@link HadoopFileFormat}
+     * @param threads the number of worker threads
+     * @param fragmentSize the fragment size in bytes, or {@code -1} to use the preferred size of the source format
+     * @throws IOException if the formats are not supported or not compatible
+     * @throws InterruptedException if interrupted while inspecting the formats
+     * @throws IllegalArgumentException if some parameters were {@code null} or the number of threads is not positive
+     */
+    public FormatConverter(
+            DataFormat<?> sourceFormat,
+            DataFormat<?> destinationFormat,
+            int threads,
+            long fragmentSize) throws IOException, InterruptedException {
+        if (sourceFormat == null) {
+            throw new IllegalArgumentException("sourceFormat must not be null"); //$NON-NLS-1$
+        }
+        if (destinationFormat == null) {
+            throw new IllegalArgumentException("destinationFormat must not be null"); //$NON-NLS-1$
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive"); //$NON-NLS-1$
+        }
+        checkSupported(sourceFormat);
+        checkSupported(destinationFormat);
+        if (destinationFormat.getSupportedType().isAssignableFrom(sourceFormat.getSupportedType()) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Incompatible data model types: {0} -> {1}",
+                    sourceFormat.getSupportedType().getName(),
+                    destinationFormat.getSupportedType().getName()));
+        }
+        this.sourceFormat = unsafe(sourceFormat);
+        this.destinationFormat = unsafe(destinationFormat);
+        this.fileSystem = isHadoopFileFormat(sourceFormat) || isHadoopFileFormat(destinationFormat)
+                ? FileSystem.getLocal(getConfiguration(sourceFormat, destinationFormat)).getRaw()
+                : null;
+        this.threads = threads;
+        this.fragmentSize = computeFragmentSize(sourceFormat, fragmentSize);
+    }
+
+    private static void checkSupported(DataFormat<?> format) throws IOException {
+        if ((format instanceof BinaryStreamFormat<?>) == false && isHadoopFileFormat(format) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Format class must be a subtype of {1} or {2}: {0}",
+                    format.getClass().getName(),
+                    BinaryStreamFormat.class.getName(),
+                    HadoopFileFormat.class.getName()));
+        }
+    }
+
+    private static boolean isHadoopFileFormat(DataFormat<?> format) {
+        return format instanceof HadoopFileFormat<?>;
+    }
+
+    private static Configuration getConfiguration(DataFormat<?>... formats) {
+        for (DataFormat<?> format : formats) {
+            if (format instanceof Configurable && ((Configurable) format).getConf() != null) {
+                return ((Configurable) format).getConf();
+            }
+        }
+        return new Configuration();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DataFormat<Object> unsafe(DataFormat<?> format) {
+        return (DataFormat<Object>) format;
+    }
+
+    private static long computeFragmentSize(
+            DataFormat<?> dataFormat, long requested) throws IOException, InterruptedException {
+        if ((dataFormat instanceof FragmentableDataFormat<?>) == false) {
+            return -1L;
+        }
+        FragmentableDataFormat<?> format = (FragmentableDataFormat<?>) dataFormat;
+        if (format.getMinimumFragmentSize() <= 0) {
+            // the format does not support fragmentation
+            return -1L;
+        }
+        if (requested > 0) {
+            return requested;
+        }
+        long preferred = format.getPreferredFragmentSize();
+        return preferred > 0 ? preferred : DEFAULT_FRAGMENT_SIZE;
+    }
+
+    /**
+     * Converts the source files into the destination directory.
+     * @param sources the source files or directories
+     * @param destination the destination directory
+     * @return the conversion statistics
+     * @throws IOException if failed to convert the files
+     * @throws InterruptedException if interrupted while converting the files
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public Statistics convert(List<File> sources, File destination) throws IOException, InterruptedException {
+        if (sources == null) {
+            throw new IllegalArgumentException("sources must not be null"); //$NON-NLS-1$
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("destination must not be null"); //$NON-NLS-1$
+        }
+        long start = System.currentTimeMillis();
+        List<Fragment> fragments = new ArrayList<Fragment>();
+        int files = 0;
+        for (File source : sources) {
+            if (source.exists() == false) {
+                throw new IOException(MessageFormat.format(
+                        "Source file does not exist: {0}",
+                        source));
+            }
+            for (Map.Entry<String, File> entry : collect(source).entrySet()) {
+                files++;
+                fragments.addAll(split(entry.getValue(), new File(destination, entry.getKey())));
+            }
+        }
+        LOG.info(MessageFormat.format(
+                "Converting {0} files ({1} fragments) with {2} threads",
+                files,
+                fragments.size(),
+                threads));
+        ExecutorService executor = newExecutor(Math.min(threads, Math.max(fragments.size(), 1)));
+        try {
+            List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+            for (Fragment fragment : fragments) {
+                futures.add(executor.submit(fragment));
+            }
+            long records = 0;
+            long inputBytes = 0;
+            long outputBytes = 0;
+            for (int i = 0, n = futures.size(); i < n; i++) {
+                long[] counts = get(futures.get(i), fragments.get(i));
+                records += counts[0];
+                outputBytes += counts[1];
+                inputBytes += fragments.get(i).length;
+            }
+            return new Statistics(
+                    files, fragments.size(), records, inputBytes, outputBytes,
+                    System.currentTimeMillis() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long[] get(Future<long[]> future, Fragment fragment) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(MessageFormat.format(
+                    "Failed to convert {0}",
+                    fragment), cause);
+        }
+    }
+
+    private static Map<String, File> collect(File source) throws IOException {
+        Map<String, File> results = new TreeMap<String, File>();
+        if (source.isFile()) {
+            results.put(source.getName(), source);
+        } else {
+            collect(source, "", results); //$NON-NLS-1$
+        }
+        return results;
+    }
+
+    private static void collect(File directory, String prefix, Map<String, File> results) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            throw new IOException(MessageFormat.format(
+                    "Failed to list files: {0}",
+                    directory));
+        }
+        for (File child : children) {
+            String name = prefix + child.getName();
+            if (child.isDirectory()) {
+                collect(child, name + File.separator, results);
+            } else if (child.isFile() && child.isHidden() == false) {
+                results.put(name, child);
+            }
+        }
+    }
+
+    private List<Fragment> split(File source, File destination) {
+        long size = source.length();
+        if (fragmentSize <= 0 || size <= fragmentSize) {
+            return Collections.singletonList(new Fragment(source, destination, 0L, size));
+        }
+        List<Fragment> results = new ArrayList<Fragment>();
+        for (long offset = 0; offset < size; offset += fragmentSize) {
+            File file = new File(destination.getPath() + String.format("-%05d", results.size())); //$NON-NLS-1$
+            results.add(new Fragment(source, file, offset, Math.min(fragmentSize, size - offset)));
+        }
+        return results;
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "asakusa-convert-" + counter.incrementAndGet()); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Program entry.
+     * @param args the program arguments
+     */
+    public static void main(String... args) {
+        int status = execute(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Executes the conversion and prints its statistics.
+     * @param args the program arguments
+     * @return the exit status
+     */
+    public static int execute(String... args) {
+        Map<String, String> options = new HashMap<String, String>();
+        List<File> sources = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("-")) { //$NON-NLS-1$
+                if (i + 1 >= args.length) {
+                    return usage(MessageFormat.format("Missing value of {0}", arg));
+                }
+                options.put(arg.substring(1), args[++i]);
+            } else {
+                sources.add(new File(arg));
+            }
+        }
+        String model = options.remove("model"); //$NON-NLS-1$
+        String from = options.remove("from"); //$NON-NLS-1$
+        String to = options.remove("to"); //$NON-NLS-1$
+        String output = options.remove("output"); //$NON-NLS-1$
+        String threadsValue = options.remove("threads"); //$NON-NLS-1$
+        String fragmentValue = options.remove("fragment"); //$NON-NLS-1$
+        if (options.isEmpty() == false) {
+            return usage(MessageFormat.format("Unknown options: {0}", options.keySet()));
+        }
+        if (model == null || from == null || to == null || output == null || sources.isEmpty()) {
+            return usage("Missing required arguments");
+        }
+        int threads;
+        long fragment;
+        try {
+            threads = threadsValue == null
+                    ? Runtime.getRuntime().availableProcessors()
+                    : Integer.parseInt(threadsValue);
+            fragment = fragmentValue == null ? -1L : Long.parseLong(fragmentValue);
+        } catch (NumberFormatException e) {
+            return usage(MessageFormat.format("Invalid number: {0}", e.getMessage()));
+        }
+        if (threads <= 0) {
+            return usage("The number of threads must be positive");
+        }
+        try {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Configuration configuration = new Configuration();
+            FormatConverter converter = new FormatConverter(
+                    loadFormat(loader, configuration, model, from),
+                    loadFormat(loader, configuration, model, to),
+                    threads,
+                    fragment);
+            Statistics statistics = converter.convert(sources, new File(output));
+            System.out.println(statistics);
+            return 0;
+        } catch (Exception e) {
+            LOG.error(MessageFormat.format(
+                    "Failed to convert files: {0}",
+                    Arrays.toString(args)), e);
+            return 1;
+        }
+    }
+
+    private static int usage(String message) {
+        PrintStream err = System.err;
+        err.println(message);
+        err.println(USAGE);
+        return 2;
+    }
+
+    /**
+     * Returns the format class name for the data model class.
+     * @param modelClassName the fully qualified data model class name
+     * @param format the format kind, or a fully qualified format class name
+     * @return the fully qualified format class name
+     */
+    static String toFormatClassName(String modelClassName, String format) {
+        String suffix = FORMAT_SUFFIXES.get(format);
+        if (suffix == null) {
+            return format;
+        }
+        int simpleNameStart = modelClassName.lastIndexOf('.');
+        String simpleName = modelClassName.substring(simpleNameStart + 1);
+        String modelPackage = simpleNameStart < 0 ? "" : modelClassName.substring(0, simpleNameStart); //$NON-NLS-1$
+        int basePackageEnd = modelPackage.lastIndexOf('.');
+        String basePackage = basePackageEnd < 0 ? "" : modelPackage.substring(0, basePackageEnd + 1); //$NON-NLS-1$
+        return basePackage + format + '.' + simpleName + suffix + "Format"; //$NON-NLS-1$
+    }
+
+    private static DataFormat<?> loadFormat(
+            ClassLoader loader,
+            Configuration configuration,
+            String modelClassName,
+            String format) throws IOException {
+        String className = toFormatClassName(modelClassName, format);
+        Object instance;
+        try {
+            instance = Class.forName(className, true, loader).newInstance();
+        } catch (Exception e) {
+            throw new IOException(MessageFormat.format(
+                    "Failed to load format class: {0}",
+                    className), e);
+        }
+        if ((instance instanceof DataFormat<?>) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Format class must be a subtype of {1} or {2}: {0}",
+                    className,
+                    BinaryStreamFormat.class.getName(),
+                    HadoopFileFormat.class.getName()));
+        }
+        DataFormat<?> result = (DataFormat<?>) instance;
+        checkSupported(result);
+        if (result instanceof Configurable) {
+            ((Configurable) result).setConf(configuration);
+        }
+        if (result.getSupportedType().getName().equals(modelClassName) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Format class does not support {1}: {0}",
+                    className,
+                    modelClassName));
+        }
+        return result;
+    }
+
+    private final class Fragment implements Callable<long[]> {
+
+        final File source;
+
+        final File destination;
+
+        final long offset;
+
+        final long length;
+
+        Fragment(File source, File destination, long offset, long length) {
+            this.source = source;
+            this.destination = destination;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public long[] call() throws Exception {
+            long start = System.currentTimeMillis();
+            Class<?> dataType = sourceFormat.getSupportedType();
+            Object buffer = dataType.newInstance();
+            File parent = destination.getParentFile();
+            if (parent != null && parent.mkdirs() == false && parent.isDirectory() == false) {
+                throw new IOException(MessageFormat.format(
+                        "Failed to create directory: {0}",
+                        parent));
+            }
+            long records = 0;
+            Counter counter = new Counter();
+            ModelInput<Object> input = openInput(dataType);
+            try {
+                ModelOutput<Object> writer = openOutput(dataType, counter);
+                try {
+                    while (input.readTo(buffer)) {
+                        writer.write(buffer);
+                        records++;
+                    }
+                } finally {
+                    writer.close();
+                }
+            } finally {
+                input.close();
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(MessageFormat.format(
+                        "Converted {0} ({1} records, {2}ms)",
+                        this,
+                        records,
+                        System.currentTimeMillis() - start));
+            }
+            // Hadoop file formats may write multiple files, so that we count the written bytes instead
+            long outputBytes = isHadoopFileFormat(destinationFormat) ? counter.get() : destination.length();
+            return new long[] { records, outputBytes };
+        }
+
+        private ModelInput<Object> openInput(Class<?> dataType) throws IOException, InterruptedException {
+            if (isHadoopFileFormat(sourceFormat)) {
+                HadoopFileFormat<Object> format = (HadoopFileFormat<Object>) sourceFormat;
+                return format.createInput(dataType, fileSystem, new Path(source.toURI()), offset, length, null);
+            }
+            BinaryStreamFormat<Object> format = (BinaryStreamFormat<Object>) sourceFormat;
+            final FileInputStream stream = new FileInputStream(source);
+            boolean succeed = false;
+            try {
+                stream.getChannel().position(offset);
+                final ModelInput<Object> input = format.createInput(
+                        dataType, source.toURI().toString(), stream, offset, length);
+                succeed = true;
+                return new ModelInput<Object>() {
+                    @Override
+                    public boolean readTo(Object model) throws IOException {
+                        return input.readTo(model);
+                    }
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            input.close();
+                        } finally {
+                            stream.close();
+                        }
+                    }
+                };
+            } finally {
+                if (succeed == false) {
+                    stream.close();
+                }
+            }
+        }
+
+        private ModelOutput<Object> openOutput(
+                Class<?> dataType, Counter counter) throws IOException, InterruptedException {
+            if (isHadoopFileFormat(destinationFormat)) {
+                HadoopFileFormat<Object> format = (HadoopFileFormat<Object>) destinationFormat;
+                return format.createOutput(dataType, fileSystem, new Path(destination.toURI()), counter);
+            }
+            BinaryStreamFormat<Object> format = (BinaryStreamFormat<Object>) destinationFormat;
+            final OutputStream stream = new BufferedOutputStream(new FileOutputStream(destination));
+            boolean succeed = false;
+            try {
+                final ModelOutput<Object> output = format.createOutput(
+                        dataType, destination.toURI().toString(), stream);
+                succeed = true;
+                return new ModelOutput<Object>() {
+                    @Override
+                    public void write(Object model) throws IOException {
+                        output.write(model);
+                    }
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            output.close();
+                        } finally {
+                            stream.close();
+                        }
+                    }
+                };
+            } finally {
+                if (succeed == false) {
+                    stream.close();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format(
+                    "{0}[{1}+{2}] -> {3}",
+                    source,
+                    String.valueOf(offset),
+                    String.valueOf(length),
+                    destination);
+        }
+    }
+
+    /**
+     * Statistics of conversion.
+     * @since 0.6.0
+     */
+    public static final class Statistics {
+
+        private final int fileCount;
+
+        private final int fragmentCount;
+
+        private final long recordCount;
+
+        private final long inputBytes;
+
+        private final long outputBytes;
+
+        private final long elapsedMillis;
+
+        Statistics(
+                int fileCount, int fragmentCount,
+                long recordCount, long inputBytes, long outputBytes, long elapsedMillis) {
+            this.fileCount = fileCount;
+            this.fragmentCount = fragmentCount;
+            this.recordCount = recordCount;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * Returns the number of source files.
+         * @return the number of source files
+         */
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * Returns the number of converted fragments.
+         * @return the number of fragments
+         */
+        public int getFragmentCount() {
+            return fragmentCount;
+        }
+
+        /**
+         * Returns the number of converted records.
+         * @return the number of records
+         */
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Returns the total size of source files.
+         * @return the number of bytes read
+         */
+        public long getInputBytes() {
+            return inputBytes;
+        }
+
+        /**
+         * Returns the total size of destination files.
+         * @return the number of bytes written
+         */
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        /**
+         * Returns the elapsed time.
+         * @return the elapsed time in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(elapsedMillis, 1L) / 1000.0;
+            return String.format(
+                    "files=%d, fragments=%d, records=%d, input=%dbytes, output=%dbytes, elapsed=%dms, "
+                    + "throughput=%.0frecords/s, %.2fMB/s", //$NON-NLS-1$
+                    fileCount,
+                    fragmentCount,
+                    recordCount,
+                    inputBytes,
+                    outputBytes,
+                    elapsedMillis,
+                    recordCount / seconds,
+                    inputBytes / seconds / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link OutputStream} which writes full buffers to the underlying stream on a background thread.
+ * The writer thread can fill the next buffer while the previous buffers are being written,
+ * and it blocks only if the number of buffers in flight reaches the limit.
+ * <p>
+ * Errors on the background thread (including {@link Error}s) are reported on the subsequent operations
+ * of this stream.
+ * {@link #flush()} and {@link #close()} wait until all buffers are written.
+ * Even if {@link #close()} fails, it closes the underlying stream only after the background thread
+ * stopped writing to it.
+ * </p>
+ * @since 0.6.0
+ */
+public class AsyncFlushOutputStream extends OutputStream {
+
+    static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private static ExecutorService shared;
+
+    private final OutputStream out;
+
+    private final Executor executor;
+
+    private final int bufferSize;
+
+    private final int maxBuffers;
+
+    private final Object lock = new Object();
+
+    private final LinkedList<Chunk> queue = new LinkedList<Chunk>();
+
+    private final LinkedList<byte[]> free = new LinkedList<byte[]>();
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private int inFlight;
+
+    private boolean draining;
+
+    private Throwable failure;
+
+    private boolean released;
+
+    private byte[] buffer;
+
+    private int bufferLength;
+
+    private boolean closed;
+
+    /**
+     * Creates a new instance which uses the shared background threads.
+     * @param out the target output
+     * @param maxBuffers the maximum number of buffers in flight
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public AsyncFlushOutputStream(OutputStream out, int maxBuffers) {
+        this(out, getSharedExecutor(), DEFAULT_BUFFER_SIZE, maxBuffers);
+    }
+
+    AsyncFlushOutputStream(OutputStream out, Executor executor, int bufferSize, int maxBuffers) {
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null"); //$NON-NLS-1$
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null"); //$NON-NLS-1$
+        }
+        if (maxBuffers <= 0) {
+            throw new IllegalArgumentException("maxBuffers must be positive"); //$NON-NLS-1$
+        }
+        this.out = out;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.buffer = new byte[bufferSize];
+    }
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (shared == null) {
+            final AtomicInteger counter = new AtomicInteger();
+            shared = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "asakusa-flush-" + counter.incrementAndGet()); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return shared;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[bufferLength++] = (byte) b;
+        if (bufferLength == buffer.length) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        int offset = off;
+        int rest = len;
+        while (rest > 0) {
+            int count = Math.min(rest, buffer.length - bufferLength);
+            System.arraycopy(b, offset, buffer, bufferLength, count);
+            bufferLength += count;
+            offset += count;
+            rest -= count;
+            if (bufferLength == buffer.length) {
+                submit();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream is already closed");
+        }
+    }
+
+    private void submit() throws IOException {
+        if (bufferLength == 0) {
+            return;
+        }
+        byte[] next;
+        synchronized (lock) {
+            while (failure == null && inFlight >= maxBuffers) {
+                await();
+            }
+            checkFailure();
+            queue.addLast(new Chunk(buffer, bufferLength));
+            inFlight++;
+            if (draining == false) {
+                draining = true;
+                executor.execute(drainer);
+            }
+            next = free.poll();
+        }
+        buffer = next == null ? new byte[bufferSize] : next;
+        bufferLength = 0;
+    }
+
+    private void awaitDrained() throws IOException {
+        synchronized (lock) {
+            while (inFlight > 0) {
+                await();
+            }
+            checkFailure();
+        }
+    }
+
+    private void await() throws IOException {
+        assert Thread.holdsLock(lock);
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("interrupted while flushing buffers").initCause(e);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        assert Thread.holdsLock(lock);
+        if (failure != null) {
+            throw new IOException("Failed to write buffers on the background thread", failure);
+        }
+    }
+
+    void drain() {
+        while (true) {
+            Chunk chunk;
+            boolean skip;
+            synchronized (lock) {
+                chunk = queue.poll();
+                if (chunk == null) {
+                    draining = false;
+                    lock.notifyAll();
+                    return;
+                }
+                skip = failure != null || released;
+            }
+            Throwable error = null;
+            try {
+                if (skip == false) {
+                    out.write(chunk.bytes, 0, chunk.length);
+                }
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                synchronized (lock) {
+                    if (error != null && failure == null) {
+                        failure = error;
+                    }
+                    inFlight--;
+                    if (released == false) {
+                        free.addLast(chunk.bytes);
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void awaitStopped() {
+        assert Thread.holdsLock(lock);
+        boolean interrupted = false;
+        while (draining) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        submit();
+        awaitDrained();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit();
+            awaitDrained();
+        } finally {
+            buffer = null;
+            synchronized (lock) {
+                // the background thread skips the remaining chunks, and must not touch the stream after this
+                released = true;
+                free.clear();
+                awaitStopped();
+            }
+            out.close();
+        }
+    }
+
+    private static final class Chunk {
+
+        final byte[] bytes;
+
+        final int length;
+
+        Chunk(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+}
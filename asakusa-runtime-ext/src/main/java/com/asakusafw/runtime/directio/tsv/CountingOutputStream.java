@@ -0,0 +1,168 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.asakusafw.runtime.directio.Counter;
+import com.asakusafw.runtime.io.compress.AdaptiveCompressionOutputStream;
+
+/**
+ * An {@link OutputStream} which counts the written bytes.
+ * This can also count the uncompressed bytes through {@link #countUncompressed(OutputStream, OutputStream)},
+ * and track the codec chosen while writing through
+ * {@link #trackCompression(OutputStream, AdaptiveCompressionOutputStream)}.
+ * <p>
+ * Each count is updated by a single writer thread, and can be read from the other threads.
+ * If an {@link AsyncFlushOutputStream} writes into this stream, the byte count is updated on its background thread,
+ * and reflects only the bytes which have already been drained.
+ * So the count sampled on the writer thread never exceeds the bytes written so far
+ * (e.g. the offsets in {@link TsvSparseIndex} may point before their records, as with the other buffers).
+ * </p>
+ * @since 0.6.0
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    private final Counter counter;
+
+    // written on the background thread if asynchronous flushing is enabled
+    private volatile long count;
+
+    private volatile long uncompressedCount = -1L;
+
+    private AdaptiveCompressionOutputStream adaptive;
+
+    /**
+     * Creates a new instance.
+     * @param out the target output
+     * @param counter the counter for written bytes (nullable)
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public CountingOutputStream(OutputStream out, Counter counter) {
+        super(out);
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null"); //$NON-NLS-1$
+        }
+        this.counter = counter;
+    }
+
+    /**
+     * Decorates the stream which writes into the raw output, to count the bytes before compression.
+     * If the raw output is not a {@link CountingOutputStream}, this returns the decorated stream as is.
+     * @param raw the raw output
+     * @param decorated the stream which writes into the raw output (e.g. a compression stream)
+     * @return the stream which counts the uncompressed bytes
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static OutputStream countUncompressed(OutputStream raw, OutputStream decorated) {
+        if (raw == null) {
+            throw new IllegalArgumentException("raw must not be null"); //$NON-NLS-1$
+        }
+        if (decorated == null) {
+            throw new IllegalArgumentException("decorated must not be null"); //$NON-NLS-1$
+        }
+        if ((raw instanceof CountingOutputStream) == false) {
+            return decorated;
+        }
+        final CountingOutputStream owner = (CountingOutputStream) raw;
+        owner.uncompressedCount = 0L;
+        return new FilterOutputStream(decorated) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                owner.uncompressedCount++;
+            }
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                owner.uncompressedCount += len;
+            }
+        };
+    }
+
+    /**
+     * Tracks the codec which the stream chooses while writing into the raw output.
+     * If the raw output is not a {@link CountingOutputStream}, this does nothing.
+     * @param raw the raw output
+     * @param stream the stream which writes into the raw output
+     * @return the stream
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @see #getCodecName(String)
+     */
+    public static OutputStream trackCompression(OutputStream raw, AdaptiveCompressionOutputStream stream) {
+        if (raw == null) {
+            throw new IllegalArgumentException("raw must not be null"); //$NON-NLS-1$
+        }
+        if (stream == null) {
+            throw new IllegalArgumentException("stream must not be null"); //$NON-NLS-1$
+        }
+        if (raw instanceof CountingOutputStream) {
+            ((CountingOutputStream) raw).adaptive = stream;
+        }
+        return stream;
+    }
+
+    /**
+     * Returns the codec name of the written data.
+     * @param declaredCodecName the declared codec name, or {@code null} if the data is not compressed
+     * @return the codec name which was chosen while writing the data, or the declared one if it is not tracked
+     * @see #trackCompression(OutputStream, AdaptiveCompressionOutputStream)
+     */
+    public String getCodecName(String declaredCodecName) {
+        if (adaptive == null) {
+            return declaredCodecName;
+        }
+        return adaptive.getCodecName();
+    }
+
+    /**
+     * Returns the number of bytes written into the underlying output.
+     * @return the number of bytes
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes.
+     * @return the number of bytes, or {@code -1} if they are not counted
+     * @see #countUncompressed(OutputStream, OutputStream)
+     */
+    public long getUncompressedCount() {
+        return uncompressedCount;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        written(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        written(len);
+    }
+
+    private void written(int size) {
+        count += size;
+        if (counter != null) {
+            counter.add(size);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.text.MessageFormat;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.asakusafw.runtime.directio.util.DelimiterRangeInputStream;
+
+/**
+ * An {@link InputStream} which reads a local file through memory-mapped regions.
+ * The file is mapped window by window, so that fragments larger than {@code 2GB} are also available,
+ * and each window is unmapped as soon as the stream advances to the next one.
+ * <p>
+ * {@link Utf8TsvParser} parses the mapped windows directly through {@link #nextWindow(int)}
+ * instead of copying them into its own buffer.
+ * The consumed bytes are skipped on the original stream, so that its byte counters also observe them.
+ * </p>
+ * @since 0.6.0
+ */
+public class MappedFileInputStream extends InputStream {
+
+    static final Log LOG = LogFactory.getLog(MappedFileInputStream.class);
+
+    /**
+     * The system property key whether memory-mapped reading is enabled or not ({@code true} by default).
+     */
+    public static final String KEY_ENABLED = "com.asakusafw.directio.tsv.mmap";
+
+    static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private static final String SCHEME_FILE = "file:";
+
+    private static final int NO_DELIMITER = -1;
+
+    private static volatile boolean unmapSupported = true;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final InputStream origin;
+
+    private final long limit;
+
+    private final long windowSize;
+
+    private final int delimiter;
+
+    private final long fragmentEnd;
+
+    private long rangeEnd;
+
+    private long searchedUntil;
+
+    private MappedByteBuffer window;
+
+    private long windowStart;
+
+    private long position;
+
+    private long reported;
+
+    /**
+     * Creates a new instance.
+     * @param file the target local file
+     * @param offset the starting offset in bytes
+     * @param origin the original stream which will be skipped and closed with this stream (nullable)
+     * @throws IOException if failed to open the file
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public MappedFileInputStream(File file, long offset, InputStream origin) throws IOException {
+        this(file, offset, origin, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedFileInputStream(File file, long offset, InputStream origin, long windowSize) throws IOException {
+        this(file, offset, -1L, NO_DELIMITER, false, origin, windowSize);
+    }
+
+    /**
+     * Creates a new instance which reads only the records in the fragment.
+     * The records are separated by the delimiter, and each of them belongs to the fragment
+     * where it starts. That is, this skips the leading partial record if {@code skipFirst} is set,
+     * and reads the last record in the fragment through its delimiter even if it exceeds the fragment.
+     * @param file the target local file
+     * @param offset the starting offset of the fragment in bytes
+     * @param fragmentSize the fragment size in bytes, or {@code < 0} if it reaches the end of file
+     * @param delimiter the record delimiter
+     * @param skipFirst {@code true} to skip the leading partial record, otherwise {@code false}
+     * @param origin the original stream which will be skipped and closed with this stream (nullable)
+     * @throws IOException if failed to open the file
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public MappedFileInputStream(
+            File file,
+            long offset,
+            long fragmentSize,
+            char delimiter,
+            boolean skipFirst,
+            InputStream origin) throws IOException {
+        this(file, offset, fragmentSize, delimiter, skipFirst, origin, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedFileInputStream(
+            File file,
+            long offset,
+            long fragmentSize,
+            int delimiter,
+            boolean skipFirst,
+            InputStream origin,
+            long windowSize) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file must not be null"); //$NON-NLS-1$
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative"); //$NON-NLS-1$
+        }
+        this.file = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+        this.channel = this.file.getChannel();
+        this.origin = origin;
+        this.limit = channel.size();
+        this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+        this.position = Math.min(offset, limit);
+        this.reported = position;
+        this.windowStart = position;
+        this.delimiter = delimiter;
+        if (delimiter == NO_DELIMITER || fragmentSize < 0 || offset + fragmentSize < offset) {
+            this.fragmentEnd = limit;
+        } else {
+            this.fragmentEnd = Math.min(offset + fragmentSize, limit);
+        }
+        this.rangeEnd = delimiter == NO_DELIMITER || fragmentEnd >= limit ? limit : -1L;
+        this.searchedUntil = fragmentEnd;
+        if (skipFirst && delimiter != NO_DELIMITER) {
+            skipFirst();
+        }
+    }
+
+    /**
+     * Returns a stream which reads the target file from the offset.
+     * If the file is on the local file system, this returns a memory-mapped stream,
+     * and it will close the original stream when it is closed.
+     * Otherwise, this just returns the original stream.
+     * @param path the target path
+     * @param stream the original stream which is positioned at the offset
+     * @param offset the starting offset in bytes
+     * @return the stream for the target file
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static InputStream wrap(String path, InputStream stream, long offset) {
+        if (path == null) {
+            throw new IllegalArgumentException("path must not be null"); //$NON-NLS-1$
+        }
+        if (stream == null) {
+            throw new IllegalArgumentException("stream must not be null"); //$NON-NLS-1$
+        }
+        File file = findLocalFile(path);
+        if (file == null) {
+            return stream;
+        }
+        try {
+            return new MappedFileInputStream(file, offset, stream);
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to map local file, use the original stream instead: {0}",
+                    path), e);
+            return stream;
+        }
+    }
+
+    /**
+     * Returns a stream which reads the records in the fragment of the target file.
+     * If the file is on the local file system, this returns a memory-mapped stream,
+     * and it will close the original stream when it is closed.
+     * Otherwise, this returns a {@link DelimiterRangeInputStream} over the original stream.
+     * @param path the target path
+     * @param stream the original stream which is positioned at the offset
+     * @param offset the starting offset of the fragment in bytes
+     * @param fragmentSize the fragment size in bytes, or {@code < 0} if it reaches the end of file
+     * @param delimiter the record delimiter
+     * @param skipFirst {@code true} to skip the leading partial record, otherwise {@code false}
+     * @return the stream for the fragment
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static InputStream wrap(
+            String path,
+            InputStream stream,
+            long offset,
+            long fragmentSize,
+            char delimiter,
+            boolean skipFirst) {
+        if (path == null) {
+            throw new IllegalArgumentException("path must not be null"); //$NON-NLS-1$
+        }
+        if (stream == null) {
+            throw new IllegalArgumentException("stream must not be null"); //$NON-NLS-1$
+        }
+        File file = findLocalFile(path);
+        if (file != null) {
+            try {
+                return new MappedFileInputStream(file, offset, fragmentSize, delimiter, skipFirst, stream);
+            } catch (IOException e) {
+                LOG.warn(MessageFormat.format(
+                        "Failed to map local file, use the original stream instead: {0}",
+                        path), e);
+            }
+        }
+        return new DelimiterRangeInputStream(stream, delimiter, fragmentSize, skipFirst);
+    }
+
+    private static File findLocalFile(String path) {
+        if (isEnabled() == false) {
+            return null;
+        }
+        return toLocalFile(path);
+    }
+
+    private static boolean isEnabled() {
+        String value = System.getProperty(KEY_ENABLED);
+        if (value == null) {
+            return true;
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    static File toLocalFile(String path) {
+        if (path.startsWith(SCHEME_FILE) == false) {
+            return null;
+        }
+        String rest = path.substring(SCHEME_FILE.length());
+        if (rest.startsWith("//")) { //$NON-NLS-1$
+            rest = rest.substring(2);
+            if (rest.startsWith("/") == false) { //$NON-NLS-1$
+                // has authority
+                return null;
+            }
+        }
+        File file = new File(rest);
+        if (file.isFile() == false) {
+            return null;
+        }
+        return file;
+    }
+
+    private void skipFirst() throws IOException {
+        while (true) {
+            int c = read();
+            if (c < 0 || c == delimiter) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Maps the next window without copying its contents, and advances this stream to the end of the window.
+     * The window starts {@code carry} bytes before the current position, so that the caller can keep
+     * the unprocessed rest of the previous window, which will be unmapped by this invocation.
+     * @param carry the number of bytes before the current position to be included
+     * @return the mapped window, or {@code null} if there are no more bytes
+     * @throws IOException if failed to map the file
+     */
+    ByteBuffer nextWindow(int carry) throws IOException {
+        if (position >= getReadableEnd()) {
+            return null;
+        }
+        long start = position - carry;
+        long size = Math.min(Math.max(windowSize, carry * 2L), Integer.MAX_VALUE);
+        map(start, Math.min(size, limit - start));
+        position = windowStart + window.limit();
+        window.position(0);
+        return window;
+    }
+
+    private long getReadableEnd() {
+        return rangeEnd >= 0 ? rangeEnd : limit;
+    }
+
+    private boolean prepare() throws IOException {
+        if (position >= getReadableEnd()) {
+            return false;
+        }
+        if (window == null || position < windowStart || position >= windowStart + window.capacity()) {
+            map(position, Math.min(windowSize, limit - position));
+            if (position >= getReadableEnd()) {
+                return false;
+            }
+        }
+        window.position((int) (position - windowStart));
+        return true;
+    }
+
+    private void map(long start, long size) throws IOException {
+        feedOrigin();
+        MappedByteBuffer previous = window;
+        window = null;
+        if (previous != null) {
+            unmap(previous);
+        }
+        window = channel.map(MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        long windowEnd = start + size;
+        if (rangeEnd < 0 && searchedUntil < windowEnd) {
+            // finds the delimiter of the last record in the fragment
+            for (long i = Math.max(searchedUntil, start); i < windowEnd; i++) {
+                if (window.get((int) (i - start)) == delimiter) {
+                    rangeEnd = i + 1;
+                    break;
+                }
+            }
+            searchedUntil = windowEnd;
+        }
+        if (rangeEnd >= 0 && rangeEnd < windowEnd) {
+            window.limit((int) (Math.max(rangeEnd, start) - start));
+        }
+    }
+
+    private void feedOrigin() throws IOException {
+        if (origin == null) {
+            return;
+        }
+        while (reported < position) {
+            long skipped = origin.skip(position - reported);
+            if (skipped <= 0) {
+                reported = position;
+                break;
+            }
+            reported += skipped;
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (unmapSupported == false) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner"); //$NON-NLS-1$
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean"); //$NON-NLS-1$
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // leaves the buffer to the garbage collector
+            unmapSupported = false;
+            LOG.debug("Failed to unmap memory-mapped regions explicitly", e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (prepare() == false) {
+            return -1;
+        }
+        position++;
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (prepare() == false) {
+            return -1;
+        }
+        int count = Math.min(len, window.remaining());
+        window.get(b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long rest = n;
+        while (rest > 0 && prepare()) {
+            long count = Math.min(rest, window.remaining());
+            position += count;
+            rest -= count;
+        }
+        return n - rest;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+            return 0;
+        }
+        return (int) (windowStart + window.limit() - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        MappedByteBuffer last = window;
+        window = null;
+        try {
+            feedOrigin();
+            if (last != null) {
+                unmap(last);
+            }
+            file.close();
+        } finally {
+            if (origin != null) {
+                origin.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Counts {@code null} values in non-nullable TSV fields.
+ * If the system property {@link #KEY_STRICT} is {@code true}, each violation raises an exception.
+ * Otherwise, violations are only reported as a warning on {@link #report()}.
+ * @since 0.6.0
+ */
+public class NullViolationCounter {
+
+    static final Log LOG = LogFactory.getLog(NullViolationCounter.class);
+
+    /**
+     * The system property key whether the strict mode is enabled or not ({@code false} by default).
+     */
+    public static final String KEY_STRICT = "com.asakusafw.directio.tsv.strict";
+
+    private final String path;
+
+    private final boolean strict;
+
+    private long count;
+
+    private String firstField;
+
+    /**
+     * Creates a new instance.
+     * The strict mode is decided from the system property {@link #KEY_STRICT}.
+     * @param path the target path (for diagnostics)
+     */
+    public NullViolationCounter(String path) {
+        this(path, Boolean.getBoolean(KEY_STRICT));
+    }
+
+    /**
+     * Creates a new instance.
+     * @param path the target path (for diagnostics)
+     * @param strict {@code true} to raise an exception on violations
+     */
+    public NullViolationCounter(String path, boolean strict) {
+        this.path = path;
+        this.strict = strict;
+    }
+
+    /**
+     * Notifies that a {@code null} value appears in the non-nullable field.
+     * @param fieldName the field name
+     * @throws IOException if this is in the strict mode
+     */
+    public void violation(String fieldName) throws IOException {
+        count++;
+        if (firstField == null) {
+            firstField = fieldName;
+        }
+        if (strict) {
+            throw new IOException(MessageFormat.format(
+                    "Non-nullable field \"{1}\" has null value ({0})",
+                    path,
+                    fieldName));
+        }
+    }
+
+    /**
+     * Returns the number of violations.
+     * @return the number of violations
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Reports the violations as a warning log, only if some violations were occurred.
+     */
+    public void report() {
+        if (count > 0) {
+            LOG.warn(MessageFormat.format(
+                    "Non-nullable fields had {1} null values (first field: \"{2}\", {0}). "
+                    + "Set the system property \"{3}=true\" to reject such values.",
+                    path,
+                    count,
+                    firstField,
+                    KEY_STRICT));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.asakusafw.runtime.io.ModelOutput;
+
+/**
+ * A {@link ModelOutput} which routes records into outputs for each partition.
+ * This keeps a bounded number of open outputs, and closes the least recently used one if it is exceeded.
+ * If records for a closed partition appear again, this opens a new output of the partition
+ * with the next generation number, so that the records are not lost.
+ * @param <T> the type of target data model
+ * @see TsvPartitions
+ * @since 0.6.0
+ */
+public abstract class PartitionedModelOutput<T> implements ModelOutput<T> {
+
+    static final Log LOG = LogFactory.getLog(PartitionedModelOutput.class);
+
+    private final int maxOpenPartitions;
+
+    private final LinkedHashMap<String, ModelOutput<T>> opened;
+
+    private final Map<String, Integer> generations = new HashMap<String, Integer>();
+
+    private String lastPartition;
+
+    private ModelOutput<T> lastOutput;
+
+    private boolean closed;
+
+    /**
+     * Creates a new instance.
+     * @param maxOpenPartitions the maximum number of open outputs
+     * @throws IllegalArgumentException if {@code maxOpenPartitions} is not positive
+     */
+    protected PartitionedModelOutput(int maxOpenPartitions) {
+        if (maxOpenPartitions <= 0) {
+            throw new IllegalArgumentException("maxOpenPartitions must be positive"); //$NON-NLS-1$
+        }
+        this.maxOpenPartitions = maxOpenPartitions;
+        this.opened = new LinkedHashMap<String, ModelOutput<T>>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the partition of the model object.
+     * @param model the model object
+     * @return the partition path
+     * @throws IOException if failed to compute the partition
+     */
+    protected abstract String getPartition(T model) throws IOException;
+
+    /**
+     * Opens a new output for the partition.
+     * @param partition the partition path
+     * @param generation the number of outputs which were opened for the partition before
+     * @return the opened output
+     * @throws IOException if failed to open the output
+     */
+    protected abstract ModelOutput<T> openPartition(String partition, int generation) throws IOException;
+
+    @Override
+    public void write(T model) throws IOException {
+        if (closed) {
+            throw new IOException("output is already closed");
+        }
+        String partition = getPartition(model);
+        if (partition.equals(lastPartition) == false) {
+            lastOutput = prepare(partition);
+            lastPartition = partition;
+        }
+        lastOutput.write(model);
+    }
+
+    private ModelOutput<T> prepare(String partition) throws IOException {
+        ModelOutput<T> output = opened.get(partition);
+        if (output != null) {
+            return output;
+        }
+        if (opened.size() >= maxOpenPartitions) {
+            Iterator<Map.Entry<String, ModelOutput<T>>> eldest = opened.entrySet().iterator();
+            Map.Entry<String, ModelOutput<T>> entry = eldest.next();
+            eldest.remove();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Closing the least recently used partition: " + entry.getKey());
+            }
+            entry.getValue().close();
+        }
+        Integer generation = generations.get(partition);
+        int next = generation == null ? 0 : generation + 1;
+        output = openPartition(partition, next);
+        generations.put(partition, next);
+        opened.put(partition, output);
+        return output;
+    }
+
+    /**
+     * Returns the number of distinct partitions which have been written.
+     * @return the number of partitions
+     */
+    public int getPartitionCount() {
+        return generations.size();
+    }
+
+    /**
+     * Returns the number of outputs which have been opened.
+     * @return the number of opened outputs
+     */
+    public int getOpenCount() {
+        int total = 0;
+        for (Integer generation : generations.values()) {
+            total += generation + 1;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        lastPartition = null;
+        lastOutput = null;
+        List<ModelOutput<T>> outputs = new ArrayList<ModelOutput<T>>(opened.values());
+        opened.clear();
+        IOException first = null;
+        for (ModelOutput<T> output : outputs) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                if (first == null) {
+                    first = e;
+                } else {
+                    LOG.warn("Failed to close a partition", e);
+                }
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.directio.Counter;
+import com.asakusafw.runtime.directio.FragmentableDataFormat;
+import com.asakusafw.runtime.directio.hadoop.HadoopFileFormat;
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * A {@link HadoopFileFormat} which writes records into numbered part files
+ * using a {@link BinaryStreamFormat}.
+ * This can also write a {@link TsvManifest} and {@link TsvBloomFilter}s beside each part file,
+ * and route records into value-partitioned directories (see {@link TsvPartitions}).
+ * If subclasses provide {@link #getSortKey(Object) sort keys}, this rejects unsorted records
+ * and can write a {@link TsvSparseIndex} beside each part file
+ * for {@link #createRangeInput(Class, FileSystem, Path, ValueOption, ValueOption, Counter) range reads}.
+ * @param <T> the type of target data model
+ * @see RollingModelOutput
+ * @since 0.6.0
+ */
+public abstract class RollingFileFormat<T> extends HadoopFileFormat<T> implements FragmentableDataFormat<T> {
+
+    private final BinaryStreamFormat<T> format;
+
+    private final long maxFileSize;
+
+    private final long maxRecords;
+
+    private final boolean manifest;
+
+    private final String codecName;
+
+    private final String[] bloomFilterFields;
+
+    private final String[] partitionFields;
+
+    private final int maxOpenPartitions;
+
+    /**
+     * Creates a new instance.
+     * @param format the format of each file
+     * @param maxFileSize the maximum file size in bytes, or {@code <= 0} if it is not limited
+     * @param maxRecords the maximum number of records in each file, or {@code <= 0} if it is not limited
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    protected RollingFileFormat(BinaryStreamFormat<T> format, long maxFileSize, long maxRecords) {
+        this(format, maxFileSize, maxRecords, false, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param format the format of each file
+     * @param maxFileSize the maximum file size in bytes, or {@code <= 0} if it is not limited
+     * @param maxRecords the maximum number of records in each file, or {@code <= 0} if it is not limited
+     * @param manifest whether a {@link TsvManifest} is written for each part file or not
+     * @param codecName the codec name in the manifests, or {@code null} if the files are not compressed;
+     *     the codec chosen while writing each file is used instead if it is tracked by the output stream
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    protected RollingFileFormat(
+            BinaryStreamFormat<T> format,
+            long maxFileSize,
+            long maxRecords,
+            boolean manifest,
+            String codecName) {
+        this(format, maxFileSize, maxRecords, manifest, codecName, new String[0]);
+    }
+
+    /**
+     * Creates a new instance.
+     * Subclasses must override {@link #addBloomFilterKeys(Object, TsvBloomFilter[])}
+     * if {@code bloomFilterFields} is not empty.
+     * @param format the format of each file
+     * @param maxFileSize the maximum file size in bytes, or {@code <= 0} if it is not limited
+     * @param maxRecords the maximum number of records in each file, or {@code <= 0} if it is not limited
+     * @param manifest whether a {@link TsvManifest} is written for each part file or not
+     * @param codecName the codec name in the manifests, or {@code null} if the files are not compressed;
+     *     the codec chosen while writing each file is used instead if it is tracked by the output stream
+     * @param bloomFilterFields the field names whose {@link TsvBloomFilter} is written for each part file
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    protected RollingFileFormat(
+            BinaryStreamFormat<T> format,
+            long maxFileSize,
+            long maxRecords,
+            boolean manifest,
+            String codecName,
+            String... bloomFilterFields) {
+        this(format, maxFileSize, maxRecords, manifest, codecName, bloomFilterFields, new String[0], 0);
+    }
+
+    /**
+     * Creates a new instance.
+     * Subclasses must override {@link #addBloomFilterKeys(Object, TsvBloomFilter[])}
+     * if {@code bloomFilterFields} is not empty,
+     * and {@link #fillPartitionKeys(Object, ValueOption[])} if {@code partitionFields} is not empty.
+     * @param format the format of each file
+     * @param maxFileSize the maximum file size in bytes, or {@code <= 0} if it is not limited
+     * @param maxRecords the maximum number of records in each file, or {@code <= 0} if it is not limited
+     * @param manifest whether a {@link TsvManifest} is written for each part file or not
+     * @param codecName the codec name in the manifests, or {@code null} if the files are not compressed;
+     *     the codec chosen while writing each file is used instead if it is tracked by the output stream
+     * @param bloomFilterFields the field names whose {@link TsvBloomFilter} is written for each part file
+     * @param partitionFields the field names which partition the output directories, or an empty array
+     * @param maxOpenPartitions the maximum number of partitions which are written at the same time
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    protected RollingFileFormat(
+            BinaryStreamFormat<T> format,
+            long maxFileSize,
+            long maxRecords,
+            boolean manifest,
+            String codecName,
+            String[] bloomFilterFields,
+            String[] partitionFields,
+            int maxOpenPartitions) {
+        if (format == null) {
+            throw new IllegalArgumentException("format must not be null"); //$NON-NLS-1$
+        }
+        this.format = format;
+        this.maxFileSize = maxFileSize;
+        this.maxRecords = maxRecords;
+        this.manifest = manifest;
+        this.codecName = codecName;
+        if (bloomFilterFields == null) {
+            throw new IllegalArgumentException("bloomFilterFields must not be null"); //$NON-NLS-1$
+        }
+        this.bloomFilterFields = bloomFilterFields.clone();
+        if (partitionFields == null) {
+            throw new IllegalArgumentException("partitionFields must not be null"); //$NON-NLS-1$
+        }
+        if (partitionFields.length > 0 && maxOpenPartitions <= 0) {
+            throw new IllegalArgumentException("maxOpenPartitions must be positive"); //$NON-NLS-1$
+        }
+        this.partitionFields = partitionFields.clone();
+        this.maxOpenPartitions = maxOpenPartitions;
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        super.setConf(conf);
+        // passes the task configuration to the stream format (it is null while the super class is initialized)
+        if (format instanceof Configurable) {
+            ((Configurable) format).setConf(conf);
+        }
+    }
+
+    /**
+     * Adds the Bloom filter keys of the model object.
+     * The filters are ordered as the {@code bloomFilterFields} in the constructor.
+     * This does nothing by default.
+     * @param model the written model object
+     * @param filters the Bloom filters of the current part file
+     */
+    protected void addBloomFilterKeys(T model, TsvBloomFilter[] filters) {
+        return;
+    }
+
+    /**
+     * Returns the sort key of the model object.
+     * If this returns non-{@code null} values, records in each file must be sorted by the keys.
+     * This returns {@code null} by default.
+     * @param model the model object
+     * @return the sort key, or {@code null} if the records are not sorted
+     */
+    protected ValueOption<?> getSortKey(T model) {
+        return null;
+    }
+
+    /**
+     * Returns the number of records between {@link TsvSparseIndex} entries.
+     * This returns {@code 0} by default.
+     * @return the number of records, or {@code <= 0} if index files are not written
+     */
+    protected int getIndexInterval() {
+        return 0;
+    }
+
+    /**
+     * Sets the partition keys of the model object into the array.
+     * The keys are ordered as the {@code partitionFields} in the constructor.
+     * This does nothing by default.
+     * @param model the written model object
+     * @param keys the destination array
+     */
+    protected void fillPartitionKeys(T model, ValueOption<?>[] keys) {
+        return;
+    }
+
+    @Override
+    public Class<T> getSupportedType() {
+        return format.getSupportedType();
+    }
+
+    @Override
+    public long getPreferredFragmentSize() throws IOException, InterruptedException {
+        return format.getPreferredFragmentSize();
+    }
+
+    @Override
+    public long getMinimumFragmentSize() throws IOException, InterruptedException {
+        return format.getMinimumFragmentSize();
+    }
+
+    @Override
+    public ModelInput<T> createInput(
+            Class<? extends T> dataType,
+            FileSystem fileSystem,
+            Path path,
+            long offset,
+            long fragmentSize,
+            Counter counter) throws IOException, InterruptedException {
+        FSDataInputStream stream = fileSystem.open(path);
+        boolean succeed = false;
+        try {
+            if (offset != 0) {
+                stream.seek(offset);
+            }
+            ModelInput<T> result = format.createInput(
+                    dataType,
+                    path.toString(),
+                    counter == null ? stream : new CountingInputStream(stream, counter),
+                    offset,
+                    fragmentSize);
+            succeed = true;
+            return result;
+        } finally {
+            if (succeed == false) {
+                stream.close();
+            }
+        }
+    }
+
+    @Override
+    public ModelOutput<T> createOutput(
+            final Class<? extends T> dataType,
+            final FileSystem fileSystem,
+            final Path path,
+            final Counter counter) throws IOException, InterruptedException {
+        if (partitionFields.length == 0) {
+            return createRollingOutput(dataType, fileSystem, path, counter);
+        }
+        return new PartitionedModelOutput<T>(maxOpenPartitions) {
+            private final ValueOption<?>[] keys = new ValueOption<?>[partitionFields.length];
+            @Override
+            protected String getPartition(T model) {
+                fillPartitionKeys(model, keys);
+                return TsvPartitions.toPath(partitionFields, keys);
+            }
+            @Override
+            protected ModelOutput<T> openPartition(String partition, int generation) throws IOException {
+                Path file = new Path(
+                        new Path(path.getParent(), partition),
+                        RollingModelOutput.getPartPath(path.getName(), generation));
+                return createRollingOutput(dataType, fileSystem, file, counter);
+            }
+        };
+    }
+
+    ModelOutput<T> createRollingOutput(
+            final Class<? extends T> dataType,
+            final FileSystem fileSystem,
+            final Path path,
+            Counter counter) {
+        return new RollingModelOutput<T>(maxFileSize, maxRecords, counter) {
+            private TsvBloomFilter[] filters;
+            private TsvSparseIndex sparseIndex;
+            @Override
+            protected void prepareRecord(T model, int partIndex, CountingOutputStream stream) throws IOException {
+                ValueOption<?> key = getSortKey(model);
+                if (key != null) {
+                    sparseIndex.add(key, stream.getCount());
+                }
+            }
+            @Override
+            public void write(T model) throws IOException {
+                super.write(model);
+                if (filters.length > 0) {
+                    addBloomFilterKeys(model, filters);
+                }
+            }
+            @Override
+            protected OutputStream openStream(int index) throws IOException {
+                sparseIndex = new TsvSparseIndex(getIndexInterval());
+                filters = new TsvBloomFilter[bloomFilterFields.length];
+                for (int i = 0; i < filters.length; i++) {
+                    filters[i] = new TsvBloomFilter();
+                }
+                return fileSystem.create(RollingFileFormat.getPartPath(path, index), true);
+            }
+            @Override
+            protected ModelOutput<T> createOutput(int index, OutputStream stream) throws IOException {
+                try {
+                    return format.createOutput(
+                            dataType, RollingFileFormat.getPartPath(path, index).toString(), stream);
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException(
+                            "interrupted while opening a part file").initCause(e);
+                }
+            }
+            @Override
+            protected void partClosed(int index, long records, CountingOutputStream stream) throws IOException {
+                if (manifest) {
+                    TsvManifest result = new TsvManifest(
+                            records,
+                            stream.getCount(),
+                            stream.getUncompressedCount(),
+                            stream.getCodecName(codecName));
+                    result.save(fileSystem, RollingFileFormat.getPartPath(path, index));
+                }
+                for (int i = 0; i < filters.length; i++) {
+                    filters[i].save(fileSystem, RollingFileFormat.getPartPath(path, index), bloomFilterFields[i]);
+                }
+                if (sparseIndex.getInterval() > 0) {
+                    sparseIndex.save(fileSystem, RollingFileFormat.getPartPath(path, index));
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a {@link ModelInput} which reads the records in the key range from a sorted file.
+     * If the file has a {@link TsvSparseIndex}, this starts reading from the offset in the index,
+     * otherwise this reads the file from its head.
+     * @param dataType the target data type
+     * @param fileSystem the file system
+     * @param path the target file
+     * @param lowerBound the lower bound of the sort keys (inclusive), or {@code null} if it is not bounded
+     * @param upperBound the upper bound of the sort keys (inclusive), or {@code null} if it is not bounded
+     * @param counter the counter for read bytes (nullable)
+     * @return the created input
+     * @throws IOException if failed to open the file
+     * @throws InterruptedException if interrupted while opening the file
+     * @throws IllegalArgumentException if this format does not provide {@link #getSortKey(Object) sort keys}
+     */
+    public ModelInput<T> createRangeInput(
+            Class<? extends T> dataType,
+            FileSystem fileSystem,
+            Path path,
+            ValueOption<?> lowerBound,
+            ValueOption<?> upperBound,
+            Counter counter) throws IOException, InterruptedException {
+        TsvSparseIndex index = TsvSparseIndex.load(fileSystem, path);
+        long offset = index == null ? 0L : index.findOffset(lowerBound);
+        long length = fileSystem.getFileStatus(path).getLen();
+        final ModelInput<T> input = createInput(dataType, fileSystem, path, offset, length - offset, counter);
+        final boolean hasLower = lowerBound != null;
+        final boolean hasUpper = upperBound != null;
+        final Object lower = hasLower ? TsvSparseIndex.toKey(lowerBound) : null;
+        final Object upper = hasUpper ? TsvSparseIndex.toKey(upperBound) : null;
+        return new ModelInput<T>() {
+            private boolean finished;
+            @Override
+            public boolean readTo(T model) throws IOException {
+                while (finished == false && input.readTo(model)) {
+                    ValueOption<?> key = getSortKey(model);
+                    if (key == null) {
+                        throw new IllegalArgumentException("format does not provide sort keys"); //$NON-NLS-1$
+                    }
+                    Object current = TsvSparseIndex.toKey(key);
+                    if (hasLower && TsvSparseIndex.compare(current, lower) < 0) {
+                        continue;
+                    }
+                    if (hasUpper && TsvSparseIndex.compare(current, upper) > 0) {
+                        break;
+                    }
+                    return true;
+                }
+                finished = true;
+                return false;
+            }
+            @Override
+            public void close() throws IOException {
+                input.close();
+            }
+        };
+    }
+
+    static Path getPartPath(Path path, int index) {
+        if (index == 0) {
+            return path;
+        }
+        return new Path(path.getParent(), RollingModelOutput.getPartPath(path.getName(), index));
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final Counter counter;
+
+        CountingInputStream(InputStream in, Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = in.read();
+            if (c >= 0) {
+                counter.add(1);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                counter.add(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            if (skipped > 0) {
+                counter.add(skipped);
+            }
+            return skipped;
+        }
+    }
+}
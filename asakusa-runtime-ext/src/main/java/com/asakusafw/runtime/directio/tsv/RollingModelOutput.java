@@ -0,0 +1,210 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.asakusafw.runtime.directio.Counter;
+import com.asakusafw.runtime.io.ModelOutput;
+
+/**
+ * A {@link ModelOutput} which splits records into numbered part files.
+ * This rolls to the next part file at record boundaries,
+ * after the current part reaches the maximum number of records or the maximum file size.
+ * If the part output counts its bytes before compression
+ * (see {@link CountingOutputStream#countUncompressed(OutputStream, OutputStream)}),
+ * the file size is measured on the uncompressed bytes, and otherwise on the raw output bytes.
+ * Because the size is checked before each record, a part can exceed the limit by a record
+ * and the data which is still buffered above the counting stream (e.g. in the TSV emitter).
+ * @param <T> the type of target data model
+ * @since 0.6.0
+ */
+public abstract class RollingModelOutput<T> implements ModelOutput<T> {
+
+    private final long maxFileSize;
+
+    private final long maxRecords;
+
+    private final Counter counter;
+
+    private ModelOutput<T> current;
+
+    private CountingOutputStream currentStream;
+
+    private long currentRecords;
+
+    private int currentIndex;
+
+    private int nextIndex;
+
+    private boolean closed;
+
+    /**
+     * Creates a new instance.
+     * @param maxFileSize the maximum file size in bytes, or {@code <= 0} if it is not limited
+     * @param maxRecords the maximum number of records in each file, or {@code <= 0} if it is not limited
+     * @param counter the counter for written bytes (nullable)
+     */
+    protected RollingModelOutput(long maxFileSize, long maxRecords, Counter counter) {
+        this.maxFileSize = maxFileSize;
+        this.maxRecords = maxRecords;
+        this.counter = counter;
+    }
+
+    /**
+     * Returns the path of the numbered part file.
+     * The first part keeps the original path, and the others have a part number before the file extension
+     * (e.g. {@code "a/b.tsv.gz"} - {@code "a/b-00001.tsv.gz"}).
+     * @param path the original path
+     * @param index the part number (0-origin)
+     * @return the path of the part file
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static String getPartPath(String path, int index) {
+        if (path == null) {
+            throw new IllegalArgumentException("path must not be null"); //$NON-NLS-1$
+        }
+        if (index == 0) {
+            return path;
+        }
+        int nameStart = path.lastIndexOf('/') + 1;
+        int extension = path.indexOf('.', nameStart + 1);
+        if (extension < 0) {
+            extension = path.length();
+        }
+        return path.substring(0, extension) + String.format("-%05d", index) + path.substring(extension); //$NON-NLS-1$
+    }
+
+    /**
+     * Opens the raw output stream for the part file.
+     * @param index the part number (0-origin)
+     * @return the opened stream
+     * @throws IOException if failed to open the file
+     */
+    protected abstract OutputStream openStream(int index) throws IOException;
+
+    /**
+     * Creates a {@link ModelOutput} for the part file.
+     * @param index the part number (0-origin)
+     * @param stream the raw output stream of the part file
+     * @return the created output
+     * @throws IOException if failed to create the output
+     */
+    protected abstract ModelOutput<T> createOutput(int index, OutputStream stream) throws IOException;
+
+    /**
+     * Invoked after each part file was closed.
+     * This does nothing by default.
+     * @param index the part number (0-origin)
+     * @param records the number of records in the part file
+     * @param stream the raw output stream of the part file, which has the written byte counts
+     * @throws IOException if failed to process the closed part file
+     */
+    protected void partClosed(int index, long records, CountingOutputStream stream) throws IOException {
+        return;
+    }
+
+    /**
+     * Invoked before each record is written into the current part file.
+     * This does nothing by default.
+     * @param model the model object to be written
+     * @param index the part number (0-origin)
+     * @param stream the raw output stream of the part file, which has the written byte counts
+     * @throws IOException if failed to process the record
+     */
+    protected void prepareRecord(T model, int index, CountingOutputStream stream) throws IOException {
+        return;
+    }
+
+    @Override
+    public void write(T model) throws IOException {
+        if (closed) {
+            throw new IOException("output is already closed");
+        }
+        if (current == null) {
+            roll();
+        } else if (isFull()) {
+            closeCurrent();
+            roll();
+        }
+        prepareRecord(model, currentIndex, currentStream);
+        current.write(model);
+        currentRecords++;
+    }
+
+    private boolean isFull() {
+        if (maxRecords > 0 && currentRecords >= maxRecords) {
+            return true;
+        }
+        if (maxFileSize > 0 && getCurrentSize() >= maxFileSize) {
+            return true;
+        }
+        return false;
+    }
+
+    private long getCurrentSize() {
+        long uncompressed = currentStream.getUncompressedCount();
+        if (uncompressed >= 0) {
+            return uncompressed;
+        }
+        return currentStream.getCount();
+    }
+
+    private void roll() throws IOException {
+        int index = nextIndex++;
+        OutputStream stream = openStream(index);
+        boolean succeed = false;
+        try {
+            currentStream = new CountingOutputStream(stream, counter);
+            current = createOutput(index, currentStream);
+            currentIndex = index;
+            currentRecords = 0;
+            succeed = true;
+        } finally {
+            if (succeed == false) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of part files which have been created.
+     * @return the number of part files
+     */
+    public int getPartCount() {
+        return nextIndex;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current == null) {
+            // creates at least one file, even if there are no records
+            roll();
+        }
+        closeCurrent();
+    }
+
+    private void closeCurrent() throws IOException {
+        current.close();
+        current = null;
+        partClosed(currentIndex, currentRecords, currentStream);
+    }
+}
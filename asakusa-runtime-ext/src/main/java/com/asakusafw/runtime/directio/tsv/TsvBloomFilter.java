@@ -0,0 +1,468 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * A Bloom filter over a column of a TSV output file, which is written beside the file.
+ * The filter file is named {@code ".<file-name>.<field-name>.bloom"},
+ * so that it is hidden from the Hadoop file listings.
+ * <p>
+ * Integral values are compared as {@code long} and floating point values as {@code double},
+ * so that a key of any integral type can be looked up in a filter over a column of another integral type.
+ * {@code null} values are never added to filters.
+ * </p>
+ * @since 0.6.0
+ */
+public class TsvBloomFilter {
+
+    /**
+     * The file name suffix of Bloom filter files.
+     */
+    public static final String SUFFIX = ".bloom"; //$NON-NLS-1$
+
+    /**
+     * The default false positive probability of the saved filters.
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    static final int DEFAULT_BITS_LOG = 23;
+
+    static final int DEFAULT_HASHES = 7;
+
+    private static final int MIN_WORDS = 1;
+
+    private static final String PREFIX = "."; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x54424c4d; // "TBLM"
+
+    private static final int VERSION = 1;
+
+    private static final Charset ENCODING = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private long[] words;
+
+    private final int hashes;
+
+    private long count;
+
+    /**
+     * Creates a new empty instance.
+     */
+    public TsvBloomFilter() {
+        this(DEFAULT_BITS_LOG, DEFAULT_HASHES);
+    }
+
+    TsvBloomFilter(int bitsLog, int hashes) {
+        this(new long[Math.max((1 << bitsLog) >>> 6, MIN_WORDS)], hashes, 0L);
+    }
+
+    private TsvBloomFilter(long[] words, int hashes, long count) {
+        this.words = words;
+        this.hashes = hashes;
+        this.count = count;
+    }
+
+    /**
+     * Returns the number of bits in this filter.
+     * @return the number of bits
+     */
+    public int getBitCount() {
+        return words.length << 6;
+    }
+
+    /**
+     * Returns the number of hash functions.
+     * @return the number of hash functions
+     */
+    public int getHashCount() {
+        return hashes;
+    }
+
+    /**
+     * Returns the number of added values, including duplicates.
+     * @return the number of added values
+     */
+    public long getAddedCount() {
+        return count;
+    }
+
+    /**
+     * Returns the estimated false positive probability of this filter.
+     * @return the estimated probability
+     */
+    public double getFalsePositiveProbability() {
+        return estimate(getBitCount(), hashes, count);
+    }
+
+    private static double estimate(long bits, int hashes, long added) {
+        return Math.pow(1.0 - Math.exp(-(double) hashes * added / bits), hashes);
+    }
+
+    /**
+     * Adds a value into this filter.
+     * @param option the value, or {@code null} to do nothing
+     * @throws IllegalArgumentException if the value type is not supported
+     */
+    public void add(ValueOption<?> option) {
+        if (option == null || option.isNull()) {
+            return;
+        }
+        put(hash(option));
+    }
+
+    /**
+     * Returns whether this filter might contain the value or not.
+     * @param option the value
+     * @return {@code true} if the value might be added, or {@code false} if it is never added
+     * @throws IllegalArgumentException if the value type is not supported
+     */
+    public boolean mightContain(ValueOption<?> option) {
+        if (option == null || option.isNull()) {
+            return false;
+        }
+        return test(hash(option));
+    }
+
+    /**
+     * Returns whether this filter might contain the string value or not.
+     * @param value the value
+     * @return {@code true} if the value might be added, or {@code false} if it is never added
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public boolean mightContain(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null"); //$NON-NLS-1$
+        }
+        byte[] bytes = value.getBytes(ENCODING);
+        return test(hash(bytes, 0, bytes.length));
+    }
+
+    /**
+     * Returns whether this filter might contain the integral value or not.
+     * @param value the value
+     * @return {@code true} if the value might be added, or {@code false} if it is never added
+     */
+    public boolean mightContain(long value) {
+        return test(hash(value));
+    }
+
+    private void put(long hash) {
+        int h1 = (int) (hash >>> 32);
+        int h2 = (int) hash;
+        int mask = getBitCount() - 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & mask;
+            words[bit >>> 6] |= 1L << bit;
+        }
+        count++;
+    }
+
+    private boolean test(long hash) {
+        int h1 = (int) (hash >>> 32);
+        int h2 = (int) hash;
+        int mask = getBitCount() - 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shrinks this filter while its false positive probability does not exceed the limit.
+     * Each step folds the upper half of the bits onto the lower half, which keeps the added values in the filter.
+     * @param probability the limit of false positive probability
+     */
+    public void compact(double probability) {
+        while (words.length > MIN_WORDS
+                && estimate((long) getBitCount() >>> 1, hashes, count) <= probability) {
+            long[] folded = new long[words.length >>> 1];
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = words[i] | words[i + folded.length];
+            }
+            words = folded;
+        }
+    }
+
+    private static long hash(ValueOption<?> option) {
+        if (option instanceof StringOption) {
+            Text text = ((StringOption) option).get();
+            return hash(text.getBytes(), 0, text.getLength());
+        } else if (option instanceof IntOption) {
+            return hash(((IntOption) option).get());
+        } else if (option instanceof LongOption) {
+            return hash(((LongOption) option).get());
+        } else if (option instanceof ShortOption) {
+            return hash(((ShortOption) option).get());
+        } else if (option instanceof ByteOption) {
+            return hash(((ByteOption) option).get());
+        } else if (option instanceof BooleanOption) {
+            return hash(((BooleanOption) option).get() ? 1L : 0L);
+        } else if (option instanceof DateOption) {
+            return hash(((DateOption) option).get().getElapsedDays());
+        } else if (option instanceof DateTimeOption) {
+            return hash(((DateTimeOption) option).get().getElapsedSeconds());
+        } else if (option instanceof DoubleOption) {
+            return hash(Double.doubleToLongBits(((DoubleOption) option).get()));
+        } else if (option instanceof FloatOption) {
+            return hash(Double.doubleToLongBits(((FloatOption) option).get()));
+        } else if (option instanceof DecimalOption) {
+            BigDecimal value = ((DecimalOption) option).get();
+            String string = value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString(); //$NON-NLS-1$
+            byte[] bytes = string.getBytes(ENCODING);
+            return hash(bytes, 0, bytes.length);
+        } else {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "unsupported value type for Bloom filters: {0}",
+                    option.getClass().getName()));
+        }
+    }
+
+    private static long hash(long value) {
+        int h1 = mix(mix(0, (int) value), (int) (value >>> 32));
+        h1 = finish(h1, 8);
+        int h2 = mix(mix(h1, (int) value), (int) (value >>> 32));
+        h2 = finish(h2, 8);
+        return ((long) h1 << 32) | (h2 & 0xffffffffL);
+    }
+
+    private static long hash(byte[] bytes, int offset, int length) {
+        int h1 = murmur3(bytes, offset, length, 0);
+        int h2 = murmur3(bytes, offset, length, h1);
+        return ((long) h1 << 32) | (h2 & 0xffffffffL);
+    }
+
+    private static int murmur3(byte[] bytes, int offset, int length, int seed) {
+        int h = seed;
+        int limit = offset + (length & ~3);
+        for (int i = offset; i < limit; i += 4) {
+            int k = (bytes[i] & 0xff)
+                    | (bytes[i + 1] & 0xff) << 8
+                    | (bytes[i + 2] & 0xff) << 16
+                    | (bytes[i + 3] & 0xff) << 24;
+            h = mix(h, k);
+        }
+        int k = 0;
+        switch (length & 3) {
+        case 3:
+            k ^= (bytes[limit + 2] & 0xff) << 16;
+            // fall through
+        case 2:
+            k ^= (bytes[limit + 1] & 0xff) << 8;
+            // fall through
+        case 1:
+            k ^= bytes[limit] & 0xff;
+            h ^= scramble(k);
+            break;
+        default:
+            break;
+        }
+        return finish(h, length);
+    }
+
+    private static int scramble(int k) {
+        return Integer.rotateLeft(k * 0xcc9e2d51, 15) * 0x1b873593;
+    }
+
+    private static int mix(int h, int k) {
+        return Integer.rotateLeft(h ^ scramble(k), 13) * 5 + 0xe6546b64;
+    }
+
+    private static int finish(int h, int length) {
+        int r = h ^ length;
+        r ^= r >>> 16;
+        r *= 0x85ebca6b;
+        r ^= r >>> 13;
+        r *= 0xc2b2ae35;
+        r ^= r >>> 16;
+        return r;
+    }
+
+    /**
+     * Returns the path of the Bloom filter file for the column of the data file.
+     * @param file the data file
+     * @param field the field name
+     * @return the Bloom filter file path
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static Path getPath(Path file, String field) {
+        if (file == null) {
+            throw new IllegalArgumentException("file must not be null"); //$NON-NLS-1$
+        }
+        if (field == null) {
+            throw new IllegalArgumentException("field must not be null"); //$NON-NLS-1$
+        }
+        return new Path(file.getParent(), PREFIX + file.getName() + PREFIX + field + SUFFIX);
+    }
+
+    /**
+     * Writes this filter beside the data file.
+     * This {@link #compact(double) compacts} the filter before writing it,
+     * using {@link #DEFAULT_FALSE_POSITIVE_PROBABILITY}.
+     * @param fileSystem the file system
+     * @param file the data file
+     * @param field the field name
+     * @throws IOException if failed to write the filter
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public void save(FileSystem fileSystem, Path file, String field) throws IOException {
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("fileSystem must not be null"); //$NON-NLS-1$
+        }
+        Path path = getPath(file, field);
+        compact(DEFAULT_FALSE_POSITIVE_PROBABILITY);
+        DataOutputStream output = new DataOutputStream(fileSystem.create(path, true));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(hashes);
+            output.writeInt(words.length);
+            output.writeLong(count);
+            for (long word : words) {
+                output.writeLong(word);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads the Bloom filter for the column of the data file.
+     * @param fileSystem the file system
+     * @param file the data file
+     * @param field the field name
+     * @return the filter, or {@code null} if the column of the data file has no filters
+     * @throws IOException if failed to read the filter
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static TsvBloomFilter load(FileSystem fileSystem, Path file, String field) throws IOException {
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("fileSystem must not be null"); //$NON-NLS-1$
+        }
+        Path path = getPath(file, field);
+        if (fileSystem.exists(path) == false) {
+            return null;
+        }
+        DataInputStream input = new DataInputStream(fileSystem.open(path));
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid Bloom filter file: {0}",
+                        path));
+            }
+            int hashes = input.readInt();
+            int size = input.readInt();
+            if (hashes <= 0 || size < MIN_WORDS || Integer.bitCount(size) != 1) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid Bloom filter file: {0}",
+                        path));
+            }
+            long count = input.readLong();
+            long[] words = new long[size];
+            for (int i = 0; i < size; i++) {
+                words[i] = input.readLong();
+            }
+            return new TsvBloomFilter(words, hashes, count);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the data files which might contain any of the keys in the column.
+     * The files without Bloom filters for the column are always selected.
+     * @param fileSystem the file system
+     * @param files the data files
+     * @param field the field name
+     * @param keys the wanted keys
+     * @return the selected files, in the original order
+     * @throws IOException if failed to read the filters
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static List<Path> selectCandidates(
+            FileSystem fileSystem,
+            Collection<Path> files,
+            String field,
+            Collection<? extends ValueOption<?>> keys) throws IOException {
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("fileSystem must not be null"); //$NON-NLS-1$
+        }
+        if (files == null) {
+            throw new IllegalArgumentException("files must not be null"); //$NON-NLS-1$
+        }
+        if (field == null) {
+            throw new IllegalArgumentException("field must not be null"); //$NON-NLS-1$
+        }
+        if (keys == null) {
+            throw new IllegalArgumentException("keys must not be null"); //$NON-NLS-1$
+        }
+        List<Path> results = new ArrayList<Path>();
+        for (Path file : files) {
+            TsvBloomFilter filter = load(fileSystem, file, field);
+            if (filter == null || filter.mightContainAny(keys)) {
+                results.add(file);
+            }
+        }
+        return results;
+    }
+
+    private boolean mightContainAny(Collection<? extends ValueOption<?>> keys) {
+        for (ValueOption<?> key : keys) {
+            if (mightContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "TsvBloomFilter(bits={0}, hashes={1}, added={2})",
+                String.valueOf(getBitCount()),
+                String.valueOf(hashes),
+                String.valueOf(count));
+    }
+}
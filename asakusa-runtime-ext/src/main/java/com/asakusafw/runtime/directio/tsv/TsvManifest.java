@@ -0,0 +1,309 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * A manifest of a TSV output file, which is written beside the file.
+ * The manifest file is named {@code ".<file-name>.manifest"}, so that it is hidden from the Hadoop file listings.
+ * @since 0.6.0
+ */
+public class TsvManifest {
+
+    static final Log LOG = LogFactory.getLog(TsvManifest.class);
+
+    /**
+     * The file name suffix of manifest files.
+     */
+    public static final String SUFFIX = ".manifest"; //$NON-NLS-1$
+
+    /**
+     * The maximum uncompressed data size in bytes of {@code TINY} data.
+     */
+    public static final long TINY_DATA_SIZE_LIMIT = 16L * 1024 * 1024;
+
+    /**
+     * The maximum uncompressed data size in bytes of {@code SMALL} data.
+     */
+    public static final long SMALL_DATA_SIZE_LIMIT = 256L * 1024 * 1024;
+
+    private static final String PREFIX = "."; //$NON-NLS-1$
+
+    private static final String KEY_RECORDS = "records"; //$NON-NLS-1$
+
+    private static final String KEY_SIZE = "size"; //$NON-NLS-1$
+
+    private static final String KEY_UNCOMPRESSED_SIZE = "uncompressed_size"; //$NON-NLS-1$
+
+    private static final String KEY_CODEC = "codec"; //$NON-NLS-1$
+
+    private final long records;
+
+    private final long size;
+
+    private final long uncompressedSize;
+
+    private final String codecName;
+
+    /**
+     * Creates a new instance.
+     * @param records the number of records
+     * @param size the file size in bytes
+     * @param uncompressedSize the uncompressed data size in bytes, or {@code -1} if it is unknown
+     * @param codecName the codec name, or {@code null} if the file is not compressed
+     */
+    public TsvManifest(long records, long size, long uncompressedSize, String codecName) {
+        this.records = records;
+        this.size = size;
+        this.uncompressedSize = uncompressedSize;
+        this.codecName = codecName;
+    }
+
+    /**
+     * Returns the number of records in the file.
+     * @return the number of records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the file size.
+     * @return the file size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the uncompressed data size.
+     * @return the uncompressed data size in bytes, or {@code -1} if it is unknown
+     */
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * Returns the codec name.
+     * @return the codec name, or {@code null} if the file is not compressed
+     */
+    public String getCodecName() {
+        return codecName;
+    }
+
+    /**
+     * Returns the path of the manifest file for the data file.
+     * @param file the data file
+     * @return the manifest file path
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static Path getPath(Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file must not be null"); //$NON-NLS-1$
+        }
+        return new Path(file.getParent(), PREFIX + file.getName() + SUFFIX);
+    }
+
+    /**
+     * Writes this manifest beside the data file.
+     * @param fileSystem the file system
+     * @param file the data file
+     * @throws IOException if failed to write the manifest
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public void save(FileSystem fileSystem, Path file) throws IOException {
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("fileSystem must not be null"); //$NON-NLS-1$
+        }
+        Properties properties = new Properties();
+        properties.setProperty(KEY_RECORDS, String.valueOf(records));
+        properties.setProperty(KEY_SIZE, String.valueOf(size));
+        properties.setProperty(KEY_UNCOMPRESSED_SIZE, String.valueOf(uncompressedSize));
+        if (codecName != null) {
+            properties.setProperty(KEY_CODEC, codecName);
+        }
+        OutputStream output = fileSystem.create(getPath(file), true);
+        try {
+            properties.store(output, null);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads the manifest of the data file.
+     * @param fileSystem the file system
+     * @param file the data file
+     * @return the manifest, or {@code null} if the data file has no manifests
+     * @throws IOException if failed to read the manifest
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static TsvManifest load(FileSystem fileSystem, Path file) throws IOException {
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("fileSystem must not be null"); //$NON-NLS-1$
+        }
+        Path path = getPath(file);
+        if (fileSystem.exists(path) == false) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream input = fileSystem.open(path);
+        try {
+            properties.load(input);
+        } finally {
+            input.close();
+        }
+        return new TsvManifest(
+                parse(properties, path, KEY_RECORDS),
+                parse(properties, path, KEY_SIZE),
+                parse(properties, path, KEY_UNCOMPRESSED_SIZE),
+                properties.getProperty(KEY_CODEC));
+    }
+
+    private static long parse(Properties properties, Path path, String key) throws IOException {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IOException(MessageFormat.format(
+                    "Manifest does not have \"{1}\": {0}",
+                    path,
+                    key));
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(MessageFormat.format(
+                    "Manifest has invalid \"{1}\": {0} ({2})",
+                    path,
+                    key,
+                    value), e);
+        }
+    }
+
+    /**
+     * Estimates the total uncompressed data size of the files.
+     * This uses the uncompressed size in the manifest for each file if it is available and up to date,
+     * or the file size for the other files.
+     * @param fileSystem the file system
+     * @param pattern the file path pattern
+     * @return the estimated size in bytes
+     * @throws IOException if failed to list the files
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static long estimateUncompressedSize(FileSystem fileSystem, Path pattern) throws IOException {
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("fileSystem must not be null"); //$NON-NLS-1$
+        }
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern must not be null"); //$NON-NLS-1$
+        }
+        FileStatus[] files = fileSystem.globStatus(pattern);
+        if (files == null) {
+            return 0L;
+        }
+        long total = 0L;
+        for (FileStatus file : files) {
+            String name = file.getPath().getName();
+            if (file.isDir() || name.startsWith(PREFIX) || name.startsWith("_")) { //$NON-NLS-1$
+                continue;
+            }
+            TsvManifest manifest = load(fileSystem, file.getPath());
+            if (manifest != null && manifest.getSize() == file.getLen() && manifest.getUncompressedSize() >= 0) {
+                total += manifest.getUncompressedSize();
+            } else {
+                total += file.getLen();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Estimates the data size class of the files from their manifests,
+     * for {@code DataSize} of Direct I/O input descriptions.
+     * This never fails; if the files are not available, this returns the default value instead.
+     * @param configuration the configuration to resolve the file system
+     * @param pattern the file path pattern (e.g. {@code "hdfs://namenode/path/to/master/*.tsv"})
+     * @param defaultDataSize the default data size name
+     * @return {@code "TINY"}, {@code "SMALL"}, {@code "LARGE"}, or the default data size name
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @see #estimateUncompressedSize(FileSystem, Path)
+     */
+    public static String estimateDataSize(Configuration configuration, String pattern, String defaultDataSize) {
+        if (configuration == null) {
+            throw new IllegalArgumentException("configuration must not be null"); //$NON-NLS-1$
+        }
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern must not be null"); //$NON-NLS-1$
+        }
+        if (defaultDataSize == null) {
+            throw new IllegalArgumentException("defaultDataSize must not be null"); //$NON-NLS-1$
+        }
+        try {
+            Path path = new Path(pattern);
+            long size = estimateUncompressedSize(path.getFileSystem(configuration), path);
+            if (size <= 0) {
+                LOG.warn(MessageFormat.format(
+                        "No data files to estimate data size, use {1} instead: {0}",
+                        pattern,
+                        defaultDataSize));
+                return defaultDataSize;
+            }
+            return toDataSize(size);
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to estimate data size, use {1} instead: {0}",
+                    pattern,
+                    defaultDataSize), e);
+            return defaultDataSize;
+        }
+    }
+
+    /**
+     * Returns the data size class of the uncompressed data size.
+     * @param uncompressedSize the uncompressed data size in bytes
+     * @return {@code "TINY"}, {@code "SMALL"}, or {@code "LARGE"}
+     */
+    public static String toDataSize(long uncompressedSize) {
+        if (uncompressedSize <= TINY_DATA_SIZE_LIMIT) {
+            return "TINY"; //$NON-NLS-1$
+        } else if (uncompressedSize <= SMALL_DATA_SIZE_LIMIT) {
+            return "SMALL"; //$NON-NLS-1$
+        } else {
+            return "LARGE"; //$NON-NLS-1$
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "TsvManifest(records={0}, size={1}, uncompressedSize={2}, codec={3})",
+                String.valueOf(records),
+                String.valueOf(size),
+                String.valueOf(uncompressedSize),
+                codecName);
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.math.BigDecimal;
+import java.text.MessageFormat;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Utilities about value-partitioned directories of TSV files.
+ * <p>
+ * Each partition is a directory path which consists of {@code "<field-name>=<value>"} segments,
+ * like {@code "sales_date=2014-01-01/shop_code=A001"}.
+ * Dates are formatted as {@code yyyy-MM-dd}, {@code null} values are represented as {@value #NULL_VALUE},
+ * and the characters which are special in file paths or Direct I/O resource patterns are escaped as
+ * {@code "%XX"}.
+ * </p>
+ * @since 0.6.0
+ */
+public final class TsvPartitions {
+
+    /**
+     * The partition value for {@code null}.
+     */
+    public static final String NULL_VALUE = "__NULL__"; //$NON-NLS-1$
+
+    private static final String WILDCARD = "*"; //$NON-NLS-1$
+
+    private static final String SPECIAL_CHARACTERS = "\"#$%&'*,/:;<=>?[\\]{|}"; //$NON-NLS-1$
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray(); //$NON-NLS-1$
+
+    private TsvPartitions() {
+        return;
+    }
+
+    /**
+     * Returns whether the value type can be used for partitioning or not.
+     * @param option the value
+     * @return {@code true} if it is supported, otherwise {@code false}
+     */
+    public static boolean isSupported(ValueOption<?> option) {
+        return option instanceof StringOption
+                || option instanceof DateOption
+                || option instanceof IntOption
+                || option instanceof LongOption
+                || option instanceof ShortOption
+                || option instanceof ByteOption
+                || option instanceof BooleanOption
+                || option instanceof DecimalOption;
+    }
+
+    /**
+     * Returns the partition path for the values.
+     * @param fields the partition field names
+     * @param values the partition values, must be same length as the fields
+     * @return the partition path
+     * @throws IllegalArgumentException if the values are not {@link #isSupported(ValueOption) supported}
+     */
+    public static String toPath(String[] fields, ValueOption<?>[] values) {
+        if (fields == null) {
+            throw new IllegalArgumentException("fields must not be null"); //$NON-NLS-1$
+        }
+        if (values == null) {
+            throw new IllegalArgumentException("values must not be null"); //$NON-NLS-1$
+        }
+        if (fields.length != values.length) {
+            throw new IllegalArgumentException("fields and values must be same length"); //$NON-NLS-1$
+        }
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                buf.append('/');
+            }
+            buf.append(fields[i]).append('=');
+            ValueOption<?> value = values[i];
+            if (value == null || value.isNull()) {
+                buf.append(NULL_VALUE);
+            } else {
+                appendEscaped(buf, format(value));
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns a Direct I/O resource pattern which matches the partition directories.
+     * The partition fields whose value is {@code null} in the array match any values.
+     * To match {@code null} partition values, specify an option which is {@link ValueOption#isNull() null}.
+     * @param fields the partition field names
+     * @param values the partition values, must be same length as the fields
+     * @return the resource pattern of the partition directories
+     * @throws IllegalArgumentException if the values are not {@link #isSupported(ValueOption) supported}
+     */
+    public static String toPattern(String[] fields, ValueOption<?>... values) {
+        if (fields == null) {
+            throw new IllegalArgumentException("fields must not be null"); //$NON-NLS-1$
+        }
+        if (values == null) {
+            throw new IllegalArgumentException("values must not be null"); //$NON-NLS-1$
+        }
+        if (fields.length != values.length) {
+            throw new IllegalArgumentException("fields and values must be same length"); //$NON-NLS-1$
+        }
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                buf.append('/');
+            }
+            buf.append(fields[i]).append('=');
+            ValueOption<?> value = values[i];
+            if (value == null) {
+                buf.append(WILDCARD);
+            } else if (value.isNull()) {
+                buf.append(NULL_VALUE);
+            } else {
+                appendEscaped(buf, format(value));
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Sets a partition value in the path into the option.
+     * This is the inverse of {@link #toPath(String[], ValueOption[])} for each partition value.
+     * @param value the partition value in the path, which may be escaped
+     * @param option the target option
+     * @throws IllegalArgumentException if the value is not valid for the option type,
+     *     or the option is not {@link #isSupported(ValueOption) supported}
+     */
+    public static void parse(String value, ValueOption<?> option) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null"); //$NON-NLS-1$
+        }
+        if (option == null) {
+            throw new IllegalArgumentException("option must not be null"); //$NON-NLS-1$
+        }
+        if (value.equals(NULL_VALUE)) {
+            option.setNull();
+            return;
+        }
+        String text = unescape(value);
+        try {
+            if (option instanceof StringOption) {
+                ((StringOption) option).modify(text);
+            } else if (option instanceof DateOption) {
+                ((DateOption) option).modify(new Date(parseDate(text)));
+            } else if (option instanceof IntOption) {
+                ((IntOption) option).modify(Integer.parseInt(text));
+            } else if (option instanceof LongOption) {
+                ((LongOption) option).modify(Long.parseLong(text));
+            } else if (option instanceof ShortOption) {
+                ((ShortOption) option).modify(Short.parseShort(text));
+            } else if (option instanceof ByteOption) {
+                ((ByteOption) option).modify(Byte.parseByte(text));
+            } else if (option instanceof BooleanOption) {
+                ((BooleanOption) option).modify(parseBoolean(text));
+            } else if (option instanceof DecimalOption) {
+                ((DecimalOption) option).modify(new BigDecimal(text));
+            } else {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "unsupported value type for partitions: {0}",
+                        option.getClass().getName()));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "invalid partition value \"{0}\" for {1}",
+                    text,
+                    option.getClass().getSimpleName()), e);
+        }
+    }
+
+    private static int parseDate(String text) {
+        int first = text.indexOf('-', 1);
+        int second = first < 0 ? -1 : text.indexOf('-', first + 1);
+        if (second < 0) {
+            throw new NumberFormatException(text);
+        }
+        int year = Integer.parseInt(text.substring(0, first));
+        int month = Integer.parseInt(text.substring(first + 1, second));
+        int day = Integer.parseInt(text.substring(second + 1));
+        if (Utf8TsvParser.isValidDate(year, month, day) == false) {
+            throw new NumberFormatException(text);
+        }
+        return Utf8TsvParser.toElapsedDays(year, month, day);
+    }
+
+    private static boolean parseBoolean(String text) {
+        if (text.equals("true")) { //$NON-NLS-1$
+            return true;
+        } else if (text.equals("false")) { //$NON-NLS-1$
+            return false;
+        }
+        throw new NumberFormatException(text);
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        StringBuilder buf = new StringBuilder(value.length());
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < n && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2))) {
+                buf.append((char) Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static boolean isHex(char c) {
+        return ('0' <= c && c <= '9') || ('A' <= c && c <= 'F') || ('a' <= c && c <= 'f');
+    }
+
+    private static String format(ValueOption<?> option) {
+        if (option instanceof StringOption) {
+            return ((StringOption) option).getAsString();
+        } else if (option instanceof DateOption) {
+            byte[] buf = new byte[16];
+            int length = Utf8TsvEmitter.formatDate(((DateOption) option).get().getElapsedDays(), buf, 0);
+            StringBuilder result = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                result.append((char) buf[i]);
+            }
+            return result.toString();
+        } else if (option instanceof IntOption) {
+            return String.valueOf(((IntOption) option).get());
+        } else if (option instanceof LongOption) {
+            return String.valueOf(((LongOption) option).get());
+        } else if (option instanceof ShortOption) {
+            return String.valueOf(((ShortOption) option).get());
+        } else if (option instanceof ByteOption) {
+            return String.valueOf(((ByteOption) option).get());
+        } else if (option instanceof BooleanOption) {
+            return String.valueOf(((BooleanOption) option).get());
+        } else if (option instanceof DecimalOption) {
+            BigDecimal value = ((DecimalOption) option).get();
+            return value.toPlainString();
+        } else {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "unsupported value type for partitions: {0}",
+                    option.getClass().getName()));
+        }
+    }
+
+    private static void appendEscaped(StringBuilder buf, String value) {
+        int start = 0;
+        if (value.equals(NULL_VALUE)) {
+            // distinguishes from null
+            buf.append("%5F"); //$NON-NLS-1$
+            start = 1;
+        }
+        for (int i = start, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == 0x7f || SPECIAL_CHARACTERS.indexOf(c) >= 0) {
+                buf.append('%').append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+            } else {
+                buf.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * A pattern of the directories which contain input files, which maps each path segment to a property value.
+ * <p>
+ * The pattern consists of {@code '/'} separated segments, and each segment is a literal name or includes just
+ * one {@code "{property_name}"} placeholder with optional literal prefix and suffix,
+ * like {@code "{sales_date}/shop={shop_code}"}.
+ * The pattern matches the trailing directories of each file path, so that the values in the path
+ * are extracted only once per file.
+ * Each value is parsed as same as {@link TsvPartitions#parse(String, ValueOption) partition values}.
+ * </p>
+ * @since 0.6.0
+ */
+public final class TsvPathPattern {
+
+    private static final Pattern SEGMENT = Pattern.compile(
+            "([^{}*?$]*)(?:\\{([a-z][0-9a-z_]*)\\}([^{}*?$]*))?"); //$NON-NLS-1$
+
+    private static final String WILDCARD = "*"; //$NON-NLS-1$
+
+    private final String pattern;
+
+    private final String[] prefixes;
+
+    private final String[] names;
+
+    private final String[] suffixes;
+
+    private final List<String> propertyNames;
+
+    /**
+     * Creates a new instance.
+     * @param pattern the path pattern
+     * @throws IllegalArgumentException if the pattern is not valid
+     */
+    public TsvPathPattern(String pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern must not be null"); //$NON-NLS-1$
+        }
+        String[] segments = pattern.split("/", -1); //$NON-NLS-1$
+        this.pattern = pattern;
+        this.prefixes = new String[segments.length];
+        this.names = new String[segments.length];
+        this.suffixes = new String[segments.length];
+        List<String> properties = new ArrayList<String>();
+        Set<String> saw = new HashSet<String>();
+        for (int i = 0; i < segments.length; i++) {
+            Matcher matcher = SEGMENT.matcher(segments[i]);
+            if (segments[i].isEmpty() || matcher.matches() == false) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "invalid path pattern segment \"{1}\": {0}",
+                        pattern,
+                        segments[i]));
+            }
+            String name = matcher.group(2);
+            prefixes[i] = matcher.group(1);
+            names[i] = name;
+            suffixes[i] = name == null ? "" : matcher.group(3); //$NON-NLS-1$
+            if (name != null) {
+                if (saw.add(name) == false) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                            "property \"{1}\" appears more than once in path pattern: {0}",
+                            pattern,
+                            name));
+                }
+                properties.add(name);
+            }
+        }
+        this.propertyNames = Collections.unmodifiableList(properties);
+    }
+
+    /**
+     * Returns the property names in this pattern.
+     * @return the property names, ordered by their appearance
+     */
+    public List<String> getPropertyNames() {
+        return propertyNames;
+    }
+
+    /**
+     * Extracts the property values from the directories of the file path.
+     * @param path the file path
+     * @param options the target options, ordered as same as {@link #getPropertyNames()}
+     * @throws IOException if the path does not match this pattern, or it contains invalid values
+     * @throws IllegalArgumentException if some parameters were {@code null}, or the number of options is wrong
+     */
+    public void fill(String path, ValueOption<?>... options) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("path must not be null"); //$NON-NLS-1$
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("options must not be null"); //$NON-NLS-1$
+        }
+        if (options.length != propertyNames.size()) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "options must have {0} elements",
+                    propertyNames.size()));
+        }
+        String[] segments = path.split("/"); //$NON-NLS-1$
+        int start = segments.length - 1 - names.length;
+        if (start < 0) {
+            throw mismatch(path);
+        }
+        int index = 0;
+        for (int i = 0; i < names.length; i++) {
+            String segment = segments[start + i];
+            String prefix = prefixes[i];
+            if (names[i] == null) {
+                if (segment.equals(prefix) == false) {
+                    throw mismatch(path);
+                }
+                continue;
+            }
+            String suffix = suffixes[i];
+            if (segment.length() < prefix.length() + suffix.length()
+                    || segment.startsWith(prefix) == false
+                    || segment.endsWith(suffix) == false) {
+                throw mismatch(path);
+            }
+            String value = segment.substring(prefix.length(), segment.length() - suffix.length());
+            try {
+                TsvPartitions.parse(value, options[index++]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid value of \"{0}\" in path: {1}",
+                        names[i],
+                        path), e);
+            }
+        }
+    }
+
+    /**
+     * Returns a Direct I/O resource pattern which matches the files in the target directories.
+     * The properties in {@code arguments} are bound to the batch arguments of the same names
+     * (as {@code "${property_name}"}) so that only the matching directories are listed,
+     * and the rest properties match any values.
+     * @param fileName the file name pattern in each directory (e.g. {@code "*.tsv"})
+     * @param arguments the property names which are bound to the batch arguments
+     * @return the resource pattern
+     * @throws IllegalArgumentException if some parameters were {@code null}, or the arguments contain unknown names
+     */
+    public String toResourcePattern(String fileName, String... arguments) {
+        if (fileName == null) {
+            throw new IllegalArgumentException("fileName must not be null"); //$NON-NLS-1$
+        }
+        if (arguments == null) {
+            throw new IllegalArgumentException("arguments must not be null"); //$NON-NLS-1$
+        }
+        Set<String> bound = new HashSet<String>(Arrays.asList(arguments));
+        if (propertyNames.containsAll(bound) == false) {
+            bound.removeAll(propertyNames);
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "unknown properties {1} in path pattern: {0}",
+                    pattern,
+                    bound));
+        }
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            buf.append(prefixes[i]);
+            if (names[i] != null) {
+                if (bound.contains(names[i])) {
+                    buf.append("${").append(names[i]).append('}'); //$NON-NLS-1$
+                } else {
+                    buf.append(WILDCARD);
+                }
+                buf.append(suffixes[i]);
+            }
+            buf.append('/');
+        }
+        buf.append(fileName);
+        return buf.toString();
+    }
+
+    private IOException mismatch(String path) {
+        return new IOException(MessageFormat.format(
+                "Path \"{1}\" does not match the path pattern \"{0}\"",
+                pattern,
+                path));
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A {@link Reader} which translates TSV contents with custom separators into the standard TSV.
+ * This is for {@link com.asakusafw.runtime.io.TsvParser}, which only accepts tab and LF as separators.
+ * @since 0.6.0
+ * @see TsvSeparators
+ */
+public class TsvSeparatorReader extends Reader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+
+    private final char fieldSeparator;
+
+    private final char recordSeparator;
+
+    private final boolean crlf;
+
+    private final char[] source = new char[BUFFER_SIZE];
+
+    private int sourcePosition;
+
+    private int sourceLimit;
+
+    private boolean hasCarry;
+
+    private char carry;
+
+    /**
+     * Creates a new instance.
+     * @param in the source reader
+     * @param fieldSeparator the field separator in the source
+     * @param lineSeparator the line separator in the source
+     * @throws IllegalArgumentException if some parameters were {@code null}, or separators are not valid
+     */
+    public TsvSeparatorReader(Reader in, char fieldSeparator, String lineSeparator) {
+        if (in == null) {
+            throw new IllegalArgumentException("in must not be null"); //$NON-NLS-1$
+        }
+        TsvSeparators.checkSeparators(fieldSeparator, lineSeparator);
+        this.in = in;
+        this.fieldSeparator = fieldSeparator;
+        this.recordSeparator = TsvSeparators.getLastCharacter(lineSeparator);
+        this.crlf = lineSeparator.equals(TsvSeparators.CRLF);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        if (hasCarry) {
+            cbuf[off + count++] = carry;
+            hasCarry = false;
+        }
+        while (count < len) {
+            int c = readSource();
+            if (c < 0) {
+                break;
+            }
+            char first;
+            int second = -1;
+            if (c == '\\') {
+                int escaped = readSource();
+                first = '\\';
+                second = escaped;
+            } else if (c == fieldSeparator) {
+                first = '\t';
+            } else if (crlf && c == '\r') {
+                if (peekSource() == '\n') {
+                    readSource();
+                    first = '\n';
+                } else {
+                    first = '\r';
+                }
+            } else if (c == recordSeparator) {
+                first = '\n';
+            } else if (c == '\t' || c == '\n') {
+                first = '\\';
+                second = c;
+            } else {
+                first = (char) c;
+            }
+            cbuf[off + count++] = first;
+            if (second >= 0) {
+                if (count < len) {
+                    cbuf[off + count++] = (char) second;
+                } else {
+                    carry = (char) second;
+                    hasCarry = true;
+                }
+            }
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    private int readSource() throws IOException {
+        if (sourcePosition >= sourceLimit && fillSource() == false) {
+            return -1;
+        }
+        return source[sourcePosition++];
+    }
+
+    private int peekSource() throws IOException {
+        if (sourcePosition >= sourceLimit && fillSource() == false) {
+            return -1;
+        }
+        return source[sourcePosition];
+    }
+
+    private boolean fillSource() throws IOException {
+        while (true) {
+            int read = in.read(source, 0, source.length);
+            if (read < 0) {
+                return false;
+            }
+            if (read > 0) {
+                sourcePosition = 0;
+                sourceLimit = read;
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A {@link Writer} which translates the standard TSV contents into TSV with custom separators.
+ * This is for {@link com.asakusafw.runtime.io.TsvEmitter}, which only emits tab and LF as separators.
+ * Characters which conflict with the custom separators are escaped with {@code '\\'}.
+ * @since 0.6.0
+ * @see TsvSeparators
+ */
+public class TsvSeparatorWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Writer out;
+
+    private final char fieldSeparator;
+
+    private final String lineSeparator;
+
+    private final char recordSeparator;
+
+    private final boolean crlf;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int position;
+
+    private boolean escaping;
+
+    /**
+     * Creates a new instance.
+     * @param out the destination writer
+     * @param fieldSeparator the field separator in the destination
+     * @param lineSeparator the line separator in the destination
+     * @throws IllegalArgumentException if some parameters were {@code null}, or separators are not valid
+     */
+    public TsvSeparatorWriter(Writer out, char fieldSeparator, String lineSeparator) {
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null"); //$NON-NLS-1$
+        }
+        TsvSeparators.checkSeparators(fieldSeparator, lineSeparator);
+        this.out = out;
+        this.fieldSeparator = fieldSeparator;
+        this.lineSeparator = lineSeparator;
+        this.recordSeparator = TsvSeparators.getLastCharacter(lineSeparator);
+        this.crlf = lineSeparator.equals(TsvSeparators.CRLF);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off, end = off + len; i < end; i++) {
+            char c = cbuf[i];
+            if (escaping) {
+                put('\\');
+                put(c);
+                escaping = false;
+            } else if (c == '\\') {
+                escaping = true;
+            } else if (c == '\t') {
+                put(fieldSeparator);
+            } else if (c == '\n') {
+                for (int j = 0, n = lineSeparator.length(); j < n; j++) {
+                    put(lineSeparator.charAt(j));
+                }
+            } else if (c == fieldSeparator || c == recordSeparator || (crlf && c == '\r')) {
+                put('\\');
+                put(c);
+            } else {
+                put(c);
+            }
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (position >= buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = c;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (escaping) {
+            put('\\');
+            escaping = false;
+        }
+        flushBuffer();
+        out.close();
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.text.MessageFormat;
+
+/**
+ * Utilities about field and record separators of TSV files.
+ * <p>
+ * A field separator must be a single ASCII character,
+ * and a line separator must be {@code "\r\n"} or a single ASCII character.
+ * They must not be any characters which may appear in the formatted values
+ * (letters, digits, {@code '\\'}, {@code '+'}, {@code '-'}, {@code '.'}, {@code ':'}, and white space),
+ * and they must be different from each other.
+ * </p>
+ * @since 0.6.0
+ */
+public final class TsvSeparators {
+
+    /**
+     * The default field separator.
+     */
+    public static final char DEFAULT_FIELD_SEPARATOR = '\t';
+
+    /**
+     * The default line separator.
+     */
+    public static final String DEFAULT_LINE_SEPARATOR = "\n"; //$NON-NLS-1$
+
+    static final String CRLF = "\r\n"; //$NON-NLS-1$
+
+    private TsvSeparators() {
+        return;
+    }
+
+    /**
+     * Returns whether the separators are the default ones or not.
+     * @param fieldSeparator the field separator
+     * @param lineSeparator the line separator
+     * @return {@code true} if they are the default ones, otherwise {@code false}
+     */
+    public static boolean isDefault(char fieldSeparator, String lineSeparator) {
+        return fieldSeparator == DEFAULT_FIELD_SEPARATOR && DEFAULT_LINE_SEPARATOR.equals(lineSeparator);
+    }
+
+    /**
+     * Returns the diagnostic message if the field separator is not valid.
+     * @param fieldSeparator the field separator
+     * @return the diagnostic message, or {@code null} if it is valid
+     */
+    public static String validateFieldSeparator(char fieldSeparator) {
+        if (isValidCharacter(fieldSeparator) == false) {
+            return MessageFormat.format(
+                    "field separator must be an ASCII symbol or control character: \"{0}\"",
+                    escape(String.valueOf(fieldSeparator)));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the diagnostic message if the line separator is not valid.
+     * @param lineSeparator the line separator
+     * @return the diagnostic message, or {@code null} if it is valid
+     */
+    public static String validateLineSeparator(String lineSeparator) {
+        if (lineSeparator == null) {
+            throw new IllegalArgumentException("lineSeparator must not be null"); //$NON-NLS-1$
+        }
+        if (lineSeparator.equals(CRLF)) {
+            return null;
+        }
+        if (lineSeparator.length() != 1 || isValidCharacter(lineSeparator.charAt(0)) == false) {
+            return MessageFormat.format(
+                    "line separator must be \"\\r\\n\" or an ASCII symbol or control character: \"{0}\"",
+                    escape(lineSeparator));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the diagnostic message if the separators are not valid.
+     * @param fieldSeparator the field separator
+     * @param lineSeparator the line separator
+     * @return the diagnostic message, or {@code null} if they are valid
+     */
+    public static String validateSeparators(char fieldSeparator, String lineSeparator) {
+        String field = validateFieldSeparator(fieldSeparator);
+        if (field != null) {
+            return field;
+        }
+        String line = validateLineSeparator(lineSeparator);
+        if (line != null) {
+            return line;
+        }
+        if (lineSeparator.indexOf(fieldSeparator) >= 0) {
+            return MessageFormat.format(
+                    "field separator must be different from line separator: \"{0}\"",
+                    escape(String.valueOf(fieldSeparator)));
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the separators are valid or not.
+     * @param fieldSeparator the field separator
+     * @param lineSeparator the line separator
+     * @throws IllegalArgumentException if they are not valid
+     */
+    public static void checkSeparators(char fieldSeparator, String lineSeparator) {
+        String message = validateSeparators(fieldSeparator, lineSeparator);
+        if (message != null) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Returns the last character of the line separator, which terminates each record.
+     * @param lineSeparator the line separator
+     * @return the last character
+     */
+    public static char getLastCharacter(String lineSeparator) {
+        return lineSeparator.charAt(lineSeparator.length() - 1);
+    }
+
+    private static boolean isValidCharacter(char c) {
+        if (c >= 0x80 || c == ' ') {
+            return false;
+        }
+        if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || ('0' <= c && c <= '9')) {
+            return false;
+        }
+        switch (c) {
+        case '\\':
+        case '+':
+        case '-':
+        case '.':
+        case ':':
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    private static String escape(String string) {
+        StringBuilder buf = new StringBuilder();
+        for (char c : string.toCharArray()) {
+            if (c < 0x20 || c >= 0x7f) {
+                buf.append(String.format("\\u%04x", (int) c)); //$NON-NLS-1$
+            } else {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * A sparse index from the sort keys to the file offsets of a sorted TSV output file,
+ * which is written beside the file.
+ * The index file is named {@code ".<file-name>.index"}, so that it is hidden from the Hadoop file listings.
+ * <p>
+ * This keeps the key of every {@link #getInterval() N-th} record, with the number of bytes
+ * which had been written to the file before the record.
+ * As the output is buffered, each offset may point before the start of its record,
+ * but never after it.
+ * Keys are ordered in the same way as the sort keys of Direct I/O outputs:
+ * {@code null} is the smallest, texts are compared as UTF-8 byte sequences,
+ * and dates and numbers are compared by their values.
+ * </p>
+ * @since 0.6.0
+ */
+public class TsvSparseIndex {
+
+    /**
+     * The file name suffix of index files.
+     */
+    public static final String SUFFIX = ".index"; //$NON-NLS-1$
+
+    private static final String PREFIX = "."; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x54494458; // "TIDX"
+
+    private static final int VERSION = 1;
+
+    private static final Charset ENCODING = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private static final byte TAG_NULL = 0;
+
+    private static final byte TAG_LONG = 1;
+
+    private static final byte TAG_DECIMAL = 2;
+
+    private static final byte TAG_BYTES = 3;
+
+    private final int interval;
+
+    private final List<Object> keys;
+
+    private final List<Long> offsets;
+
+    private Object lastKey;
+
+    private long records;
+
+    /**
+     * Creates a new empty instance.
+     * @param interval the number of records between index entries,
+     *     or {@code <= 0} to only check the order of the keys
+     */
+    public TsvSparseIndex(int interval) {
+        this(interval, new ArrayList<Object>(), new ArrayList<Long>());
+    }
+
+    private TsvSparseIndex(int interval, List<Object> keys, List<Long> offsets) {
+        this.interval = interval;
+        this.keys = keys;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns the number of records between index entries.
+     * @return the interval, or {@code <= 0} if this does not keep any entries
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the number of index entries.
+     * @return the number of entries
+     */
+    public int getEntryCount() {
+        return keys.size();
+    }
+
+    /**
+     * Adds the key of the next record.
+     * @param key the sort key of the record
+     * @param offset the number of bytes which have been written to the file before the record
+     * @throws IOException if the key is smaller than the previous one
+     * @throws IllegalArgumentException if the key type is not supported
+     */
+    public void add(ValueOption<?> key, long offset) throws IOException {
+        Object current = toKey(key);
+        if (records > 0 && compare(lastKey, current) > 0) {
+            throw new IOException(MessageFormat.format(
+                    "Records are not sorted: {0} appeared after {1} (record #{2})",
+                    toString(current),
+                    toString(lastKey),
+                    String.valueOf(records)));
+        }
+        if (interval > 0 && records % interval == 0) {
+            keys.add(current);
+            offsets.add(offset);
+        }
+        lastKey = current;
+        records++;
+    }
+
+    /**
+     * Returns the file offset to start reading the records whose key is not less than the lower bound.
+     * If this returns a non-zero offset, it may point the middle of a record,
+     * and readers must skip to the head of the next record.
+     * @param lowerBound the lower bound, or {@code null} to read from the head of the file
+     * @return the file offset
+     * @throws IllegalArgumentException if the key type is not supported
+     */
+    public long findOffset(ValueOption<?> lowerBound) {
+        if (lowerBound == null) {
+            return 0L;
+        }
+        Object bound = toKey(lowerBound);
+        long result = 0L;
+        for (int i = 0, n = keys.size(); i < n; i++) {
+            if (compare(keys.get(i), bound) >= 0) {
+                break;
+            }
+            result = offsets.get(i);
+        }
+        return result;
+    }
+
+    static Object toKey(ValueOption<?> option) {
+        if (option == null || option.isNull()) {
+            return null;
+        } else if (option instanceof StringOption) {
+            Text text = ((StringOption) option).get();
+            return Arrays.copyOf(text.getBytes(), text.getLength());
+        } else if (option instanceof IntOption) {
+            return Long.valueOf(((IntOption) option).get());
+        } else if (option instanceof LongOption) {
+            return Long.valueOf(((LongOption) option).get());
+        } else if (option instanceof DateOption) {
+            return Long.valueOf(((DateOption) option).get().getElapsedDays());
+        } else if (option instanceof DateTimeOption) {
+            return Long.valueOf(((DateTimeOption) option).get().getElapsedSeconds());
+        } else if (option instanceof ShortOption) {
+            return Long.valueOf(((ShortOption) option).get());
+        } else if (option instanceof ByteOption) {
+            return Long.valueOf(((ByteOption) option).get());
+        } else if (option instanceof BooleanOption) {
+            return Long.valueOf(((BooleanOption) option).get() ? 1L : 0L);
+        } else if (option instanceof DecimalOption) {
+            return ((DecimalOption) option).get();
+        } else {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "unsupported value type for sort keys: {0}",
+                    option.getClass().getName()));
+        }
+    }
+
+    static int compare(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : +1;
+        } else if (a instanceof Long && b instanceof Long) {
+            return ((Long) a).compareTo((Long) b);
+        } else if (a instanceof BigDecimal && b instanceof BigDecimal) {
+            return ((BigDecimal) a).compareTo((BigDecimal) b);
+        } else if (a instanceof byte[] && b instanceof byte[]) {
+            byte[] x = (byte[]) a;
+            byte[] y = (byte[]) b;
+            for (int i = 0, n = Math.min(x.length, y.length); i < n; i++) {
+                int diff = (x[i] & 0xff) - (y[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return x.length - y.length;
+        } else {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "inconsistent sort key types: {0}, {1}",
+                    a.getClass().getName(),
+                    b.getClass().getName()));
+        }
+    }
+
+    private static String toString(Object key) {
+        if (key instanceof byte[]) {
+            return new String((byte[]) key, ENCODING);
+        }
+        return String.valueOf(key);
+    }
+
+    /**
+     * Returns the path of the index file for the data file.
+     * @param file the data file
+     * @return the index file path
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static Path getPath(Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file must not be null"); //$NON-NLS-1$
+        }
+        return new Path(file.getParent(), PREFIX + file.getName() + SUFFIX);
+    }
+
+    /**
+     * Writes this index beside the data file.
+     * @param fileSystem the file system
+     * @param file the data file
+     * @throws IOException if failed to write the index
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public void save(FileSystem fileSystem, Path file) throws IOException {
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("fileSystem must not be null"); //$NON-NLS-1$
+        }
+        DataOutputStream output = new DataOutputStream(fileSystem.create(getPath(file), true));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(interval);
+            output.writeInt(keys.size());
+            for (int i = 0, n = keys.size(); i < n; i++) {
+                output.writeLong(offsets.get(i));
+                writeKey(output, keys.get(i));
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void writeKey(DataOutputStream output, Object key) throws IOException {
+        if (key == null) {
+            output.writeByte(TAG_NULL);
+        } else if (key instanceof Long) {
+            output.writeByte(TAG_LONG);
+            output.writeLong((Long) key);
+        } else if (key instanceof BigDecimal) {
+            output.writeByte(TAG_DECIMAL);
+            output.writeUTF(((BigDecimal) key).toString());
+        } else {
+            byte[] bytes = (byte[]) key;
+            output.writeByte(TAG_BYTES);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the index of the data file.
+     * @param fileSystem the file system
+     * @param file the data file
+     * @return the index, or {@code null} if the data file has no indices
+     * @throws IOException if failed to read the index
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static TsvSparseIndex load(FileSystem fileSystem, Path file) throws IOException {
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("fileSystem must not be null"); //$NON-NLS-1$
+        }
+        Path path = getPath(file);
+        if (fileSystem.exists(path) == false) {
+            return null;
+        }
+        DataInputStream input = new DataInputStream(fileSystem.open(path));
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException(MessageFormat.format(
+                        "Invalid index file: {0}",
+                        path));
+            }
+            int interval = input.readInt();
+            int count = input.readInt();
+            List<Object> keys = new ArrayList<Object>(count);
+            List<Long> offsets = new ArrayList<Long>(count);
+            for (int i = 0; i < count; i++) {
+                offsets.add(input.readLong());
+                keys.add(readKey(input, path));
+            }
+            return new TsvSparseIndex(interval, keys, offsets);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static Object readKey(DataInputStream input, Path path) throws IOException {
+        byte tag = input.readByte();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_LONG:
+            return input.readLong();
+        case TAG_DECIMAL:
+            return new BigDecimal(input.readUTF());
+        case TAG_BYTES:
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return bytes;
+        default:
+            throw new IOException(MessageFormat.format(
+                    "Invalid index file: {0}",
+                    path));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "TsvSparseIndex(interval={0}, entries={1})",
+                String.valueOf(interval),
+                String.valueOf(keys.size()));
+    }
+}
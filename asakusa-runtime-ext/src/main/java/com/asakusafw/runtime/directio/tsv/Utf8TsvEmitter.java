@@ -0,0 +1,689 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Emits UTF-8 encoded TSV files directly into bytes.
+ * This emits the same format as {@link com.asakusafw.runtime.io.TsvEmitter},
+ * but it never encodes characters: text fields are copied from {@link Text} as is.
+ * Tabs and line feeds in text fields are always escaped, even if custom separators are used.
+ * Numbers, decimals and dates are also formatted directly into the output buffer without intermediate strings.
+ * <p>
+ * Each {@code emitNonNull(..)} method is for fields which never contain {@code null} values.
+ * They report such {@code null} values to the {@link NullViolationCounter}.
+ * </p>
+ * @since 0.6.0
+ */
+public class Utf8TsvEmitter implements Closeable, Flushable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    static final byte ESCAPE = '\\';
+
+    private static final byte[] NULL_VALUE = { '\\', 'N' };
+
+    private static final byte[] LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE).getBytes(Utf8TsvParser.ASCII);
+
+    private static final byte[] DIGIT_TENS = new byte[100];
+
+    private static final byte[] DIGIT_ONES = new byte[100];
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (byte) ('0' + i / 10);
+            DIGIT_ONES[i] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+        long value = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = value;
+            value *= 10;
+        }
+    }
+
+    private static final int SECONDS_PER_DAY = 86400;
+
+    private static final int TIME_LENGTH = " HH:mm:ss".length(); //$NON-NLS-1$
+
+    private static final int[] DAYS_BEFORE_MONTH = {
+        0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334, 365,
+    };
+
+    private static final int DAYS_PER_400_YEARS = 146097;
+
+    private static final int DAYS_PER_100_YEARS = 36524;
+
+    private static final int DAYS_PER_4_YEARS = 1461;
+
+    private final OutputStream output;
+
+    private final NullViolationCounter violations;
+
+    private final byte fieldSeparator;
+
+    private final byte[] lineSeparator;
+
+    private final byte recordTerminator;
+
+    private final boolean crlf;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    private final byte[] cachedDate = new byte[16];
+
+    private int cachedDateLength;
+
+    private int cachedDays = -1;
+
+    private boolean headOfRecord = true;
+
+    /**
+     * Creates a new instance.
+     * @param output the destination output
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public Utf8TsvEmitter(OutputStream output) {
+        this(output, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param output the destination output
+     * @param violations the counter for {@code null} values in non-nullable fields (nullable)
+     * @throws IllegalArgumentException if {@code output} is {@code null}
+     */
+    public Utf8TsvEmitter(OutputStream output, NullViolationCounter violations) {
+        this(output, violations, TsvSeparators.DEFAULT_FIELD_SEPARATOR, TsvSeparators.DEFAULT_LINE_SEPARATOR);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param output the destination output
+     * @param violations the counter for {@code null} values in non-nullable fields (nullable)
+     * @param fieldSeparator the field separator character
+     * @param lineSeparator the record separator, {@code "\r\n"} or a single character
+     * @throws IllegalArgumentException if some parameters were {@code null}, or separators are not valid
+     * @see TsvSeparators
+     */
+    public Utf8TsvEmitter(
+            OutputStream output,
+            NullViolationCounter violations,
+            char fieldSeparator,
+            String lineSeparator) {
+        if (output == null) {
+            throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
+        }
+        TsvSeparators.checkSeparators(fieldSeparator, lineSeparator);
+        this.output = output;
+        this.violations = violations;
+        this.fieldSeparator = (byte) fieldSeparator;
+        this.lineSeparator = lineSeparator.getBytes(Utf8TsvParser.ASCII);
+        this.recordTerminator = (byte) TsvSeparators.getLastCharacter(lineSeparator);
+        this.crlf = lineSeparator.equals(TsvSeparators.CRLF);
+    }
+
+    /**
+     * Ends the current record.
+     * @throws IOException if failed to write the record
+     */
+    public void endRecord() throws IOException {
+        byte[] separator = lineSeparator;
+        ensure(separator.length);
+        System.arraycopy(separator, 0, buffer, position, separator.length);
+        position += separator.length;
+        headOfRecord = true;
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(BooleanOption option) throws IOException {
+        if (startField(option)) {
+            writeBoolean(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(BooleanOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeBoolean(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(ByteOption option) throws IOException {
+        if (startField(option)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(ByteOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(ShortOption option) throws IOException {
+        if (startField(option)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(ShortOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(IntOption option) throws IOException {
+        if (startField(option)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(IntOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(LongOption option) throws IOException {
+        if (startField(option)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(LongOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeLong(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(FloatOption option) throws IOException {
+        if (startField(option)) {
+            writeAscii(String.valueOf(option.get()));
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(FloatOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeAscii(String.valueOf(option.get()));
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(DoubleOption option) throws IOException {
+        if (startField(option)) {
+            writeAscii(String.valueOf(option.get()));
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(DoubleOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeAscii(String.valueOf(option.get()));
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(DecimalOption option) throws IOException {
+        if (startField(option)) {
+            writeDecimal(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(DecimalOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeDecimal(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(StringOption option) throws IOException {
+        if (startField(option)) {
+            writeText(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(StringOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeText(option.get());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(DateOption option) throws IOException {
+        if (startField(option)) {
+            writeDate(option.get().getElapsedDays());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(DateOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeDate(option.get().getElapsedDays());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @throws IOException if failed to emit the field
+     */
+    public void emit(DateTimeOption option) throws IOException {
+        if (startField(option)) {
+            writeDateTime(option.get().getElapsedSeconds());
+        }
+    }
+
+    /**
+     * Emits the option as the next field.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to emit the field
+     */
+    public void emitNonNull(DateTimeOption option, String fieldName) throws IOException {
+        if (startNonNullField(option, fieldName)) {
+            writeDateTime(option.get().getElapsedSeconds());
+        }
+    }
+
+    /**
+     * Starts a new field.
+     * @param option the field value
+     * @return {@code true} if the value must be written, or {@code false} if it was {@code null}
+     * @throws IOException if failed to write the field
+     */
+    private boolean startField(ValueOption<?> option) throws IOException {
+        ensure(1);
+        if (headOfRecord) {
+            headOfRecord = false;
+        } else {
+            buffer[position++] = fieldSeparator;
+        }
+        if (option.isNull()) {
+            writeNull();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean startNonNullField(ValueOption<?> option, String fieldName) throws IOException {
+        if (option.isNull() && violations != null) {
+            violations.violation(fieldName);
+        }
+        return startField(option);
+    }
+
+    private void writeNull() throws IOException {
+        ensure(NULL_VALUE.length);
+        buffer[position++] = NULL_VALUE[0];
+        buffer[position++] = NULL_VALUE[1];
+    }
+
+    private void writeBoolean(boolean value) throws IOException {
+        ensure(1);
+        buffer[position++] = (byte) (value ? '1' : '0');
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            ensure(LONG_MIN_VALUE.length);
+            System.arraycopy(LONG_MIN_VALUE, 0, buffer, position, LONG_MIN_VALUE.length);
+            position += LONG_MIN_VALUE.length;
+            return;
+        }
+        ensure(20);
+        long rest = value;
+        if (rest < 0) {
+            buffer[position++] = '-';
+            rest = -rest;
+        }
+        position = putDigits(buffer, position, rest, countDigits(rest));
+    }
+
+    /**
+     * Puts the decimal digits of the non-negative value.
+     * @param b the target buffer
+     * @param offset the buffer offset
+     * @param value the non-negative value
+     * @param digits the number of digits to put (with leading zeros)
+     * @return the next buffer offset
+     */
+    private static int putDigits(byte[] b, int offset, long value, int digits) {
+        int p = offset + digits;
+        long rest = value;
+        while (rest >= Integer.MAX_VALUE) {
+            long q = rest / 100;
+            int r = (int) (rest - q * 100);
+            rest = q;
+            b[--p] = DIGIT_ONES[r];
+            b[--p] = DIGIT_TENS[r];
+        }
+        int small = (int) rest;
+        while (small >= 100) {
+            int q = small / 100;
+            int r = small - q * 100;
+            small = q;
+            b[--p] = DIGIT_ONES[r];
+            b[--p] = DIGIT_TENS[r];
+        }
+        if (small >= 10) {
+            b[--p] = DIGIT_ONES[small];
+            b[--p] = DIGIT_TENS[small];
+        } else {
+            b[--p] = DIGIT_ONES[small];
+        }
+        while (p > offset) {
+            b[--p] = '0';
+        }
+        return offset + digits;
+    }
+
+    private static int countDigits(long value) {
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            if (value < POWERS_OF_TEN[i]) {
+                return i;
+            }
+        }
+        return POWERS_OF_TEN.length;
+    }
+
+    private void writeDecimal(BigDecimal value) throws IOException {
+        int scale = value.scale();
+        if (value.precision() >= POWERS_OF_TEN.length || scale >= POWERS_OF_TEN.length || scale < 0) {
+            writeAscii(value.toPlainString());
+            return;
+        }
+        long unscaled = value.unscaledValue().longValue();
+        ensure(POWERS_OF_TEN.length * 2 + 2);
+        byte[] b = buffer;
+        int p = position;
+        if (unscaled < 0) {
+            b[p++] = '-';
+            unscaled = -unscaled;
+        }
+        if (scale == 0) {
+            p = putDigits(b, p, unscaled, countDigits(unscaled));
+        } else {
+            long divisor = POWERS_OF_TEN[scale];
+            long integral = unscaled / divisor;
+            p = putDigits(b, p, integral, countDigits(integral));
+            b[p++] = '.';
+            p = putDigits(b, p, unscaled - integral * divisor, scale);
+        }
+        position = p;
+    }
+
+    private void writeAscii(String value) throws IOException {
+        int length = value.length();
+        ensure(length);
+        byte[] b = buffer;
+        int p = position;
+        for (int i = 0; i < length; i++) {
+            b[p++] = (byte) value.charAt(i);
+        }
+        position = p;
+    }
+
+    private void writeText(Text text) throws IOException {
+        byte[] source = text.getBytes();
+        int length = text.getLength();
+        byte fieldSep = fieldSeparator;
+        byte recordSep = recordTerminator;
+        boolean escapeCr = crlf;
+        int offset = 0;
+        while (offset < length) {
+            if (position + 2 > buffer.length) {
+                flushBuffer();
+            }
+            byte[] b = buffer;
+            int p = position;
+            int limit = b.length - 1;
+            while (offset < length && p < limit) {
+                byte c = source[offset++];
+                if (c == ESCAPE || c == '\t' || c == '\n'
+                        || c == fieldSep || c == recordSep || (escapeCr && c == '\r')) {
+                    b[p++] = ESCAPE;
+                }
+                b[p++] = c;
+            }
+            position = p;
+        }
+    }
+
+    private void writeDate(int elapsedDays) throws IOException {
+        if (elapsedDays != cachedDays) {
+            formatDate(elapsedDays);
+        }
+        ensure(cachedDateLength);
+        System.arraycopy(cachedDate, 0, buffer, position, cachedDateLength);
+        position += cachedDateLength;
+    }
+
+    private void writeDateTime(long elapsedSeconds) throws IOException {
+        writeDate((int) (elapsedSeconds / SECONDS_PER_DAY));
+        ensure(TIME_LENGTH);
+        int seconds = (int) (elapsedSeconds % SECONDS_PER_DAY);
+        int minutes = seconds / 60;
+        byte[] b = buffer;
+        int p = position;
+        b[p++] = ' ';
+        p = putTwoDigits(b, p, minutes / 60);
+        b[p++] = ':';
+        p = putTwoDigits(b, p, minutes % 60);
+        b[p++] = ':';
+        p = putTwoDigits(b, p, seconds % 60);
+        position = p;
+    }
+
+    /**
+     * Formats the date into the cache.
+     * Business dates are usually repeated in consecutive records, so that this keeps the last result.
+     * @param elapsedDays the number of elapsed days from {@code 0001-01-01}
+     */
+    private void formatDate(int elapsedDays) {
+        cachedDateLength = formatDate(elapsedDays, cachedDate, 0);
+        cachedDays = elapsedDays;
+    }
+
+    /**
+     * Formats the date as {@code yyyy-MM-dd} into the buffer.
+     * @param elapsedDays the number of elapsed days from {@code 0001-01-01}
+     * @param b the destination buffer, which must have at least 16 bytes from the offset
+     * @param offset the offset in the buffer
+     * @return the end offset of the formatted date
+     */
+    static int formatDate(int elapsedDays, byte[] b, int offset) {
+        int n400 = elapsedDays / DAYS_PER_400_YEARS;
+        int rest = elapsedDays % DAYS_PER_400_YEARS;
+        int n100 = Math.min(rest / DAYS_PER_100_YEARS, 3);
+        rest -= n100 * DAYS_PER_100_YEARS;
+        int n4 = rest / DAYS_PER_4_YEARS;
+        rest %= DAYS_PER_4_YEARS;
+        int n1 = Math.min(rest / 365, 3);
+        rest -= n1 * 365;
+        int year = n400 * 400 + n100 * 100 + n4 * 4 + n1 + 1;
+        boolean leap = Utf8TsvParser.isLeap(year);
+        int month = 1;
+        while (month < 12 && rest >= DAYS_BEFORE_MONTH[month] + (leap && month >= 2 ? 1 : 0)) {
+            month++;
+        }
+        int day = rest - DAYS_BEFORE_MONTH[month - 1] - (leap && month > 2 ? 1 : 0) + 1;
+
+        int p = putDigits(b, offset, year, Math.max(countDigits(year), 4));
+        b[p++] = '-';
+        p = putTwoDigits(b, p, month);
+        b[p++] = '-';
+        p = putTwoDigits(b, p, day);
+        return p;
+    }
+
+    private static int putTwoDigits(byte[] b, int offset, int value) {
+        b[offset] = DIGIT_TENS[value];
+        b[offset + 1] = DIGIT_ONES[value];
+        return offset + 2;
+    }
+
+    private void ensure(int size) throws IOException {
+        if (position + size > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        output.close();
+    }
+}
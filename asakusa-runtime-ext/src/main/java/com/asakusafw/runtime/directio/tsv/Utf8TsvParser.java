@@ -0,0 +1,1014 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Parses UTF-8 encoded TSV files directly from bytes.
+ * This accepts the same format as {@link com.asakusafw.runtime.io.TsvParser},
+ * but it never decodes characters: text fields are copied into {@link Text} as is.
+ * If the input is a {@link MappedFileInputStream}, this parses its mapped windows directly
+ * instead of copying them into the parser buffer.
+ * <p>
+ * The field and record separators can be configured with {@link #Utf8TsvParser(InputStream, NullViolationCounter, char, String)}.
+ * If the record separator is {@code "\r\n"}, the records are split by {@code '\n'},
+ * and the trailing unescaped {@code '\r'} of each record is removed.
+ * </p>
+ * <p>
+ * Each {@code fillNonNull(..)} method is for fields which never contain {@code null} values.
+ * They scan the field only once and parse it directly, without tracking escape sequences.
+ * Only if the field has any escape sequences (including the {@code null} marker) or is not valid,
+ * they fall back to the same path as {@code fill(..)}, and report {@code null} values to
+ * the {@link NullViolationCounter}.
+ * </p>
+ * @since 0.6.0
+ */
+public class Utf8TsvParser implements Closeable {
+
+    static final Charset ASCII = Charset.forName("US-ASCII"); //$NON-NLS-1$
+
+    static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    static final String CRLF = TsvSeparators.CRLF;
+
+    static final byte CR = '\r';
+
+    static final byte ESCAPE = '\\';
+
+    static final byte NULL_MARKER = 'N';
+
+    private static final int[] DAYS_BEFORE_MONTH = {
+        0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334,
+    };
+
+    private final InputStream input;
+
+    private final MappedFileInputStream mapped;
+
+    private final NullViolationCounter violations;
+
+    private final byte fieldSeparator;
+
+    private final byte recordSeparator;
+
+    private final boolean crlf;
+
+    private byte[] array;
+
+    private ByteBuffer buffer;
+
+    private int limit;
+
+    private boolean sawEof;
+
+    private int nextRecord;
+
+    private int recordEnd = -1;
+
+    private int fieldPosition;
+
+    private int fieldStart;
+
+    private int fieldEnd;
+
+    private boolean fieldEscaped;
+
+    private int fieldIndex;
+
+    private long plainLong;
+
+    private long recordIndex;
+
+    private byte[] scratchBytes = new byte[256];
+
+    private char[] scratchChars = new char[64];
+
+    private final Text scratchText = new Text();
+
+    private final Date scratchDate = new Date();
+
+    private final DateTime scratchDateTime = new DateTime();
+
+    /**
+     * Creates a new instance.
+     * @param input the source input
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public Utf8TsvParser(InputStream input) {
+        this(input, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param input the source input
+     * @param violations the counter for {@code null} values in non-nullable fields (nullable)
+     * @throws IllegalArgumentException if {@code input} is {@code null}
+     */
+    public Utf8TsvParser(InputStream input, NullViolationCounter violations) {
+        this(input, violations, TsvSeparators.DEFAULT_FIELD_SEPARATOR, TsvSeparators.DEFAULT_LINE_SEPARATOR);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param input the source input
+     * @param violations the counter for {@code null} values in non-nullable fields (nullable)
+     * @param fieldSeparator the field separator character
+     * @param lineSeparator the record separator, {@code "\r\n"} or a single character
+     * @throws IllegalArgumentException if some parameters were {@code null}, or separators are not valid
+     * @see TsvSeparators
+     */
+    public Utf8TsvParser(
+            InputStream input,
+            NullViolationCounter violations,
+            char fieldSeparator,
+            String lineSeparator) {
+        if (input == null) {
+            throw new IllegalArgumentException("input must not be null"); //$NON-NLS-1$
+        }
+        TsvSeparators.checkSeparators(fieldSeparator, lineSeparator);
+        this.input = input;
+        this.violations = violations;
+        this.fieldSeparator = (byte) fieldSeparator;
+        this.recordSeparator = (byte) TsvSeparators.getLastCharacter(lineSeparator);
+        this.crlf = lineSeparator.equals(CRLF);
+        this.mapped = input instanceof MappedFileInputStream ? (MappedFileInputStream) input : null;
+        this.array = new byte[mapped == null ? INITIAL_BUFFER_SIZE : 0];
+        this.buffer = ByteBuffer.wrap(array);
+    }
+
+    /**
+     * Moves to the next record.
+     * @return {@code true} if the next record exists, or {@code false} if there are no more records
+     * @throws IOException if failed to read the next record
+     */
+    public boolean next() throws IOException {
+        int scan = nextRecord;
+        int escapedUntil = -1;
+        byte separator = recordSeparator;
+        while (true) {
+            ByteBuffer b = buffer;
+            int i = scan;
+            int end = limit;
+            boolean found = false;
+            while (i < end) {
+                byte c = b.get(i);
+                if (c == separator) {
+                    found = true;
+                    break;
+                } else if (c == ESCAPE) {
+                    if (i + 1 >= end) {
+                        break;
+                    }
+                    i += 2;
+                    escapedUntil = i;
+                } else {
+                    i++;
+                }
+            }
+            if (found) {
+                fieldPosition = nextRecord;
+                recordEnd = trimCarriageReturn(i, escapedUntil);
+                nextRecord = i + 1;
+                break;
+            }
+            if (sawEof) {
+                if (nextRecord >= limit) {
+                    return false;
+                }
+                fieldPosition = nextRecord;
+                recordEnd = trimCarriageReturn(limit, escapedUntil);
+                nextRecord = limit;
+                break;
+            }
+            int scanned = i - nextRecord;
+            int escaped = escapedUntil - nextRecord;
+            fillBuffer();
+            scan = nextRecord + scanned;
+            escapedUntil = nextRecord + escaped;
+        }
+        fieldIndex = 0;
+        recordIndex++;
+        return true;
+    }
+
+    private int trimCarriageReturn(int end, int escapedUntil) {
+        if (crlf && end > nextRecord && buffer.get(end - 1) == CR && escapedUntil != end) {
+            return end - 1;
+        }
+        return end;
+    }
+
+    private void fillBuffer() throws IOException {
+        int rest = limit - nextRecord;
+        if (mapped != null) {
+            // parses the mapped window directly, which also includes the rest of the previous one
+            ByteBuffer window = mapped.nextWindow(rest);
+            if (window == null) {
+                sawEof = true;
+            } else {
+                buffer = window;
+                nextRecord = 0;
+                limit = window.limit();
+            }
+            return;
+        }
+        if (nextRecord > 0) {
+            System.arraycopy(array, nextRecord, array, 0, rest);
+        } else if (rest == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+            buffer = ByteBuffer.wrap(array);
+        }
+        nextRecord = 0;
+        limit = rest;
+        int read = input.read(array, limit, array.length - limit);
+        if (read < 0) {
+            sawEof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private void nextField() throws IOException {
+        int i = fieldPosition;
+        int end = recordEnd;
+        if (i > end) {
+            throw new IOException(MessageFormat.format(
+                    "Too few fields in TSV record (record={0}, fields={1})",
+                    recordIndex,
+                    fieldIndex));
+        }
+        ByteBuffer b = buffer;
+        byte separator = fieldSeparator;
+        boolean escaped = false;
+        while (i < end) {
+            byte c = b.get(i);
+            if (c == separator) {
+                break;
+            } else if (c == ESCAPE) {
+                escaped = true;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        if (i > end) {
+            i = end;
+        }
+        fieldStart = fieldPosition;
+        fieldEnd = i;
+        fieldEscaped = escaped;
+        fieldPosition = i + 1;
+        fieldIndex++;
+    }
+
+    /**
+     * Moves to the next field only if it does not contain any escape sequences.
+     * @return {@code true} if moved, or {@code false} if the field has escape sequences or does not exist
+     */
+    private boolean nextPlainField() {
+        int i = fieldPosition;
+        int end = recordEnd;
+        if (i > end) {
+            return false;
+        }
+        ByteBuffer b = buffer;
+        byte separator = fieldSeparator;
+        while (i < end) {
+            byte c = b.get(i);
+            if (c == separator) {
+                break;
+            } else if (c == ESCAPE) {
+                return false;
+            }
+            i++;
+        }
+        setPlainField(i);
+        return true;
+    }
+
+    /**
+     * Parses the next field as an integer while scanning it, and then moves to the next field.
+     * The parsed value is stored into {@link #plainLong}.
+     * @param min the minimum value
+     * @param max the maximum value
+     * @return {@code true} if moved, or {@code false} if the field is not a valid integer (or {@code null})
+     */
+    private boolean nextPlainLong(long min, long max) {
+        int start = fieldPosition;
+        int end = recordEnd;
+        if (start >= end) {
+            return false;
+        }
+        ByteBuffer b = buffer;
+        byte separator = fieldSeparator;
+        int i = start;
+        boolean negative = false;
+        if (b.get(i) == '-') {
+            negative = true;
+            i++;
+        } else if (b.get(i) == '+') {
+            i++;
+        }
+        int digits = i;
+        long bound = negative ? min : -max;
+        long boundPerDigit = bound / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            byte c = b.get(i);
+            if (c == separator) {
+                break;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || result < boundPerDigit) {
+                return false;
+            }
+            result *= 10;
+            if (result < bound + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+        if (i == digits) {
+            return false;
+        }
+        setPlainField(i);
+        plainLong = negative ? result : -result;
+        return true;
+    }
+
+    private void setPlainField(int end) {
+        fieldStart = fieldPosition;
+        fieldEnd = end;
+        fieldEscaped = false;
+        fieldPosition = end + 1;
+        fieldIndex++;
+    }
+
+    private boolean isNullField() {
+        return fieldEscaped
+                && fieldEnd - fieldStart == 2
+                && buffer.get(fieldStart) == ESCAPE
+                && buffer.get(fieldStart + 1) == NULL_MARKER;
+    }
+
+    private void nullViolation(ValueOption<?> option, String fieldName) throws IOException {
+        if (violations != null) {
+            violations.violation(fieldName);
+        }
+        option.setNull();
+    }
+
+    /**
+     * Ends the current record.
+     * @throws IOException if the current record has more fields
+     */
+    public void endRecord() throws IOException {
+        if (fieldPosition <= recordEnd) {
+            throw new IOException(MessageFormat.format(
+                    "Too many fields in TSV record (record={0}, fields={1})",
+                    recordIndex,
+                    fieldIndex));
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(BooleanOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify(parseBoolean());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(BooleanOption option, String fieldName) throws IOException {
+        if (nextPlainField()) {
+            option.modify(parseBoolean());
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify(parseBoolean());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(ByteOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify((byte) parseLong(Byte.MIN_VALUE, Byte.MAX_VALUE, "BYTE")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(ByteOption option, String fieldName) throws IOException {
+        if (nextPlainLong(Byte.MIN_VALUE, Byte.MAX_VALUE)) {
+            option.modify((byte) plainLong);
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify((byte) parseLong(Byte.MIN_VALUE, Byte.MAX_VALUE, "BYTE")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(ShortOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify((short) parseLong(Short.MIN_VALUE, Short.MAX_VALUE, "SHORT")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(ShortOption option, String fieldName) throws IOException {
+        if (nextPlainLong(Short.MIN_VALUE, Short.MAX_VALUE)) {
+            option.modify((short) plainLong);
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify((short) parseLong(Short.MIN_VALUE, Short.MAX_VALUE, "SHORT")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(IntOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify((int) parseLong(Integer.MIN_VALUE, Integer.MAX_VALUE, "INT")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(IntOption option, String fieldName) throws IOException {
+        if (nextPlainLong(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            option.modify((int) plainLong);
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify((int) parseLong(Integer.MIN_VALUE, Integer.MAX_VALUE, "INT")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(LongOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify(parseLong(Long.MIN_VALUE, Long.MAX_VALUE, "LONG")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(LongOption option, String fieldName) throws IOException {
+        if (nextPlainLong(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            option.modify(plainLong);
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify(parseLong(Long.MIN_VALUE, Long.MAX_VALUE, "LONG")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(FloatOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify(parseFloat());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(FloatOption option, String fieldName) throws IOException {
+        if (nextPlainField()) {
+            option.modify(parseFloat());
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify(parseFloat());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(DoubleOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify(parseDouble());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(DoubleOption option, String fieldName) throws IOException {
+        if (nextPlainField()) {
+            option.modify(parseDouble());
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify(parseDouble());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(DecimalOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify(parseDecimal());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(DecimalOption option, String fieldName) throws IOException {
+        if (nextPlainField()) {
+            option.modify(parseDecimal());
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify(parseDecimal());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(StringOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            option.modify(parseText());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(StringOption option, String fieldName) throws IOException {
+        if (nextPlainField()) {
+            option.modify(parseText());
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            option.modify(parseText());
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(DateOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            scratchDate.setElapsedDays(parseDate());
+            option.modify(scratchDate);
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(DateOption option, String fieldName) throws IOException {
+        if (nextPlainField()) {
+            scratchDate.setElapsedDays(parseDate());
+            option.modify(scratchDate);
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            scratchDate.setElapsedDays(parseDate());
+            option.modify(scratchDate);
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @throws IOException if failed to parse the field
+     */
+    public void fill(DateTimeOption option) throws IOException {
+        nextField();
+        if (isNullField()) {
+            option.setNull();
+        } else {
+            scratchDateTime.setElapsedSeconds(parseDateTime());
+            option.modify(scratchDateTime);
+        }
+    }
+
+    /**
+     * Sets the next field value into the option.
+     * @param option the target option
+     * @param fieldName the field name (for diagnostics)
+     * @throws IOException if failed to parse the field
+     */
+    public void fillNonNull(DateTimeOption option, String fieldName) throws IOException {
+        if (nextPlainField()) {
+            scratchDateTime.setElapsedSeconds(parseDateTime());
+            option.modify(scratchDateTime);
+            return;
+        }
+        nextField();
+        if (isNullField()) {
+            nullViolation(option, fieldName);
+        } else {
+            scratchDateTime.setElapsedSeconds(parseDateTime());
+            option.modify(scratchDateTime);
+        }
+    }
+
+    private boolean parseBoolean() throws IOException {
+        if (fieldEnd - fieldStart == 1) {
+            byte c = buffer.get(fieldStart);
+            if (c == '1') {
+                return true;
+            } else if (c == '0') {
+                return false;
+            }
+        }
+        throw invalidField("BOOLEAN"); //$NON-NLS-1$
+    }
+
+    private long parseLong(long min, long max, String typeName) throws IOException {
+        ByteBuffer b = buffer;
+        int i = fieldStart;
+        int end = fieldEnd;
+        if (i >= end) {
+            throw invalidField(typeName);
+        }
+        boolean negative = false;
+        if (b.get(i) == '-') {
+            negative = true;
+            i++;
+        } else if (b.get(i) == '+') {
+            i++;
+        }
+        if (i >= end) {
+            throw invalidField(typeName);
+        }
+        long bound = negative ? min : -max;
+        long boundPerDigit = bound / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = b.get(i) - '0';
+            if (digit < 0 || digit > 9 || result < boundPerDigit) {
+                throw invalidField(typeName);
+            }
+            result *= 10;
+            if (result < bound + digit) {
+                throw invalidField(typeName);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private float parseFloat() throws IOException {
+        try {
+            return Float.parseFloat(fieldAsString());
+        } catch (NumberFormatException e) {
+            throw invalidField("FLOAT"); //$NON-NLS-1$
+        }
+    }
+
+    private double parseDouble() throws IOException {
+        try {
+            return Double.parseDouble(fieldAsString());
+        } catch (NumberFormatException e) {
+            throw invalidField("DOUBLE"); //$NON-NLS-1$
+        }
+    }
+
+    private BigDecimal parseDecimal() throws IOException {
+        int length = fieldEnd - fieldStart;
+        if (scratchChars.length < length) {
+            scratchChars = new char[Math.max(length, scratchChars.length * 2)];
+        }
+        char[] chars = scratchChars;
+        ByteBuffer b = buffer;
+        for (int i = 0, offset = fieldStart; i < length; i++) {
+            chars[i] = (char) (b.get(offset + i) & 0xff);
+        }
+        try {
+            return new BigDecimal(chars, 0, length);
+        } catch (NumberFormatException e) {
+            throw invalidField("DECIMAL"); //$NON-NLS-1$
+        }
+    }
+
+    private Text parseText() {
+        int length = fieldEnd - fieldStart;
+        if (fieldEscaped == false) {
+            if (buffer.hasArray()) {
+                scratchText.set(buffer.array(), buffer.arrayOffset() + fieldStart, length);
+            } else {
+                scratchText.set(copyField(length), 0, length);
+            }
+            return scratchText;
+        }
+        if (scratchBytes.length < length) {
+            scratchBytes = new byte[Math.max(length, scratchBytes.length * 2)];
+        }
+        ByteBuffer b = buffer;
+        byte[] out = scratchBytes;
+        int count = 0;
+        for (int i = fieldStart, end = fieldEnd; i < end; i++) {
+            byte c = b.get(i);
+            if (c == ESCAPE && i + 1 < end) {
+                c = b.get(++i);
+            }
+            out[count++] = c;
+        }
+        scratchText.set(out, 0, count);
+        return scratchText;
+    }
+
+    private int parseDate() throws IOException {
+        if (fieldEnd - fieldStart != 10
+                || buffer.get(fieldStart + 4) != '-'
+                || buffer.get(fieldStart + 7) != '-') {
+            throw invalidField("DATE"); //$NON-NLS-1$
+        }
+        int year = parseDigits(fieldStart, 4, "DATE"); //$NON-NLS-1$
+        int month = parseDigits(fieldStart + 5, 2, "DATE"); //$NON-NLS-1$
+        int day = parseDigits(fieldStart + 8, 2, "DATE"); //$NON-NLS-1$
+        if (isValidDate(year, month, day) == false) {
+            throw invalidField("DATE"); //$NON-NLS-1$
+        }
+        return toElapsedDays(year, month, day);
+    }
+
+    private long parseDateTime() throws IOException {
+        int s = fieldStart;
+        if (fieldEnd - s != 19
+                || buffer.get(s + 4) != '-'
+                || buffer.get(s + 7) != '-'
+                || buffer.get(s + 10) != ' '
+                || buffer.get(s + 13) != ':'
+                || buffer.get(s + 16) != ':') {
+            throw invalidField("DATETIME"); //$NON-NLS-1$
+        }
+        int year = parseDigits(s, 4, "DATETIME"); //$NON-NLS-1$
+        int month = parseDigits(s + 5, 2, "DATETIME"); //$NON-NLS-1$
+        int day = parseDigits(s + 8, 2, "DATETIME"); //$NON-NLS-1$
+        int hour = parseDigits(s + 11, 2, "DATETIME"); //$NON-NLS-1$
+        int minute = parseDigits(s + 14, 2, "DATETIME"); //$NON-NLS-1$
+        int second = parseDigits(s + 17, 2, "DATETIME"); //$NON-NLS-1$
+        if (isValidDate(year, month, day) == false || hour > 23 || minute > 59 || second > 59) {
+            throw invalidField("DATETIME"); //$NON-NLS-1$
+        }
+        long days = toElapsedDays(year, month, day);
+        return days * 86400L + hour * 3600L + minute * 60L + second;
+    }
+
+    private int parseDigits(int offset, int length, String typeName) throws IOException {
+        int result = 0;
+        ByteBuffer b = buffer;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int digit = b.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalidField(typeName);
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    static boolean isValidDate(int year, int month, int day) {
+        if (year < 1 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        return day <= getDaysInMonth(year, month);
+    }
+
+    static int getDaysInMonth(int year, int month) {
+        if (month == 12) {
+            return 31;
+        }
+        int days = DAYS_BEFORE_MONTH[month] - DAYS_BEFORE_MONTH[month - 1];
+        if (month == 2 && isLeap(year)) {
+            days++;
+        }
+        return days;
+    }
+
+    static boolean isLeap(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Returns the number of days since {@code 0001-01-01}.
+     * @param year the year
+     * @param month the month (1-12)
+     * @param day the day of month (1-31)
+     * @return the elapsed days
+     */
+    static int toElapsedDays(int year, int month, int day) {
+        int y = year - 1;
+        int days = y * 365 + y / 4 - y / 100 + y / 400;
+        days += DAYS_BEFORE_MONTH[month - 1];
+        if (month > 2 && isLeap(year)) {
+            days++;
+        }
+        return days + day - 1;
+    }
+
+    private String fieldAsString() {
+        int length = fieldEnd - fieldStart;
+        return new String(copyField(length), 0, length, ASCII);
+    }
+
+    private byte[] copyField(int length) {
+        if (scratchBytes.length < length) {
+            scratchBytes = new byte[Math.max(length, scratchBytes.length * 2)];
+        }
+        ByteBuffer b = buffer;
+        byte[] out = scratchBytes;
+        for (int i = 0, offset = fieldStart; i < length; i++) {
+            out[i] = b.get(offset + i);
+        }
+        return out;
+    }
+
+    private IOException invalidField(String typeName) {
+        int length = Math.min(fieldEnd - fieldStart, 100);
+        String content = new String(copyField(length), 0, length, Charset.forName("UTF-8")); //$NON-NLS-1$
+        return new IOException(MessageFormat.format(
+                "Invalid {0} value \"{1}\" in TSV record (record={2}, field={3})",
+                typeName,
+                content,
+                recordIndex,
+                fieldIndex));
+    }
+
+    @Override
+    public void close() throws IOException {
+        // drops the mapped window before it is unmapped
+        buffer = ByteBuffer.wrap(array);
+        limit = 0;
+        nextRecord = 0;
+        recordEnd = -1;
+        input.close();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * An {@link OutputStream} which chooses whether to compress the data or not by its size.
+ * This keeps the head of the data on the memory, and writes it as is if the data is smaller than the threshold.
+ * The buffer for the head grows as the data is written, up to the threshold.
+ * Otherwise, this compresses the whole data in gzip format with {@link ParallelGzipOutputStream}.
+ * <p>
+ * Readers can detect the chosen format from the head of the file by using {@link CompressionDetectingInputStream}.
+ * Uncompressed data which starts with the gzip magic number is always compressed to avoid ambiguity.
+ * </p>
+ * @since 0.6.0
+ */
+public class AdaptiveCompressionOutputStream extends OutputStream {
+
+    /**
+     * The default threshold size in bytes.
+     */
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    /**
+     * The codec name of the compressed data.
+     * @see #getCodecName()
+     */
+    public static final String CODEC_NAME = "gzip"; //$NON-NLS-1$
+
+    static final int INITIAL_HEAD_SIZE = 4 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final OutputStream out;
+
+    private final int threshold;
+
+    private final long targetThroughput;
+
+    private final Configuration conf;
+
+    private byte[] head;
+
+    private int headLength;
+
+    private OutputStream compressed;
+
+    private boolean closed;
+
+    /**
+     * Creates a new instance.
+     * @param out the destination output
+     * @param threshold the minimum data size in bytes to be compressed, or {@code <= 0} to use the default
+     * @param targetThroughput the target compression throughput of each thread in bytes per second,
+     *     or {@code <= 0} to use the default deflate level
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @see ParallelGzipOutputStream#setTargetThroughput(long)
+     */
+    public AdaptiveCompressionOutputStream(OutputStream out, long threshold, long targetThroughput) {
+        this(out, threshold, targetThroughput, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param out the destination output
+     * @param threshold the minimum data size in bytes to be compressed, or {@code <= 0} to use the default
+     * @param targetThroughput the target compression throughput of each thread in bytes per second,
+     *     or {@code <= 0} to use the default deflate level
+     * @param conf the task configuration which decides the number of compression threads (nullable)
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @see ParallelGzipOutputStream#ParallelGzipOutputStream(OutputStream, Configuration)
+     */
+    public AdaptiveCompressionOutputStream(
+            OutputStream out,
+            long threshold,
+            long targetThroughput,
+            Configuration conf) {
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null"); //$NON-NLS-1$
+        }
+        this.out = out;
+        this.targetThroughput = targetThroughput;
+        this.conf = conf;
+        this.threshold = threshold <= 0 ? DEFAULT_THRESHOLD : (int) Math.min(threshold, Integer.MAX_VALUE - 8);
+        this.head = EMPTY;
+    }
+
+    /**
+     * Returns whether this stream compresses the data or not.
+     * This may change from {@code false} to {@code true} while writing the data.
+     * @return {@code true} if the data is compressed, otherwise {@code false}
+     */
+    public boolean isCompressed() {
+        return compressed != null;
+    }
+
+    /**
+     * Returns the codec name of the written data.
+     * This may change from {@code null} to {@link #CODEC_NAME} while writing the data,
+     * and is decided when this stream is closed.
+     * @return {@link #CODEC_NAME} if the data is compressed, or {@code null} if it is written as is
+     */
+    public String getCodecName() {
+        return isCompressed() ? CODEC_NAME : null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (compressed != null) {
+            compressed.write(b);
+        } else if (headLength < threshold) {
+            prepareHead(1);
+            head[headLength++] = (byte) b;
+        } else {
+            startCompression().write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (compressed != null) {
+            compressed.write(b, off, len);
+        } else if (len <= threshold - headLength) {
+            prepareHead(len);
+            System.arraycopy(b, off, head, headLength, len);
+            headLength += len;
+        } else {
+            startCompression().write(b, off, len);
+        }
+    }
+
+    private void prepareHead(int additional) {
+        int required = headLength + additional;
+        if (required <= head.length) {
+            return;
+        }
+        long size = Math.min(threshold, Math.max(head.length * 2L, INITIAL_HEAD_SIZE));
+        head = Arrays.copyOf(head, (int) Math.max(size, required));
+    }
+
+    private OutputStream startCompression() throws IOException {
+        if (closed) {
+            throw new IOException("stream is already closed");
+        }
+        ParallelGzipOutputStream stream = new ParallelGzipOutputStream(out, conf);
+        if (targetThroughput > 0) {
+            stream.setTargetThroughput(targetThroughput);
+        }
+        compressed = stream;
+        stream.write(head, 0, headLength);
+        head = null;
+        headLength = 0;
+        return stream;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (compressed != null) {
+            compressed.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (compressed == null && CompressionDetectingInputStream.isGzip(head, headLength)) {
+            startCompression();
+        }
+        closed = true;
+        if (compressed != null) {
+            compressed.close();
+        } else {
+            try {
+                out.write(head, 0, headLength);
+            } finally {
+                head = null;
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+
+/**
+ * Opens compression streams with compressors and decompressors borrowed from {@link CodecPool}.
+ * The borrowed objects are returned to the pool when the created streams are closed.
+ * @since 0.6.0
+ */
+public final class CodecPoolSupport {
+
+    private CodecPoolSupport() {
+        return;
+    }
+
+    /**
+     * Creates a decompression stream.
+     * If the codec does not provide any pooled decompressors,
+     * this just returns {@link CompressionCodec#createInputStream(InputStream)}.
+     * @param codec the compression codec
+     * @param in the compressed input
+     * @return the decompression stream
+     * @throws IOException if failed to create the stream
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static InputStream createInputStream(CompressionCodec codec, InputStream in) throws IOException {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec must not be null"); //$NON-NLS-1$
+        }
+        if (in == null) {
+            throw new IllegalArgumentException("in must not be null"); //$NON-NLS-1$
+        }
+        Decompressor decompressor = CodecPool.getDecompressor(codec);
+        if (decompressor == null) {
+            return codec.createInputStream(in);
+        }
+        boolean succeed = false;
+        try {
+            InputStream result = new PooledInputStream(codec.createInputStream(in, decompressor), decompressor);
+            succeed = true;
+            return result;
+        } finally {
+            if (succeed == false) {
+                CodecPool.returnDecompressor(decompressor);
+            }
+        }
+    }
+
+    /**
+     * Creates a compression stream.
+     * If the codec does not provide any pooled compressors,
+     * this just returns {@link CompressionCodec#createOutputStream(OutputStream)}.
+     * @param codec the compression codec
+     * @param out the compressed output
+     * @return the compression stream
+     * @throws IOException if failed to create the stream
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static OutputStream createOutputStream(CompressionCodec codec, OutputStream out) throws IOException {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec must not be null"); //$NON-NLS-1$
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null"); //$NON-NLS-1$
+        }
+        Compressor compressor = CodecPool.getCompressor(codec);
+        if (compressor == null) {
+            return codec.createOutputStream(out);
+        }
+        boolean succeed = false;
+        try {
+            OutputStream result = new PooledOutputStream(codec.createOutputStream(out, compressor), compressor);
+            succeed = true;
+            return result;
+        } finally {
+            if (succeed == false) {
+                CodecPool.returnCompressor(compressor);
+            }
+        }
+    }
+
+    private static final class PooledInputStream extends FilterInputStream {
+
+        private Decompressor decompressor;
+
+        PooledInputStream(InputStream in, Decompressor decompressor) {
+            super(in);
+            this.decompressor = decompressor;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (decompressor != null) {
+                    CodecPool.returnDecompressor(decompressor);
+                    decompressor = null;
+                }
+            }
+        }
+    }
+
+    private static final class PooledOutputStream extends FilterOutputStream {
+
+        private final CompressionOutputStream delegate;
+
+        private Compressor compressor;
+
+        PooledOutputStream(CompressionOutputStream out, Compressor compressor) {
+            super(out);
+            this.delegate = out;
+            this.compressor = compressor;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } finally {
+                if (compressor != null) {
+                    CodecPool.returnCompressor(compressor);
+                    compressor = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * An {@link InputStream} which decodes gzip data only if the source input starts with the gzip magic number.
+ * Otherwise, this provides the source input as is.
+ * @see AdaptiveCompressionOutputStream
+ * @since 0.6.0
+ */
+public class CompressionDetectingInputStream extends InputStream {
+
+    private static final int MAGIC_LENGTH = 2;
+
+    private final InputStream in;
+
+    private InputStream current;
+
+    /**
+     * Creates a new instance.
+     * @param in the source input
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public CompressionDetectingInputStream(InputStream in) {
+        if (in == null) {
+            throw new IllegalArgumentException("in must not be null"); //$NON-NLS-1$
+        }
+        this.in = in;
+    }
+
+    /**
+     * Returns whether the data starts with the gzip magic number or not.
+     * @param b the buffer
+     * @param length the available data length in the buffer
+     * @return {@code true} if it starts with the gzip magic number, otherwise {@code false}
+     */
+    static boolean isGzip(byte[] b, int length) {
+        return length >= MAGIC_LENGTH && b[0] == (byte) 0x1f && b[1] == (byte) 0x8b;
+    }
+
+    private InputStream prepare() throws IOException {
+        if (current == null) {
+            PushbackInputStream pushback = new PushbackInputStream(in, MAGIC_LENGTH);
+            byte[] magic = new byte[MAGIC_LENGTH];
+            int length = 0;
+            while (length < magic.length) {
+                int read = pushback.read(magic, length, magic.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            pushback.unread(magic, 0, length);
+            current = isGzip(magic, length) ? new ParallelGzipInputStream(pushback) : pushback;
+        }
+        return current;
+    }
+
+    /**
+     * Returns whether the source input is compressed or not.
+     * @return {@code true} if it is compressed, otherwise {@code false}
+     * @throws IOException if failed to read the source input
+     */
+    public boolean isCompressed() throws IOException {
+        return prepare() instanceof ParallelGzipInputStream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return prepare().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return prepare().read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        return prepare().skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return prepare().available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.close();
+        } else {
+            in.close();
+        }
+    }
+}
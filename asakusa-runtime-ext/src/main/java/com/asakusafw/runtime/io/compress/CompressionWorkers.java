@@ -0,0 +1,165 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Provides worker threads for compression streams.
+ * @since 0.6.0
+ */
+public final class CompressionWorkers {
+
+    static final Log LOG = LogFactory.getLog(CompressionWorkers.class);
+
+    /**
+     * The system property or configuration key of the number of shared worker threads
+     * (the number of CPU cores allocated to the task, or available processors without task configuration).
+     */
+    public static final String KEY_THREADS = "com.asakusafw.compress.threads";
+
+    static final String KEY_IS_MAP = "mapreduce.task.ismap"; //$NON-NLS-1$
+
+    static final String KEY_IS_MAP_OLD = "mapred.task.is.map"; //$NON-NLS-1$
+
+    static final String KEY_MAP_VCORES = "mapreduce.map.cpu.vcores"; //$NON-NLS-1$
+
+    static final String KEY_REDUCE_VCORES = "mapreduce.reduce.cpu.vcores"; //$NON-NLS-1$
+
+    static final int DEFAULT_TASK_VCORES = 1;
+
+    private static final Map<Integer, ExecutorService> SHARED = new HashMap<Integer, ExecutorService>();
+
+    private CompressionWorkers() {
+        return;
+    }
+
+    /**
+     * Returns the shared executor.
+     * Its threads are daemon, so that they never prevent the JVM from exiting.
+     * @return the shared executor
+     */
+    public static ExecutorService getSharedExecutor() {
+        return getSharedExecutor(getThreads(null));
+    }
+
+    /**
+     * Returns the shared executor which has the specified number of threads.
+     * Its threads are daemon, so that they never prevent the JVM from exiting.
+     * @param threads the number of threads
+     * @return the shared executor
+     * @throws IllegalArgumentException if the number of threads is not positive
+     * @see #getThreads(Configuration)
+     */
+    public static synchronized ExecutorService getSharedExecutor(int threads) {
+        ExecutorService executor = SHARED.get(threads);
+        if (executor == null) {
+            LOG.debug(MessageFormat.format(
+                    "Starting compression workers: {0}threads",
+                    threads));
+            executor = newExecutor(threads);
+            SHARED.put(threads, executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Creates a new executor with daemon threads.
+     * @param threads the number of threads
+     * @return the created executor
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public static ExecutorService newExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive"); //$NON-NLS-1$
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "asakusa-compress-" + counter.incrementAndGet()); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of worker threads for the task.
+     * This returns the value of {@link #KEY_THREADS} in the configuration or the system properties if it is set,
+     * and otherwise the number of CPU cores allocated to the current map or reduce task (1 by default).
+     * If the configuration is not available, this returns the number of available processors instead.
+     * @param conf the task configuration (nullable)
+     * @return the number of worker threads
+     */
+    public static int getThreads(Configuration conf) {
+        int defaultThreads = conf == null ? Runtime.getRuntime().availableProcessors() : getTaskVcores(conf);
+        String value = conf == null ? null : conf.get(KEY_THREADS);
+        if (value == null) {
+            value = System.getProperty(KEY_THREADS);
+        }
+        if (value == null) {
+            return defaultThreads;
+        }
+        try {
+            int threads = Integer.parseInt(value.trim());
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOG.warn(MessageFormat.format(
+                "Invalid number of compression threads \"{0}\" ({1}), use {2} instead",
+                value,
+                KEY_THREADS,
+                defaultThreads));
+        return defaultThreads;
+    }
+
+    private static int getTaskVcores(Configuration conf) {
+        String isMap = conf.get(KEY_IS_MAP);
+        if (isMap == null) {
+            isMap = conf.get(KEY_IS_MAP_OLD);
+        }
+        String key = isMap == null || Boolean.parseBoolean(isMap) ? KEY_MAP_VCORES : KEY_REDUCE_VCORES;
+        String value = conf.get(key);
+        if (value != null) {
+            try {
+                int vcores = Integer.parseInt(value.trim());
+                if (vcores > 0) {
+                    return vcores;
+                }
+            } catch (NumberFormatException e) {
+                LOG.debug(MessageFormat.format(
+                        "Invalid number of vcores \"{0}\" ({1})",
+                        value,
+                        key), e);
+            }
+        }
+        return DEFAULT_TASK_VCORES;
+    }
+}
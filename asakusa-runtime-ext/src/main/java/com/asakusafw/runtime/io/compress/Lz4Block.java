@@ -0,0 +1,237 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses LZ4 blocks.
+ * @since 0.6.0
+ */
+final class Lz4Block {
+
+    static final int MIN_MATCH = 4;
+
+    static final int MAX_DISTANCE = 0xffff;
+
+    private static final int LAST_LITERALS = 5;
+
+    private static final int MF_LIMIT = 12;
+
+    private static final int HASH_LOG = 16;
+
+    private static final int SKIP_TRIGGER = 6;
+
+    private static final int RUN_MASK = 0x0f;
+
+    private Lz4Block() {
+        return;
+    }
+
+    /**
+     * Returns the maximum compressed size of the data.
+     * @param length the source data length
+     * @return the maximum compressed size
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Creates a new hash table for {@link #compress(byte[], int, int, byte[], int, int[])}.
+     * @return the created table
+     */
+    static int[] newHashTable() {
+        return new int[1 << HASH_LOG];
+    }
+
+    /**
+     * Compresses the data into a LZ4 block.
+     * @param src the source buffer
+     * @param srcOffset the source offset
+     * @param srcLength the source length
+     * @param dst the destination buffer, which must have at least {@link #maxCompressedLength(int)} bytes
+     * @param dstOffset the destination offset
+     * @param table the working hash table, created by {@link #newHashTable()}
+     * @return the compressed length
+     */
+    static int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int[] table) {
+        Arrays.fill(table, -1);
+        int end = srcOffset + srcLength;
+        int matchLimit = end - LAST_LITERALS;
+        int mfLimit = end - MF_LIMIT;
+        int anchor = srcOffset;
+        int ip = srcOffset;
+        int op = dstOffset;
+        while (ip < mfLimit) {
+            int sequence = readInt(src, ip);
+            int hash = hash(sequence);
+            int ref = table[hash];
+            table[hash] = ip;
+            if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+                continue;
+            }
+            while (ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                matchLength++;
+            }
+            op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+            ip += matchLength;
+            anchor = ip;
+            if (ip < mfLimit) {
+                table[hash(readInt(src, ip - 2))] = ip - 2;
+            }
+        }
+        op = writeLiterals(src, anchor, end - anchor, dst, op);
+        return op - dstOffset;
+    }
+
+    private static int writeSequence(
+            byte[] src, int literalOffset, int literalLength,
+            int distance, int matchLength,
+            byte[] dst, int offset) {
+        int op = writeLiterals(src, literalOffset, literalLength, dst, offset);
+        int tokenOffset = offset;
+        dst[op++] = (byte) distance;
+        dst[op++] = (byte) (distance >>> 8);
+        int rest = matchLength - MIN_MATCH;
+        if (rest >= RUN_MASK) {
+            dst[tokenOffset] |= RUN_MASK;
+            op = writeLength(rest - RUN_MASK, dst, op);
+        } else {
+            dst[tokenOffset] |= rest;
+        }
+        return op;
+    }
+
+    private static int writeLiterals(byte[] src, int literalOffset, int literalLength, byte[] dst, int offset) {
+        int op = offset;
+        if (literalLength >= RUN_MASK) {
+            dst[op++] = (byte) (RUN_MASK << 4);
+            op = writeLength(literalLength - RUN_MASK, dst, op);
+        } else {
+            dst[op++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOffset, dst, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] dst, int offset) {
+        int op = offset;
+        int rest = length;
+        while (rest >= 0xff) {
+            dst[op++] = (byte) 0xff;
+            rest -= 0xff;
+        }
+        dst[op++] = (byte) rest;
+        return op;
+    }
+
+    /**
+     * Decompresses a LZ4 block.
+     * @param src the source buffer
+     * @param srcOffset the source offset
+     * @param srcLength the source length
+     * @param dst the destination buffer
+     * @param dstOffset the destination offset
+     * @param dstLimit the end offset of the destination buffer (exclusive)
+     * @param dstHistory the first offset in the destination buffer which matches can refer
+     * @return the end offset of the decompressed data in the destination buffer (exclusive)
+     * @throws IOException if the block is malformed
+     */
+    static int decompress(
+            byte[] src, int srcOffset, int srcLength,
+            byte[] dst, int dstOffset, int dstLimit, int dstHistory) throws IOException {
+        int ip = srcOffset;
+        int end = srcOffset + srcLength;
+        int op = dstOffset;
+        while (true) {
+            if (ip >= end) {
+                throw new IOException("LZ4 block is truncated");
+            }
+            int token = src[ip++] & 0xff;
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= end) {
+                        throw new IOException("LZ4 block is truncated");
+                    }
+                    b = src[ip++] & 0xff;
+                    literalLength += b;
+                } while (b == 0xff);
+            }
+            if (literalLength > end - ip || literalLength > dstLimit - op) {
+                throw new IOException("LZ4 block has an invalid literal length");
+            }
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip == end) {
+                return op;
+            }
+            if (end - ip < 2) {
+                throw new IOException("LZ4 block is truncated");
+            }
+            int distance = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+            ip += 2;
+            if (distance == 0 || op - distance < dstHistory) {
+                throw new IOException("LZ4 block has an invalid match offset");
+            }
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= end) {
+                        throw new IOException("LZ4 block is truncated");
+                    }
+                    b = src[ip++] & 0xff;
+                    matchLength += b;
+                } while (b == 0xff);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > dstLimit - op) {
+                throw new IOException("LZ4 block has an invalid match length");
+            }
+            int ref = op - distance;
+            if (distance >= matchLength) {
+                System.arraycopy(dst, ref, dst, op, matchLength);
+                op += matchLength;
+            } else {
+                for (int i = 0; i < matchLength; i++) {
+                    dst[op++] = dst[ref++];
+                }
+            }
+        }
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    static int readInt(byte[] b, int offset) {
+        return (b[offset] & 0xff)
+                | (b[offset + 1] & 0xff) << 8
+                | (b[offset + 2] & 0xff) << 16
+                | (b[offset + 3] & 0xff) << 24;
+    }
+}
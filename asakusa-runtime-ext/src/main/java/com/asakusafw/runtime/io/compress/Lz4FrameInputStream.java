@@ -0,0 +1,407 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} which decodes data in the LZ4 frame format.
+ * This stream accepts concatenated frames and skippable frames, but does not verify the optional checksums.
+ * <p>
+ * This stream can also read a fragment of the file, which starts from any byte offset.
+ * In this case, the fragment consists of the frames which start in the fragment range,
+ * and records are separated at the record terminator like as delimited text files:
+ * the data is skipped until the first record terminator if the fragment is not at head of the file,
+ * and then the data is decoded until the first record terminator after the end of the fragment range.
+ * </p>
+ * @see Lz4FrameOutputStream
+ * @since 0.6.0
+ */
+public class Lz4FrameInputStream extends InputStream {
+
+    private static final int SKIPPABLE_MAGIC = 0x184d2a50;
+
+    private static final int SKIPPABLE_MAGIC_MASK = 0xfffffff0;
+
+    private static final int MIN_HEADER_LENGTH = 4 + 2 + 1;
+
+    private static final int MAX_HEADER_LENGTH = 4 + 2 + 8 + 4 + 1;
+
+    private static final int HISTORY_SIZE = 64 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+
+    private final long limit;
+
+    private final int terminator;
+
+    private boolean seeking;
+
+    private boolean discarding;
+
+    private boolean tail;
+
+    private boolean finished;
+
+    private byte[] input = new byte[INITIAL_BUFFER_SIZE];
+
+    private int inputOffset;
+
+    private int inputLimit;
+
+    private boolean inputEof;
+
+    private long position;
+
+    private byte[] output = new byte[0];
+
+    private int outputOffset;
+
+    private int outputLimit;
+
+    private int decodedEnd;
+
+    private boolean inFrame;
+
+    private boolean blockIndependence;
+
+    private boolean blockChecksum;
+
+    private boolean contentChecksum;
+
+    private int maxBlockSize;
+
+    /**
+     * Creates a new instance which decodes the whole data.
+     * @param in the compressed input
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public Lz4FrameInputStream(InputStream in) {
+        if (in == null) {
+            throw new IllegalArgumentException("in must not be null"); //$NON-NLS-1$
+        }
+        this.in = in;
+        this.limit = Long.MAX_VALUE;
+        this.terminator = -1;
+    }
+
+    /**
+     * Creates a new instance which decodes a fragment of the data.
+     * @param in the compressed input, which is positioned at the beginning of the fragment
+     * @param fragmentSize the fragment size in bytes, or a negative value to read until the end of the file
+     * @param skipFirst {@code true} to skip until the first record terminator (for non-head fragments)
+     * @param terminator the record terminator
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public Lz4FrameInputStream(InputStream in, long fragmentSize, boolean skipFirst, char terminator) {
+        if (in == null) {
+            throw new IllegalArgumentException("in must not be null"); //$NON-NLS-1$
+        }
+        if (terminator > 0xff) {
+            throw new IllegalArgumentException("terminator must be a single byte character"); //$NON-NLS-1$
+        }
+        this.in = in;
+        this.limit = fragmentSize < 0 ? Long.MAX_VALUE : fragmentSize;
+        this.terminator = terminator;
+        this.seeking = skipFirst;
+        this.discarding = skipFirst;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (outputOffset >= outputLimit && fill() == false) {
+            return -1;
+        }
+        return output[outputOffset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (outputOffset >= outputLimit && fill() == false) {
+            return -1;
+        }
+        int count = Math.min(len, outputLimit - outputOffset);
+        System.arraycopy(output, outputOffset, b, off, count);
+        outputOffset += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long rest = n;
+        while (rest > 0) {
+            if (outputOffset >= outputLimit && fill() == false) {
+                break;
+            }
+            int count = (int) Math.min(rest, outputLimit - outputOffset);
+            outputOffset += count;
+            rest -= count;
+        }
+        return n - rest;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return outputLimit - outputOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input = null;
+        output = null;
+        finished = true;
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        while (finished == false) {
+            if (inFrame == false) {
+                if (nextFrame() == false) {
+                    finished = true;
+                    break;
+                }
+            } else if (nextBlock()) {
+                if (discarding) {
+                    int index = indexOfTerminator();
+                    if (index < 0) {
+                        outputOffset = outputLimit;
+                        continue;
+                    }
+                    outputOffset = index + 1;
+                    discarding = false;
+                    if (tail) {
+                        finished = true;
+                        break;
+                    }
+                }
+                if (tail) {
+                    int index = indexOfTerminator();
+                    if (index >= 0) {
+                        outputLimit = index + 1;
+                        finished = true;
+                    }
+                }
+                if (outputOffset < outputLimit) {
+                    return true;
+                }
+            }
+        }
+        outputOffset = outputLimit;
+        return false;
+    }
+
+    private int indexOfTerminator() {
+        byte t = (byte) terminator;
+        byte[] b = output;
+        for (int i = outputOffset, n = outputLimit; i < n; i++) {
+            if (b[i] == t) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nextFrame() throws IOException {
+        if (seeking) {
+            seeking = false;
+            if (seekFrame() == false) {
+                return false;
+            }
+        }
+        while (true) {
+            int available = fillInput(4);
+            if (available == 0) {
+                return false;
+            } else if (available < 4) {
+                throw new IOException("LZ4 frame is truncated");
+            }
+            int magic = Lz4Block.readInt(input, inputOffset);
+            if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+                if (fillInput(8) < 8) {
+                    throw new IOException("LZ4 skippable frame is truncated");
+                }
+                long size = Lz4Block.readInt(input, inputOffset + 4) & 0xffffffffL;
+                consume(8);
+                skipInput(size);
+                continue;
+            }
+            if (magic != Lz4FrameOutputStream.MAGIC) {
+                throw new IOException("Invalid LZ4 frame magic number");
+            }
+            available = fillInput(MAX_HEADER_LENGTH);
+            int length = parseHeader(inputOffset + 4, available - 4);
+            if (length < 0) {
+                throw new IOException("Invalid LZ4 frame header");
+            }
+            if (position >= limit) {
+                tail = true;
+            }
+            beginFrame(inputOffset + 4);
+            consume(4 + length);
+            return true;
+        }
+    }
+
+    private boolean seekFrame() throws IOException {
+        while (position < limit) {
+            int available = fillInput(MAX_HEADER_LENGTH);
+            if (available < MIN_HEADER_LENGTH) {
+                return false;
+            }
+            if (Lz4Block.readInt(input, inputOffset) == Lz4FrameOutputStream.MAGIC
+                    && parseHeader(inputOffset + 4, available - 4) >= 0) {
+                return true;
+            }
+            consume(1);
+        }
+        return false;
+    }
+
+    private int parseHeader(int offset, int available) {
+        if (available < 3) {
+            return -1;
+        }
+        int flg = input[offset] & 0xff;
+        int bd = input[offset + 1] & 0xff;
+        if ((flg & 0xc2) != Lz4FrameOutputStream.FLG_VERSION || (bd & 0x8f) != 0 || (bd >>> 4) < 4) {
+            return -1;
+        }
+        int length = 2;
+        if ((flg & Lz4FrameOutputStream.FLG_CONTENT_SIZE) != 0) {
+            length += 8;
+        }
+        if ((flg & Lz4FrameOutputStream.FLG_DICTIONARY_ID) != 0) {
+            length += 4;
+        }
+        if (available < length + 1) {
+            return -1;
+        }
+        int checksum = (XxHash32.hash(input, offset, length, 0) >>> 8) & 0xff;
+        if (checksum != (input[offset + length] & 0xff)) {
+            return -1;
+        }
+        return length + 1;
+    }
+
+    private void beginFrame(int offset) throws IOException {
+        int flg = input[offset] & 0xff;
+        int bd = input[offset + 1] & 0xff;
+        if ((flg & Lz4FrameOutputStream.FLG_DICTIONARY_ID) != 0) {
+            throw new IOException("LZ4 frames with dictionary ID are not supported");
+        }
+        blockIndependence = (flg & Lz4FrameOutputStream.FLG_BLOCK_INDEPENDENCE) != 0;
+        blockChecksum = (flg & Lz4FrameOutputStream.FLG_BLOCK_CHECKSUM) != 0;
+        contentChecksum = (flg & Lz4FrameOutputStream.FLG_CONTENT_CHECKSUM) != 0;
+        maxBlockSize = 1 << (8 + 2 * (bd >>> 4));
+        if (output.length < HISTORY_SIZE + maxBlockSize) {
+            output = new byte[HISTORY_SIZE + maxBlockSize];
+        }
+        decodedEnd = 0;
+        inFrame = true;
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (fillInput(4) < 4) {
+            throw new IOException("LZ4 block is truncated");
+        }
+        int header = Lz4Block.readInt(input, inputOffset);
+        consume(4);
+        if (header == 0) {
+            if (contentChecksum) {
+                skipInput(4);
+            }
+            inFrame = false;
+            return false;
+        }
+        boolean uncompressed = (header & Lz4FrameOutputStream.UNCOMPRESSED_BLOCK) != 0;
+        int length = header & ~Lz4FrameOutputStream.UNCOMPRESSED_BLOCK;
+        if (length > maxBlockSize) {
+            throw new IOException("LZ4 block is too large");
+        }
+        if (fillInput(length) < length) {
+            throw new IOException("LZ4 block is truncated");
+        }
+        int start = 0;
+        if (blockIndependence == false) {
+            start = Math.min(decodedEnd, HISTORY_SIZE);
+            System.arraycopy(output, decodedEnd - start, output, 0, start);
+        }
+        int end;
+        if (uncompressed) {
+            System.arraycopy(input, inputOffset, output, start, length);
+            end = start + length;
+        } else {
+            end = Lz4Block.decompress(input, inputOffset, length, output, start, start + maxBlockSize, 0);
+        }
+        consume(length);
+        if (blockChecksum) {
+            skipInput(4);
+        }
+        decodedEnd = end;
+        outputOffset = start;
+        outputLimit = end;
+        return true;
+    }
+
+    private int fillInput(int required) throws IOException {
+        int available = inputLimit - inputOffset;
+        if (available >= required || inputEof) {
+            return available;
+        }
+        if (required > input.length) {
+            byte[] newInput = new byte[Math.max(required, input.length * 2)];
+            System.arraycopy(input, inputOffset, newInput, 0, available);
+            input = newInput;
+        } else if (inputOffset > 0) {
+            System.arraycopy(input, inputOffset, input, 0, available);
+        }
+        inputOffset = 0;
+        inputLimit = available;
+        while (inputLimit < required) {
+            int read = in.read(input, inputLimit, input.length - inputLimit);
+            if (read < 0) {
+                inputEof = true;
+                break;
+            }
+            inputLimit += read;
+        }
+        return inputLimit - inputOffset;
+    }
+
+    private void consume(int length) {
+        inputOffset += length;
+        position += length;
+    }
+
+    private void skipInput(long length) throws IOException {
+        long rest = length;
+        while (rest > 0) {
+            int available = fillInput(1);
+            if (available == 0) {
+                throw new IOException("LZ4 frame is truncated");
+            }
+            int count = (int) Math.min(rest, available);
+            consume(count);
+            rest -= count;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An {@link OutputStream} which encodes data into the LZ4 frame format.
+ * This stream writes each block as an independent frame with its content size,
+ * so that {@link Lz4FrameInputStream} can start decoding from any frame in the middle of the file.
+ * <p>
+ * The output can be also decoded by the other LZ4 frame implementations (e.g. the {@code lz4} command).
+ * </p>
+ * @see Lz4FrameInputStream
+ * @since 0.6.0
+ */
+public class Lz4FrameOutputStream extends OutputStream {
+
+    static final int MAGIC = 0x184d2204;
+
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    static final int FLG_VERSION = 0x40;
+
+    static final int FLG_BLOCK_INDEPENDENCE = 0x20;
+
+    static final int FLG_BLOCK_CHECKSUM = 0x10;
+
+    static final int FLG_CONTENT_SIZE = 0x08;
+
+    static final int FLG_CONTENT_CHECKSUM = 0x04;
+
+    static final int FLG_DICTIONARY_ID = 0x01;
+
+    static final int UNCOMPRESSED_BLOCK = 0x80000000;
+
+    private static final int BD_MAX_BLOCK_SIZE_1MB = 0x60;
+
+    private static final int FRAME_HEADER_LENGTH = 4 + 2 + 8 + 1;
+
+    private final OutputStream out;
+
+    private final int[] table = Lz4Block.newHashTable();
+
+    private final byte[] header = new byte[FRAME_HEADER_LENGTH];
+
+    private byte[] block;
+
+    private byte[] compressed;
+
+    private int blockLength;
+
+    private boolean written;
+
+    private boolean closed;
+
+    /**
+     * Creates a new instance.
+     * @param out the compressed output
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public Lz4FrameOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    Lz4FrameOutputStream(OutputStream out, int blockSize) {
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null"); //$NON-NLS-1$
+        }
+        if (blockSize <= 0 || blockSize > DEFAULT_BLOCK_SIZE) {
+            throw new IllegalArgumentException("blockSize must be in (0, 1MB]"); //$NON-NLS-1$
+        }
+        this.out = out;
+        this.block = new byte[blockSize];
+        this.compressed = new byte[Lz4Block.maxCompressedLength(blockSize) + 4];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == block.length) {
+            writeFrame();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        int offset = off;
+        int rest = len;
+        while (rest > 0) {
+            int count = Math.min(rest, block.length - blockLength);
+            System.arraycopy(b, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            rest -= count;
+            if (blockLength == block.length) {
+                writeFrame();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream is already closed");
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        int length = blockLength;
+        writeInt(header, 0, MAGIC);
+        header[4] = (byte) (FLG_VERSION | FLG_BLOCK_INDEPENDENCE | FLG_CONTENT_SIZE);
+        header[5] = (byte) BD_MAX_BLOCK_SIZE_1MB;
+        writeInt(header, 6, length);
+        writeInt(header, 10, 0);
+        header[14] = (byte) (XxHash32.hash(header, 4, 10, 0) >>> 8);
+        out.write(header, 0, FRAME_HEADER_LENGTH);
+        if (length > 0) {
+            int size = Lz4Block.compress(block, 0, length, compressed, 4, table);
+            if (size < length) {
+                writeInt(compressed, 0, size);
+                out.write(compressed, 0, size + 4);
+            } else {
+                writeInt(compressed, 0, length | UNCOMPRESSED_BLOCK);
+                out.write(compressed, 0, 4);
+                out.write(block, 0, length);
+            }
+        }
+        writeInt(header, 0, 0);
+        out.write(header, 0, 4);
+        blockLength = 0;
+        written = true;
+    }
+
+    private static void writeInt(byte[] b, int offset, int value) {
+        b[offset + 0] = (byte) value;
+        b[offset + 1] = (byte) (value >>> 8);
+        b[offset + 2] = (byte) (value >>> 16);
+        b[offset + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * Writes the rest data as the last frame without closing the underlying stream.
+     * @throws IOException if failed to write the data
+     */
+    public void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (blockLength > 0 || written == false) {
+            writeFrame();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            block = null;
+            compressed = null;
+            out.close();
+        }
+    }
+}
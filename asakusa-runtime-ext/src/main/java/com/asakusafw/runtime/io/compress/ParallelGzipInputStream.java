@@ -0,0 +1,587 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * An {@link InputStream} which decodes gzip data, and inflates each member on the worker threads.
+ * This stream inflates the first member sequentially on the current thread.
+ * If another member header follows the first member, this stream scans the compressed data for member headers,
+ * and then inflates each candidate member speculatively, so that concatenated multi-member gzip files
+ * are decoded in parallel.
+ * The decoded data is always provided in the original order,
+ * and members which are larger than the scan window are decoded sequentially.
+ * @since 0.6.0
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    static final Log LOG = LogFactory.getLog(ParallelGzipInputStream.class);
+
+    static final int DEFAULT_WINDOW_SIZE = 8 * 1024 * 1024;
+
+    static final int DEFAULT_MAX_MEMBER_OUTPUT = 64 * 1024 * 1024;
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    static final int TRAILER_SIZE = 8;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final InputStream in;
+
+    private final ExecutorService executor;
+
+    private final int windowSize;
+
+    private final int maxMemberOutput;
+
+    private final Map<Integer, Future<Member>> running = new HashMap<Integer, Future<Member>>();
+
+    private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+
+    private byte[] window;
+
+    private boolean windowShared;
+
+    private int cursor;
+
+    private int limit;
+
+    private boolean sawEof;
+
+    private boolean sawMember;
+
+    private boolean finished;
+
+    private Streaming streaming;
+
+    private byte[] current = EMPTY;
+
+    private int currentOffset;
+
+    /**
+     * Creates a new instance which uses the shared worker threads.
+     * @param in the compressed input
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ParallelGzipInputStream(InputStream in) {
+        this(in, CompressionWorkers.getSharedExecutor(), DEFAULT_WINDOW_SIZE, DEFAULT_MAX_MEMBER_OUTPUT);
+    }
+
+    /**
+     * Creates a new instance which uses the shared worker threads for the task.
+     * @param in the compressed input
+     * @param conf the task configuration which decides the number of worker threads (nullable)
+     * @throws IllegalArgumentException if {@code in} is {@code null}
+     * @see CompressionWorkers#getThreads(Configuration)
+     */
+    public ParallelGzipInputStream(InputStream in, Configuration conf) {
+        this(in, CompressionWorkers.getSharedExecutor(CompressionWorkers.getThreads(conf)),
+                DEFAULT_WINDOW_SIZE, DEFAULT_MAX_MEMBER_OUTPUT);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param in the compressed input
+     * @param executor the executor for inflating members
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ParallelGzipInputStream(InputStream in, ExecutorService executor) {
+        this(in, executor, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_MEMBER_OUTPUT);
+    }
+
+    ParallelGzipInputStream(InputStream in, ExecutorService executor, int windowSize, int maxMemberOutput) {
+        if (in == null) {
+            throw new IllegalArgumentException("in must not be null"); //$NON-NLS-1$
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null"); //$NON-NLS-1$
+        }
+        this.in = in;
+        this.executor = executor;
+        this.windowSize = windowSize;
+        this.maxMemberOutput = maxMemberOutput;
+        this.window = new byte[windowSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (prepare() == false) {
+            return -1;
+        }
+        return current[currentOffset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (prepare() == false) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - currentOffset);
+        System.arraycopy(current, currentOffset, b, off, count);
+        currentOffset += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current.length - currentOffset;
+    }
+
+    private boolean prepare() throws IOException {
+        while (currentOffset >= current.length) {
+            if (chunks.isEmpty() && fill() == false) {
+                return false;
+            }
+            current = chunks.removeFirst();
+            currentOffset = 0;
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        while (chunks.isEmpty()) {
+            if (streaming != null) {
+                streaming.next();
+                continue;
+            }
+            if (finished) {
+                return false;
+            }
+            if (sawMember == false) {
+                // the first member is decoded sequentially until we know the input has more members
+                compact();
+                if (limit == 0) {
+                    finished = true;
+                    return false;
+                }
+                startStreaming();
+                continue;
+            }
+            if (cursor >= limit) {
+                if (sawEof) {
+                    finished = true;
+                    return false;
+                }
+                shift();
+                continue;
+            }
+            Member member = take(cursor);
+            switch (member.status) {
+            case COMPLETE:
+                chunks.addAll(member.chunks);
+                cursor = member.end;
+                sawMember = true;
+                break;
+            case TRUNCATED:
+                if (cursor > 0) {
+                    shift();
+                } else if (sawEof) {
+                    throw new EOFException("Unexpected end of gzip input");
+                } else {
+                    startStreaming();
+                }
+                break;
+            case TOO_LARGE:
+                startStreaming();
+                break;
+            case NOT_GZIP:
+                LOG.debug(MessageFormat.format(
+                        "Ignored trailing data after gzip members: {0}bytes",
+                        limit - cursor));
+                cancelAll();
+                finished = true;
+                return false;
+            default:
+                throw new IOException(MessageFormat.format(
+                        "Corrupt gzip input: {0}",
+                        member.message));
+            }
+        }
+        return true;
+    }
+
+    private Member take(int start) throws IOException {
+        Future<Member> future = running.remove(start);
+        if (future == null) {
+            return decode(window, start, limit, maxMemberOutput);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("interrupted while inflating gzip member").initCause(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to inflate gzip member", e.getCause());
+        }
+    }
+
+    /**
+     * Moves the rest bytes to the head of a new window, and fills it from the source input.
+     * @throws IOException if failed to read the source input
+     */
+    private void shift() throws IOException {
+        cancelAll();
+        compact();
+        schedule();
+    }
+
+    private void compact() throws IOException {
+        int rest = limit - cursor;
+        if (windowShared || cursor > 0) {
+            byte[] next = windowShared ? new byte[windowSize] : window;
+            System.arraycopy(window, cursor, next, 0, rest);
+            window = next;
+            windowShared = false;
+        }
+        cursor = 0;
+        limit = rest;
+        while (limit < window.length && sawEof == false) {
+            int read = in.read(window, limit, window.length - limit);
+            if (read < 0) {
+                sawEof = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    private void schedule() {
+        assert running.isEmpty();
+        if (cursor >= limit) {
+            return;
+        }
+        submit(cursor);
+        for (int i = cursor + 1, n = limit - 10; i <= n; i++) {
+            if (isHeaderCandidate(window, i)) {
+                submit(i);
+            }
+        }
+    }
+
+    private void submit(final int start) {
+        final byte[] b = window;
+        final int end = limit;
+        windowShared = true;
+        running.put(start, executor.submit(new Callable<Member>() {
+            @Override
+            public Member call() {
+                return decode(b, start, end, maxMemberOutput);
+            }
+        }));
+    }
+
+    private void cancelAll() {
+        for (Future<Member> future : running.values()) {
+            future.cancel(true);
+        }
+        running.clear();
+    }
+
+    private void startStreaming() throws IOException {
+        cancelAll();
+        int dataOffset = parseHeader(window, cursor, limit);
+        if (dataOffset == -2) {
+            throw new IOException("Not in gzip format");
+        } else if (dataOffset < 0) {
+            if (sawEof) {
+                throw new EOFException("Unexpected end of gzip input");
+            }
+            throw new IOException("Corrupt gzip input: too large member header");
+        }
+        streaming = new Streaming();
+        streaming.inflater.setInput(window, dataOffset, limit - dataOffset);
+        windowShared = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cancelAll();
+        if (streaming != null) {
+            streaming.inflater.end();
+            streaming = null;
+        }
+        chunks.clear();
+        finished = true;
+        in.close();
+    }
+
+    static boolean isHeaderCandidate(byte[] b, int offset) {
+        if (b[offset] != (byte) 0x1f || b[offset + 1] != (byte) 0x8b || b[offset + 2] != 8) {
+            return false;
+        }
+        if ((b[offset + 3] & 0xe0) != 0) {
+            return false;
+        }
+        int xfl = b[offset + 8] & 0xff;
+        if (xfl != 0 && xfl != 2 && xfl != 4) {
+            return false;
+        }
+        int os = b[offset + 9] & 0xff;
+        return os <= 13 || os == 255;
+    }
+
+    /**
+     * Parses a gzip member header.
+     * @param b the buffer
+     * @param offset the header offset
+     * @param limit the buffer limit
+     * @return the offset of the deflate data, {@code -1} if the header is truncated,
+     *     or {@code -2} if it is not a gzip header
+     */
+    static int parseHeader(byte[] b, int offset, int limit) {
+        int p = offset;
+        if (limit - p < 10) {
+            if (limit - p >= 1 && b[p] != (byte) 0x1f) {
+                return -2;
+            }
+            return -1;
+        }
+        if (b[p] != (byte) 0x1f || b[p + 1] != (byte) 0x8b || b[p + 2] != 8) {
+            return -2;
+        }
+        int flags = b[p + 3] & 0xff;
+        p += 10;
+        if ((flags & 0x04) != 0) {
+            if (limit - p < 2) {
+                return -1;
+            }
+            int length = (b[p] & 0xff) | ((b[p + 1] & 0xff) << 8);
+            p += 2 + length;
+        }
+        if ((flags & 0x08) != 0) {
+            p = skipZeroTerminated(b, p, limit);
+        }
+        if ((flags & 0x10) != 0) {
+            p = skipZeroTerminated(b, p, limit);
+        }
+        if ((flags & 0x02) != 0) {
+            p += 2;
+        }
+        if (p < 0 || p > limit) {
+            return -1;
+        }
+        return p;
+    }
+
+    private static int skipZeroTerminated(byte[] b, int offset, int limit) {
+        if (offset < 0) {
+            return offset;
+        }
+        for (int i = offset; i < limit; i++) {
+            if (b[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    static int readInt(byte[] b, int offset) {
+        return (b[offset] & 0xff)
+                | ((b[offset + 1] & 0xff) << 8)
+                | ((b[offset + 2] & 0xff) << 16)
+                | ((b[offset + 3] & 0xff) << 24);
+    }
+
+    static Member decode(byte[] b, int start, int limit, int maxOutput) {
+        int dataOffset = parseHeader(b, start, limit);
+        if (dataOffset == -1) {
+            return new Member(Status.TRUNCATED);
+        } else if (dataOffset < 0) {
+            return new Member(Status.NOT_GZIP);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(b, dataOffset, limit - dataOffset);
+            CRC32 crc = new CRC32();
+            List<byte[]> results = new ArrayList<byte[]>();
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int chunkOffset = 0;
+            long total = 0;
+            while (inflater.finished() == false) {
+                if (Thread.interrupted()) {
+                    return new Member(Status.CANCELLED);
+                }
+                int count;
+                try {
+                    count = inflater.inflate(chunk, chunkOffset, chunk.length - chunkOffset);
+                } catch (DataFormatException e) {
+                    Member result = new Member(Status.CORRUPT);
+                    result.message = e.getMessage();
+                    return result;
+                }
+                crc.update(chunk, chunkOffset, count);
+                chunkOffset += count;
+                total += count;
+                if (total > maxOutput) {
+                    return new Member(Status.TOO_LARGE);
+                }
+                if (chunkOffset == chunk.length) {
+                    results.add(chunk);
+                    chunk = new byte[CHUNK_SIZE];
+                    chunkOffset = 0;
+                } else if (inflater.finished() == false) {
+                    if (inflater.needsInput()) {
+                        return new Member(Status.TRUNCATED);
+                    } else if (inflater.needsDictionary()) {
+                        Member result = new Member(Status.CORRUPT);
+                        result.message = "unexpected preset dictionary";
+                        return result;
+                    }
+                }
+            }
+            if (chunkOffset > 0) {
+                results.add(Arrays.copyOf(chunk, chunkOffset));
+            }
+            int trailer = limit - inflater.getRemaining();
+            if (limit - trailer < TRAILER_SIZE) {
+                return new Member(Status.TRUNCATED);
+            }
+            if (readInt(b, trailer) != (int) crc.getValue() || readInt(b, trailer + 4) != (int) total) {
+                Member result = new Member(Status.CORRUPT);
+                result.message = "CRC or size mismatch";
+                return result;
+            }
+            Member result = new Member(Status.COMPLETE);
+            result.chunks = results;
+            result.end = trailer + TRAILER_SIZE;
+            return result;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private final class Streaming {
+
+        final Inflater inflater = new Inflater(true);
+
+        final CRC32 crc = new CRC32();
+
+        long total;
+
+        Streaming() {
+            return;
+        }
+
+        void next() throws IOException {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int count;
+            try {
+                count = inflater.inflate(chunk);
+            } catch (DataFormatException e) {
+                throw new IOException(MessageFormat.format(
+                        "Corrupt gzip input: {0}",
+                        e.getMessage()), e);
+            }
+            if (count > 0) {
+                crc.update(chunk, 0, count);
+                total += count;
+                chunks.add(count == chunk.length ? chunk : Arrays.copyOf(chunk, count));
+            }
+            if (inflater.finished()) {
+                finish();
+            } else if (inflater.needsInput()) {
+                cursor = limit;
+                compact();
+                if (limit == 0) {
+                    throw new EOFException("Unexpected end of gzip input");
+                }
+                inflater.setInput(window, 0, limit);
+            } else if (inflater.needsDictionary()) {
+                throw new IOException("Corrupt gzip input: unexpected preset dictionary");
+            }
+        }
+
+        private void finish() throws IOException {
+            cursor = limit - inflater.getRemaining();
+            inflater.end();
+            streaming = null;
+            if (limit - cursor < TRAILER_SIZE) {
+                compact();
+                if (limit < TRAILER_SIZE) {
+                    throw new EOFException("Unexpected end of gzip input");
+                }
+            }
+            if (readInt(window, cursor) != (int) crc.getValue() || readInt(window, cursor + 4) != (int) total) {
+                throw new IOException("Corrupt gzip input: CRC or size mismatch");
+            }
+            cursor += TRAILER_SIZE;
+            sawMember = true;
+            if (limit - cursor < 10 && sawEof == false) {
+                compact();
+            }
+            // decodes the rest members in parallel only if the next member header exists
+            if (parseHeader(window, cursor, limit) != -2) {
+                schedule();
+            }
+        }
+    }
+
+    enum Status {
+
+        COMPLETE,
+
+        TRUNCATED,
+
+        TOO_LARGE,
+
+        NOT_GZIP,
+
+        CORRUPT,
+
+        CANCELLED,
+    }
+
+    static final class Member {
+
+        final Status status;
+
+        List<byte[]> chunks = Collections.emptyList();
+
+        int end = -1;
+
+        String message;
+
+        Member(Status status) {
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * An {@link OutputStream} which encodes data into a single gzip member, and deflates it on the worker threads.
+ * This stream splits the data into blocks, and deflates each block independently
+ * using the tail of its previous block as the preset dictionary (like {@code pigz}).
+ * Each block except the last one ends with a sync flush marker, so that the concatenated blocks
+ * form a single deflate stream.
+ * <p>
+ * If the running JVM does not support sync flush on {@link Deflater} (before Java 7),
+ * this stream compresses the data sequentially on the current thread.
+ * </p>
+ * <p>
+ * If {@link #setTargetThroughput(long) the target throughput} is set, this stream adjusts the deflate level
+ * for each block so that each worker thread compresses the data at around the target speed.
+ * </p>
+ * @since 0.6.0
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    static final Log LOG = LogFactory.getLog(ParallelGzipOutputStream.class);
+
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int SYNC_FLUSH = 2;
+
+    private static final int DEFAULT_LEVEL = 6;
+
+    private static final byte[] HEADER = {
+        (byte) 0x1f, (byte) 0x8b, // magic
+        8, // CM = deflate
+        0, // FLG
+        0, 0, 0, 0, // MTIME
+        0, // XFL
+        0, // OS
+    };
+
+    private static final Method DEFLATE_WITH_FLUSH;
+    static {
+        Method method;
+        try {
+            method = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            LOG.debug("Deflater does not support sync flush, gzip compression is not parallelized", e);
+            method = null;
+        }
+        DEFLATE_WITH_FLUSH = method;
+    }
+
+    private final OutputStream out;
+
+    private final ExecutorService executor;
+
+    private final int blockSize;
+
+    private final int maxPendingBlocks;
+
+    private final GZIPOutputStream sequential;
+
+    private final LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+
+    private final CRC32 crc = new CRC32();
+
+    private long size;
+
+    private byte[] previous;
+
+    private byte[] block;
+
+    private int blockLength;
+
+    private boolean closed;
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    private long targetThroughput;
+
+    /**
+     * Creates a new instance which uses the shared worker threads.
+     * @param out the compressed output
+     * @throws IOException if failed to write the gzip header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ParallelGzipOutputStream(OutputStream out) throws IOException {
+        this(out, (Configuration) null);
+    }
+
+    /**
+     * Creates a new instance which uses the shared worker threads for the task.
+     * @param out the compressed output
+     * @param conf the task configuration which decides the number of worker threads (nullable)
+     * @throws IOException if failed to write the gzip header
+     * @throws IllegalArgumentException if {@code out} is {@code null}
+     * @see CompressionWorkers#getThreads(Configuration)
+     */
+    public ParallelGzipOutputStream(OutputStream out, Configuration conf) throws IOException {
+        this(out, CompressionWorkers.getThreads(conf));
+    }
+
+    private ParallelGzipOutputStream(OutputStream out, int threads) throws IOException {
+        this(out, CompressionWorkers.getSharedExecutor(threads), DEFAULT_BLOCK_SIZE, threads * 2);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param out the compressed output
+     * @param executor the executor for deflating blocks
+     * @throws IOException if failed to write the gzip header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor) throws IOException {
+        this(out, executor, DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    ParallelGzipOutputStream(
+            OutputStream out,
+            ExecutorService executor,
+            int blockSize,
+            int maxPendingBlocks) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null"); //$NON-NLS-1$
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null"); //$NON-NLS-1$
+        }
+        this.out = out;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = Math.max(maxPendingBlocks, 1);
+        if (isParallelSupported()) {
+            this.sequential = null;
+            this.block = new byte[blockSize];
+            out.write(HEADER);
+        } else {
+            this.sequential = new GZIPOutputStream(out, blockSize);
+        }
+    }
+
+    /**
+     * Sets the target compression throughput of each worker thread.
+     * This stream starts with the default deflate level (6), and then it decreases the level while blocks are
+     * compressed slower than the target, or increases it while they are compressed more than twice as fast.
+     * This has no effect if {@link #isParallelSupported() parallel compression is not supported}.
+     * @param bytesPerSecond the target throughput in bytes per second, or {@code 0} to use the default level
+     */
+    public void setTargetThroughput(long bytesPerSecond) {
+        this.targetThroughput = bytesPerSecond;
+        this.level = bytesPerSecond > 0 ? DEFAULT_LEVEL : Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * Returns the deflate level for the next block.
+     * @return the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns whether the running JVM can deflate gzip blocks in parallel.
+     * @return {@code true} if it is supported, otherwise {@code false}
+     */
+    public static boolean isParallelSupported() {
+        return DEFLATE_WITH_FLUSH != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (sequential != null) {
+            sequential.write(b);
+            return;
+        }
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == block.length) {
+            submit(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (sequential != null) {
+            sequential.write(b, off, len);
+            return;
+        }
+        ensureOpen();
+        int offset = off;
+        int rest = len;
+        while (rest > 0) {
+            int count = Math.min(rest, block.length - blockLength);
+            System.arraycopy(b, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            rest -= count;
+            if (blockLength == block.length) {
+                submit(false);
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream is already closed");
+        }
+    }
+
+    private void submit(final boolean last) throws IOException {
+        final byte[] dictionary = previous;
+        final byte[] data = block;
+        final int length = blockLength;
+        final int blockLevel = level;
+        crc.update(data, 0, length);
+        size += length;
+        pending.addLast(executor.submit(new Callable<Block>() {
+            @Override
+            public Block call() throws IOException {
+                return deflate(dictionary, data, length, last, blockLevel);
+            }
+        }));
+        previous = data;
+        block = last ? null : new byte[blockSize];
+        blockLength = 0;
+        while (pending.isEmpty() == false && (pending.size() > maxPendingBlocks || pending.getFirst().isDone())) {
+            writeBlock(pending.removeFirst());
+        }
+    }
+
+    private void writeBlock(Future<Block> future) throws IOException {
+        Block result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("interrupted while deflating gzip block").initCause(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to deflate gzip block", e.getCause());
+        }
+        out.write(result.bytes, 0, result.length);
+        if (targetThroughput > 0) {
+            adjustLevel(result);
+        }
+    }
+
+    private void adjustLevel(Block result) {
+        if (result.inputLength < blockSize || result.elapsedNanos <= 0) {
+            return;
+        }
+        double throughput = result.inputLength * 1e9 / result.elapsedNanos;
+        if (throughput < targetThroughput && level > Deflater.BEST_SPEED) {
+            level--;
+        } else if (throughput > targetThroughput * 2.0 && level < Deflater.BEST_COMPRESSION) {
+            level++;
+        }
+    }
+
+    static Block deflate(
+            byte[] dictionary,
+            byte[] data,
+            int length,
+            boolean last,
+            int level) throws IOException {
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                int dictionaryLength = Math.min(dictionary.length, DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary, dictionary.length - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(data, 0, length);
+            byte[] buf = new byte[length + (length >> 3) + 64];
+            int position = 0;
+            if (last) {
+                deflater.finish();
+                while (deflater.finished() == false) {
+                    if (position == buf.length) {
+                        buf = grow(buf);
+                    }
+                    position += deflater.deflate(buf, position, buf.length - position);
+                }
+            } else {
+                while (true) {
+                    if (position == buf.length) {
+                        buf = grow(buf);
+                    }
+                    int space = buf.length - position;
+                    int count = deflateWithSyncFlush(deflater, buf, position, space);
+                    position += count;
+                    if (count < space) {
+                        break;
+                    }
+                }
+            }
+            return new Block(buf, position, length, System.nanoTime() - start);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] grow(byte[] buf) {
+        byte[] next = new byte[buf.length * 2];
+        System.arraycopy(buf, 0, next, 0, buf.length);
+        return next;
+    }
+
+    private static int deflateWithSyncFlush(Deflater deflater, byte[] buf, int offset, int length) throws IOException {
+        try {
+            return (Integer) DEFLATE_WITH_FLUSH.invoke(deflater, buf, offset, length, SYNC_FLUSH);
+        } catch (IllegalAccessException e) {
+            throw new IOException("Failed to deflate gzip block", e);
+        } catch (InvocationTargetException e) {
+            throw new IOException("Failed to deflate gzip block", e.getCause());
+        }
+    }
+
+    /**
+     * Writes the rest data and the gzip trailer without closing the underlying stream.
+     * @throws IOException if failed to write the data
+     */
+    public void finish() throws IOException {
+        if (sequential != null) {
+            sequential.finish();
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        submit(true);
+        while (pending.isEmpty() == false) {
+            writeBlock(pending.removeFirst());
+        }
+        writeInt((int) crc.getValue());
+        writeInt((int) size);
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (sequential != null) {
+            sequential.flush();
+        } else {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sequential != null) {
+            sequential.close();
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            for (Future<Block> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            block = null;
+            previous = null;
+            out.close();
+        }
+    }
+
+    /**
+     * A deflated block.
+     */
+    static final class Block {
+
+        final byte[] bytes;
+
+        final int length;
+
+        final int inputLength;
+
+        final long elapsedNanos;
+
+        Block(byte[] bytes, int length, int inputLength, long elapsedNanos) {
+            this.bytes = bytes;
+            this.length = length;
+            this.inputLength = inputLength;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+}
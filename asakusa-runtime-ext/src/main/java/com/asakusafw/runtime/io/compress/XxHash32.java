@@ -0,0 +1,92 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+/**
+ * An implementation of xxHash (32-bit), which is used in LZ4 frame checksums.
+ * @since 0.6.0
+ */
+final class XxHash32 {
+
+    private static final int PRIME1 = 0x9e3779b1;
+
+    private static final int PRIME2 = 0x85ebca77;
+
+    private static final int PRIME3 = 0xc2b2ae3d;
+
+    private static final int PRIME4 = 0x27d4eb2f;
+
+    private static final int PRIME5 = 0x165667b1;
+
+    private XxHash32() {
+        return;
+    }
+
+    /**
+     * Computes the hash value of the data.
+     * @param b the buffer
+     * @param offset the data offset
+     * @param length the data length
+     * @param seed the hash seed
+     * @return the hash value
+     */
+    static int hash(byte[] b, int offset, int length, int seed) {
+        int p = offset;
+        int end = offset + length;
+        int h;
+        if (length >= 16) {
+            int v1 = seed + PRIME1 + PRIME2;
+            int v2 = seed + PRIME2;
+            int v3 = seed;
+            int v4 = seed - PRIME1;
+            int limit = end - 16;
+            do {
+                v1 = round(v1, Lz4Block.readInt(b, p));
+                v2 = round(v2, Lz4Block.readInt(b, p + 4));
+                v3 = round(v3, Lz4Block.readInt(b, p + 8));
+                v4 = round(v4, Lz4Block.readInt(b, p + 12));
+                p += 16;
+            } while (p <= limit);
+            h = Integer.rotateLeft(v1, 1)
+                    + Integer.rotateLeft(v2, 7)
+                    + Integer.rotateLeft(v3, 12)
+                    + Integer.rotateLeft(v4, 18);
+        } else {
+            h = seed + PRIME5;
+        }
+        h += length;
+        while (p + 4 <= end) {
+            h += Lz4Block.readInt(b, p) * PRIME3;
+            h = Integer.rotateLeft(h, 17) * PRIME4;
+            p += 4;
+        }
+        while (p < end) {
+            h += (b[p] & 0xff) * PRIME5;
+            h = Integer.rotateLeft(h, 11) * PRIME1;
+            p++;
+        }
+        h ^= h >>> 15;
+        h *= PRIME2;
+        h ^= h >>> 13;
+        h *= PRIME3;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int round(int acc, int input) {
+        return Integer.rotateLeft(acc + input * PRIME2, 13) * PRIME1;
+    }
+}
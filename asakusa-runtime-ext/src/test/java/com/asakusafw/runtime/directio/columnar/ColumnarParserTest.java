@@ -0,0 +1,346 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.columnar;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link ColumnarEmitter} and {@link ColumnarParser}.
+ */
+public class ColumnarParserTest {
+
+    /**
+     * all types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void types() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ColumnarEmitter emitter = new ColumnarEmitter(output);
+        emitter.emit(new BooleanOption(true));
+        emitter.emit(new ByteOption((byte) -12));
+        emitter.emit(new ShortOption((short) 1234));
+        emitter.emit(new IntOption(-123456));
+        emitter.emit(new LongOption(1234567890123L));
+        emitter.emit(new FloatOption(1.5f));
+        emitter.emit(new DoubleOption(-2.25));
+        emitter.emit(new DecimalOption(new BigDecimal("-3.14")));
+        emitter.emit(new StringOption("あ"));
+        emitter.emit(new DateOption(new Date(2014, 3, 4)));
+        emitter.emit(new DateTimeOption(new DateTime(2000, 2, 29, 12, 34, 56)));
+        emitter.endRecord();
+        emitter.close();
+
+        ColumnarParser parser = new ColumnarParser(new ByteArrayInputStream(output.toByteArray()));
+        assertThat(parser.next(), is(true));
+        BooleanOption booleanOption = new BooleanOption();
+        ByteOption byteOption = new ByteOption();
+        ShortOption shortOption = new ShortOption();
+        IntOption intOption = new IntOption();
+        LongOption longOption = new LongOption();
+        FloatOption floatOption = new FloatOption();
+        DoubleOption doubleOption = new DoubleOption();
+        DecimalOption decimalOption = new DecimalOption();
+        StringOption stringOption = new StringOption();
+        DateOption dateOption = new DateOption();
+        DateTimeOption dateTimeOption = new DateTimeOption();
+        parser.fill(booleanOption);
+        parser.fill(byteOption);
+        parser.fill(shortOption);
+        parser.fill(intOption);
+        parser.fill(longOption);
+        parser.fill(floatOption);
+        parser.fill(doubleOption);
+        parser.fill(decimalOption);
+        parser.fill(stringOption);
+        parser.fill(dateOption);
+        parser.fill(dateTimeOption);
+        parser.endRecord();
+        assertThat(booleanOption, is(new BooleanOption(true)));
+        assertThat(byteOption, is(new ByteOption((byte) -12)));
+        assertThat(shortOption, is(new ShortOption((short) 1234)));
+        assertThat(intOption, is(new IntOption(-123456)));
+        assertThat(longOption, is(new LongOption(1234567890123L)));
+        assertThat(floatOption, is(new FloatOption(1.5f)));
+        assertThat(doubleOption, is(new DoubleOption(-2.25)));
+        assertThat(decimalOption, is(new DecimalOption(new BigDecimal("-3.14"))));
+        assertThat(stringOption, is(new StringOption("あ")));
+        assertThat(dateOption.get().getElapsedDays(), is(new Date(2014, 3, 4).getElapsedDays()));
+        assertThat(dateTimeOption.get().getElapsedSeconds(),
+                is(new DateTime(2000, 2, 29, 12, 34, 56).getElapsedSeconds()));
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * null values mixed with present values.
+     * @throws Exception if failed
+     */
+    @Test
+    public void nulls() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ColumnarEmitter emitter = new ColumnarEmitter(output);
+        for (int i = 0; i < 10; i++) {
+            emitter.emit(i % 3 == 0 ? new IntOption() : new IntOption(i));
+            emitter.emit(i % 4 == 1 ? new StringOption() : new StringOption("v" + i));
+            emitter.emit(new DoubleOption());
+            emitter.endRecord();
+        }
+        emitter.close();
+
+        ColumnarParser parser = new ColumnarParser(new ByteArrayInputStream(output.toByteArray()));
+        IntOption intOption = new IntOption();
+        StringOption stringOption = new StringOption();
+        DoubleOption doubleOption = new DoubleOption(1.0);
+        for (int i = 0; i < 10; i++) {
+            assertThat(parser.next(), is(true));
+            parser.fill(intOption);
+            parser.fill(stringOption);
+            parser.fill(doubleOption);
+            parser.endRecord();
+            assertThat(intOption, is(i % 3 == 0 ? new IntOption() : new IntOption(i)));
+            assertThat(stringOption, is(i % 4 == 1 ? new StringOption() : new StringOption("v" + i)));
+            assertThat(doubleOption.isNull(), is(true));
+        }
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * columns with many repeated values are encoded compactly.
+     * @throws Exception if failed
+     */
+    @Test
+    public void encodings() throws Exception {
+        int rows = 10000;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ColumnarEmitter emitter = new ColumnarEmitter(output);
+        for (int i = 0; i < rows; i++) {
+            emitter.emit(new LongOption(1000000000000L + i));
+            emitter.emit(new IntOption(i / 1000));
+            emitter.emit(new StringOption(i % 2 == 0 ? "even-value" : "odd-value"));
+            emitter.emit(new DecimalOption(new BigDecimal("1.50")));
+            emitter.endRecord();
+        }
+        emitter.close();
+        assertThat(emitter.getRowGroupCount(), is(1L));
+        assertThat(output.size(), is(lessThan(rows * 8)));
+
+        ColumnarParser parser = new ColumnarParser(new ByteArrayInputStream(output.toByteArray()));
+        LongOption longOption = new LongOption();
+        IntOption intOption = new IntOption();
+        StringOption stringOption = new StringOption();
+        DecimalOption decimalOption = new DecimalOption();
+        for (int i = 0; i < rows; i++) {
+            assertThat(parser.next(), is(true));
+            parser.fill(longOption);
+            parser.fill(intOption);
+            parser.fill(stringOption);
+            parser.fill(decimalOption);
+            parser.endRecord();
+            assertThat(longOption.get(), is(1000000000000L + i));
+            assertThat(intOption.get(), is(i / 1000));
+            assertThat(stringOption.getAsString(), is(i % 2 == 0 ? "even-value" : "odd-value"));
+            assertThat(decimalOption.get(), is(new BigDecimal("1.50")));
+        }
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * reads only the projected columns.
+     * @throws Exception if failed
+     */
+    @Test
+    public void projection() throws Exception {
+        byte[] bytes = write(1000, 100);
+        ColumnarParser parser = new ColumnarParser(new ByteArrayInputStream(bytes));
+        parser.setProjection(ColumnarFormats.toProjection(
+                Arrays.asList("id", "name"),
+                Arrays.asList("name")));
+        IntOption id = new IntOption(-1);
+        StringOption name = new StringOption();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(parser.next(), is(true));
+            parser.fill(id);
+            parser.fill(name);
+            parser.endRecord();
+            assertThat(id.get(), is(-1));
+            assertThat(name.getAsString(), is("n" + i));
+        }
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * skips row groups by their statistics.
+     * @throws Exception if failed
+     */
+    @Test
+    public void filter() throws Exception {
+        byte[] bytes = write(1000, 100);
+        ColumnarParser parser = new ColumnarParser(new ByteArrayInputStream(bytes));
+        parser.setFilter(new ColumnarRowGroupFilter() {
+            @Override
+            public boolean accept(ColumnarStatistics[] columns) {
+                return columns[0].mightOverlap(new IntOption(250), new IntOption(349));
+            }
+        });
+        List<Integer> ids = read(parser);
+        assertThat(ids.size(), is(200));
+        assertThat(ids.get(0), is(200));
+        assertThat(ids.get(199), is(399));
+        assertThat(parser.getSkippedRowGroupCount(), is(8L));
+    }
+
+    /**
+     * reads fragments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments() throws Exception {
+        byte[] bytes = write(1000, 37);
+        for (int size : new int[] { 1, 50, 333, 1000, bytes.length }) {
+            List<Integer> ids = new ArrayList<Integer>();
+            for (int offset = 0; offset < bytes.length; offset += size) {
+                ColumnarParser parser = new ColumnarParser(
+                        new ByteArrayInputStream(bytes, offset, bytes.length - offset),
+                        "testing", offset, Math.min(size, bytes.length - offset));
+                ids.addAll(read(parser));
+            }
+            assertThat(String.valueOf(size), ids.size(), is(1000));
+            for (int i = 0; i < ids.size(); i++) {
+                assertThat(ids.get(i), is(i));
+            }
+        }
+    }
+
+    /**
+     * statistics of row groups.
+     * @throws Exception if failed
+     */
+    @Test
+    public void statistics() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ColumnarEmitter emitter = new ColumnarEmitter(output);
+        String[] names = { "b", "a", "c" };
+        for (int i = 0; i < names.length; i++) {
+            emitter.emit(new IntOption(i * 10));
+            emitter.emit(new StringOption(names[i]));
+            emitter.emit(new IntOption());
+            emitter.endRecord();
+        }
+        emitter.close();
+
+        final List<ColumnarStatistics[]> results = new ArrayList<ColumnarStatistics[]>();
+        ColumnarParser parser = new ColumnarParser(new ByteArrayInputStream(output.toByteArray()));
+        parser.setFilter(new ColumnarRowGroupFilter() {
+            @Override
+            public boolean accept(ColumnarStatistics[] columns) {
+                results.add(columns);
+                return false;
+            }
+        });
+        assertThat(parser.next(), is(false));
+        parser.close();
+
+        assertThat(results.size(), is(1));
+        ColumnarStatistics[] columns = results.get(0);
+        assertThat(columns[0].getKind(), is(ColumnKind.INTEGRAL));
+        assertThat(columns[0].getRowCount(), is(3));
+        assertThat(columns[0].getMinimum(), is((Object) 0L));
+        assertThat(columns[0].getMaximum(), is((Object) 20L));
+        assertThat(columns[0].mightContain(new IntOption(10)), is(true));
+        assertThat(columns[0].mightContain(new IntOption(30)), is(false));
+        assertThat(columns[1].getMinimum(), is((Object) "a"));
+        assertThat(columns[1].getMaximum(), is((Object) "c"));
+        assertThat(columns[1].mightOverlap(new StringOption("d"), null), is(false));
+        assertThat(columns[2].hasValues(), is(false));
+        assertThat(columns[2].getNullCount(), is(3));
+        assertThat(columns[2].mightContain(new IntOption(0)), is(false));
+    }
+
+    /**
+     * reading with inconsistent types.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void inconsistent_type() throws Exception {
+        byte[] bytes = write(1, 10);
+        ColumnarParser parser = new ColumnarParser(new ByteArrayInputStream(bytes));
+        try {
+            assertThat(parser.next(), is(true));
+            parser.fill(new StringOption());
+        } finally {
+            parser.close();
+        }
+    }
+
+    private byte[] write(int rows, int rowGroupRows) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ColumnarEmitter emitter = new ColumnarEmitter(output, rowGroupRows, ColumnarFormats.DEFAULT_ROW_GROUP_BYTES);
+        for (int i = 0; i < rows; i++) {
+            emitter.emit(new IntOption(i));
+            emitter.emit(new StringOption("n" + i));
+            emitter.endRecord();
+        }
+        emitter.close();
+        return output.toByteArray();
+    }
+
+    private List<Integer> read(ColumnarParser parser) throws IOException {
+        List<Integer> results = new ArrayList<Integer>();
+        try {
+            IntOption id = new IntOption();
+            StringOption name = new StringOption();
+            while (parser.next()) {
+                parser.fill(id);
+                parser.fill(name);
+                parser.endRecord();
+                assertThat(name.getAsString(), is("n" + id.get()));
+                results.add(id.get());
+            }
+        } finally {
+            parser.close();
+        }
+        return results;
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.fixed;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link FixedWidthEmitter} and {@link FixedWidthParser}.
+ */
+public class FixedWidthParserTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * all types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void types() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FixedWidthEmitter emitter = new FixedWidthEmitter(output, 120);
+        emitter.emit(new BooleanOption(true), 0, 1);
+        emitter.emit(new ByteOption((byte) -12), 1, 4);
+        emitter.emit(new ShortOption((short) 1234), 5, 6);
+        emitter.emit(new IntOption(-123456), 11, 11);
+        emitter.emit(new LongOption(Long.MIN_VALUE), 22, 20);
+        emitter.emit(new FloatOption(1.5f), 42, 8);
+        emitter.emit(new DoubleOption(-2.25), 50, 8);
+        emitter.emit(new DecimalOption(new BigDecimal("-3.14")), 58, 10);
+        emitter.emit(new StringOption("あ"), 68, 10);
+        emitter.emit(new DateOption(new Date(2014, 3, 4)), 78, 8);
+        emitter.emit(new DateTimeOption(new DateTime(2000, 2, 29, 12, 34, 56)), 86, 14);
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.size(), is(120));
+
+        FixedWidthParser parser = new FixedWidthParser(new ByteArrayInputStream(output.toByteArray()), 120);
+        assertThat(parser.next(), is(true));
+        BooleanOption booleanOption = new BooleanOption();
+        ByteOption byteOption = new ByteOption();
+        ShortOption shortOption = new ShortOption();
+        IntOption intOption = new IntOption();
+        LongOption longOption = new LongOption();
+        FloatOption floatOption = new FloatOption();
+        DoubleOption doubleOption = new DoubleOption();
+        DecimalOption decimalOption = new DecimalOption();
+        StringOption stringOption = new StringOption();
+        DateOption dateOption = new DateOption();
+        DateTimeOption dateTimeOption = new DateTimeOption();
+        parser.fill(dateTimeOption, 86, 14);
+        parser.fill(booleanOption, 0, 1);
+        parser.fill(byteOption, 1, 4);
+        parser.fill(shortOption, 5, 6);
+        parser.fill(intOption, 11, 11);
+        parser.fill(longOption, 22, 20);
+        parser.fill(floatOption, 42, 8);
+        parser.fill(doubleOption, 50, 8);
+        parser.fill(decimalOption, 58, 10);
+        parser.fill(stringOption, 68, 10);
+        parser.fill(dateOption, 78, 8);
+        assertThat(booleanOption, is(new BooleanOption(true)));
+        assertThat(byteOption, is(new ByteOption((byte) -12)));
+        assertThat(shortOption, is(new ShortOption((short) 1234)));
+        assertThat(intOption, is(new IntOption(-123456)));
+        assertThat(longOption, is(new LongOption(Long.MIN_VALUE)));
+        assertThat(floatOption, is(new FloatOption(1.5f)));
+        assertThat(doubleOption, is(new DoubleOption(-2.25)));
+        assertThat(decimalOption, is(new DecimalOption(new BigDecimal("-3.14"))));
+        assertThat(stringOption, is(new StringOption("あ")));
+        assertThat(dateOption.get().getElapsedDays(), is(new Date(2014, 3, 4).getElapsedDays()));
+        assertThat(dateTimeOption.get().getElapsedSeconds(),
+                is(new DateTime(2000, 2, 29, 12, 34, 56).getElapsedSeconds()));
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * field layout and nulls.
+     * @throws Exception if failed
+     */
+    @Test
+    public void layout() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FixedWidthEmitter emitter = new FixedWidthEmitter(output, 20);
+        emitter.emit(new IntOption(42), 0, 5);
+        emitter.emit(new StringOption("ab"), 5, 5);
+        emitter.emit(new DateOption(new Date(2014, 3, 4)), 12, 8);
+        emitter.endRecord();
+        emitter.emit(new IntOption(), 0, 5);
+        emitter.emit(new StringOption(), 5, 5);
+        emitter.emit(new DateOption(), 12, 8);
+        emitter.endRecord();
+        emitter.close();
+        assertThat(new String(output.toByteArray(), UTF8), is(""
+                + "   42ab     20140304"
+                + "                    "));
+
+        FixedWidthParser parser = new FixedWidthParser(new ByteArrayInputStream(output.toByteArray()), 20);
+        IntOption intOption = new IntOption();
+        StringOption stringOption = new StringOption();
+        DateOption dateOption = new DateOption();
+        assertThat(parser.next(), is(true));
+        assertThat(parser.next(), is(true));
+        parser.fill(intOption, 0, 5);
+        parser.fill(stringOption, 5, 5);
+        parser.fill(dateOption, 12, 8);
+        assertThat(intOption.isNull(), is(true));
+        assertThat(stringOption.isNull(), is(true));
+        assertThat(dateOption.isNull(), is(true));
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * parses values with surrounding spaces and leading zeros.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parse_padded() throws Exception {
+        byte[] bytes = "00042 +7   x    ".getBytes(UTF8);
+        FixedWidthParser parser = new FixedWidthParser(new ByteArrayInputStream(bytes), 16);
+        assertThat(parser.next(), is(true));
+        IntOption a = new IntOption();
+        LongOption b = new LongOption();
+        StringOption c = new StringOption();
+        parser.fill(a, 0, 5);
+        parser.fill(b, 5, 4);
+        parser.fill(c, 9, 7);
+        assertThat(a.get(), is(42));
+        assertThat(b.get(), is(7L));
+        assertThat(c.getAsString(), is("  x"));
+        parser.close();
+    }
+
+    /**
+     * reads fragments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FixedWidthEmitter emitter = new FixedWidthEmitter(output, 7);
+        for (int i = 0; i < 1000; i++) {
+            emitter.emit(new IntOption(i), 0, 7);
+            emitter.endRecord();
+        }
+        emitter.close();
+        byte[] bytes = output.toByteArray();
+        for (int size : new int[] { 1, 6, 7, 50, 333, bytes.length }) {
+            List<Integer> results = new ArrayList<Integer>();
+            for (int offset = 0; offset < bytes.length; offset += size) {
+                FixedWidthParser parser = new FixedWidthParser(
+                        new ByteArrayInputStream(bytes, offset, bytes.length - offset),
+                        "testing", offset, Math.min(size, bytes.length - offset), 7, UTF8);
+                IntOption option = new IntOption();
+                while (parser.next()) {
+                    parser.fill(option, 0, 7);
+                    results.add(option.get());
+                }
+                parser.close();
+            }
+            assertThat(String.valueOf(size), results.size(), is(1000));
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i), is(i));
+            }
+        }
+    }
+
+    /**
+     * uses a charset which is not compatible with ASCII.
+     * @throws Exception if failed
+     */
+    @Test
+    public void ebcdic() throws Exception {
+        Charset charset = Charset.forName("IBM037");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FixedWidthEmitter emitter = new FixedWidthEmitter(output, 24, charset);
+        emitter.emit(new IntOption(-15), 0, 4);
+        emitter.emit(new StringOption("Hello"), 4, 6);
+        emitter.emit(new DateTimeOption(new DateTime(2014, 3, 4, 5, 6, 7)), 10, 14);
+        emitter.endRecord();
+        emitter.close();
+        assertThat(new String(output.toByteArray(), charset), is(" -15Hello 20140304050607"));
+
+        FixedWidthParser parser = new FixedWidthParser(
+                new ByteArrayInputStream(output.toByteArray()), "testing", 0, -1, 24, charset);
+        assertThat(parser.next(), is(true));
+        IntOption intOption = new IntOption();
+        StringOption stringOption = new StringOption();
+        DateTimeOption dateTimeOption = new DateTimeOption();
+        parser.fill(intOption, 0, 4);
+        parser.fill(stringOption, 4, 6);
+        parser.fill(dateTimeOption, 10, 14);
+        assertThat(intOption.get(), is(-15));
+        assertThat(stringOption.getAsString(), is("Hello"));
+        assertThat(dateTimeOption.get().getElapsedSeconds(),
+                is(new DateTime(2014, 3, 4, 5, 6, 7).getElapsedSeconds()));
+        parser.close();
+    }
+
+    /**
+     * values which are too long for the field.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void emit_too_long() throws Exception {
+        FixedWidthEmitter emitter = new FixedWidthEmitter(new ByteArrayOutputStream(), 4);
+        emitter.emit(new IntOption(12345), 0, 4);
+    }
+
+    /**
+     * invalid numeric values.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void parse_invalid() throws Exception {
+        FixedWidthParser parser = new FixedWidthParser(new ByteArrayInputStream("1 2 ".getBytes(UTF8)), 4);
+        assertThat(parser.next(), is(true));
+        parser.fill(new IntOption(), 0, 4);
+    }
+
+    /**
+     * overflow of numeric values.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void parse_overflow() throws Exception {
+        FixedWidthParser parser = new FixedWidthParser(
+                new ByteArrayInputStream("9223372036854775808".getBytes(UTF8)), 19);
+        assertThat(parser.next(), is(true));
+        parser.fill(new LongOption(), 0, 19);
+    }
+
+    /**
+     * files which end with an incomplete record.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void truncated() throws Exception {
+        FixedWidthParser parser = new FixedWidthParser(new ByteArrayInputStream("123".getBytes(UTF8)), 4);
+        parser.next();
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.jsonl;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link JsonLinesEmitter} and {@link JsonLinesParser}.
+ */
+public class JsonLinesParserTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * all types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void types() throws Exception {
+        JsonKeyTable keys = new JsonKeyTable(
+                "a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonLinesEmitter emitter = new JsonLinesEmitter(output, keys);
+        emitter.emit(new BooleanOption(true));
+        emitter.emit(new ByteOption((byte) -12));
+        emitter.emit(new ShortOption((short) 1234));
+        emitter.emit(new IntOption(Integer.MIN_VALUE));
+        emitter.emit(new LongOption(Long.MIN_VALUE));
+        emitter.emit(new FloatOption(1.5f));
+        emitter.emit(new DoubleOption(Double.NaN));
+        emitter.emit(new DecimalOption(new BigDecimal("-3.14")));
+        emitter.emit(new StringOption("\"あ\"\n\t\\"));
+        emitter.emit(new DateOption(new Date(2014, 3, 4)));
+        emitter.emit(new DateTimeOption(new DateTime(2000, 2, 29, 12, 34, 56)));
+        emitter.endRecord();
+        emitter.close();
+        String text = new String(output.toByteArray(), UTF8);
+        assertThat(text, startsWith("{\"a\":true,\"b\":-12,\"c\":1234,"));
+        assertThat(text, containsString("\"i\":\"\\\"あ\\\"\\n\\t\\\\\""));
+        assertThat(text, endsWith("\"j\":\"2014-03-04\",\"k\":\"2000-02-29 12:34:56\"}\n"));
+
+        JsonLinesParser parser = parser(keys, text);
+        assertThat(parser.next(), is(true));
+        BooleanOption booleanOption = new BooleanOption();
+        ByteOption byteOption = new ByteOption();
+        ShortOption shortOption = new ShortOption();
+        IntOption intOption = new IntOption();
+        LongOption longOption = new LongOption();
+        FloatOption floatOption = new FloatOption();
+        DoubleOption doubleOption = new DoubleOption();
+        DecimalOption decimalOption = new DecimalOption();
+        StringOption stringOption = new StringOption();
+        DateOption dateOption = new DateOption();
+        DateTimeOption dateTimeOption = new DateTimeOption();
+        parser.fill(booleanOption);
+        parser.fill(byteOption);
+        parser.fill(shortOption);
+        parser.fill(intOption);
+        parser.fill(longOption);
+        parser.fill(floatOption);
+        parser.fill(doubleOption);
+        parser.fill(decimalOption);
+        parser.fill(stringOption);
+        parser.fill(dateOption);
+        parser.fill(dateTimeOption);
+        assertThat(booleanOption.get(), is(true));
+        assertThat(byteOption.get(), is((byte) -12));
+        assertThat(shortOption.get(), is((short) 1234));
+        assertThat(intOption.get(), is(Integer.MIN_VALUE));
+        assertThat(longOption.get(), is(Long.MIN_VALUE));
+        assertThat(floatOption.get(), is(1.5f));
+        assertThat(Double.isNaN(doubleOption.get()), is(true));
+        assertThat(decimalOption.get(), is(new BigDecimal("-3.14")));
+        assertThat(stringOption.getAsString(), is("\"あ\"\n\t\\"));
+        assertThat(dateOption.get().getElapsedDays(), is(new Date(2014, 3, 4).getElapsedDays()));
+        assertThat(dateTimeOption.get().getElapsedSeconds(),
+                is(new DateTime(2000, 2, 29, 12, 34, 56).getElapsedSeconds()));
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * null values and missing keys.
+     * @throws Exception if failed
+     */
+    @Test
+    public void nulls() throws Exception {
+        JsonKeyTable keys = new JsonKeyTable("a", "b", "c");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonLinesEmitter emitter = new JsonLinesEmitter(output, keys);
+        emitter.emit(new IntOption());
+        emitter.emit(new StringOption());
+        emitter.emit(new DateOption());
+        emitter.endRecord();
+        emitter.close();
+        String text = new String(output.toByteArray(), UTF8);
+        assertThat(text, is("{\"a\":null,\"b\":null,\"c\":null}\n"));
+
+        JsonLinesParser parser = parser(keys, text + "{\"b\":\"x\"}\n");
+        IntOption a = new IntOption(1);
+        StringOption b = new StringOption("?");
+        DateOption c = new DateOption(new Date(1));
+        assertThat(parser.next(), is(true));
+        parser.fill(a);
+        parser.fill(b);
+        parser.fill(c);
+        assertThat(a.isNull(), is(true));
+        assertThat(b.isNull(), is(true));
+        assertThat(c.isNull(), is(true));
+        assertThat(parser.next(), is(true));
+        parser.fill(a);
+        parser.fill(b);
+        parser.fill(c);
+        assertThat(a.isNull(), is(true));
+        assertThat(b.getAsString(), is("x"));
+        assertThat(c.isNull(), is(true));
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * keys in different order, unknown keys, and blank lines.
+     * @throws Exception if failed
+     */
+    @Test
+    public void flexible() throws Exception {
+        JsonKeyTable keys = new JsonKeyTable("a", "b");
+        JsonLinesParser parser = parser(keys,
+                "\r\n"
+                + " { \"b\" : \"B\" , \"x\": {\"y\": [1, \"]}\", {}]}, \"a\" : 100 } \r\n"
+                + "\n"
+                + "{\"\\u0061\":-1,\"b\":\"\\ud83d\\ude00\"}");
+        IntOption a = new IntOption();
+        StringOption b = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(a);
+        parser.fill(b);
+        assertThat(a.get(), is(100));
+        assertThat(b.getAsString(), is("B"));
+        assertThat(parser.next(), is(true));
+        parser.fill(a);
+        parser.fill(b);
+        assertThat(a.get(), is(-1));
+        assertThat(b.getAsString(), is(new String(Character.toChars(0x1f600))));
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * many keys in the perfect hash table.
+     * @throws Exception if failed
+     */
+    @Test
+    public void many_keys() throws Exception {
+        String[] names = new String[500];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "key_" + i;
+        }
+        JsonKeyTable keys = new JsonKeyTable(names);
+        for (int i = 0; i < names.length; i++) {
+            byte[] bytes = names[i].getBytes(UTF8);
+            assertThat(keys.find(bytes, 0, bytes.length), is(i));
+        }
+        byte[] unknown = "key_500".getBytes(UTF8);
+        assertThat(keys.find(unknown, 0, unknown.length), is(-1));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonLinesEmitter emitter = new JsonLinesEmitter(output, keys);
+        for (int record = 0; record < 100; record++) {
+            for (int i = 0; i < names.length; i++) {
+                emitter.emit(new LongOption(record * 1000L + i));
+            }
+            emitter.endRecord();
+        }
+        emitter.close();
+
+        JsonLinesParser parser = new JsonLinesParser(
+                new ByteArrayInputStream(output.toByteArray()), "testing", keys);
+        LongOption option = new LongOption();
+        for (int record = 0; record < 100; record++) {
+            assertThat(parser.next(), is(true));
+            for (int i = 0; i < names.length; i++) {
+                parser.fill(option);
+                assertThat(option.get(), is(record * 1000L + i));
+            }
+        }
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * invalid key names.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void keys_duplicate() {
+        new JsonKeyTable("a", "b", "a");
+    }
+
+    /**
+     * broken records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void invalid_record() throws Exception {
+        JsonKeyTable keys = new JsonKeyTable("a");
+        checkInvalid(keys, "[1]");
+        checkInvalid(keys, "{\"a\":1");
+        checkInvalid(keys, "{\"a\" 1}");
+        checkInvalid(keys, "{\"a\":1} x");
+        checkInvalid(keys, "{\"a\":\"x}");
+        checkInvalid(keys, "{\"a\":{\"b\":1}}");
+        checkInvalid(keys, "{\"a\":nul}");
+    }
+
+    /**
+     * values which are not compatible with the types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void invalid_value() throws Exception {
+        JsonKeyTable keys = new JsonKeyTable("a");
+        JsonLinesParser parser = parser(keys, "{\"a\":128}\n{\"a\":1.5}\n{\"a\":\"2014-02-30\"}\n{\"a\":1}");
+        assertThat(parser.next(), is(true));
+        try {
+            parser.fill(new ByteOption());
+            fail();
+        } catch (IOException e) {
+            // ok.
+        }
+        assertThat(parser.next(), is(true));
+        try {
+            parser.fill(new IntOption());
+            fail();
+        } catch (IOException e) {
+            // ok.
+        }
+        assertThat(parser.next(), is(true));
+        try {
+            parser.fill(new DateOption());
+            fail();
+        } catch (IOException e) {
+            // ok.
+        }
+        assertThat(parser.next(), is(true));
+        try {
+            parser.fill(new StringOption());
+            fail();
+        } catch (IOException e) {
+            // ok.
+        }
+    }
+
+    private void checkInvalid(JsonKeyTable keys, String text) throws IOException {
+        JsonLinesParser parser = parser(keys, text);
+        try {
+            parser.next();
+            fail(text);
+        } catch (IOException e) {
+            // ok.
+        }
+    }
+
+    private JsonLinesParser parser(JsonKeyTable keys, String text) {
+        return new JsonLinesParser(new ByteArrayInputStream(text.getBytes(UTF8)), "testing", keys);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.rowbin;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link RowBinaryEmitter}.
+ */
+public class RowBinaryEmitterTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RowBinaryEmitter emitter = new RowBinaryEmitter(output);
+        emitter.emit(new IntOption(0x01020304));
+        emitter.emit(new StringOption("Hi"));
+        emitter.emit(new IntOption());
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toByteArray(), is(new byte[] {
+                'A', 'R', 'B', 1,
+                11, // 10 bytes + 1
+                1, 1, 2, 3, 4,
+                1, 2, 'H', 'i',
+                0,
+        }));
+    }
+
+    /**
+     * decimals.
+     * @throws Exception if failed
+     */
+    @Test
+    public void decimal() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RowBinaryEmitter emitter = new RowBinaryEmitter(output);
+        emitter.emit(new DecimalOption(new BigDecimal("-1.5")));
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toByteArray(), is(new byte[] {
+                'A', 'R', 'B', 1,
+                5,
+                1, 2, 1, (byte) -15,
+        }));
+    }
+
+    /**
+     * inserts sync blocks.
+     * @throws Exception if failed
+     */
+    @Test
+    public void sync() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RowBinaryEmitter emitter = new RowBinaryEmitter(output, 10);
+        for (int i = 0; i < 3; i++) {
+            emitter.emit(new IntOption(i));
+            emitter.emit(new IntOption(i));
+            emitter.endRecord();
+        }
+        emitter.close();
+        byte[] bytes = output.toByteArray();
+        int recordSize = 1 + 10;
+        assertThat(bytes.length, is(4 + recordSize * 3 + RowBinaryFormats.SYNC_SIZE * 2));
+        assertThat(bytes[4 + recordSize], is((byte) RowBinaryFormats.HEADER_SYNC));
+        assertThat(bytes[4 + recordSize * 2 + RowBinaryFormats.SYNC_SIZE], is((byte) RowBinaryFormats.HEADER_SYNC));
+    }
+
+    /**
+     * large records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void large() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < RowBinaryEmitter.BUFFER_SIZE * 2; i++) {
+            buf.append((char) ('a' + i % 26));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RowBinaryEmitter emitter = new RowBinaryEmitter(output);
+        emitter.emit(new StringOption(buf.toString()));
+        emitter.endRecord();
+        emitter.emit(new StringOption(buf.toString()));
+        emitter.endRecord();
+        emitter.close();
+
+        RowBinaryParser parser = new RowBinaryParser(new ByteArrayInputStream(output.toByteArray()));
+        StringOption option = new StringOption();
+        for (int i = 0; i < 2; i++) {
+            assertThat(parser.next(), is(true));
+            parser.fill(option);
+            parser.endRecord();
+            assertThat(option.getAsString(), is(buf.toString()));
+        }
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+}
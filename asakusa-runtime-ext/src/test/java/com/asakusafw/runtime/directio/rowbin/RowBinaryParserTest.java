@@ -0,0 +1,246 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.rowbin;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link RowBinaryParser}.
+ */
+public class RowBinaryParserTest {
+
+    /**
+     * all types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void types() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RowBinaryEmitter emitter = new RowBinaryEmitter(output);
+        emitter.emit(new BooleanOption(true));
+        emitter.emit(new ByteOption((byte) -12));
+        emitter.emit(new ShortOption((short) 1234));
+        emitter.emit(new IntOption(-123456));
+        emitter.emit(new LongOption(1234567890123L));
+        emitter.emit(new FloatOption(1.5f));
+        emitter.emit(new DoubleOption(-2.25));
+        emitter.emit(new DecimalOption(new BigDecimal("-3.14")));
+        emitter.emit(new StringOption("あ"));
+        emitter.emit(new DateOption(new Date(2014, 3, 4)));
+        emitter.emit(new DateTimeOption(new DateTime(2000, 2, 29, 12, 34, 56)));
+        emitter.endRecord();
+        emitter.close();
+
+        RowBinaryParser parser = new RowBinaryParser(new ByteArrayInputStream(output.toByteArray()));
+        assertThat(parser.next(), is(true));
+        BooleanOption booleanOption = new BooleanOption();
+        ByteOption byteOption = new ByteOption();
+        ShortOption shortOption = new ShortOption();
+        IntOption intOption = new IntOption();
+        LongOption longOption = new LongOption();
+        FloatOption floatOption = new FloatOption();
+        DoubleOption doubleOption = new DoubleOption();
+        DecimalOption decimalOption = new DecimalOption();
+        StringOption stringOption = new StringOption();
+        DateOption dateOption = new DateOption();
+        DateTimeOption dateTimeOption = new DateTimeOption();
+        parser.fill(booleanOption);
+        parser.fill(byteOption);
+        parser.fill(shortOption);
+        parser.fill(intOption);
+        parser.fill(longOption);
+        parser.fill(floatOption);
+        parser.fill(doubleOption);
+        parser.fill(decimalOption);
+        parser.fill(stringOption);
+        parser.fill(dateOption);
+        parser.fill(dateTimeOption);
+        parser.endRecord();
+        assertThat(booleanOption, is(new BooleanOption(true)));
+        assertThat(byteOption, is(new ByteOption((byte) -12)));
+        assertThat(shortOption, is(new ShortOption((short) 1234)));
+        assertThat(intOption, is(new IntOption(-123456)));
+        assertThat(longOption, is(new LongOption(1234567890123L)));
+        assertThat(floatOption, is(new FloatOption(1.5f)));
+        assertThat(doubleOption, is(new DoubleOption(-2.25)));
+        assertThat(decimalOption, is(new DecimalOption(new BigDecimal("-3.14"))));
+        assertThat(stringOption, is(new StringOption("あ")));
+        assertThat(dateOption.get().getElapsedDays(), is(new Date(2014, 3, 4).getElapsedDays()));
+        assertThat(dateTimeOption.get().getElapsedSeconds(),
+                is(new DateTime(2000, 2, 29, 12, 34, 56).getElapsedSeconds()));
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * null values.
+     * @throws Exception if failed
+     */
+    @Test
+    public void nulls() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RowBinaryEmitter emitter = new RowBinaryEmitter(output);
+        emitter.emit(new IntOption());
+        emitter.emit(new StringOption());
+        emitter.endRecord();
+        emitter.close();
+
+        RowBinaryParser parser = new RowBinaryParser(new ByteArrayInputStream(output.toByteArray()));
+        IntOption intOption = new IntOption(1);
+        StringOption stringOption = new StringOption("x");
+        assertThat(parser.next(), is(true));
+        parser.fill(intOption);
+        parser.fill(stringOption);
+        parser.endRecord();
+        assertThat(intOption.isNull(), is(true));
+        assertThat(stringOption.isNull(), is(true));
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * empty files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        RowBinaryParser parser = new RowBinaryParser(new ByteArrayInputStream(new byte[0]));
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * every record is read exactly once over fragments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments() throws Exception {
+        byte[] bytes = write(1000, 50);
+        for (int size : new int[] { 1, 17, 100, 333, 1024, bytes.length }) {
+            List<Integer> results = new ArrayList<Integer>();
+            for (int offset = 0; offset < bytes.length; offset += size) {
+                results.addAll(read(bytes, offset, size));
+            }
+            assertThat(String.valueOf(size), results, is(sequence(1000)));
+        }
+    }
+
+    /**
+     * reads whole file from the head.
+     * @throws Exception if failed
+     */
+    @Test
+    public void whole() throws Exception {
+        byte[] bytes = write(1000, 50);
+        assertThat(read(bytes, 0, -1), is(sequence(1000)));
+    }
+
+    /**
+     * detects invalid file headers.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void invalid_header() throws Exception {
+        RowBinaryParser parser = new RowBinaryParser(new ByteArrayInputStream(new byte[] { 'A', 'R', 'X', 1 }));
+        parser.next();
+    }
+
+    /**
+     * detects extra fields.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void extra_fields() throws Exception {
+        byte[] bytes = write(1, 50);
+        RowBinaryParser parser = new RowBinaryParser(new ByteArrayInputStream(bytes));
+        assertThat(parser.next(), is(true));
+        parser.endRecord();
+    }
+
+    /**
+     * detects truncated records.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void truncated() throws Exception {
+        byte[] bytes = write(1, 50);
+        RowBinaryParser parser = new RowBinaryParser(new ByteArrayInputStream(
+                Arrays.copyOf(bytes, bytes.length - 1)));
+        parser.next();
+    }
+
+    private byte[] write(int count, int syncInterval) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RowBinaryEmitter emitter = new RowBinaryEmitter(output, syncInterval);
+        for (int i = 0; i < count; i++) {
+            emitter.emit(new IntOption(i));
+            emitter.emit(new StringOption(String.valueOf(i)));
+            emitter.endRecord();
+        }
+        emitter.close();
+        return output.toByteArray();
+    }
+
+    private List<Integer> read(byte[] bytes, int offset, int size) throws IOException {
+        ByteArrayInputStream input = new ByteArrayInputStream(bytes, offset, bytes.length - offset);
+        RowBinaryParser parser = new RowBinaryParser(input, "testing", offset, size);
+        List<Integer> results = new ArrayList<Integer>();
+        IntOption intOption = new IntOption();
+        StringOption stringOption = new StringOption();
+        while (parser.next()) {
+            parser.fill(intOption);
+            parser.fill(stringOption);
+            parser.endRecord();
+            assertThat(stringOption.getAsString(), is(String.valueOf(intOption.get())));
+            results.add(intOption.get());
+        }
+        parser.close();
+        return results;
+    }
+
+    private List<Integer> sequence(int count) {
+        List<Integer> results = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            results.add(i);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,395 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tools;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.directio.DataFormat;
+import com.asakusafw.runtime.directio.fixed.FixedWidthEmitter;
+import com.asakusafw.runtime.directio.fixed.FixedWidthParser;
+import com.asakusafw.runtime.directio.jsonl.JsonKeyTable;
+import com.asakusafw.runtime.directio.jsonl.JsonLinesEmitter;
+import com.asakusafw.runtime.directio.jsonl.JsonLinesParser;
+import com.asakusafw.runtime.directio.tsv.RollingFileFormat;
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.value.IntOption;
+
+/**
+ * Test for {@link FormatConverter}.
+ */
+public class FormatConverterTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * converts a file which is split into fragments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments() throws Exception {
+        File source = new File(folder.newFolder(), "data.bin");
+        write(new MockFixedFormat(), source, 0, 100);
+        File destination = folder.newFolder();
+
+        FormatConverter converter = new FormatConverter(new MockFixedFormat(), new MockJsonFormat(), 4, 35);
+        FormatConverter.Statistics statistics = converter.convert(Arrays.asList(source), destination);
+        assertThat(statistics.getFileCount(), is(1));
+        assertThat(statistics.getFragmentCount(), is(29));
+        assertThat(statistics.getRecordCount(), is(100L));
+        assertThat(statistics.getInputBytes(), is(source.length()));
+        assertThat(statistics.toString(), containsString("records=100"));
+
+        File[] outputs = destination.listFiles();
+        assertThat(outputs.length, is(29));
+        List<Integer> values = new ArrayList<Integer>();
+        for (File output : outputs) {
+            assertThat(output.getName(), startsWith("data.bin-000"));
+            values.addAll(read(new MockJsonFormat(), output));
+        }
+        Collections.sort(values);
+        assertThat(values, is(range(0, 100)));
+    }
+
+    /**
+     * converts files in directories without fragmentation.
+     * @throws Exception if failed
+     */
+    @Test
+    public void directories() throws Exception {
+        File root = folder.newFolder();
+        write(new MockJsonFormat(), new File(root, "a.jsonl"), 0, 10);
+        write(new MockJsonFormat(), new File(root, "sub/b.jsonl"), 10, 20);
+        File destination = folder.newFolder();
+
+        FormatConverter converter = new FormatConverter(new MockJsonFormat(), new MockFixedFormat(), 2, 1);
+        FormatConverter.Statistics statistics = converter.convert(Arrays.asList(root), destination);
+        assertThat(statistics.getFileCount(), is(2));
+        assertThat(statistics.getFragmentCount(), is(2));
+        assertThat(statistics.getRecordCount(), is(20L));
+        assertThat(read(new MockFixedFormat(), new File(destination, "a.jsonl")), is(range(0, 10)));
+        assertThat(read(new MockFixedFormat(), new File(destination, "sub/b.jsonl")), is(range(10, 20)));
+    }
+
+    /**
+     * converts files from and into Hadoop file formats.
+     * @throws Exception if failed
+     */
+    @Test
+    public void hadoop_file_format() throws Exception {
+        File source = new File(folder.newFolder(), "data.jsonl");
+        write(new MockJsonFormat(), source, 0, 10);
+        File rolling = folder.newFolder();
+
+        FormatConverter converter = new FormatConverter(new MockJsonFormat(), new MockRollingFormat(), 2, -1);
+        FormatConverter.Statistics statistics = converter.convert(Arrays.asList(source), rolling);
+        assertThat(statistics.getRecordCount(), is(10L));
+        assertThat(statistics.getOutputBytes(), is(source.length()));
+        assertThat(read(new MockJsonFormat(), new File(rolling, "data.jsonl")), is(range(0, 4)));
+        assertThat(read(new MockJsonFormat(), new File(rolling, "data-00001.jsonl")), is(range(4, 8)));
+        assertThat(read(new MockJsonFormat(), new File(rolling, "data-00002.jsonl")), is(range(8, 10)));
+
+        File destination = folder.newFolder();
+        converter = new FormatConverter(new MockRollingFormat(), new MockFixedFormat(), 2, -1);
+        statistics = converter.convert(Arrays.asList(rolling), destination);
+        assertThat(statistics.getFileCount(), is(3));
+        assertThat(statistics.getRecordCount(), is(10L));
+        assertThat(read(new MockFixedFormat(), new File(destination, "data.jsonl")), is(range(0, 4)));
+        assertThat(read(new MockFixedFormat(), new File(destination, "data-00001.jsonl")), is(range(4, 8)));
+        assertThat(read(new MockFixedFormat(), new File(destination, "data-00002.jsonl")), is(range(8, 10)));
+    }
+
+    /**
+     * rejects formats which are neither stream formats nor Hadoop file formats.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void unsupported_format() throws Exception {
+        DataFormat<MockData> format = new DataFormat<MockData>() {
+            @Override
+            public Class<MockData> getSupportedType() {
+                return MockData.class;
+            }
+        };
+        new FormatConverter(format, new MockJsonFormat(), 1, -1);
+    }
+
+    /**
+     * command line.
+     * @throws Exception if failed
+     */
+    @Test
+    public void execute() throws Exception {
+        File source = new File(folder.newFolder(), "data.bin");
+        write(new MockFixedFormat(), source, 0, 10);
+        File destination = folder.newFolder();
+        int status = FormatConverter.execute(
+                "-model", MockData.class.getName(),
+                "-from", MockFixedFormat.class.getName(),
+                "-to", MockJsonFormat.class.getName(),
+                "-output", destination.getPath(),
+                "-threads", "2",
+                source.getPath());
+        assertThat(status, is(0));
+        assertThat(read(new MockJsonFormat(), new File(destination, "data.bin")), is(range(0, 10)));
+    }
+
+    /**
+     * command line with invalid arguments.
+     */
+    @Test
+    public void execute_invalid() {
+        assertThat(FormatConverter.execute(), is(not(0)));
+        assertThat(FormatConverter.execute("-model", MockData.class.getName(), "-from"), is(not(0)));
+        assertThat(FormatConverter.execute(
+                "-model", MockData.class.getName(),
+                "-from", "tsv",
+                "-to", "jsonl",
+                "-output", "target",
+                "-unknown", "x",
+                "input"), is(not(0)));
+        assertThat(FormatConverter.execute(
+                "-model", MockData.class.getName(),
+                "-from", "tsv",
+                "-to", "jsonl",
+                "-output", "target",
+                "-threads", "0",
+                "input"), is(not(0)));
+    }
+
+    /**
+     * resolves generated format class names.
+     */
+    @Test
+    public void toFormatClassName() {
+        assertThat(
+                FormatConverter.toFormatClassName("com.example.model.Item", "tsv"),
+                is("com.example.tsv.ItemTsvFormat"));
+        assertThat(
+                FormatConverter.toFormatClassName("com.example.model.Item", "rowbin"),
+                is("com.example.rowbin.ItemRowBinaryFormat"));
+        assertThat(
+                FormatConverter.toFormatClassName("com.example.model.Item", "jsonl"),
+                is("com.example.jsonl.ItemJsonLinesFormat"));
+        assertThat(
+                FormatConverter.toFormatClassName("com.example.model.Item", "com.example.Other"),
+                is("com.example.Other"));
+    }
+
+    private void write(BinaryStreamFormat<MockData> format, File file, int from, int to) throws Exception {
+        file.getParentFile().mkdirs();
+        OutputStream stream = new FileOutputStream(file);
+        ModelOutput<MockData> output = format.createOutput(MockData.class, file.getPath(), stream);
+        try {
+            MockData data = new MockData();
+            for (int i = from; i < to; i++) {
+                data.value.modify(i);
+                output.write(data);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private List<Integer> read(BinaryStreamFormat<MockData> format, File file) throws Exception {
+        InputStream stream = new FileInputStream(file);
+        ModelInput<MockData> input = format.createInput(MockData.class, file.getPath(), stream, 0, file.length());
+        try {
+            List<Integer> results = new ArrayList<Integer>();
+            MockData data = new MockData();
+            while (input.readTo(data)) {
+                results.add(data.value.get());
+            }
+            return results;
+        } finally {
+            input.close();
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> results = new ArrayList<Integer>();
+        for (int i = from; i < to; i++) {
+            results.add(i);
+        }
+        return results;
+    }
+
+    /**
+     * A mock data model.
+     */
+    public static class MockData {
+
+        final IntOption value = new IntOption();
+    }
+
+    /**
+     * A splittable mock format.
+     */
+    public static class MockFixedFormat extends BinaryStreamFormat<MockData> {
+
+        static final int RECORD_LENGTH = 10;
+
+        @Override
+        public Class<MockData> getSupportedType() {
+            return MockData.class;
+        }
+
+        @Override
+        public long getPreferredFragmentSize() {
+            return -1L;
+        }
+
+        @Override
+        public long getMinimumFragmentSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public ModelInput<MockData> createInput(
+                Class<? extends MockData> dataType, String path,
+                InputStream stream, long offset, long fragmentSize) throws IOException {
+            final FixedWidthParser parser = new FixedWidthParser(
+                    stream, path, offset, fragmentSize, RECORD_LENGTH, Charset.forName("US-ASCII"));
+            return new ModelInput<MockData>() {
+                @Override
+                public boolean readTo(MockData model) throws IOException {
+                    if (parser.next() == false) {
+                        return false;
+                    }
+                    parser.fill(model.value, 0, RECORD_LENGTH);
+                    return true;
+                }
+                @Override
+                public void close() throws IOException {
+                    parser.close();
+                }
+            };
+        }
+
+        @Override
+        public ModelOutput<MockData> createOutput(
+                Class<? extends MockData> dataType, String path, OutputStream stream) {
+            final FixedWidthEmitter emitter = new FixedWidthEmitter(stream, RECORD_LENGTH);
+            return new ModelOutput<MockData>() {
+                @Override
+                public void write(MockData model) throws IOException {
+                    emitter.emit(model.value, 0, RECORD_LENGTH);
+                    emitter.endRecord();
+                }
+                @Override
+                public void close() throws IOException {
+                    emitter.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * A mock format which writes at most 4 records into each file.
+     */
+    public static class MockRollingFormat extends RollingFileFormat<MockData> {
+
+        /**
+         * Creates a new instance.
+         */
+        public MockRollingFormat() {
+            super(new MockJsonFormat(), 0, 4);
+        }
+    }
+
+    /**
+     * A mock format which does not support fragmentation.
+     */
+    public static class MockJsonFormat extends BinaryStreamFormat<MockData> {
+
+        static final JsonKeyTable KEYS = new JsonKeyTable("value");
+
+        @Override
+        public Class<MockData> getSupportedType() {
+            return MockData.class;
+        }
+
+        @Override
+        public long getPreferredFragmentSize() {
+            return -1L;
+        }
+
+        @Override
+        public long getMinimumFragmentSize() {
+            return -1L;
+        }
+
+        @Override
+        public ModelInput<MockData> createInput(
+                Class<? extends MockData> dataType, String path,
+                InputStream stream, long offset, long fragmentSize) {
+            final JsonLinesParser parser = new JsonLinesParser(stream, path, KEYS);
+            return new ModelInput<MockData>() {
+                @Override
+                public boolean readTo(MockData model) throws IOException {
+                    if (parser.next() == false) {
+                        return false;
+                    }
+                    parser.fill(model.value);
+                    return true;
+                }
+                @Override
+                public void close() throws IOException {
+                    parser.close();
+                }
+            };
+        }
+
+        @Override
+        public ModelOutput<MockData> createOutput(
+                Class<? extends MockData> dataType, String path, OutputStream stream) {
+            final JsonLinesEmitter emitter = new JsonLinesEmitter(stream, KEYS);
+            return new ModelOutput<MockData>() {
+                @Override
+                public void write(MockData model) throws IOException {
+                    emitter.emit(model.value);
+                    emitter.endRecord();
+                }
+                @Override
+                public void close() throws IOException {
+                    emitter.close();
+                }
+            };
+        }
+    }
+}
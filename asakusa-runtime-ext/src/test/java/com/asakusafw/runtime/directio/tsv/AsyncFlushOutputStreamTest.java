@@ -0,0 +1,226 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link AsyncFlushOutputStream}.
+ */
+public class AsyncFlushOutputStreamTest {
+
+    private ExecutorService executor;
+
+    /**
+     * Initializes the test.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Cleans up the test.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        OutputStream out = new AsyncFlushOutputStream(buf, executor, 16, 2);
+        byte[] data = data(1000);
+        for (int offset = 0; offset < data.length; offset += 7) {
+            out.write(data, offset, Math.min(7, data.length - offset));
+        }
+        out.write('!');
+        out.close();
+        byte[] expected = new byte[data.length + 1];
+        System.arraycopy(data, 0, expected, 0, data.length);
+        expected[data.length] = '!';
+        assertThat(buf.toByteArray(), is(expected));
+    }
+
+    /**
+     * flush waits for the pending buffers.
+     * @throws Exception if failed
+     */
+    @Test
+    public void flush() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        OutputStream out = new AsyncFlushOutputStream(buf, executor, 16, 2);
+        out.write(data(100));
+        out.flush();
+        assertThat(buf.size(), is(100));
+        out.close();
+    }
+
+    /**
+     * blocks while the number of buffers in flight reaches the limit.
+     * @throws Exception if failed
+     */
+    @Test
+    public void bounded() throws Exception {
+        final Semaphore gate = new Semaphore(0);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                gate.acquireUninterruptibly();
+                super.write(b, off, len);
+            }
+        };
+        final OutputStream out = new AsyncFlushOutputStream(buf, executor, 10, 2);
+        final byte[] data = data(40);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    out.write(data);
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        writer.start();
+        writer.join(200);
+        assertThat(writer.isAlive(), is(true));
+
+        gate.release(10);
+        writer.join();
+        assertThat(error.get(), is(nullValue()));
+        out.close();
+        assertThat(buf.toByteArray(), is(data));
+    }
+
+    /**
+     * errors on the background thread.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void error() throws Exception {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException();
+            }
+        };
+        OutputStream out = new AsyncFlushOutputStream(broken, executor, 10, 2);
+        out.write(data(100));
+        out.close();
+    }
+
+    /**
+     * fatal errors on the background thread.
+     * @throws Exception if failed
+     */
+    @Test(timeout = 10000)
+    public void error_fatal() throws Exception {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new LinkageError();
+            }
+        };
+        OutputStream out = new AsyncFlushOutputStream(broken, executor, 10, 2);
+        try {
+            out.write(data(100));
+            out.close();
+            fail();
+        } catch (IOException e) {
+            assertThat(e.getCause(), is(instanceOf(LinkageError.class)));
+        }
+    }
+
+    /**
+     * close waits for the background thread even if it was interrupted.
+     * @throws Exception if failed
+     */
+    @Test(timeout = 10000)
+    public void close_interrupted() throws Exception {
+        final Semaphore gate = new Semaphore(0);
+        final AtomicBoolean writing = new AtomicBoolean();
+        final AtomicBoolean concurrent = new AtomicBoolean();
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writing.set(true);
+                gate.acquireUninterruptibly();
+                super.write(b, off, len);
+                writing.set(false);
+            }
+            @Override
+            public void close() {
+                concurrent.set(writing.get());
+            }
+        };
+        final OutputStream out = new AsyncFlushOutputStream(buf, executor, 10, 4);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    out.write(data(30));
+                    out.close();
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        writer.start();
+        while (writer.getState() != Thread.State.WAITING || writing.get() == false) {
+            Thread.sleep(10);
+        }
+        writer.interrupt();
+        writer.join(200);
+        assertThat(writer.isAlive(), is(true));
+
+        gate.release(10);
+        writer.join();
+        assertThat(error.get(), is(instanceOf(InterruptedIOException.class)));
+        assertThat(concurrent.get(), is(false));
+        assertThat(buf.size(), is(10));
+    }
+
+    private byte[] data(int size) {
+        byte[] results = new byte[size];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (byte) i;
+        }
+        return results;
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.directio.Counter;
+
+/**
+ * Test for {@link CountingOutputStream}.
+ */
+public class CountingOutputStreamTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        Counter counter = new Counter();
+        CountingOutputStream out = new CountingOutputStream(new ByteArrayOutputStream(), counter);
+        out.write(1);
+        out.write(new byte[10], 2, 5);
+        out.close();
+        assertThat(out.getCount(), is(6L));
+        assertThat(out.getUncompressedCount(), is(-1L));
+        assertThat(counter.get(), is(6L));
+    }
+
+    /**
+     * counts uncompressed bytes.
+     * @throws Exception if failed
+     */
+    @Test
+    public void countUncompressed() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        CountingOutputStream raw = new CountingOutputStream(buf, null);
+        OutputStream out = CountingOutputStream.countUncompressed(raw, new GZIPOutputStream(raw));
+        out.write(new byte[10000]);
+        out.write(0);
+        out.close();
+        assertThat(raw.getUncompressedCount(), is(10001L));
+        assertThat(raw.getCount(), is((long) buf.size()));
+        assertThat(raw.getCount(), is(lessThan(10001L)));
+    }
+
+    /**
+     * does not decorate other streams.
+     * @throws Exception if failed
+     */
+    @Test
+    public void countUncompressed_other() throws Exception {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        GZIPOutputStream decorated = new GZIPOutputStream(raw);
+        assertThat(CountingOutputStream.countUncompressed(raw, decorated), is((OutputStream) decorated));
+    }
+}
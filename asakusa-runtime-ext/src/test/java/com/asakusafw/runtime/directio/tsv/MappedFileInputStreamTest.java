@@ -0,0 +1,266 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.runtime.directio.util.DelimiterRangeInputStream;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link MappedFileInputStream}.
+ */
+public class MappedFileInputStreamTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        File file = create(100);
+        InputStream in = new MappedFileInputStream(file, 0, null);
+        try {
+            assertThat(dump(in), is(expect(0, 100)));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * reads with offset over multiple windows.
+     * @throws Exception if failed
+     */
+    @Test
+    public void windows() throws Exception {
+        File file = create(1000);
+        InputStream in = new MappedFileInputStream(file, 10, null, 64);
+        try {
+            assertThat(in.read(), is(10));
+            assertThat(in.skip(100), is(100L));
+            assertThat(dump(in), is(expect(111, 1000)));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * wraps local files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void wrap() throws Exception {
+        File file = create(100);
+        InputStream origin = new ByteArrayInputStream(new byte[0]);
+        InputStream in = MappedFileInputStream.wrap(file.toURI().toString(), origin, 50);
+        try {
+            assertThat(in, is(instanceOf(MappedFileInputStream.class)));
+            assertThat(dump(in), is(expect(50, 100)));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * does not wrap other files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void wrap_other() throws Exception {
+        InputStream origin = new ByteArrayInputStream(new byte[0]);
+        assertThat(MappedFileInputStream.wrap("hdfs://localhost/testing", origin, 0), is(sameInstance(origin)));
+        assertThat(MappedFileInputStream.wrap("testing", origin, 0), is(sameInstance(origin)));
+    }
+
+    /**
+     * reads records in each fragment.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            buf.append(i).append(':');
+            for (int j = 0; j < i % 7; j++) {
+                buf.append('x');
+            }
+            buf.append('\n');
+        }
+        File file = create(buf.toString());
+        long length = file.length();
+        for (int fragmentSize : new int[] { 1, 3, 10, 64, 100, 1000 }) {
+            StringBuilder results = new StringBuilder();
+            for (long offset = 0; offset < length; offset += fragmentSize) {
+                InputStream in = new MappedFileInputStream(file, offset, fragmentSize, '\n', offset > 0, null, 16);
+                try {
+                    results.append(new String(dump(in), "UTF-8"));
+                } finally {
+                    in.close();
+                }
+            }
+            assertThat(String.valueOf(fragmentSize), results.toString(), is(buf.toString()));
+        }
+    }
+
+    /**
+     * fragment which has no record heads.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments_empty() throws Exception {
+        File file = create("aaaaaaaaaa\nb\n");
+        InputStream in = new MappedFileInputStream(file, 3, 3, '\n', true, null, 4);
+        try {
+            assertThat(dump(in).length, is(0));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * skips the original stream as the mapped regions are consumed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void skip_origin() throws Exception {
+        File file = create(1000);
+        final long[] skipped = new long[1];
+        InputStream origin = new ByteArrayInputStream(new byte[1000]) {
+            @Override
+            public synchronized long skip(long n) {
+                long result = super.skip(n);
+                skipped[0] += result;
+                return result;
+            }
+        };
+        InputStream in = new MappedFileInputStream(file, 100, origin, 64);
+        dump(in);
+        in.close();
+        assertThat(skipped[0], is(900L));
+    }
+
+    /**
+     * parses the mapped windows directly.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parse_windows() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        buf.append("HEADER\n");
+        for (int i = 0; i < 200; i++) {
+            buf.append(i).append('\t');
+            for (int j = 0; j < i % 40; j++) {
+                buf.append((char) ('a' + j % 26));
+            }
+            buf.append('\n');
+        }
+        File file = create(buf.toString());
+        InputStream in = new MappedFileInputStream(file, 0, -1, '\n', false, null, 16);
+        while (in.read() != '\n') {
+            continue;
+        }
+        Utf8TsvParser parser = new Utf8TsvParser(in);
+        try {
+            IntOption key = new IntOption();
+            StringOption value = new StringOption();
+            for (int i = 0; i < 200; i++) {
+                assertThat(parser.next(), is(true));
+                parser.fill(key);
+                parser.fill(value);
+                parser.endRecord();
+                assertThat(key.get(), is(i));
+                assertThat(value.getAsString().length(), is(i % 40));
+            }
+            assertThat(parser.next(), is(false));
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * wraps other files into ranges.
+     * @throws Exception if failed
+     */
+    @Test
+    public void wrap_range_other() throws Exception {
+        InputStream origin = new ByteArrayInputStream(new byte[0]);
+        InputStream in = MappedFileInputStream.wrap("hdfs://localhost/testing", origin, 0, 10, '\n', false);
+        assertThat(in, is(instanceOf(DelimiterRangeInputStream.class)));
+    }
+
+    private File create(String contents) throws IOException {
+        File file = folder.newFile();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File create(int size) throws IOException {
+        File file = folder.newFile();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(expect(0, size));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private byte[] expect(int from, int to) {
+        byte[] results = new byte[to - from];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (byte) (from + i);
+        }
+        return results;
+    }
+
+    private byte[] dump(InputStream in) throws IOException {
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        byte[] buf = new byte[37];
+        while (true) {
+            int read = in.read(buf);
+            if (read < 0) {
+                break;
+            }
+            results.write(buf, 0, read);
+        }
+        return results.toByteArray();
+    }
+}
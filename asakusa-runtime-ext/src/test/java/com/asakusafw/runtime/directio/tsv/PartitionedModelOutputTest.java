@@ -0,0 +1,116 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.io.ModelOutput;
+
+/**
+ * Test for {@link PartitionedModelOutput}.
+ */
+public class PartitionedModelOutputTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        Mock output = new Mock(10);
+        output.write("a1");
+        output.write("b1");
+        output.write("a2");
+        output.close();
+        assertThat(output.getPartitionCount(), is(2));
+        assertThat(output.results.get("a@0"), is(Arrays.asList("a1", "a2", "<close>")));
+        assertThat(output.results.get("b@0"), is(Arrays.asList("b1", "<close>")));
+    }
+
+    /**
+     * closes the least recently used partition.
+     * @throws Exception if failed
+     */
+    @Test
+    public void lru() throws Exception {
+        Mock output = new Mock(2);
+        output.write("a1");
+        output.write("b1");
+        output.write("a2");
+        output.write("c1");
+        assertThat(output.results.get("b@0"), is(Arrays.asList("b1", "<close>")));
+        assertThat(output.results.get("a@0"), is(Arrays.asList("a1", "a2")));
+        output.write("b2");
+        output.close();
+        assertThat(output.getPartitionCount(), is(3));
+        assertThat(output.getOpenCount(), is(4));
+        assertThat(output.results.get("a@0"), is(Arrays.asList("a1", "a2", "<close>")));
+        assertThat(output.results.get("b@1"), is(Arrays.asList("b2", "<close>")));
+        assertThat(output.results.get("c@0"), is(Arrays.asList("c1", "<close>")));
+    }
+
+    /**
+     * no records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        Mock output = new Mock(2);
+        output.close();
+        assertThat(output.getPartitionCount(), is(0));
+        assertThat(output.results.size(), is(0));
+    }
+
+    private static class Mock extends PartitionedModelOutput<String> {
+
+        final Map<String, List<String>> results = new LinkedHashMap<String, List<String>>();
+
+        Mock(int maxOpenPartitions) {
+            super(maxOpenPartitions);
+        }
+
+        @Override
+        protected String getPartition(String model) {
+            return model.substring(0, 1);
+        }
+
+        @Override
+        protected ModelOutput<String> openPartition(String partition, int generation) {
+            final List<String> list = new ArrayList<String>();
+            results.put(partition + "@" + generation, list);
+            return new ModelOutput<String>() {
+                @Override
+                public void write(String model) throws IOException {
+                    list.add(model);
+                }
+                @Override
+                public void close() throws IOException {
+                    list.add("<close>");
+                }
+            };
+        }
+    }
+}
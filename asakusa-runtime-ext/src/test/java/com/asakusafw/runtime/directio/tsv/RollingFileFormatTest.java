@@ -0,0 +1,272 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.runtime.directio.BinaryStreamFormat;
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.io.compress.AdaptiveCompressionOutputStream;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Test for {@link RollingFileFormat}.
+ */
+public class RollingFileFormatTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystem fs;
+
+    private Path file;
+
+    /**
+     * Initializes the test.
+     * @throws Exception if failed
+     */
+    @Before
+    public void setUp() throws Exception {
+        fs = FileSystem.getLocal(new Configuration());
+        file = new Path(folder.getRoot().toURI().toString(), "a.txt");
+    }
+
+    /**
+     * reads key ranges using the sparse index.
+     * @throws Exception if failed
+     */
+    @Test
+    public void range() throws Exception {
+        SortedFormat format = new SortedFormat(5);
+        write(format, 100);
+        assertThat(TsvSparseIndex.load(fs, file).getEntryCount(), is(20));
+        assertThat(read(format, key(40), key(44)), is(keys(40, 45)));
+        assertThat(read(format, null, key(2)), is(keys(0, 3)));
+        assertThat(read(format, key(97), null), is(keys(97, 100)));
+        assertThat(read(format, key(200), null), is(keys(0, 0)));
+    }
+
+    /**
+     * reads key ranges without sparse indices.
+     * @throws Exception if failed
+     */
+    @Test
+    public void range_without_index() throws Exception {
+        SortedFormat format = new SortedFormat(0);
+        write(format, 100);
+        assertThat(TsvSparseIndex.load(fs, file), is(nullValue()));
+        assertThat(read(format, key(40), key(44)), is(keys(40, 45)));
+    }
+
+    /**
+     * rejects unsorted records.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void unsorted() throws Exception {
+        ModelOutput<StringOption> output = new SortedFormat(5).createOutput(StringOption.class, fs, file, null);
+        try {
+            output.write(key(1));
+            output.write(key(0));
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * manifests record the codec which is chosen while writing.
+     * @throws Exception if failed
+     */
+    @Test
+    public void manifest_codec() throws Exception {
+        AdaptiveFormat format = new AdaptiveFormat();
+        write(format, 5);
+        assertThat(TsvManifest.load(fs, file).getCodecName(), is(nullValue()));
+        write(format, 100);
+        assertThat(TsvManifest.load(fs, file).getCodecName(), is(AdaptiveCompressionOutputStream.CODEC_NAME));
+    }
+
+    private void write(RollingFileFormat<StringOption> format, int count) throws Exception {
+        ModelOutput<StringOption> output = format.createOutput(StringOption.class, fs, file, null);
+        try {
+            for (int i = 0; i < count; i++) {
+                output.write(key(i));
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private List<String> read(SortedFormat format, StringOption lower, StringOption upper) throws Exception {
+        List<String> results = new ArrayList<String>();
+        ModelInput<StringOption> input = format.createRangeInput(StringOption.class, fs, file, lower, upper, null);
+        try {
+            StringOption buf = new StringOption();
+            while (input.readTo(buf)) {
+                results.add(buf.getAsString());
+            }
+        } finally {
+            input.close();
+        }
+        return results;
+    }
+
+    private static StringOption key(int value) {
+        return new StringOption(String.format("k%03d", value));
+    }
+
+    private static List<String> keys(int from, int to) {
+        List<String> results = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            results.add(key(i).getAsString());
+        }
+        return results;
+    }
+
+    private static final class SortedFormat extends RollingFileFormat<StringOption> {
+
+        private final int indexInterval;
+
+        SortedFormat(int indexInterval) {
+            super(new LineFormat(), 0, 0);
+            this.indexInterval = indexInterval;
+        }
+
+        @Override
+        protected ValueOption<?> getSortKey(StringOption model) {
+            return model;
+        }
+
+        @Override
+        protected int getIndexInterval() {
+            return indexInterval;
+        }
+    }
+
+    private static final class AdaptiveFormat extends RollingFileFormat<StringOption> {
+
+        AdaptiveFormat() {
+            super(new LineFormat(true), 0, 0, true, "auto");
+        }
+    }
+
+    private static final class LineFormat extends BinaryStreamFormat<StringOption> {
+
+        private final boolean adaptive;
+
+        LineFormat() {
+            this(false);
+        }
+
+        LineFormat(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        @Override
+        public Class<StringOption> getSupportedType() {
+            return StringOption.class;
+        }
+
+        @Override
+        public long getPreferredFragmentSize() {
+            return -1;
+        }
+
+        @Override
+        public long getMinimumFragmentSize() {
+            return 1;
+        }
+
+        @Override
+        public ModelInput<StringOption> createInput(
+                Class<? extends StringOption> dataType,
+                String path,
+                final InputStream stream,
+                long offset,
+                long fragmentSize) throws IOException {
+            if (offset > 0) {
+                while (true) {
+                    int c = stream.read();
+                    if (c < 0 || c == '\n') {
+                        break;
+                    }
+                }
+            }
+            return new ModelInput<StringOption>() {
+                @Override
+                public boolean readTo(StringOption model) throws IOException {
+                    ByteArrayOutputStream line = new ByteArrayOutputStream();
+                    while (true) {
+                        int c = stream.read();
+                        if (c < 0) {
+                            return false;
+                        } else if (c == '\n') {
+                            model.modify(new String(line.toByteArray(), "UTF-8"));
+                            return true;
+                        }
+                        line.write(c);
+                    }
+                }
+                @Override
+                public void close() throws IOException {
+                    stream.close();
+                }
+            };
+        }
+
+        @Override
+        public ModelOutput<StringOption> createOutput(
+                Class<? extends StringOption> dataType,
+                String path,
+                OutputStream stream) {
+            final OutputStream output = new BufferedOutputStream(adaptive
+                    ? CountingOutputStream.trackCompression(stream, new AdaptiveCompressionOutputStream(stream, 100, 0))
+                    : stream, 64);
+            return new ModelOutput<StringOption>() {
+                @Override
+                public void write(StringOption model) throws IOException {
+                    output.write((model.getAsString() + "\n").getBytes("UTF-8"));
+                }
+                @Override
+                public void close() throws IOException {
+                    output.close();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.directio.Counter;
+import com.asakusafw.runtime.io.ModelOutput;
+
+/**
+ * Test for {@link RollingModelOutput}.
+ */
+public class RollingModelOutputTest {
+
+    /**
+     * no limits.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        Mock output = new Mock(0, 0);
+        for (int i = 0; i < 100; i++) {
+            output.write("a");
+        }
+        output.close();
+        assertThat(output.getPartCount(), is(1));
+        assertThat(output.contents(0).length(), is(2 + 200));
+    }
+
+    /**
+     * rolls by the number of records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void max_records() throws Exception {
+        Mock output = new Mock(0, 3);
+        for (int i = 0; i < 7; i++) {
+            output.write(String.valueOf(i));
+        }
+        output.close();
+        assertThat(output.getPartCount(), is(3));
+        assertThat(output.contents(0), is("H\n0\n1\n2\n"));
+        assertThat(output.contents(1), is("H\n3\n4\n5\n"));
+        assertThat(output.contents(2), is("H\n6\n"));
+    }
+
+    /**
+     * rolls by the file size.
+     * @throws Exception if failed
+     */
+    @Test
+    public void max_file_size() throws Exception {
+        Mock output = new Mock(10, 0);
+        output.write("abcd");
+        output.write("efgh");
+        output.write("ijkl");
+        output.write("mnop");
+        output.close();
+        assertThat(output.getPartCount(), is(2));
+        assertThat(output.contents(0), is("H\nabcd\nefgh\n"));
+        assertThat(output.contents(1), is("H\nijkl\nmnop\n"));
+        assertThat(output.counter.get(), is(24L));
+    }
+
+    /**
+     * rolls by the uncompressed size even if the compressor buffers its output.
+     * @throws Exception if failed
+     */
+    @Test
+    public void max_file_size_compressed() throws Exception {
+        Mock output = new Mock(10, 0);
+        output.compress = true;
+        output.write("abcd");
+        output.write("efgh");
+        output.write("ijkl");
+        output.write("mnop");
+        output.close();
+        assertThat(output.getPartCount(), is(2));
+        assertThat(output.contents(0), is("H\nabcd\nefgh\n"));
+        assertThat(output.contents(1), is("H\nijkl\nmnop\n"));
+    }
+
+    /**
+     * no records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        Mock output = new Mock(10, 10);
+        output.close();
+        assertThat(output.getPartCount(), is(1));
+        assertThat(output.contents(0), is("H\n"));
+    }
+
+    /**
+     * notifies closed parts.
+     * @throws Exception if failed
+     */
+    @Test
+    public void partClosed() throws Exception {
+        Mock output = new Mock(0, 2);
+        for (int i = 0; i < 3; i++) {
+            output.write(String.valueOf(i));
+        }
+        output.close();
+        assertThat(output.closed, is(Arrays.asList("0:2:6", "1:1:4")));
+    }
+
+    /**
+     * part file names.
+     */
+    @Test
+    public void getPartPath() {
+        assertThat(RollingModelOutput.getPartPath("a/b.tsv.gz", 0), is("a/b.tsv.gz"));
+        assertThat(RollingModelOutput.getPartPath("a/b.tsv.gz", 1), is("a/b-00001.tsv.gz"));
+        assertThat(RollingModelOutput.getPartPath("a.b/c", 12), is("a.b/c-00012"));
+        assertThat(RollingModelOutput.getPartPath(".hidden", 2), is(".hidden-00002"));
+    }
+
+    private static final class Mock extends RollingModelOutput<String> {
+
+        final Counter counter;
+
+        final List<ByteArrayOutputStream> parts = new ArrayList<ByteArrayOutputStream>();
+
+        final List<String> closed = new ArrayList<String>();
+
+        boolean compress;
+
+        Mock(long maxFileSize, long maxRecords) {
+            this(maxFileSize, maxRecords, new Counter());
+        }
+
+        private Mock(long maxFileSize, long maxRecords, Counter counter) {
+            super(maxFileSize, maxRecords, counter);
+            this.counter = counter;
+        }
+
+        String contents(int index) throws IOException {
+            if (compress) {
+                InputStream in = new GZIPInputStream(new ByteArrayInputStream(parts.get(index).toByteArray()));
+                try {
+                    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                    byte[] bytes = new byte[256];
+                    while (true) {
+                        int read = in.read(bytes);
+                        if (read < 0) {
+                            break;
+                        }
+                        buf.write(bytes, 0, read);
+                    }
+                    return buf.toString("UTF-8");
+                } finally {
+                    in.close();
+                }
+            }
+            return parts.get(index).toString("UTF-8");
+        }
+
+        @Override
+        protected OutputStream openStream(int index) throws IOException {
+            assertThat(index, is(parts.size()));
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            parts.add(stream);
+            return stream;
+        }
+
+        @Override
+        protected ModelOutput<String> createOutput(int index, OutputStream raw) throws IOException {
+            final OutputStream stream = compress
+                    ? CountingOutputStream.countUncompressed(raw, new GZIPOutputStream(raw))
+                    : raw;
+            stream.write("H\n".getBytes("UTF-8"));
+            return new ModelOutput<String>() {
+                @Override
+                public void write(String model) throws IOException {
+                    stream.write((model + "\n").getBytes("UTF-8"));
+                }
+                @Override
+                public void close() throws IOException {
+                    stream.close();
+                }
+            };
+        }
+
+        @Override
+        protected void partClosed(int index, long records, CountingOutputStream stream) throws IOException {
+            closed.add(index + ":" + records + ":" + stream.getCount());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link TsvBloomFilter}.
+ */
+public class TsvBloomFilterTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystem fs;
+
+    /**
+     * Initializes the test.
+     * @throws Exception if failed
+     */
+    @Before
+    public void setUp() throws Exception {
+        fs = FileSystem.getLocal(new Configuration());
+    }
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        TsvBloomFilter filter = new TsvBloomFilter(16, 7);
+        filter.add(new StringOption("Hello"));
+        assertThat(filter.mightContain(new StringOption("Hello")), is(true));
+        assertThat(filter.mightContain("Hello"), is(true));
+        assertThat(filter.mightContain(new StringOption("World")), is(false));
+        assertThat(filter.getAddedCount(), is(1L));
+    }
+
+    /**
+     * integral values are compared as long.
+     */
+    @Test
+    public void integral() {
+        TsvBloomFilter filter = new TsvBloomFilter(16, 7);
+        filter.add(new IntOption(100));
+        assertThat(filter.mightContain(new LongOption(100)), is(true));
+        assertThat(filter.mightContain(100L), is(true));
+        assertThat(filter.mightContain(new IntOption(101)), is(false));
+    }
+
+    /**
+     * decimal values ignore trailing zeros.
+     */
+    @Test
+    public void decimal() {
+        TsvBloomFilter filter = new TsvBloomFilter(16, 7);
+        filter.add(new DecimalOption(new BigDecimal("1.50")));
+        filter.add(new DecimalOption(new BigDecimal("0.000")));
+        assertThat(filter.mightContain(new DecimalOption(new BigDecimal("1.5"))), is(true));
+        assertThat(filter.mightContain(new DecimalOption(new BigDecimal("0"))), is(true));
+        assertThat(filter.mightContain(new DecimalOption(new BigDecimal("15"))), is(false));
+    }
+
+    /**
+     * null values are not added.
+     */
+    @Test
+    public void nulls() {
+        TsvBloomFilter filter = new TsvBloomFilter(16, 7);
+        filter.add(new StringOption());
+        filter.add(null);
+        assertThat(filter.getAddedCount(), is(0L));
+        assertThat(filter.mightContain(new StringOption()), is(false));
+    }
+
+    /**
+     * compacts a sparse filter.
+     */
+    @Test
+    public void compact() {
+        TsvBloomFilter filter = new TsvBloomFilter();
+        for (int i = 0; i < 1000; i++) {
+            filter.add(new IntOption(i));
+        }
+        filter.compact(0.01);
+        assertThat(filter.getBitCount(), is(lessThan(1 << 16)));
+        assertThat(filter.getFalsePositiveProbability(), is(lessThanOrEqualTo(0.01)));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.mightContain(i), is(true));
+        }
+        int positives = 0;
+        for (int i = 1000; i < 11000; i++) {
+            if (filter.mightContain(i)) {
+                positives++;
+            }
+        }
+        assertThat(positives, is(lessThan(300)));
+    }
+
+    /**
+     * saves and loads a filter.
+     * @throws Exception if failed
+     */
+    @Test
+    public void save_load() throws Exception {
+        Path file = new Path(folder.getRoot().toURI().toString(), "a.tsv");
+        TsvBloomFilter filter = new TsvBloomFilter();
+        for (int i = 0; i < 100; i++) {
+            filter.add(new StringOption("k" + i));
+        }
+        filter.save(fs, file, "key");
+        assertThat(fs.exists(new Path(file.getParent(), ".a.tsv.key.bloom")), is(true));
+
+        TsvBloomFilter loaded = TsvBloomFilter.load(fs, file, "key");
+        assertThat(loaded, is(notNullValue()));
+        assertThat(loaded.getBitCount(), is(filter.getBitCount()));
+        assertThat(loaded.getAddedCount(), is(100L));
+        for (int i = 0; i < 100; i++) {
+            assertThat(loaded.mightContain("k" + i), is(true));
+        }
+        assertThat(TsvBloomFilter.load(fs, file, "other"), is(nullValue()));
+    }
+
+    /**
+     * selects candidate files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void selectCandidates() throws Exception {
+        List<Path> files = new ArrayList<Path>();
+        for (int i = 0; i < 3; i++) {
+            Path file = new Path(folder.getRoot().toURI().toString(), "f" + i + ".tsv");
+            files.add(file);
+            if (i < 2) {
+                TsvBloomFilter filter = new TsvBloomFilter();
+                filter.add(new IntOption(i));
+                filter.save(fs, file, "id");
+            }
+        }
+        List<Path> selected = TsvBloomFilter.selectCandidates(
+                fs, files, "id", Arrays.asList(new IntOption(1), new IntOption(5)));
+        assertThat(selected, is(Arrays.asList(files.get(1), files.get(2))));
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link TsvManifest}.
+ */
+public class TsvManifestTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystem fs;
+
+    /**
+     * Initializes the test.
+     * @throws Exception if failed
+     */
+    @Before
+    public void setUp() throws Exception {
+        fs = FileSystem.getLocal(new Configuration());
+    }
+
+    /**
+     * manifest file path.
+     */
+    @Test
+    public void getPath() {
+        assertThat(TsvManifest.getPath(new Path("/a/b.tsv.gz")), is(new Path("/a/.b.tsv.gz.manifest")));
+    }
+
+    /**
+     * saves and loads a manifest.
+     * @throws Exception if failed
+     */
+    @Test
+    public void save_load() throws Exception {
+        Path file = path(create("a.tsv.gz", 10));
+        new TsvManifest(3, 10, 100, "gzip").save(fs, file);
+        TsvManifest loaded = TsvManifest.load(fs, file);
+        assertThat(loaded, is(notNullValue()));
+        assertThat(loaded.getRecords(), is(3L));
+        assertThat(loaded.getSize(), is(10L));
+        assertThat(loaded.getUncompressedSize(), is(100L));
+        assertThat(loaded.getCodecName(), is("gzip"));
+    }
+
+    /**
+     * saves and loads a manifest without codecs.
+     * @throws Exception if failed
+     */
+    @Test
+    public void save_load_plain() throws Exception {
+        Path file = path(create("a.tsv", 10));
+        new TsvManifest(3, 10, 10, null).save(fs, file);
+        TsvManifest loaded = TsvManifest.load(fs, file);
+        assertThat(loaded.getCodecName(), is(nullValue()));
+    }
+
+    /**
+     * loads a missing manifest.
+     * @throws Exception if failed
+     */
+    @Test
+    public void load_missing() throws Exception {
+        Path file = path(create("a.tsv", 10));
+        assertThat(TsvManifest.load(fs, file), is(nullValue()));
+    }
+
+    /**
+     * estimates uncompressed size.
+     * @throws Exception if failed
+     */
+    @Test
+    public void estimateUncompressedSize() throws Exception {
+        Path a = path(create("a.tsv.gz", 10));
+        Path b = path(create("b.tsv.gz", 20));
+        Path c = path(create("c.tsv.gz", 30));
+        new TsvManifest(1, 10, 100, "gzip").save(fs, a);
+        new TsvManifest(1, 999, 1000, "gzip").save(fs, c);
+        long size = TsvManifest.estimateUncompressedSize(fs, new Path(path(folder.getRoot()), "*"));
+        assertThat(size, is(100L + 20L + 30L));
+    }
+
+    /**
+     * estimates data size classes.
+     * @throws Exception if failed
+     */
+    @Test
+    public void estimateDataSize() throws Exception {
+        Path a = path(create("a.tsv", 10));
+        new TsvManifest(1, 10, TsvManifest.SMALL_DATA_SIZE_LIMIT, null).save(fs, a);
+        String pattern = new Path(path(folder.getRoot()), "*").toString();
+        assertThat(TsvManifest.estimateDataSize(new Configuration(), pattern, "UNKNOWN"), is("SMALL"));
+        String missing = new Path(path(folder.getRoot()), "missing-*").toString();
+        assertThat(TsvManifest.estimateDataSize(new Configuration(), missing, "UNKNOWN"), is("UNKNOWN"));
+    }
+
+    /**
+     * data size classes.
+     */
+    @Test
+    public void toDataSize() {
+        assertThat(TsvManifest.toDataSize(0), is("TINY"));
+        assertThat(TsvManifest.toDataSize(TsvManifest.TINY_DATA_SIZE_LIMIT), is("TINY"));
+        assertThat(TsvManifest.toDataSize(TsvManifest.TINY_DATA_SIZE_LIMIT + 1), is("SMALL"));
+        assertThat(TsvManifest.toDataSize(TsvManifest.SMALL_DATA_SIZE_LIMIT), is("SMALL"));
+        assertThat(TsvManifest.toDataSize(TsvManifest.SMALL_DATA_SIZE_LIMIT + 1), is("LARGE"));
+    }
+
+    private Path path(File file) {
+        return new Path(file.toURI());
+    }
+
+    private File create(String name, int size) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Test for {@link TsvPartitions}.
+ */
+public class TsvPartitionsTest {
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void toPath() {
+        String path = TsvPartitions.toPath(
+                new String[] { "date", "shop" },
+                new ValueOption<?>[] { new DateOption(new Date(2014, 1, 2)), new StringOption("A001") });
+        assertThat(path, is("date=2014-01-02/shop=A001"));
+    }
+
+    /**
+     * other types.
+     */
+    @Test
+    public void toPath_types() {
+        String path = TsvPartitions.toPath(
+                new String[] { "a", "b" },
+                new ValueOption<?>[] { new IntOption(-10), new DecimalOption(new BigDecimal("1.50")) });
+        assertThat(path, is("a=-10/b=1.50"));
+    }
+
+    /**
+     * escapes special characters.
+     */
+    @Test
+    public void toPath_escape() {
+        String path = TsvPartitions.toPath(
+                new String[] { "a", "b", "c" },
+                new ValueOption<?>[] {
+                        new StringOption("x/y*z%"),
+                        new StringOption(),
+                        new StringOption(TsvPartitions.NULL_VALUE),
+                });
+        assertThat(path, is("a=x%2Fy%2Az%25/b=__NULL__/c=%5F_NULL__"));
+    }
+
+    /**
+     * resource patterns.
+     */
+    @Test
+    public void toPattern() {
+        String pattern = TsvPartitions.toPattern(
+                new String[] { "date", "shop" },
+                new DateOption(new Date(2014, 1, 2)), null);
+        assertThat(pattern, is("date=2014-01-02/shop=*"));
+    }
+
+    /**
+     * parses partition values.
+     */
+    @Test
+    public void parse() {
+        DateOption date = new DateOption();
+        TsvPartitions.parse("2014-01-02", date);
+        assertThat(date.get().getElapsedDays(), is(new Date(2014, 1, 2).getElapsedDays()));
+
+        IntOption integer = new IntOption();
+        TsvPartitions.parse("-10", integer);
+        assertThat(integer.get(), is(-10));
+
+        DecimalOption decimal = new DecimalOption();
+        TsvPartitions.parse("1.50", decimal);
+        assertThat(decimal.get(), is(new BigDecimal("1.50")));
+    }
+
+    /**
+     * parses escaped partition values.
+     */
+    @Test
+    public void parse_escape() {
+        StringOption a = new StringOption();
+        TsvPartitions.parse("x%2Fy%2Az%25", a);
+        assertThat(a.getAsString(), is("x/y*z%"));
+
+        StringOption b = new StringOption("dummy");
+        TsvPartitions.parse(TsvPartitions.NULL_VALUE, b);
+        assertThat(b.isNull(), is(true));
+
+        StringOption c = new StringOption();
+        TsvPartitions.parse("%5F_NULL__", c);
+        assertThat(c.getAsString(), is(TsvPartitions.NULL_VALUE));
+    }
+
+    /**
+     * parses invalid partition values.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_invalid() {
+        TsvPartitions.parse("2014-02-30", new DateOption());
+    }
+}
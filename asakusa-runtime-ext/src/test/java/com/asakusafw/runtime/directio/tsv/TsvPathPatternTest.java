@@ -0,0 +1,144 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link TsvPathPattern}.
+ */
+public class TsvPathPatternTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fill() throws Exception {
+        TsvPathPattern pattern = new TsvPathPattern("{sales_date}/{shop_code}");
+        assertThat(pattern.getPropertyNames(), is(Arrays.asList("sales_date", "shop_code")));
+
+        DateOption date = new DateOption();
+        StringOption shop = new StringOption();
+        pattern.fill("hdfs://localhost/sales/2014-01-02/A001/data-0.tsv", date, shop);
+        assertThat(date.get().getElapsedDays(), is(new Date(2014, 1, 2).getElapsedDays()));
+        assertThat(shop.getAsString(), is("A001"));
+    }
+
+    /**
+     * segments with prefixes, suffixes, and literals.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fill_literals() throws Exception {
+        TsvPathPattern pattern = new TsvPathPattern("year={year}/month-{month}.d/current");
+        IntOption year = new IntOption();
+        IntOption month = new IntOption();
+        pattern.fill("/data/year=2014/month-3.d/current/a.tsv", year, month);
+        assertThat(year.get(), is(2014));
+        assertThat(month.get(), is(3));
+    }
+
+    /**
+     * reads partitioned directories.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fill_partitions() throws Exception {
+        TsvPathPattern pattern = new TsvPathPattern("shop={shop_code}");
+        StringOption shop = new StringOption("dummy");
+        pattern.fill("base/shop=" + TsvPartitions.NULL_VALUE + "/part-0.tsv", shop);
+        assertThat(shop.isNull(), is(true));
+        pattern.fill("base/shop=A%2F1/part-0.tsv", shop);
+        assertThat(shop.getAsString(), is("A/1"));
+    }
+
+    /**
+     * path does not match.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void fill_mismatch() throws Exception {
+        TsvPathPattern pattern = new TsvPathPattern("year={year}/{month}");
+        pattern.fill("/data/2014/3/a.tsv", new IntOption(), new IntOption());
+    }
+
+    /**
+     * path is too short.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void fill_short() throws Exception {
+        TsvPathPattern pattern = new TsvPathPattern("{year}/{month}");
+        pattern.fill("3/a.tsv", new IntOption(), new IntOption());
+    }
+
+    /**
+     * path contains invalid values.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void fill_invalid() throws Exception {
+        TsvPathPattern pattern = new TsvPathPattern("{year}");
+        pattern.fill("/data/unknown/a.tsv", new IntOption());
+    }
+
+    /**
+     * resource patterns.
+     */
+    @Test
+    public void toResourcePattern() {
+        TsvPathPattern pattern = new TsvPathPattern("{sales_date}/shop={shop_code}");
+        assertThat(pattern.toResourcePattern("*.tsv"), is("*/shop=*/*.tsv"));
+        assertThat(pattern.toResourcePattern("*.tsv", "sales_date"), is("${sales_date}/shop=*/*.tsv"));
+        assertThat(pattern.toResourcePattern("*.tsv", "sales_date", "shop_code"),
+                is("${sales_date}/shop=${shop_code}/*.tsv"));
+    }
+
+    /**
+     * resource patterns with unknown properties.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void toResourcePattern_unknown() {
+        new TsvPathPattern("{sales_date}").toResourcePattern("*.tsv", "shop_code");
+    }
+
+    /**
+     * invalid patterns.
+     */
+    @Test
+    public void invalid() {
+        for (String s : new String[] { "", "a//{b}", "{a}{b}", "{a}/{a}", "{A}", "*/{a}", "{a" }) {
+            try {
+                new TsvPathPattern(s);
+                fail(s);
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+        }
+    }
+}
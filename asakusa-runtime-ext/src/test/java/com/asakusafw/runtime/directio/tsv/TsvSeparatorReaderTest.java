@@ -0,0 +1,76 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link TsvSeparatorReader}.
+ */
+public class TsvSeparatorReaderTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        assertThat(translate("a|b;c|d;", '|', ";"), is("a\tb\nc\td\n"));
+    }
+
+    /**
+     * escaped separators and raw tabs.
+     * @throws Exception if failed
+     */
+    @Test
+    public void escape() throws Exception {
+        assertThat(translate("a\\|b\tc\\\\|\\N;", '|', ";"), is("a\\|b\\\tc\\\\\t\\N\n"));
+    }
+
+    /**
+     * CRLF line separators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void crlf() throws Exception {
+        assertThat(translate("a\tb\r\nc\rd\\\r\r\n", '\t', "\r\n"), is("a\tb\nc\rd\\\r\n"));
+    }
+
+    private String translate(String contents, char fieldSeparator, String lineSeparator) throws IOException {
+        Reader reader = new TsvSeparatorReader(new StringReader(contents), fieldSeparator, lineSeparator);
+        try {
+            StringBuilder results = new StringBuilder();
+            char[] buf = new char[3];
+            while (true) {
+                int read = reader.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                results.append(buf, 0, read);
+            }
+            return results.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link TsvSeparatorWriter}.
+ */
+public class TsvSeparatorWriterTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        assertThat(translate("a\tb\nc\td\n", '|', ";"), is("a|b;c|d;"));
+    }
+
+    /**
+     * escapes conflicting characters.
+     * @throws Exception if failed
+     */
+    @Test
+    public void escape() throws Exception {
+        assertThat(translate("a|b\\\tc;\\\\\t\\N\n", '|', ";"), is("a\\|b\\\tc\\;\\\\|\\N;"));
+    }
+
+    /**
+     * CRLF line separators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void crlf() throws Exception {
+        assertThat(translate("a\tb\nc\rd\n", '\t', "\r\n"), is("a\tb\r\nc\\\rd\r\n"));
+    }
+
+    private String translate(String contents, char fieldSeparator, String lineSeparator) throws IOException {
+        StringWriter buffer = new StringWriter();
+        Writer writer = new TsvSeparatorWriter(buffer, fieldSeparator, lineSeparator);
+        writer.write(contents);
+        writer.close();
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link TsvSparseIndex}.
+ */
+public class TsvSparseIndexTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * finds offsets.
+     * @throws Exception if failed
+     */
+    @Test
+    public void findOffset() throws Exception {
+        TsvSparseIndex index = new TsvSparseIndex(10);
+        for (int i = 0; i < 100; i++) {
+            index.add(new IntOption(i), i * 10L);
+        }
+        assertThat(index.getEntryCount(), is(10));
+        assertThat(index.findOffset(null), is(0L));
+        assertThat(index.findOffset(new IntOption(0)), is(0L));
+        assertThat(index.findOffset(new IntOption(10)), is(0L));
+        assertThat(index.findOffset(new IntOption(11)), is(100L));
+        assertThat(index.findOffset(new IntOption(55)), is(500L));
+        assertThat(index.findOffset(new IntOption(1000)), is(900L));
+        assertThat(index.findOffset(new IntOption()), is(0L));
+    }
+
+    /**
+     * texts are compared as bytes.
+     * @throws Exception if failed
+     */
+    @Test
+    public void text() throws Exception {
+        TsvSparseIndex index = new TsvSparseIndex(1);
+        index.add(new StringOption(), 0);
+        index.add(new StringOption("a"), 10);
+        index.add(new StringOption("ab"), 20);
+        index.add(new StringOption("b"), 30);
+        assertThat(index.findOffset(new StringOption("ab")), is(10L));
+        assertThat(index.findOffset(new StringOption("aa")), is(10L));
+        assertThat(index.findOffset(new StringOption("a")), is(0L));
+    }
+
+    /**
+     * rejects unsorted keys.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void unsorted() throws Exception {
+        TsvSparseIndex index = new TsvSparseIndex(0);
+        index.add(new IntOption(1), 0);
+        index.add(new IntOption(1), 0);
+        index.add(new IntOption(0), 0);
+    }
+
+    /**
+     * saves and loads an index.
+     * @throws Exception if failed
+     */
+    @Test
+    public void save_load() throws Exception {
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        Path file = new Path(folder.getRoot().toURI().toString(), "a.tsv");
+        TsvSparseIndex index = new TsvSparseIndex(2);
+        for (int i = 0; i < 10; i++) {
+            index.add(new StringOption(String.valueOf((char) ('a' + i))), i * 100L);
+        }
+        index.save(fs, file);
+        assertThat(fs.exists(new Path(file.getParent(), ".a.tsv.index")), is(true));
+
+        TsvSparseIndex loaded = TsvSparseIndex.load(fs, file);
+        assertThat(loaded, is(notNullValue()));
+        assertThat(loaded.getInterval(), is(2));
+        assertThat(loaded.getEntryCount(), is(5));
+        assertThat(loaded.findOffset(new StringOption("f")), is(400L));
+        assertThat(TsvSparseIndex.load(fs, new Path(file.getParent(), "b.tsv")), is(nullValue()));
+    }
+}
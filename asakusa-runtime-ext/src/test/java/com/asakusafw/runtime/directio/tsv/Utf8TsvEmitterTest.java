@@ -0,0 +1,314 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link Utf8TsvEmitter}.
+ */
+public class Utf8TsvEmitterTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(output);
+        emitter.emit(new StringOption("Hello"));
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toString("UTF-8"), is("Hello\n"));
+    }
+
+    /**
+     * all types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void types() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(output);
+        emitter.emit(new BooleanOption(true));
+        emitter.emit(new ByteOption((byte) -12));
+        emitter.emit(new ShortOption((short) 1234));
+        emitter.emit(new IntOption(-123456));
+        emitter.emit(new LongOption(1234567890123L));
+        emitter.emit(new FloatOption(1.5f));
+        emitter.emit(new DoubleOption(-2.25));
+        emitter.emit(new DecimalOption(new BigDecimal("3.14")));
+        emitter.emit(new StringOption("あ"));
+        emitter.emit(new DateOption(new Date(2014, 3, 4)));
+        emitter.emit(new DateTimeOption(new DateTime(2000, 2, 29, 12, 34, 56)));
+        emitter.endRecord();
+        emitter.emit(new BooleanOption(false));
+        emitter.emit(new ByteOption());
+        emitter.emit(new ShortOption());
+        emitter.emit(new IntOption());
+        emitter.emit(new LongOption());
+        emitter.emit(new FloatOption());
+        emitter.emit(new DoubleOption());
+        emitter.emit(new DecimalOption());
+        emitter.emit(new StringOption());
+        emitter.emit(new DateOption());
+        emitter.emit(new DateTimeOption());
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toString("UTF-8"), is(
+                "1\t-12\t1234\t-123456\t1234567890123\t1.5\t-2.25\t3.14\tあ\t2014-03-04\t2000-02-29 12:34:56\n"
+                + "0\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\n"));
+    }
+
+    /**
+     * integral boundaries.
+     * @throws Exception if failed
+     */
+    @Test
+    public void integers() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(output);
+        emitter.emit(new LongOption(0));
+        emitter.emit(new LongOption(Long.MAX_VALUE));
+        emitter.emit(new LongOption(Long.MIN_VALUE));
+        emitter.emit(new IntOption(Integer.MIN_VALUE));
+        emitter.emit(new LongOption(1000000000000L));
+        emitter.emit(new LongOption(-9));
+        emitter.emit(new LongOption(Integer.MAX_VALUE + 1L));
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toString("UTF-8"), is(String.format("0\t%d\t%d\t%d\t1000000000000\t-9\t%d\n",
+                Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE + 1L)));
+    }
+
+    /**
+     * decimal values.
+     * @throws Exception if failed
+     */
+    @Test
+    public void decimals() throws Exception {
+        String[] values = {
+                "0",
+                "0.00",
+                "1",
+                "-1",
+                "3.14",
+                "-0.05",
+                "12345678901234.5678",
+                "0.000000000000000001",
+                "-999999999999999999",
+                "123456789012345678901234567890.123",
+                "1E+3",
+                "1E-30",
+        };
+        for (String value : values) {
+            BigDecimal decimal = new BigDecimal(value);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Utf8TsvEmitter emitter = new Utf8TsvEmitter(output);
+            emitter.emit(new DecimalOption(decimal));
+            emitter.endRecord();
+            emitter.close();
+            assertThat(value, output.toString("UTF-8"), is(decimal.toPlainString() + "\n"));
+        }
+    }
+
+    /**
+     * repeated dates.
+     * @throws Exception if failed
+     */
+    @Test
+    public void dates_repeated() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(output);
+        emitter.emit(new DateOption(new Date(2014, 3, 4)));
+        emitter.emit(new DateOption(new Date(2014, 3, 4)));
+        emitter.emit(new DateTimeOption(new DateTime(2014, 3, 4, 1, 2, 3)));
+        emitter.emit(new DateOption(new Date(2014, 3, 5)));
+        emitter.emit(new DateTimeOption(new DateTime(2014, 3, 4, 0, 0, 0)));
+        emitter.emit(new DateOption(new Date(12345, 6, 7)));
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toString("UTF-8"), is(
+                "2014-03-04\t2014-03-04\t2014-03-04 01:02:03\t2014-03-05\t2014-03-04 00:00:00\t12345-06-07\n"));
+    }
+
+    /**
+     * dates around calendar boundaries.
+     * @throws Exception if failed
+     */
+    @Test
+    public void dates() throws Exception {
+        int[][] dates = {
+                { 1, 1, 1 },
+                { 1, 12, 31 },
+                { 4, 2, 29 },
+                { 4, 3, 1 },
+                { 100, 3, 1 },
+                { 400, 2, 29 },
+                { 400, 12, 31 },
+                { 1582, 10, 10 },
+                { 1970, 1, 1 },
+                { 2012, 12, 31 },
+                { 9999, 12, 31 },
+        };
+        for (int[] date : dates) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Utf8TsvEmitter emitter = new Utf8TsvEmitter(output);
+            emitter.emit(new DateOption(new Date(date[0], date[1], date[2])));
+            emitter.emit(new DateTimeOption(new DateTime(date[0], date[1], date[2], 23, 59, 59)));
+            emitter.endRecord();
+            emitter.close();
+            String expect = String.format("%04d-%02d-%02d", date[0], date[1], date[2]);
+            assertThat(output.toString("UTF-8"), is(expect + "\t" + expect + " 23:59:59\n"));
+        }
+    }
+
+    /**
+     * escape sequences.
+     * @throws Exception if failed
+     */
+    @Test
+    public void escape() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(output);
+        emitter.emit(new StringOption("a\tb\nc\\d\re"));
+        emitter.emit(new StringOption("\\N"));
+        emitter.emit(new StringOption(""));
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toString("UTF-8"), is("a\\\tb\\\nc\\\\d\re\t\\\\N\t\n"));
+    }
+
+    /**
+     * large text fields.
+     * @throws Exception if failed
+     */
+    @Test
+    public void large() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < Utf8TsvEmitter.BUFFER_SIZE * 3; i++) {
+            buf.append(i % 7 == 0 ? '\t' : (char) ('a' + i % 26));
+        }
+        String value = buf.toString();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(output);
+        emitter.emit(new StringOption(value));
+        emitter.emit(new StringOption(value));
+        emitter.endRecord();
+        emitter.close();
+
+        Utf8TsvParser parser = new Utf8TsvParser(new ByteArrayInputStream(output.toByteArray()));
+        StringOption option = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        assertThat(option.getAsString(), is(value));
+        parser.fill(option);
+        assertThat(option.getAsString(), is(value));
+        parser.endRecord();
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * non-nullable fields.
+     * @throws Exception if failed
+     */
+    @Test
+    public void non_null() throws Exception {
+        NullViolationCounter violations = new NullViolationCounter("testing");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(output, violations);
+        emitter.emitNonNull(new IntOption(1), "a");
+        emitter.emitNonNull(new IntOption(), "b");
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toString("UTF-8"), is("1\t\\N\n"));
+        assertThat(violations.getCount(), is(1L));
+    }
+
+    /**
+     * non-nullable fields with strict mode.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void non_null_strict() throws Exception {
+        NullViolationCounter violations = new NullViolationCounter("testing", true);
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(new ByteArrayOutputStream(), violations);
+        emitter.emitNonNull(new IntOption(), "a");
+    }
+
+    /**
+     * custom separators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void separators() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8TsvEmitter emitter = new Utf8TsvEmitter(output, null, ',', "\r\n");
+        emitter.emit(new StringOption("a,b"));
+        emitter.emit(new StringOption("c\td\re\nf"));
+        emitter.emit(new IntOption());
+        emitter.endRecord();
+        emitter.close();
+        assertThat(output.toString("UTF-8"), is("a\\,b,c\\\td\\\re\\\nf,\\N\r\n"));
+
+        Utf8TsvParser parser = new Utf8TsvParser(
+                new ByteArrayInputStream(output.toByteArray()), null, ',', "\r\n");
+        StringOption option = new StringOption();
+        IntOption intOption = new IntOption(1);
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        assertThat(option.getAsString(), is("a,b"));
+        parser.fill(option);
+        assertThat(option.getAsString(), is("c\td\re\nf"));
+        parser.fill(intOption);
+        assertThat(intOption.isNull(), is(true));
+        parser.endRecord();
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * invalid separators.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_separators() {
+        new Utf8TsvEmitter(new ByteArrayOutputStream(), null, '-', "\n");
+    }
+}
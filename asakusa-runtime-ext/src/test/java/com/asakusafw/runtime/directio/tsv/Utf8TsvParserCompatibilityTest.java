@@ -0,0 +1,146 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.io.TsvParser;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for compatibility between {@link Utf8TsvParser} and {@link TsvParser}.
+ */
+public class Utf8TsvParserCompatibilityTest {
+
+    private static final String[] TEXTS = {
+        "",
+        "a",
+        "\u3042\u3044",
+        "N",
+        "\\N",
+        "\\\\N",
+        "\\\\",
+        "a\\\tb",
+        "a\\\nb",
+        "a\\\rb",
+        "a\rb",
+        "a\r",
+        "\\\r",
+    };
+
+    private static final String[] INTEGERS = {
+        "0",
+        "-1",
+        "+1",
+        "2147483647",
+        "-2147483648",
+        "\\N",
+    };
+
+    /**
+     * LF line separators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void lf() throws Exception {
+        check("\n", true);
+        check("\n", false);
+    }
+
+    /**
+     * CRLF line separators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void crlf() throws Exception {
+        check("\r\n", true);
+        check("\r\n", false);
+    }
+
+    private void check(String lineSeparator, boolean lastSeparator) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        int count = 0;
+        for (String first : TEXTS) {
+            for (String last : TEXTS) {
+                if (buf.length() > 0) {
+                    buf.append(lineSeparator);
+                }
+                buf.append(first);
+                buf.append('\t');
+                buf.append(INTEGERS[count % INTEGERS.length]);
+                buf.append('\t');
+                buf.append(last);
+                count++;
+            }
+        }
+        if (lastSeparator) {
+            buf.append(lineSeparator);
+        }
+        byte[] contents = buf.toString().getBytes("UTF-8");
+
+        NullViolationCounter violations = new NullViolationCounter("testing", false);
+        Utf8TsvParser actual = new Utf8TsvParser(new ByteArrayInputStream(contents), violations, '\t', lineSeparator);
+        Reader reader = new InputStreamReader(new ByteArrayInputStream(contents), "UTF-8");
+        if (lineSeparator.equals(TsvSeparators.DEFAULT_LINE_SEPARATOR) == false) {
+            reader = new TsvSeparatorReader(reader, '\t', lineSeparator);
+        }
+        TsvParser expected = new TsvParser(reader);
+        try {
+            StringOption[] actualTexts = { new StringOption(), new StringOption() };
+            StringOption[] expectedTexts = { new StringOption(), new StringOption() };
+            IntOption actualInteger = new IntOption();
+            IntOption expectedInteger = new IntOption();
+            for (int i = 0; i < count; i++) {
+                assertThat(expected.next(), is(true));
+                expected.fill(expectedTexts[0]);
+                expected.fill(expectedInteger);
+                expected.fill(expectedTexts[1]);
+                expected.endRecord();
+
+                assertThat(actual.next(), is(true));
+                if (i % 2 == 0) {
+                    actual.fill(actualTexts[0]);
+                    actual.fill(actualInteger);
+                    actual.fill(actualTexts[1]);
+                } else {
+                    actual.fillNonNull(actualTexts[0], "first");
+                    actual.fillNonNull(actualInteger, "integer");
+                    actual.fillNonNull(actualTexts[1], "last");
+                }
+                actual.endRecord();
+
+                String label = lineSeparator + ":" + i;
+                assertThat(label, actualTexts[0], is(expectedTexts[0]));
+                assertThat(label, actualInteger, is(expectedInteger));
+                assertThat(label, actualTexts[1], is(expectedTexts[1]));
+            }
+            assertThat(expected.next(), is(false));
+            assertThat(actual.next(), is(false));
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+}
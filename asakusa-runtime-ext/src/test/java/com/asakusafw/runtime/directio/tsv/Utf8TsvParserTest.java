@@ -0,0 +1,560 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.directio.tsv;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Test for {@link Utf8TsvParser}.
+ */
+public class Utf8TsvParserTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        Utf8TsvParser parser = parser("Hello\n");
+        StringOption option = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        parser.endRecord();
+        assertThat(option, is(new StringOption("Hello")));
+        assertThat(parser.next(), is(false));
+        parser.close();
+    }
+
+    /**
+     * all types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void types() throws Exception {
+        Utf8TsvParser parser = parser(
+                "1\t-12\t1234\t-123456\t1234567890123\t1.5\t-2.25\t3.14\t\u3042\t2014-03-04\t2000-02-29 12:34:56\n"
+                + "0\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\n");
+        BooleanOption booleanOption = new BooleanOption();
+        ByteOption byteOption = new ByteOption();
+        ShortOption shortOption = new ShortOption();
+        IntOption intOption = new IntOption();
+        LongOption longOption = new LongOption();
+        FloatOption floatOption = new FloatOption();
+        DoubleOption doubleOption = new DoubleOption();
+        DecimalOption decimalOption = new DecimalOption();
+        StringOption stringOption = new StringOption();
+        DateOption dateOption = new DateOption();
+        DateTimeOption dateTimeOption = new DateTimeOption();
+
+        assertThat(parser.next(), is(true));
+        parser.fill(booleanOption);
+        parser.fill(byteOption);
+        parser.fill(shortOption);
+        parser.fill(intOption);
+        parser.fill(longOption);
+        parser.fill(floatOption);
+        parser.fill(doubleOption);
+        parser.fill(decimalOption);
+        parser.fill(stringOption);
+        parser.fill(dateOption);
+        parser.fill(dateTimeOption);
+        parser.endRecord();
+        assertThat(booleanOption, is(new BooleanOption(true)));
+        assertThat(byteOption, is(new ByteOption((byte) -12)));
+        assertThat(shortOption, is(new ShortOption((short) 1234)));
+        assertThat(intOption, is(new IntOption(-123456)));
+        assertThat(longOption, is(new LongOption(1234567890123L)));
+        assertThat(floatOption, is(new FloatOption(1.5f)));
+        assertThat(doubleOption, is(new DoubleOption(-2.25)));
+        assertThat(decimalOption, is(new DecimalOption(new BigDecimal("3.14"))));
+        assertThat(stringOption, is(new StringOption("\u3042")));
+        assertThat(dateOption, is(new DateOption(new Date(2014, 3, 4))));
+        assertThat(dateTimeOption, is(new DateTimeOption(new DateTime(2000, 2, 29, 12, 34, 56))));
+
+        assertThat(parser.next(), is(true));
+        parser.fill(booleanOption);
+        parser.fill(byteOption);
+        parser.fill(shortOption);
+        parser.fill(intOption);
+        parser.fill(longOption);
+        parser.fill(floatOption);
+        parser.fill(doubleOption);
+        parser.fill(decimalOption);
+        parser.fill(stringOption);
+        parser.fill(dateOption);
+        parser.fill(dateTimeOption);
+        parser.endRecord();
+        assertThat(booleanOption, is(new BooleanOption(false)));
+        assertThat(byteOption.isNull(), is(true));
+        assertThat(shortOption.isNull(), is(true));
+        assertThat(intOption.isNull(), is(true));
+        assertThat(longOption.isNull(), is(true));
+        assertThat(floatOption.isNull(), is(true));
+        assertThat(doubleOption.isNull(), is(true));
+        assertThat(decimalOption.isNull(), is(true));
+        assertThat(stringOption.isNull(), is(true));
+        assertThat(dateOption.isNull(), is(true));
+        assertThat(dateTimeOption.isNull(), is(true));
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * dates around calendar boundaries.
+     * @throws Exception if failed
+     */
+    @Test
+    public void dates() throws Exception {
+        int[][] dates = {
+                { 1, 1, 1 },
+                { 1, 12, 31 },
+                { 4, 3, 1 },
+                { 100, 3, 1 },
+                { 400, 2, 29 },
+                { 1582, 10, 10 },
+                { 1970, 1, 1 },
+                { 2012, 12, 31 },
+                { 9999, 12, 31 },
+        };
+        for (int[] date : dates) {
+            Utf8TsvParser parser = parser(String.format("%04d-%02d-%02d%n", date[0], date[1], date[2]));
+            DateOption option = new DateOption();
+            assertThat(parser.next(), is(true));
+            parser.fill(option);
+            assertThat(option, is(new DateOption(new Date(date[0], date[1], date[2]))));
+        }
+    }
+
+    /**
+     * escape sequences.
+     * @throws Exception if failed
+     */
+    @Test
+    public void escape() throws Exception {
+        Utf8TsvParser parser = parser("a\\\tb\\\nc\\\\d\t\\N\\N\tN\n");
+        StringOption first = new StringOption();
+        StringOption second = new StringOption();
+        StringOption third = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(first);
+        parser.fill(second);
+        parser.fill(third);
+        parser.endRecord();
+        assertThat(first, is(new StringOption("a\tb\nc\\d")));
+        assertThat(second, is(new StringOption("NN")));
+        assertThat(third, is(new StringOption("N")));
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * empty fields and records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        Utf8TsvParser parser = parser("\n\t\n");
+        StringOption option = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        parser.endRecord();
+        assertThat(option, is(new StringOption("")));
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        assertThat(option, is(new StringOption("")));
+        parser.fill(option);
+        assertThat(option, is(new StringOption("")));
+        parser.endRecord();
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * the last record without line separator.
+     * @throws Exception if failed
+     */
+    @Test
+    public void no_last_separator() throws Exception {
+        Utf8TsvParser parser = parser("a\nb");
+        StringOption option = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        assertThat(option, is(new StringOption("a")));
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        assertThat(option, is(new StringOption("b")));
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * records larger than the buffer.
+     * @throws Exception if failed
+     */
+    @Test
+    public void large() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < Utf8TsvParser.INITIAL_BUFFER_SIZE * 3; i++) {
+            buf.append((char) ('a' + i % 26));
+        }
+        String large = buf.toString();
+        Utf8TsvParser parser = parser(large + "\t1\n" + large + "\t2\n");
+        StringOption text = new StringOption();
+        IntOption number = new IntOption();
+        for (int i = 1; i <= 2; i++) {
+            assertThat(parser.next(), is(true));
+            parser.fill(text);
+            parser.fill(number);
+            parser.endRecord();
+            assertThat(text, is(new StringOption(large)));
+            assertThat(number, is(new IntOption(i)));
+        }
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * non-nullable fields.
+     * @throws Exception if failed
+     */
+    @Test
+    public void non_null() throws Exception {
+        NullViolationCounter counter = new NullViolationCounter("testing", false);
+        Utf8TsvParser parser = new Utf8TsvParser(in("1\ta\n\\N\t\\N\n"), counter);
+        IntOption number = new IntOption();
+        StringOption text = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fillNonNull(number, "number");
+        parser.fillNonNull(text, "text");
+        parser.endRecord();
+        assertThat(number, is(new IntOption(1)));
+        assertThat(text, is(new StringOption("a")));
+        assertThat(counter.getCount(), is(0L));
+
+        assertThat(parser.next(), is(true));
+        parser.fillNonNull(number, "number");
+        parser.fillNonNull(text, "text");
+        parser.endRecord();
+        assertThat(number.isNull(), is(true));
+        assertThat(text.isNull(), is(true));
+        assertThat(counter.getCount(), is(2L));
+    }
+
+    /**
+     * non-nullable fields are parsed as same as nullable ones, except for {@code null} values.
+     * @throws Exception if failed
+     */
+    @Test
+    public void non_null_compatible() throws Exception {
+        String[] integers = {
+                "0", "-1", "+5", "007", "127", "-128", "128", "2147483647", "-2147483648", "2147483648",
+                "9223372036854775807", "-9223372036854775808", "9223372036854775808",
+                "", "-", "+", "1a", "a1", "1 ", "\\N", "\\1", "1\\\t2", "\\", "1.0",
+        };
+        for (String value : integers) {
+            checkNonNull(new ByteOption(), new ByteOption(), value);
+            checkNonNull(new ShortOption(), new ShortOption(), value);
+            checkNonNull(new IntOption(), new IntOption(), value);
+            checkNonNull(new LongOption(), new LongOption(), value);
+        }
+        String[] decimals = {
+                "0", "1.5", "-2.25", "1e3", "NaN", "", "a", "\\N", "1\\.5",
+        };
+        for (String value : decimals) {
+            checkNonNull(new FloatOption(), new FloatOption(), value);
+            checkNonNull(new DoubleOption(), new DoubleOption(), value);
+            checkNonNull(new DecimalOption(), new DecimalOption(), value);
+        }
+        String[] texts = {
+                "", "a", "Hello, world!", "\u3042\u3044", "a\\\tb", "a\\\nb", "\\\\", "\\N", "\\\\N", "N",
+        };
+        for (String value : texts) {
+            checkNonNull(new StringOption(), new StringOption(), value);
+        }
+        String[] others = {
+                "0", "1", "2", "", "\\N", "\\1",
+                "2014-03-04", "2014-02-29", "2014-3-04", "2014-03-04\\",
+                "2000-02-29 12:34:56", "2000-02-29 24:00:00",
+        };
+        for (String value : others) {
+            checkNonNull(new BooleanOption(), new BooleanOption(), value);
+            checkNonNull(new DateOption(), new DateOption(), value);
+            checkNonNull(new DateTimeOption(), new DateTimeOption(), value);
+        }
+    }
+
+    /**
+     * non-nullable fields in strict mode.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void non_null_strict() throws Exception {
+        NullViolationCounter counter = new NullViolationCounter("testing", true);
+        Utf8TsvParser parser = new Utf8TsvParser(in("\\N\n"), counter);
+        assertThat(parser.next(), is(true));
+        parser.fillNonNull(new IntOption(), "number");
+    }
+
+    /**
+     * integer overflow.
+     * @throws Exception if failed
+     */
+    @Test
+    public void overflow() throws Exception {
+        Utf8TsvParser parser = parser(
+                "127\t-128\t128\n9223372036854775807\t-9223372036854775808\t9223372036854775808\n");
+        ByteOption option = new ByteOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        assertThat(option, is(new ByteOption((byte) 127)));
+        parser.fill(option);
+        assertThat(option, is(new ByteOption((byte) -128)));
+        try {
+            parser.fill(option);
+            fail();
+        } catch (IOException e) {
+            // ok.
+        }
+        LongOption longOption = new LongOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(longOption);
+        assertThat(longOption, is(new LongOption(Long.MAX_VALUE)));
+        parser.fill(longOption);
+        assertThat(longOption, is(new LongOption(Long.MIN_VALUE)));
+        try {
+            parser.fill(longOption);
+            fail();
+        } catch (IOException e) {
+            // ok.
+        }
+    }
+
+    /**
+     * too few fields.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void too_few_fields() throws Exception {
+        Utf8TsvParser parser = parser("a\n");
+        StringOption option = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        parser.fill(option);
+    }
+
+    /**
+     * too many fields.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void too_many_fields() throws Exception {
+        Utf8TsvParser parser = parser("a\tb\n");
+        StringOption option = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(option);
+        parser.endRecord();
+    }
+
+    /**
+     * invalid date.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void invalid_date() throws Exception {
+        Utf8TsvParser parser = parser("2013-02-29\n");
+        assertThat(parser.next(), is(true));
+        parser.fill(new DateOption());
+    }
+
+    /**
+     * custom separators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void separators() throws Exception {
+        Utf8TsvParser parser = new Utf8TsvParser(in("a|b\\|c\tX;1|2;"), null, '|', ";");
+        StringOption text = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(text);
+        assertThat(text, is(new StringOption("a")));
+        parser.fill(text);
+        assertThat(text, is(new StringOption("b|c\tX")));
+        parser.endRecord();
+        IntOption number = new IntOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(number);
+        assertThat(number, is(new IntOption(1)));
+        parser.fill(number);
+        assertThat(number, is(new IntOption(2)));
+        parser.endRecord();
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * CRLF line separators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void crlf() throws Exception {
+        Utf8TsvParser parser = new Utf8TsvParser(in("a\r\nb\\\r\r\n\r\n"), null, '\t', "\r\n");
+        StringOption text = new StringOption();
+        assertThat(parser.next(), is(true));
+        parser.fill(text);
+        parser.endRecord();
+        assertThat(text, is(new StringOption("a")));
+        assertThat(parser.next(), is(true));
+        parser.fill(text);
+        parser.endRecord();
+        assertThat(text, is(new StringOption("b\r")));
+        assertThat(parser.next(), is(true));
+        parser.fill(text);
+        parser.endRecord();
+        assertThat(text, is(new StringOption("")));
+        assertThat(parser.next(), is(false));
+    }
+
+    /**
+     * invalid separators.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_separators() {
+        new Utf8TsvParser(new ByteArrayInputStream(new byte[0]), null, '-', "\n");
+    }
+
+    private void checkNonNull(ValueOption<?> nullable, ValueOption<?> nonNull, String value) throws IOException {
+        String contents = value + "\tEND\n";
+        String expected = parse(new Utf8TsvParser(in(contents)), nullable, false);
+        String actual = parse(new Utf8TsvParser(in(contents), null), nonNull, true);
+        assertThat(value, actual, is(expected));
+    }
+
+    private String parse(Utf8TsvParser parser, ValueOption<?> option, boolean nonNull) throws IOException {
+        try {
+            assertThat(parser.next(), is(true));
+            try {
+                fill(parser, option, nonNull);
+            } catch (IOException e) {
+                return "error";
+            }
+            StringOption rest = new StringOption();
+            parser.fill(rest);
+            parser.endRecord();
+            assertThat(rest, is(new StringOption("END")));
+            assertThat(parser.next(), is(false));
+            return option.isNull() ? "null" : option.toString();
+        } finally {
+            parser.close();
+        }
+    }
+
+    private void fill(Utf8TsvParser parser, ValueOption<?> option, boolean nonNull) throws IOException {
+        String name = "testing";
+        if (option instanceof BooleanOption) {
+            if (nonNull) {
+                parser.fillNonNull((BooleanOption) option, name);
+            } else {
+                parser.fill((BooleanOption) option);
+            }
+        } else if (option instanceof ByteOption) {
+            if (nonNull) {
+                parser.fillNonNull((ByteOption) option, name);
+            } else {
+                parser.fill((ByteOption) option);
+            }
+        } else if (option instanceof ShortOption) {
+            if (nonNull) {
+                parser.fillNonNull((ShortOption) option, name);
+            } else {
+                parser.fill((ShortOption) option);
+            }
+        } else if (option instanceof IntOption) {
+            if (nonNull) {
+                parser.fillNonNull((IntOption) option, name);
+            } else {
+                parser.fill((IntOption) option);
+            }
+        } else if (option instanceof LongOption) {
+            if (nonNull) {
+                parser.fillNonNull((LongOption) option, name);
+            } else {
+                parser.fill((LongOption) option);
+            }
+        } else if (option instanceof FloatOption) {
+            if (nonNull) {
+                parser.fillNonNull((FloatOption) option, name);
+            } else {
+                parser.fill((FloatOption) option);
+            }
+        } else if (option instanceof DoubleOption) {
+            if (nonNull) {
+                parser.fillNonNull((DoubleOption) option, name);
+            } else {
+                parser.fill((DoubleOption) option);
+            }
+        } else if (option instanceof DecimalOption) {
+            if (nonNull) {
+                parser.fillNonNull((DecimalOption) option, name);
+            } else {
+                parser.fill((DecimalOption) option);
+            }
+        } else if (option instanceof StringOption) {
+            if (nonNull) {
+                parser.fillNonNull((StringOption) option, name);
+            } else {
+                parser.fill((StringOption) option);
+            }
+        } else if (option instanceof DateOption) {
+            if (nonNull) {
+                parser.fillNonNull((DateOption) option, name);
+            } else {
+                parser.fill((DateOption) option);
+            }
+        } else if (option instanceof DateTimeOption) {
+            if (nonNull) {
+                parser.fillNonNull((DateTimeOption) option, name);
+            } else {
+                parser.fill((DateTimeOption) option);
+            }
+        } else {
+            throw new AssertionError(option);
+        }
+    }
+
+    private Utf8TsvParser parser(String contents) throws IOException {
+        return new Utf8TsvParser(in(contents));
+    }
+
+    private ByteArrayInputStream in(String contents) throws IOException {
+        return new ByteArrayInputStream(contents.getBytes("UTF-8"));
+    }
+}
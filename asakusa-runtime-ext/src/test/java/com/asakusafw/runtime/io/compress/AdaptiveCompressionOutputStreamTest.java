@@ -0,0 +1,187 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link AdaptiveCompressionOutputStream} and {@link CompressionDetectingInputStream}.
+ */
+public class AdaptiveCompressionOutputStreamTest {
+
+    /**
+     * small data is not compressed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void small() throws Exception {
+        byte[] data = data(1000);
+        byte[] written = write(data, 1024);
+        assertThat(written, is(data));
+
+        CompressionDetectingInputStream in = new CompressionDetectingInputStream(new ByteArrayInputStream(written));
+        assertThat(in.isCompressed(), is(false));
+        assertThat(dump(in), is(data));
+    }
+
+    /**
+     * large data is compressed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void large() throws Exception {
+        byte[] data = data(100000);
+        byte[] written = write(data, 1024);
+        assertThat(written.length, is(lessThan(data.length)));
+
+        CompressionDetectingInputStream in = new CompressionDetectingInputStream(new ByteArrayInputStream(written));
+        assertThat(in.isCompressed(), is(true));
+        assertThat(dump(in), is(data));
+    }
+
+    /**
+     * data just fits the threshold.
+     * @throws Exception if failed
+     */
+    @Test
+    public void threshold() throws Exception {
+        byte[] data = data(1024);
+        assertThat(write(data, 1024), is(data));
+        byte[] more = data(1025);
+        assertThat(dump(new CompressionDetectingInputStream(new ByteArrayInputStream(write(more, 1024)))), is(more));
+    }
+
+    /**
+     * the head buffer is not allocated for the whole threshold.
+     * @throws Exception if failed
+     */
+    @Test
+    public void large_threshold() throws Exception {
+        byte[] data = data(100000);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(buf, Integer.MAX_VALUE, 0);
+        try {
+            out.write(data[0]);
+            out.write(data, 1, data.length - 1);
+            assertThat(out.getCodecName(), is(nullValue()));
+        } finally {
+            out.close();
+        }
+        assertThat(out.getCodecName(), is(nullValue()));
+        assertThat(buf.toByteArray(), is(data));
+    }
+
+    /**
+     * the codec name is decided by the written data.
+     * @throws Exception if failed
+     */
+    @Test
+    public void codec_name() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(buf, 1024, 0);
+        try {
+            out.write(data(1000));
+            assertThat(out.getCodecName(), is(nullValue()));
+            out.write(data(1000));
+            assertThat(out.getCodecName(), is(AdaptiveCompressionOutputStream.CODEC_NAME));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * small data which looks like gzip is compressed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void ambiguous() throws Exception {
+        byte[] data = { (byte) 0x1f, (byte) 0x8b, 'a', 'b' };
+        byte[] written = write(data, 1024);
+        assertThat(written, is(not(data)));
+        assertThat(dump(new CompressionDetectingInputStream(new ByteArrayInputStream(written))), is(data));
+    }
+
+    /**
+     * empty data.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        byte[] written = write(new byte[0], 1024);
+        assertThat(written.length, is(0));
+        assertThat(dump(new CompressionDetectingInputStream(new ByteArrayInputStream(written))), is(new byte[0]));
+    }
+
+    /**
+     * single byte data.
+     * @throws Exception if failed
+     */
+    @Test
+    public void single_byte() throws Exception {
+        byte[] data = { (byte) 0x1f };
+        byte[] written = write(data, 1024);
+        assertThat(written, is(data));
+        assertThat(dump(new CompressionDetectingInputStream(new ByteArrayInputStream(written))), is(data));
+    }
+
+    private byte[] write(byte[] data, int threshold) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(buf, threshold, 0);
+        try {
+            for (int offset = 0; offset < data.length; offset += 100) {
+                out.write(data, offset, Math.min(100, data.length - offset));
+            }
+        } finally {
+            out.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private byte[] data(int size) {
+        Random random = new Random(size);
+        byte[] results = new byte[size];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return results;
+    }
+
+    private byte[] dump(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            while (true) {
+                int read = in.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                results.write(buf, 0, read);
+            }
+            return results.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.junit.Test;
+
+/**
+ * Test for {@link CodecPoolSupport}.
+ */
+public class CodecPoolSupportTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        DefaultCodec codec = new DefaultCodec();
+        codec.setConf(new Configuration());
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            OutputStream out = CodecPoolSupport.createOutputStream(codec, buffer);
+            out.write(("Hello" + i).getBytes("UTF-8"));
+            out.close();
+            out.close();
+
+            InputStream in = CodecPoolSupport.createInputStream(codec, new ByteArrayInputStream(buffer.toByteArray()));
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            byte[] buf = new byte[256];
+            while (true) {
+                int read = in.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                results.write(buf, 0, read);
+            }
+            in.close();
+            in.close();
+            assertThat(new String(results.toByteArray(), "UTF-8"), is("Hello" + i));
+        }
+    }
+}
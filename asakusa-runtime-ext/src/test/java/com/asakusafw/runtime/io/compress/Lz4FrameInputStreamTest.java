@@ -0,0 +1,197 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link Lz4FrameInputStream}.
+ */
+public class Lz4FrameInputStreamTest {
+
+    /**
+     * decodes an empty frame with content checksum.
+     * @throws Exception if failed
+     */
+    @Test
+    public void standard_empty() throws Exception {
+        byte[] lz4 = bytes(
+                0x04, 0x22, 0x4d, 0x18, 0x64, 0x40, 0xa7,
+                0x00, 0x00, 0x00, 0x00,
+                0x05, 0x5d, 0xcc, 0x02);
+        assertThat(dump(new Lz4FrameInputStream(new ByteArrayInputStream(lz4))), is(new byte[0]));
+    }
+
+    /**
+     * decodes hand-written blocks.
+     * @throws Exception if failed
+     */
+    @Test
+    public void standard_blocks() throws Exception {
+        byte[] lz4 = bytes(
+                0x04, 0x22, 0x4d, 0x18, 0x60, 0x40, 0x82,
+                0x05, 0x00, 0x00, 0x80, 'h', 'e', 'l', 'l', 'o',
+                0x0c, 0x00, 0x00, 0x00, 0x35, 'a', 'b', 'c', 0x03, 0x00, 0x50, 'x', 'y', 'z', 'z', 'y',
+                0x00, 0x00, 0x00, 0x00);
+        byte[] results = dump(new Lz4FrameInputStream(new ByteArrayInputStream(lz4)));
+        assertThat(new String(results, "US-ASCII"), is("helloabcabcabcabcxyzzy"));
+    }
+
+    /**
+     * decodes concatenated frames and skippable frames.
+     * @throws Exception if failed
+     */
+    @Test
+    public void concatenated() throws Exception {
+        byte[] a = lines(0, 100);
+        byte[] b = lines(100, 200);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        buf.write(compress(a, 1000));
+        buf.write(bytes(0x5a, 0x2a, 0x4d, 0x18, 0x03, 0x00, 0x00, 0x00, 0x01, 0x02, 0x03));
+        buf.write(compress(b, 1000));
+        byte[] results = dump(new Lz4FrameInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        assertThat(results, is(lines(0, 200)));
+    }
+
+    /**
+     * reads fragments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments() throws Exception {
+        byte[] data = lines(0, 2000);
+        byte[] lz4 = compress(data, 1000);
+        for (int fragmentSize : new int[] { 7, 100, 1000, 5000, lz4.length }) {
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            for (int offset = 0; offset < lz4.length; offset += fragmentSize) {
+                InputStream source = new ByteArrayInputStream(lz4, offset, lz4.length - offset);
+                results.write(dump(new Lz4FrameInputStream(source, fragmentSize, offset > 0, '\n')));
+            }
+            assertThat(String.valueOf(fragmentSize), results.toByteArray(), is(data));
+        }
+    }
+
+    /**
+     * reads fragments whose records lie across frames.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments_long_records() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Random random = new Random(6);
+        for (int i = 0; i < 20; i++) {
+            int length = random.nextInt(3000);
+            for (int j = 0; j < length; j++) {
+                buf.write('a' + random.nextInt(26));
+            }
+            buf.write('\n');
+        }
+        byte[] data = buf.toByteArray();
+        byte[] lz4 = compress(data, 500);
+        for (int fragmentSize : new int[] { 1, 300, 1000, 4000 }) {
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            for (int offset = 0; offset < lz4.length; offset += fragmentSize) {
+                InputStream source = new ByteArrayInputStream(lz4, offset, lz4.length - offset);
+                results.write(dump(new Lz4FrameInputStream(source, fragmentSize, offset > 0, '\n')));
+            }
+            assertThat(String.valueOf(fragmentSize), results.toByteArray(), is(data));
+        }
+    }
+
+    /**
+     * reads the whole data as a fragment.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fragments_unlimited() throws Exception {
+        byte[] data = lines(0, 100);
+        byte[] lz4 = compress(data, 100);
+        byte[] results = dump(new Lz4FrameInputStream(new ByteArrayInputStream(lz4), -1, false, '\n'));
+        assertThat(results, is(data));
+    }
+
+    /**
+     * broken data.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void invalid_magic() throws Exception {
+        dump(new Lz4FrameInputStream(new ByteArrayInputStream(bytes(1, 2, 3, 4, 5, 6, 7, 8))));
+    }
+
+    /**
+     * truncated data.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void truncated() throws Exception {
+        byte[] lz4 = compress(lines(0, 100), 1000);
+        dump(new Lz4FrameInputStream(new ByteArrayInputStream(lz4, 0, lz4.length - 10)));
+    }
+
+    private byte[] lines(int from, int to) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            buf.append("record-").append(i).append('\t').append(i % 7).append('\n');
+        }
+        return buf.toString().getBytes("US-ASCII");
+    }
+
+    private byte[] bytes(int... values) {
+        byte[] results = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            results[i] = (byte) values[i];
+        }
+        return results;
+    }
+
+    private byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Lz4FrameOutputStream out = new Lz4FrameOutputStream(buf, blockSize);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private byte[] dump(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            while (true) {
+                int read = in.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                results.write(buf, 0, read);
+            }
+            return results.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
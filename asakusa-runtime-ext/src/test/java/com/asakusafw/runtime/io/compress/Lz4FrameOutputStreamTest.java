@@ -0,0 +1,169 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link Lz4FrameOutputStream}.
+ */
+public class Lz4FrameOutputStreamTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        byte[] data = data(1000, 1);
+        byte[] lz4 = compress(data, Lz4FrameOutputStream.DEFAULT_BLOCK_SIZE);
+        assertThat(lz4.length, is(lessThan(data.length)));
+        assertThat(decompress(lz4), is(data));
+    }
+
+    /**
+     * empty data.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        byte[] lz4 = compress(new byte[0], Lz4FrameOutputStream.DEFAULT_BLOCK_SIZE);
+        assertThat(Lz4Block.readInt(lz4, 0), is(Lz4FrameOutputStream.MAGIC));
+        assertThat(decompress(lz4), is(new byte[0]));
+    }
+
+    /**
+     * multiple frames.
+     * @throws Exception if failed
+     */
+    @Test
+    public void frames() throws Exception {
+        byte[] data = data(1000 * 1000, 2);
+        byte[] lz4 = compress(data, 40000);
+        assertThat(decompress(lz4), is(data));
+    }
+
+    /**
+     * incompressible data.
+     * @throws Exception if failed
+     */
+    @Test
+    public void incompressible() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(3).nextBytes(data);
+        byte[] lz4 = compress(data, 40000);
+        assertThat(decompress(lz4), is(data));
+    }
+
+    /**
+     * long literals and matches.
+     * @throws Exception if failed
+     */
+    @Test
+    public void long_sequences() throws Exception {
+        byte[] data = new byte[200000];
+        new Random(4).nextBytes(data);
+        Arrays.fill(data, 1000, 50000, (byte) 'a');
+        System.arraycopy(data, 60000, data, 120000, 30000);
+        byte[] lz4 = compress(data, Lz4FrameOutputStream.DEFAULT_BLOCK_SIZE);
+        assertThat(lz4.length, is(lessThan(data.length)));
+        assertThat(decompress(lz4), is(data));
+    }
+
+    /**
+     * write each byte.
+     * @throws Exception if failed
+     */
+    @Test
+    public void write_byte() throws Exception {
+        byte[] data = data(100000, 5);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Lz4FrameOutputStream out = new Lz4FrameOutputStream(buf, 40000);
+        for (byte b : data) {
+            out.write(b);
+        }
+        out.close();
+        assertThat(decompress(buf.toByteArray()), is(data));
+    }
+
+    /**
+     * closed twice.
+     * @throws Exception if failed
+     */
+    @Test
+    public void close_twice() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Lz4FrameOutputStream out = new Lz4FrameOutputStream(buf);
+        out.write(data(100, 6));
+        out.close();
+        int size = buf.size();
+        out.close();
+        assertThat(buf.size(), is(size));
+    }
+
+    private byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Lz4FrameOutputStream out = new Lz4FrameOutputStream(buf, blockSize);
+        try {
+            for (int offset = 0; offset < data.length; offset += 3000) {
+                out.write(data, offset, Math.min(3000, data.length - offset));
+            }
+        } finally {
+            out.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private byte[] decompress(byte[] lz4) throws IOException {
+        return dump(new Lz4FrameInputStream(new ByteArrayInputStream(lz4)));
+    }
+
+    private byte[] data(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] results = new byte[size];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return results;
+    }
+
+    private byte[] dump(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            while (true) {
+                int read = in.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                results.write(buf, 0, read);
+            }
+            return results.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link ParallelGzipInputStream}.
+ */
+public class ParallelGzipInputStreamTest {
+
+    private ExecutorService executor;
+
+    /**
+     * Initializes the test.
+     */
+    @Before
+    public void setUp() {
+        executor = CompressionWorkers.newExecutor(4);
+    }
+
+    /**
+     * Cleans up the test.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * single member.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        byte[] data = data(1000, 1);
+        byte[] gzip = gzip(data);
+        assertThat(dump(new ParallelGzipInputStream(new ByteArrayInputStream(gzip), executor)), is(data));
+    }
+
+    /**
+     * single member which is larger than the scan window.
+     * @throws Exception if failed
+     */
+    @Test
+    public void single_large() throws Exception {
+        byte[] data = data(1000000, 1);
+        byte[] gzip = gzip(data);
+        InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(gzip), executor, 1024, 1024);
+        assertThat(dump(in), is(data));
+        assertThat(((ThreadPoolExecutor) executor).getTaskCount(), is(0L));
+    }
+
+    /**
+     * multiple members.
+     * @throws Exception if failed
+     */
+    @Test
+    public void members() throws Exception {
+        ByteArrayOutputStream expect = new ByteArrayOutputStream();
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++) {
+            byte[] data = data(1000 + i * 100, i);
+            expect.write(data);
+            gzip.write(gzip(data));
+        }
+        InputStream in = new ParallelGzipInputStream(
+                new ByteArrayInputStream(gzip.toByteArray()), executor, 4096, 1024 * 1024);
+        assertThat(dump(in), is(expect.toByteArray()));
+        assertThat(((ThreadPoolExecutor) executor).getTaskCount(), greaterThan(0L));
+    }
+
+    /**
+     * members which are larger than the scan window.
+     * @throws Exception if failed
+     */
+    @Test
+    public void large_members() throws Exception {
+        ByteArrayOutputStream expect = new ByteArrayOutputStream();
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            byte[] data = data(200000, i);
+            expect.write(data);
+            gzip.write(gzip(data));
+        }
+        InputStream in = new ParallelGzipInputStream(
+                new ByteArrayInputStream(gzip.toByteArray()), executor, 1024, 1024 * 1024);
+        assertThat(dump(in), is(expect.toByteArray()));
+    }
+
+    /**
+     * members which have too large output.
+     * @throws Exception if failed
+     */
+    @Test
+    public void large_output() throws Exception {
+        ByteArrayOutputStream expect = new ByteArrayOutputStream();
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            byte[] data = new byte[100000];
+            expect.write(data);
+            gzip.write(gzip(data));
+        }
+        InputStream in = new ParallelGzipInputStream(
+                new ByteArrayInputStream(gzip.toByteArray()), executor, 64 * 1024, 1000);
+        assertThat(dump(in), is(expect.toByteArray()));
+    }
+
+    /**
+     * ignores trailing garbage.
+     * @throws Exception if failed
+     */
+    @Test
+    public void trailing() throws Exception {
+        byte[] data = data(1000, 1);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        gzip.write(gzip(data));
+        gzip.write(new byte[100]);
+        InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(gzip.toByteArray()), executor);
+        assertThat(dump(in), is(data));
+    }
+
+    /**
+     * empty input.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(new byte[0]), executor);
+        assertThat(in.read(), is(-1));
+    }
+
+    /**
+     * not in gzip format.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void invalid() throws Exception {
+        dump(new ParallelGzipInputStream(new ByteArrayInputStream(data(1000, 1)), executor));
+    }
+
+    /**
+     * truncated input.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void truncated() throws Exception {
+        byte[] gzip = gzip(data(1000, 1));
+        byte[] broken = new byte[gzip.length - 4];
+        System.arraycopy(gzip, 0, broken, 0, broken.length);
+        dump(new ParallelGzipInputStream(new ByteArrayInputStream(broken), executor));
+    }
+
+    /**
+     * corrupt checksum.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void corrupt() throws Exception {
+        byte[] gzip = gzip(data(1000, 1));
+        gzip[gzip.length - 8] ^= 1;
+        dump(new ParallelGzipInputStream(new ByteArrayInputStream(gzip), executor));
+    }
+
+    private byte[] data(int size, int seed) {
+        Random random = new Random(seed);
+        byte[] results = new byte[size];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return results;
+    }
+
+    private byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(results);
+        out.write(data);
+        out.close();
+        return results.toByteArray();
+    }
+
+    private byte[] dump(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            byte[] buf = new byte[1000];
+            while (true) {
+                int read = in.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                results.write(buf, 0, read);
+            }
+            return results.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2011-2014 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.compress;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link ParallelGzipOutputStream}.
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private ExecutorService executor;
+
+    /**
+     * Initializes the test.
+     */
+    @Before
+    public void setUp() {
+        executor = CompressionWorkers.newExecutor(4);
+    }
+
+    /**
+     * Cleans up the test.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        byte[] data = data(1000, 1);
+        byte[] gzip = compress(data, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, 8);
+        assertThat(gunzip(gzip), is(data));
+    }
+
+    /**
+     * empty data.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        byte[] gzip = compress(new byte[0], ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, 8);
+        assertThat(gunzip(gzip), is(new byte[0]));
+    }
+
+    /**
+     * multiple blocks.
+     * @throws Exception if failed
+     */
+    @Test
+    public void blocks() throws Exception {
+        byte[] data = data(1000 * 1000, 2);
+        byte[] gzip = compress(data, 40000, 3);
+        assertThat(gunzip(gzip), is(data));
+        assertThat(dump(new ParallelGzipInputStream(new ByteArrayInputStream(gzip), executor)), is(data));
+    }
+
+    /**
+     * data size is a multiple of the block size.
+     * @throws Exception if failed
+     */
+    @Test
+    public void block_boundary() throws Exception {
+        byte[] data = data(40000 * 5, 3);
+        byte[] gzip = compress(data, 40000, 1);
+        assertThat(gunzip(gzip), is(data));
+    }
+
+    /**
+     * write each byte.
+     * @throws Exception if failed
+     */
+    @Test
+    public void write_byte() throws Exception {
+        byte[] data = data(100000, 4);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(buf, executor, 40000, 2);
+        for (byte b : data) {
+            out.write(b);
+        }
+        out.close();
+        assertThat(gunzip(buf.toByteArray()), is(data));
+    }
+
+    /**
+     * adjusts the deflate level by the target throughput.
+     * @throws Exception if failed
+     */
+    @Test
+    public void target_throughput() throws Exception {
+        byte[] data = data(1000 * 1000, 6);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(buf, executor, 40000, 1);
+        out.setTargetThroughput(Long.MAX_VALUE);
+        out.write(data);
+        out.close();
+        assertThat(out.getLevel(), is(Deflater.BEST_SPEED));
+        assertThat(gunzip(buf.toByteArray()), is(data));
+    }
+
+    /**
+     * closed twice.
+     * @throws Exception if failed
+     */
+    @Test
+    public void close_twice() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(buf, executor);
+        out.write(data(100, 5));
+        out.close();
+        int size = buf.size();
+        out.close();
+        assertThat(buf.size(), is(size));
+    }
+
+    private byte[] compress(byte[] data, int blockSize, int chunkSize) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(buf, executor, blockSize, 4);
+        try {
+            for (int offset = 0; offset < data.length; offset += chunkSize * 1000) {
+                out.write(data, offset, Math.min(chunkSize * 1000, data.length - offset));
+            }
+        } finally {
+            out.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] gzip) throws IOException {
+        return dump(new GZIPInputStream(new ByteArrayInputStream(gzip)));
+    }
+
+    private byte[] data(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] results = new byte[size];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return results;
+    }
+
+    private byte[] dump(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            while (true) {
+                int read = in.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                results.write(buf, 0, read);
+            }
+            return results.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}